@@ -0,0 +1,65 @@
+package com.rossisurna.benchmarks;
+
+import com.rossisurna.client.threads.AudioProcessing;
+import com.rossisurna.util.AudioPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * The amplification and volume loop MicToServer runs on every microphone segment. The loop amplifies in place, so
+ * every call first copies the original segment into a work buffer, copyOnly measures that copy by itself.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 2 2019
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class AmplificationBenchmark {
+
+    @Param({"1.0", "2.5"})
+    public double amplification; //microphone slider value
+
+    private byte[] pcm; //one microphone segment
+    private byte[] work; //segment being amplified
+
+    /**
+     * Creates the audio once per trial
+     */
+    @Setup
+    public void setUp() {
+        pcm = AudioSamples.speech(AudioPacket.audioByteLength);
+        work = new byte[pcm.length];
+    }
+
+    @Benchmark
+    public double amplify() {
+        System.arraycopy(pcm, 0, work, 0, pcm.length);
+        return AudioProcessing.amplify(work, amplification);
+    }
+
+    @Benchmark
+    public byte[] copyOnly() {
+        System.arraycopy(pcm, 0, work, 0, pcm.length);
+        return work;
+    }
+}
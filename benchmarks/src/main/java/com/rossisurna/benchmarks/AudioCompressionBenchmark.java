@@ -0,0 +1,76 @@
+package com.rossisurna.benchmarks;
+
+import com.rossisurna.client.threads.AudioProcessing;
+import com.rossisurna.util.AudioCodec;
+import com.rossisurna.util.AudioPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * GZIP compression of one microphone segment as MicToServer does it and decompression as AudioToSpeaker does it,
+ * next to the reusable codec the server's mixer uses on the same audio, so a change to either path can be compared
+ * against the other.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 2 2019
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class AudioCompressionBenchmark {
+
+    private byte[] pcm; //one microphone segment
+    private byte[] compressed; //the segment compressed
+    private final AudioCodec audioCodec = new AudioCodec(); //codec reused across calls like the mixer does
+    private final byte[] decodeBuffer = new byte[1 << 16]; //output of the reusable codec
+
+    /**
+     * Creates the audio once per trial
+     *
+     * @throws IOException if the audio could not be compressed
+     */
+    @Setup
+    public void setUp() throws IOException {
+        pcm = AudioSamples.speech(AudioPacket.audioByteLength);
+        compressed = AudioProcessing.compress(pcm);
+    }
+
+    @Benchmark
+    public byte[] clientCompress() throws IOException {
+        return AudioProcessing.compress(pcm);
+    }
+
+    @Benchmark
+    public byte[] clientDecompress() throws IOException {
+        return AudioProcessing.decompress(compressed);
+    }
+
+    @Benchmark
+    public byte[] codecCompress() {
+        return audioCodec.compress(pcm, 0, pcm.length);
+    }
+
+    @Benchmark
+    public int codecDecompress() throws IOException {
+        return audioCodec.decompress(compressed, decodeBuffer);
+    }
+}
@@ -0,0 +1,52 @@
+package com.rossisurna.benchmarks;
+
+import com.rossisurna.util.AudioPacket;
+
+import java.util.Random;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Made up microphone audio for the benchmarks, a few drifting tones with some noise in the client's audio format. The
+ * random generator is seeded, so every run compresses exactly the same bytes and results stay comparable.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 2 2019
+ */
+
+public final class AudioSamples {
+
+    private static final long SEED = 20190502L; //same audio on every run
+
+    /**
+     * Static methods only, no instances
+     */
+    private AudioSamples() {
+    }
+
+    /**
+     * Creates speech like 16 bit little endian audio
+     *
+     * @param bytes length of the audio in bytes
+     * @return audio
+     */
+    public static byte[] speech(int bytes) {
+        Random random = new Random(SEED);
+        double sampleRate = AudioPacket.audioFormat.getSampleRate();
+        byte[] pcm = new byte[bytes];
+        for (int s = 0; s + 1 < bytes; s += 2) {
+            double t = (s / 2) / sampleRate;
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 3 * t); //syllables, about 3 a second
+            double sample = envelope * (3000 * Math.sin(2 * Math.PI * 180 * t)
+                    + 1500 * Math.sin(2 * Math.PI * 720 * t)
+                    + 600 * Math.sin(2 * Math.PI * 2400 * t))
+                    + random.nextGaussian() * 200;
+            int value = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            pcm[s] = (byte) value;
+            pcm[s + 1] = (byte) (value >> 8);
+        }
+        return pcm;
+    }
+}
@@ -0,0 +1,134 @@
+package com.rossisurna.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Measures how long one hand off between two of the server's threads takes. The old way is a consumer that drains a
+ * ConcurrentLinkedQueue and sleeps 100 ms whenever it is empty, the new way is a consumer blocked in
+ * LinkedBlockingQueue.take(). Packets are offered at roughly audio frame pace so the consumer is usually idle when
+ * one arrives, which is the case that matters for voice. A packet crosses two such hand offs on its way through the
+ * server (user to group, group to broadcaster), so the end to end cost is about twice what is printed here.
+ * <p>
+ * Run with: java benchmarks/src/main/java/com/rossisurna/benchmarks/HandoffLatencyBenchmark.java [samples]
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 24 2019
+ */
+
+public class HandoffLatencyBenchmark {
+
+    private static final long SLEEP_MS = 100; //idle sleep of the old polling loops
+    private static final long OFFER_INTERVAL_MS = 20; //one audio frame
+
+    /**
+     * Runs both variants and prints their latency percentiles
+     *
+     * @param args optional number of samples per variant
+     * @throws InterruptedException if interrupted while measuring
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        report("sleep-poll (ConcurrentLinkedQueue + sleep 100ms)", pollingHandoff(samples));
+        report("blocking take (LinkedBlockingQueue)", blockingHandoff(samples));
+    }
+
+    /**
+     * Measures the old polling consumer
+     *
+     * @param samples number of hand offs to measure
+     * @return latency of each hand off in nanoseconds
+     * @throws InterruptedException if interrupted while measuring
+     */
+    private static long[] pollingHandoff(int samples) throws InterruptedException {
+        ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<>();
+        long[] latencies = new long[samples];
+
+        Thread consumer = new Thread(() -> {
+            int received = 0;
+            while (received < samples) {
+                while (!queue.isEmpty()) {
+                    long offered = queue.remove();
+                    latencies[received++] = System.nanoTime() - offered;
+                }
+                try {
+                    Thread.sleep(SLEEP_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "PollingConsumer");
+        consumer.start();
+
+        for (int i = 0; i < samples; i++) {
+            queue.add(System.nanoTime());
+            Thread.sleep(OFFER_INTERVAL_MS);
+        }
+        consumer.join();
+        return latencies;
+    }
+
+    /**
+     * Measures the blocking consumer
+     *
+     * @param samples number of hand offs to measure
+     * @return latency of each hand off in nanoseconds
+     * @throws InterruptedException if interrupted while measuring
+     */
+    private static long[] blockingHandoff(int samples) throws InterruptedException {
+        BlockingQueue<Long> queue = new LinkedBlockingQueue<>();
+        long[] latencies = new long[samples];
+
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int received = 0; received < samples; received++) {
+                    long offered = queue.take();
+                    latencies[received] = System.nanoTime() - offered;
+                }
+            } catch (InterruptedException e) {
+//                e.printStackTrace();
+            }
+        }, "BlockingConsumer");
+        consumer.start();
+
+        for (int i = 0; i < samples; i++) {
+            queue.add(System.nanoTime());
+            Thread.sleep(OFFER_INTERVAL_MS);
+        }
+        consumer.join();
+        return latencies;
+    }
+
+    /**
+     * Prints p50, p99 and max of a set of latencies
+     *
+     * @param name      variant name
+     * @param latencies latencies in nanoseconds
+     */
+    private static void report(String name, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%s%n  samples=%d p50=%.3f ms p99=%.3f ms max=%.3f ms%n", name, sorted.length,
+                toMillis(sorted[(int) (sorted.length * 0.50)]),
+                toMillis(sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))]),
+                toMillis(sorted[sorted.length - 1]));
+    }
+
+    /**
+     * Converts nanoseconds to fractional milliseconds
+     *
+     * @param nanos nanoseconds
+     * @return milliseconds
+     */
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
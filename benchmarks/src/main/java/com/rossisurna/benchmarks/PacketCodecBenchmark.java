@@ -0,0 +1,92 @@
+package com.rossisurna.benchmarks;
+
+import com.rossisurna.client.threads.AudioProcessing;
+import com.rossisurna.util.AudioPacket;
+import com.rossisurna.util.FrameCodec;
+import com.rossisurna.util.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Encoding and decoding of packets on the wire format, for a chat message, a compressed audio packet, and the change
+ * scene packet that carries a string array.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 2 2019
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PacketCodecBenchmark {
+
+    @Param({"MSG", "AP", "CS"})
+    public String code; //kind of packet
+
+    private Packet packet; //packet to encode
+    private ByteBuffer payload; //the packet encoded, without its length prefix
+
+    /**
+     * Builds the packet and its encoded form once per trial
+     *
+     * @throws IOException if the packet could not be encoded
+     */
+    @Setup
+    public void setUp() throws IOException {
+        switch (code) {
+            case "AP": {
+                byte[] compressed = AudioProcessing.compress(AudioSamples.speech(AudioPacket.audioByteLength));
+                packet = new Packet(code, 42, new AudioPacket(compressed, 7));
+                break;
+            }
+            case "CS": {
+                packet = new Packet(code, 42, new String[]{"QWERTY", "Friday night group"});
+                break;
+            }
+            default: {
+                packet = new Packet(code, 42, "> alice: can everyone hear me alright?");
+            }
+        }
+
+        ByteBuffer frame = FrameCodec.encode(packet);
+        frame.position(frame.position() + FrameCodec.HEADER_LENGTH);
+        payload = frame.slice();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() throws IOException {
+        return FrameCodec.encode(packet);
+    }
+
+    @Benchmark
+    public Packet decode() throws IOException {
+        return FrameCodec.decode(payload.duplicate());
+    }
+
+    @Benchmark
+    public Packet roundTrip() throws IOException {
+        ByteBuffer frame = FrameCodec.encode(packet);
+        frame.position(frame.position() + FrameCodec.HEADER_LENGTH);
+        return FrameCodec.decode(frame);
+    }
+}
@@ -0,0 +1,162 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.benchmarks.AudioSamples;
+import com.rossisurna.client.threads.AudioProcessing;
+import com.rossisurna.server.application.OutboundPolicy;
+import com.rossisurna.server.metrics.ServerMetrics;
+import com.rossisurna.util.AudioPacket;
+import com.rossisurna.util.FrameCodec;
+import com.rossisurna.util.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Fan out of one packet to every member of a group, the way a group's loop broadcasts it, with in memory connections
+ * whose writer takes every frame off the queue as soon as it is queued. encodeOnce is what the group does, one
+ * encoding shared by every member, encodePerRecipient encodes the packet again for every member the way the old
+ * broadcaster thread did.
+ * <p>
+ * Lives in the server's package since connections and group loops can only be created there.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 2 2019
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FanOutBenchmark {
+
+    @Param({"2", "10", "100", "1000"})
+    public int recipients; //members of the group
+
+    @Param({"MSG", "AP"})
+    public String code; //kind of packet sent
+
+    private ServerMetrics serverMetrics; //metrics every connection reports to
+    private Session[] members; //members of the group
+    private Packet packet; //packet sent, from a client outside the group so every member gets it
+
+    /**
+     * Creates a group with in memory members once per trial
+     *
+     * @throws IOException if the audio could not be compressed
+     */
+    @Setup
+    public void setUp() throws IOException {
+        serverMetrics = new ServerMetrics();
+        OutboundPolicy outboundPolicy = OutboundPolicy.defaults();
+
+        //the loop is never started, the benchmark thread does the group's work itself
+        Group group = new Group("BENCHM", "benchmark", new GroupLoop(0), null, false, new GroupRegistry(), null, serverMetrics, null, outboundPolicy.getAudioDeadlineMillis(), null);
+        Packet snapshot = new Packet("SN", 0, new String[]{"0"});
+        members = new Session[recipients];
+        for (int i = 0; i < recipients; i++) {
+            //each session asks to join like a client would, then the group takes it in
+            members[i] = new Session(new SinkConnection(i + 1, outboundPolicy, serverMetrics), i + 1, new LinkedBlockingQueue<>(), new ConcurrentHashMap<>(), null);
+            members[i].handlePacket(new Packet("JG", i + 1, "BENCHM"));
+            members[i].joined(group, snapshot, null);
+        }
+
+        if ("AP".equals(code)) {
+            byte[] compressed = AudioProcessing.compress(AudioSamples.speech(AudioPacket.audioByteLength));
+            packet = new Packet(code, recipients + 1, new AudioPacket(compressed, 1));
+        } else {
+            packet = new Packet(code, recipients + 1, "> alice: can everyone hear me alright?");
+        }
+    }
+
+    /**
+     * Takes the group's metrics down
+     */
+    @TearDown
+    public void tearDown() {
+        serverMetrics.unregisterGroup("BENCHM");
+    }
+
+    @Benchmark
+    public long encodeOnce() throws IOException {
+        ByteBuffer frame = FrameCodec.encode(packet).asReadOnlyBuffer();
+        long written = 0;
+        for (Session session : members) {
+            written += session.sendBroadcastDataToClient(packet, frame);
+        }
+        return written;
+    }
+
+    @Benchmark
+    public void encodePerRecipient() {
+        for (Session session : members) {
+            session.sendBroadcastDataToClient(packet);
+        }
+    }
+
+    /**
+     * Connection that writes to memory, its writer takes every frame off the queue right away
+     */
+    private static final class SinkConnection extends Connection {
+        private long bytesWritten = 0; //bytes taken off the queue
+
+        /**
+         * Constructor that takes in the client's ID, the limits of its outbound queue, and its metrics
+         *
+         * @param clientID       client's ID
+         * @param outboundPolicy limits of the outbound queue
+         * @param serverMetrics  where the connection reports to
+         */
+        private SinkConnection(int clientID, OutboundPolicy outboundPolicy, ServerMetrics serverMetrics) {
+            super(clientID, outboundPolicy, serverMetrics);
+        }
+
+        @Override
+        public InetAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closeChannel();
+        }
+
+        @Override
+        protected void wakeWriter() {
+            while (nextBundle()) {
+                for (int i = 0; i < outboundBundle.size(); i++) {
+                    bytesWritten += outboundBundle.get(i).frame.remaining();
+                }
+                bundleWritten();
+            }
+        }
+
+        @Override
+        protected void closeChannel() {
+            closed = true;
+            outboundQueue.clear();
+            serverMetrics.sessionClosed(getClientID());
+        }
+    }
+}
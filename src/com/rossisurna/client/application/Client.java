@@ -1,10 +1,13 @@
 package com.rossisurna.client.application;
 
 import com.rossisurna.client.threads.AudioToSpeaker;
+import com.rossisurna.client.threads.MediaChannel;
 import com.rossisurna.client.threads.MicToServer;
 import com.rossisurna.client.threads.MicToUI;
 import com.rossisurna.client.ui.ClientController;
 import com.rossisurna.client.ui.ClientGroupController;
+import com.rossisurna.util.FrameCodec;
+import com.rossisurna.util.FrameReader;
 import com.rossisurna.util.Packet;
 import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
@@ -22,11 +25,15 @@ import javafx.stage.Stage;
 import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Network Programming Spring 2019 Final Project
@@ -55,9 +62,18 @@ public class Client implements Runnable {
     private final String LG = "LG"; //leave group
     private final String UL = "UL"; //User Left
     private final String DS = "DS"; //client disconnected
+    private final String MT = "MT"; //media token for the UDP media channel
+    private final String SN = "SN"; //join snapshot, roster and recent chat
+    private final String HF = "HF"; //history fetch
+    private final String HP = "HP"; //history page
+    private final String RD = "RD"; //redirect to another server of the cluster
+    private final String HB = "HB"; //heartbeat, answered right away so the server knows the client is alive
+    private final String RC = "RC"; //reconnect hint, the server is shutting down
+    //Server address
+    private static final int DEFAULT_PORT = 80; //port used when the address has none
     //out for the socket to server
-    private ObjectOutputStream outO; //socket out stream
-    private ObjectInputStream inO; //Socket in stream
+    private DataOutputStream outO; //socket out stream, framed
+    private FrameReader inO; //Socket in stream, framed, unbundles what the server bundled
     private Socket socket = null; //Socket
     //Client identifiers
     private int clientID; //The client ID that is given by server
@@ -66,8 +82,11 @@ public class Client implements Runnable {
     private String groupName; //The group name they are in
     private boolean isInGroup = false; // If they are in a group
     private boolean tryingToEstablishConnection = false; //if the client is trying to connect to the server
+    private volatile String[] redirect; //host, port, code and argument of a redirect being followed, null otherwise, no code for a reconnect hint
     private boolean close = false; //If the client is in the process of shutting down
     private boolean isGroupSceneMade = false; //Tells the UI whether the group scene has been made already from previous group
+    private volatile long oldestChatSequence = -1; //sequence number of the oldest chat message shown, -1 if there is nothing older
+    private volatile boolean historyRequested = false; //if a page of older chat has been asked for and not arrived yet
     //JavaFX
     private ClientController clientController; //main menu controller for UI
     private ClientGroupController clientGroupController; //group UI controller
@@ -76,6 +95,7 @@ public class Client implements Runnable {
     private ArrayList<AudioToSpeaker> audioToSpeakerArrayList = new ArrayList<>(); //All of the audio to speaker threads associated for this client, one per user in group
     private MicToServer micToServer; //Mic to server thread
     private MicToUI micToUI; //Mic to UI thread
+    private MediaChannel mediaChannel; //UDP media channel, null while audio uses TCP only
     
     /**
      * Constructor
@@ -151,9 +171,9 @@ public class Client implements Runnable {
         while (!close) {
             try {
                 //if the socket inputstream has something avaliable, and while tryingtoconnect is false
-                if ((socket.getInputStream().available() > 0) && (!tryingToEstablishConnection)) {
+                if ((!tryingToEstablishConnection) && (inO.hasPacket())) {
                     //Grab packet and turn it into an object and grab all the relevant data
-                    Packet packet = (Packet) inO.readObject();
+                    Packet packet = inO.read();
                     String code = packet.getCode();
                     Object subPacket = packet.getSubPacket();
                     int senderID = packet.getSenderID();
@@ -163,6 +183,18 @@ public class Client implements Runnable {
                         case IMSG: {
                             //Initial message that sends clientID to client from server
                             clientID = Integer.valueOf((String) subPacket);
+
+                            //connected to the server a redirect pointed at, repeat the request there
+                            String[] followed = redirect;
+                            if (followed != null) {
+                                redirect = null;
+                                if (username != null) {
+                                    sendMessageToServer(SU, username);
+                                }
+                                if (followed[2] != null) {
+                                    sendMessageToServer(followed[2], followed[3]);
+                                }
+                            }
                             break;
                         }
                         case MSG: {
@@ -238,9 +270,6 @@ public class Client implements Runnable {
     
                                 //Sets up event handlers for the group UI
                                 setUPEventHandlersForGroupUI();
-    
-                                //Sends test message to the server to clear the socket from userWNG so that userWG socket works
-                                sendMessageToServer(MSG, "");
 
 //                                System.out.printf("%nClient %d Group UI Launched", clientID);
     
@@ -248,6 +277,7 @@ public class Client implements Runnable {
                                 try {
                                     clientGroupController.setAmplification(clientController.getMicrophoneSlider().getValue());
                                     micToServer = new MicToServer(outO, clientGroupController, clientID);
+                                    micToServer.setMediaChannel(mediaChannel);
                                     new Thread(micToServer).start();
                                 } catch (Exception e) {
                                     //Do nothing, only reason this try catch is here is because if two clients launch on same computer
@@ -265,70 +295,63 @@ public class Client implements Runnable {
                         case UJ: {
                             //User joined into the group
 //                            System.out.printf("%nAdding New Label (Client.java %d)", clientID);
-    
-                            //User joined, update labels
-                            Label newLabel = new Label();
-                            Label defaultLabel = clientGroupController.getClientLabel();
-    
-                            //Add label to master list
-                            clientGroupController.addLabelOfUserInGroup(senderID, newLabel);
-    
-                            //Set up new label
-                            newLabel.setLayoutX(defaultLabel.getLayoutX());
-                            newLabel.setLayoutY(defaultLabel.getLayoutY() + ((defaultLabel.getHeight() + 5) * (clientGroupController.getSizeOfLabelsOfUsersInGroupHashMap())));
-                            newLabel.setMinWidth(defaultLabel.getWidth());
-                            newLabel.setMinHeight(defaultLabel.getHeight());
-                            newLabel.setText((String) subPacket);
-                            newLabel.setTextFill(Color.BLACK);
-                            newLabel.setStyle("-fx-font: 14px;");
-                            newLabel.setFont(defaultLabel.getFont());
-                            newLabel.setEllipsisString("...");
-    
-                            //Set up new circle that shows if someone is talking
-                            Circle newCircle = new Circle();
-                            Circle defaultCircle = clientGroupController.getClientCircle();
-    
-                            clientGroupController.addCircleOfUserInGroup(senderID, newCircle);
-    
-                            newCircle.setLayoutX(defaultCircle.getLayoutX());
-                            newCircle.setLayoutY(newLabel.getLayoutY() + (defaultCircle.getLayoutY() - defaultLabel.getLayoutY()));
-                            newCircle.setRadius(defaultCircle.getRadius());
-                            newCircle.setFill(Color.web("#38383A"));
-    
-                            //Add label using Platform run later since javafx only allows javafx threads to touch UI
-                            Platform.runLater(() -> {
-                                clientGroupController.getGroupDetailsAnchorPane().getChildren().add(newLabel);
-                                clientGroupController.getGroupDetailsAnchorPane().getChildren().add(newCircle);
-                                System.out.printf("%nPlatform Later Label added");
-                                Thread.currentThread().interrupt();
-                            });
+                            addUserInGroupToUI(senderID, (String) subPacket);
+                            break;
+                        }
+                        case SN: {
+                            //Snapshot of the group sent on join, everyone already in it then the last chat messages
+                            String[] details = (String[]) subPacket;
+                            int members = Integer.parseInt(details[0]);
+                            for (int i = 0; i < members; i++) {
+                                addUserInGroupToUI(Integer.parseInt(details[1 + 2 * i]), details[2 + 2 * i]);
+                            }
+
+                            int firstMessage = 1 + 2 * members;
+                            StringBuilder chat = new StringBuilder();
+                            for (int i = firstMessage; i + 2 < details.length; i += 3) {
+                                chat.append("\n").append(details[i + 2]);
+                            }
+                            if (chat.length() > 0) {
+                                addMSGToTextArea(chat.substring(1));
+                            }
+                            historyRequested = false;
+                            setOldestChatSequence(details, firstMessage);
+                            break;
+                        }
+                        case HP: {
+                            //Page of older chat messages, goes above everything shown
+                            String[] details = (String[]) subPacket;
+                            StringBuilder chat = new StringBuilder();
+                            for (int i = 0; i + 2 < details.length; i += 3) {
+                                chat.append("\n").append(details[i + 2]);
+                            }
+                            TextArea chatTextArea = clientGroupController.getChatTextArea();
+                            if (chatTextArea != null && chat.length() > 0) {
+                                chatTextArea.setText(chat + chatTextArea.getText());
+                            }
+                            setOldestChatSequence(details, 0);
+                            historyRequested = false;
                             break;
                         }
                         case AP: {
-                            //Audio packet received
-//                            System.out.printf("%nAudio Packet Received");
-    
-                            //Grabs the correct Audio to speaker channel to broadcast data to send packet to while also checking if any need to be closed
-                            AudioToSpeaker audioToSpeaker = null;
-                            for (AudioToSpeaker audioToSpeakerFL : audioToSpeakerArrayList) {
-                                if (audioToSpeakerFL.getUserInGroupID() == packet.getSenderID()) {
-                                    audioToSpeaker = audioToSpeakerFL;
-                                } else {
-                                    if (audioToSpeakerFL.shouldClose()) {
-                                        audioToSpeakerFL.close();
-                                    }
+                            //Audio packet received over TCP
+                            processAudioPacket(packet);
+                            break;
+                        }
+                        case MT: {
+                            //Server offered the UDP media channel, register with it and move audio over once it answers
+                            try {
+                                if (mediaChannel != null) {
+                                    mediaChannel.close();
                                 }
-                            }
-    
-                            //If there is no audio to speaker thread for that specific senderID then create a new one
-                            if (audioToSpeaker != null) {
-                                audioToSpeaker.addToAudioQueue(packet);
-                            } else {
-                                //else add the new packet to the thread's queue
-                                audioToSpeaker = new AudioToSpeaker(packet.getSenderID(), clientGroupController);
-                                new Thread(audioToSpeaker).start();
-                                audioToSpeaker.addToAudioQueue(packet);
-                                audioToSpeakerArrayList.add(audioToSpeaker);
+                                mediaChannel = new MediaChannel(new InetSocketAddress(socket.getInetAddress(), socket.getPort()), clientID, (Long) subPacket, this::processAudioPacket);
+                                new Thread(mediaChannel).start();
+                                if (micToServer != null) {
+                                    micToServer.setMediaChannel(mediaChannel);
+                                }
+                            } catch (IOException e) {
+                                //No UDP, audio simply stays on TCP
+                                mediaChannel = null;
                             }
                             break;
                         }
@@ -339,8 +362,41 @@ public class Client implements Runnable {
                             if (!close) {
                                 processLeaveGroupProtocol();
                             }
-    
-                            sendMessageToServer("GB"); //send fake message to clear socket
+                            break;
+                        }
+                        case RD: {
+                            //another server of the cluster handles the request, reconnect there and send it again
+                            redirect = (String[]) subPacket;
+                            try {
+                                socket.close();
+                            } catch (IOException e) {
+//                                e.printStackTrace();
+                            }
+                            socket = null;
+                            establishConnection();
+                            break;
+                        }
+                        case RC: {
+                            //the server is shutting down, reconnect after a random part of the wait it gave, so not
+                            //every client comes back at once, to the cluster node it points at if there is one
+                            String[] hint = (String[]) subPacket;
+                            long wait = ThreadLocalRandom.current().nextLong(Long.parseLong(hint[0]) + 1);
+                            if (hint.length >= 3) {
+                                redirect = new String[]{hint[1], hint[2], null, null};
+                            }
+                            processLeaveGroupProtocol();
+                            try {
+                                socket.close();
+                            } catch (IOException e) {
+//                                e.printStackTrace();
+                            }
+                            socket = null;
+                            establishConnection(wait);
+                            break;
+                        }
+                        case HB: {
+                            //the server has not heard from the client for a while, answer so it is not taken for dead
+                            sendMessageToServer(HB);
                             break;
                         }
                         case UL: {
@@ -348,9 +404,11 @@ public class Client implements Runnable {
                             addMSGToTextArea(String.format("User: %s left the group.", (String) subPacket));
                             clientGroupController.removeLabelAndCircleOfUserInGroup(senderID);
     
-                            for (AudioToSpeaker audioToSpeakerFL : audioToSpeakerArrayList) {
-                                if (audioToSpeakerFL.getUserInGroupID() == packet.getSenderID()) {
-                                    audioToSpeakerFL.clearSequence();
+                            synchronized (this) {
+                                for (AudioToSpeaker audioToSpeakerFL : audioToSpeakerArrayList) {
+                                    if (audioToSpeakerFL.getUserInGroupID() == packet.getSenderID()) {
+                                        audioToSpeakerFL.clearSequence();
+                                    }
                                 }
                             }
                             break;
@@ -378,23 +436,123 @@ public class Client implements Runnable {
                     establishConnection();
                 }
 //                    e.printStackTrace();
-            } catch (ClassNotFoundException e) {
-                //Do nothing, wrong object was sent over stream
             } catch (InterruptedException e) {
                 //Do nothing, this is when sleep is interrupted
             }
         }
     }
     
+    /**
+     * Adds the label and talking circle of a user in the group to the group UI
+     *
+     * @param userID   ID of the user
+     * @param username username of the user
+     */
+    private void addUserInGroupToUI(int userID, String username) {
+        //User joined, update labels
+        Label newLabel = new Label();
+        Label defaultLabel = clientGroupController.getClientLabel();
+
+        //Add label to master list
+        clientGroupController.addLabelOfUserInGroup(userID, newLabel);
+
+        //Set up new label
+        newLabel.setLayoutX(defaultLabel.getLayoutX());
+        newLabel.setLayoutY(defaultLabel.getLayoutY() + ((defaultLabel.getHeight() + 5) * (clientGroupController.getSizeOfLabelsOfUsersInGroupHashMap())));
+        newLabel.setMinWidth(defaultLabel.getWidth());
+        newLabel.setMinHeight(defaultLabel.getHeight());
+        newLabel.setText(username);
+        newLabel.setTextFill(Color.BLACK);
+        newLabel.setStyle("-fx-font: 14px;");
+        newLabel.setFont(defaultLabel.getFont());
+        newLabel.setEllipsisString("...");
+
+        //Set up new circle that shows if someone is talking
+        Circle newCircle = new Circle();
+        Circle defaultCircle = clientGroupController.getClientCircle();
+
+        clientGroupController.addCircleOfUserInGroup(userID, newCircle);
+
+        newCircle.setLayoutX(defaultCircle.getLayoutX());
+        newCircle.setLayoutY(newLabel.getLayoutY() + (defaultCircle.getLayoutY() - defaultLabel.getLayoutY()));
+        newCircle.setRadius(defaultCircle.getRadius());
+        newCircle.setFill(Color.web("#38383A"));
+
+        //Add label using Platform run later since javafx only allows javafx threads to touch UI
+        Platform.runLater(() -> {
+            clientGroupController.getGroupDetailsAnchorPane().getChildren().add(newLabel);
+            clientGroupController.getGroupDetailsAnchorPane().getChildren().add(newCircle);
+            System.out.printf("%nPlatform Later Label added");
+            Thread.currentThread().interrupt();
+        });
+    }
+
+    /**
+     * Remembers the oldest chat message shown, taken from the messages of a snapshot or history page
+     *
+     * @param details      details of the snapshot or history page
+     * @param firstMessage index of the first message's sequence number, messages are sequence, sender, text
+     */
+    private void setOldestChatSequence(String[] details, int firstMessage) {
+        if (firstMessage + 2 < details.length) {
+            long oldest = Long.parseLong(details[firstMessage]);
+            oldestChatSequence = oldest > 0 ? oldest : -1;
+        } else {
+            //no messages, there is nothing older
+            oldestChatSequence = -1;
+        }
+    }
+
+    /**
+     * Asks the server for the page of chat messages before the oldest one shown, unless one is on its way already
+     */
+    private void requestOlderChat() {
+        if (oldestChatSequence > 0 && !historyRequested) {
+            historyRequested = true;
+            sendMessageToServer(HF, oldestChatSequence);
+        }
+    }
+
+    /**
+     * Hands an audio packet to the audio to speaker thread of its sender, creating one if needed. Audio arrives both
+     * from the TCP loop and from the UDP media channel, so this is synchronized.
+     *
+     * @param packet audio packet
+     */
+    private synchronized void processAudioPacket(Packet packet) {
+        //Grabs the correct Audio to speaker channel to broadcast data to send packet to while also checking if any need to be closed
+        AudioToSpeaker audioToSpeaker = null;
+        for (AudioToSpeaker audioToSpeakerFL : audioToSpeakerArrayList) {
+            if (audioToSpeakerFL.getUserInGroupID() == packet.getSenderID()) {
+                audioToSpeaker = audioToSpeakerFL;
+            } else {
+                if (audioToSpeakerFL.shouldClose()) {
+                    audioToSpeakerFL.close();
+                }
+            }
+        }
+    
+        //If there is no audio to speaker thread for that specific senderID then create a new one
+        if (audioToSpeaker != null) {
+            audioToSpeaker.addToAudioQueue(packet);
+        } else {
+            //else add the new packet to the thread's queue
+            audioToSpeaker = new AudioToSpeaker(packet.getSenderID(), clientGroupController);
+            new Thread(audioToSpeaker).start();
+            audioToSpeaker.addToAudioQueue(packet);
+            audioToSpeakerArrayList.add(audioToSpeaker);
+        }
+    }
+    
     /**
      * Sends a message to the server from the client
      *
      * @param code    protocol code
-     * @param message string message to be sent to server
+     * @param message message to be sent to server, a string or a sequence number
      */
-    private void sendMessageToServer(String code, String message) {
+    private void sendMessageToServer(String code, Object message) {
         try {
-            outO.writeObject(new Packet(code, clientID, message));
+            FrameCodec.writeFrame(outO, new Packet(code, clientID, message));
         } catch (IOException e) {
             if (!tryingToEstablishConnection) {
                 socket = null;
@@ -413,7 +571,7 @@ public class Client implements Runnable {
      */
     private void sendMessageToServer(String code) {
         try {
-            outO.writeObject(new Packet(code, clientID, null));
+            FrameCodec.writeFrame(outO, new Packet(code, clientID, null));
         } catch (IOException e) {
             if (!tryingToEstablishConnection) {
                 socket = null;
@@ -484,6 +642,16 @@ public class Client implements Runnable {
      * connection is made
      */
     private void establishConnection() {
+        establishConnection(0);
+    }
+
+    /**
+     * Method that launches thread to try to establish connection between client and server after a wait, halts any
+     * actions till connection is made
+     *
+     * @param waitMillis ms to wait before the first try
+     */
+    private void establishConnection(long waitMillis) {
         //if there isn't already another instance of this method running
         if (!tryingToEstablishConnection) {
             tryingToEstablishConnection = true;
@@ -494,11 +662,20 @@ public class Client implements Runnable {
     
             //Launched into a new thread to allow for the UI to keep updating and not be lagged while waiting for connection
             new Thread(() -> {
+                if (waitMillis > 0) {
+                    try {
+                        Thread.sleep(waitMillis);
+                    } catch (InterruptedException e) {
+//                        e.printStackTrace();
+                    }
+                }
+
                 //While socket is null
                 while (socket == null && !close) {
                     //try to connect otherwise sleep 10sec
                     try {
-                        socket = new Socket(ipAddressTextField.getText(), 80);
+                        InetSocketAddress serverAddress = getServerAddress(ipAddressTextField.getText());
+                        socket = new Socket(serverAddress.getHostString(), serverAddress.getPort());
     
                         try {
                             outO.close();
@@ -508,8 +685,9 @@ public class Client implements Runnable {
                         }
     
                         //in and out of the socket
-                        outO = new ObjectOutputStream(socket.getOutputStream());
-                        inO = new ObjectInputStream(socket.getInputStream());
+                        socket.setTcpNoDelay(true);
+                        outO = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                        inO = new FrameReader(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
     
                         tryingToEstablishConnection = false;
     
@@ -531,6 +709,30 @@ public class Client implements Runnable {
         }
     }
     
+    /**
+     * Get the address to connect to, the server a redirect points at or else the one typed in, as host or host:port
+     *
+     * @param typedAddress address typed in by the user
+     * @return server address, port 80 if none was given
+     */
+    private InetSocketAddress getServerAddress(String typedAddress) {
+        String[] followed = redirect;
+        if (followed != null) {
+            return InetSocketAddress.createUnresolved(followed[0], Integer.parseInt(followed[1]));
+        }
+
+        String host = typedAddress.trim();
+        int colon = host.lastIndexOf(':');
+        if (colon > 0 && colon == host.indexOf(':')) {
+            try {
+                return InetSocketAddress.createUnresolved(host.substring(0, colon), Integer.parseInt(host.substring(colon + 1)));
+            } catch (NumberFormatException e) {
+                //not a port, use the whole text as the host
+            }
+        }
+        return InetSocketAddress.createUnresolved(host, DEFAULT_PORT);
+    }
+
     /**
      * Protocol to leave the group, this is called when server tells user to leave or when client tells user to leave
      * Also a part of the closing client protocol
@@ -551,13 +753,21 @@ public class Client implements Runnable {
 //            e.printStackTrace();
             }
     
-            //Close all the audio to speaker's for this client
-            for (AudioToSpeaker audioToSpeaker : audioToSpeakerArrayList) {
-                audioToSpeaker.close();
+            //Close the UDP media channel of the group
+            if (mediaChannel != null) {
+                mediaChannel.close();
+                mediaChannel = null;
             }
     
-            //clear list
-            audioToSpeakerArrayList.clear();
+            //Close all the audio to speaker's for this client
+            synchronized (this) {
+                for (AudioToSpeaker audioToSpeaker : audioToSpeakerArrayList) {
+                    audioToSpeaker.close();
+                }
+    
+                //clear list
+                audioToSpeakerArrayList.clear();
+            }
         }
     }
     
@@ -686,6 +896,14 @@ public class Client implements Runnable {
             }
         });
     
+        //scrolling up at the top of the chat loads older messages
+        TextArea chatTextArea = clientGroupController.getChatTextArea();
+        chatTextArea.setOnScroll(scrollEvent -> {
+            if (scrollEvent.getDeltaY() > 0 && chatTextArea.getScrollTop() <= 0) {
+                requestOlderChat();
+            }
+        });
+    
         quitButton.setOnAction(e -> {
             sendMessageToServer(LG);
             if (tryingToEstablishConnection) {
@@ -0,0 +1,92 @@
+package com.rossisurna.client.threads;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Audio processing done by the client's audio threads, the microphone's amplification and compression and the
+ * speaker's decompression. Kept apart from the threads so it can run without a microphone, a speaker, or JavaFX,
+ * which is what the benchmarks need.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 2 2019
+ */
+
+public final class AudioProcessing {
+
+    /**
+     * Static methods only, no instances
+     */
+    private AudioProcessing() {
+    }
+
+    /**
+     * Amplifies a segment of microphone audio in place and calculates its average volume
+     *
+     * @param audioPacketSegment segment of microphone audio
+     * @param amplification      amplification defined by the user
+     * @return average volume, a segment below .5 is not worth sending
+     */
+    public static double amplify(byte[] audioPacketSegment, double amplification) {
+        //Calculates the average volume of the packet
+        long volume = 0;
+        for (int i = 0; i < audioPacketSegment.length; i++) {
+            audioPacketSegment[i] *= amplification;
+            volume += Math.abs(audioPacketSegment[i]);
+        }
+        volume *= 2.5;
+        volume /= audioPacketSegment.length;
+
+        //turns the volume into an average
+        return volume / 100.0;
+    }
+
+    /**
+     * Compresses a segment of audio with GZIP
+     *
+     * @param audioPacketSegment segment of audio
+     * @return compressed audio
+     * @throws IOException if the audio could not be compressed
+     */
+    public static byte[] compress(byte[] audioPacketSegment) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
+        gzipOutputStream.write(audioPacketSegment);
+        gzipOutputStream.flush();
+        gzipOutputStream.close();
+        byteArrayOutputStream.flush();
+        byteArrayOutputStream.close();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Decompresses GZIP compressed audio
+     *
+     * @param compressedAudio compressed audio
+     * @return audio to write to the speaker
+     * @throws IOException if the data is not valid GZIP
+     */
+    public static byte[] decompress(byte[] compressedAudio) throws IOException {
+        GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(compressedAudio));
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+        //Write the data to the byte stream
+        while (true) {
+            int intByte = gzipInputStream.read();
+            if (intByte == -1) {
+                //End byte
+                break;
+            } else {
+                byteArrayOutputStream.write((byte) intByte);
+            }
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+}
@@ -5,11 +5,8 @@ import com.rossisurna.util.AudioPacket;
 import com.rossisurna.util.Packet;
 
 import javax.sound.sampled.*;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.util.LinkedList;
 import java.util.Queue;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Network Programming Spring 2019 Final Project
@@ -28,7 +25,7 @@ public class AudioToSpeaker implements Runnable {
     private int userInGroupID; //user id of the client who's thread this is
     
     //Packet queue
-    private Queue<Packet> packetQueue = new LinkedList<>(); //queue of all the packets waiting to be processed
+    private Queue<Packet> packetQueue = new ConcurrentLinkedQueue<>(); //queue of all the packets waiting to be processed, filled from the TCP and UDP receive threads
     
     //Client UI
     private ClientGroupController clientGroupController;
@@ -106,23 +103,8 @@ public class AudioToSpeaker implements Runnable {
 //                    System.out.printf("%nAudio Packet not null, Sequence number: %d", audioPacket.getSequenceNumber());
     
                     try {
-                        //Decompress the data
-                        GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(audioPacket.getAudioDataInByteForm()));
-                        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        
-                        //Write the data to the byte stream
-                        while (true) {
-                            int intByte = gzipInputStream.read();
-                            if (intByte == -1) {
-                                //End byte
-                                break;
-                            } else {
-                                byteArrayOutputStream.write((byte) intByte);
-                            }
-                        }
-        
-                        //Writes bytes to the speaker
-                        byte[] audioToSpeaker = byteArrayOutputStream.toByteArray();
+                        //Decompress the data, then write the bytes to the speaker
+                        byte[] audioToSpeaker = AudioProcessing.decompress(audioPacket.getAudioDataInByteForm());
                         sourceDataLine.write(audioToSpeaker, 0, audioToSpeaker.length);
                     } catch (Exception e) {
                         //if some issue then discard packet
@@ -0,0 +1,160 @@
+package com.rossisurna.client.threads;
+
+import com.rossisurna.util.MediaDatagram;
+import com.rossisurna.util.Packet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.function.Consumer;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Client side of the UDP media channel. It registers with the server using the media token the server handed out over
+ * TCP, keeps the registration alive, and passes every audio packet that arrives over UDP on to the client. Audio is
+ * only sent over UDP while the server keeps acknowledging, otherwise the client keeps using TCP.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 23 2019
+ */
+
+public class MediaChannel implements Runnable {
+
+    //Timing
+    private static final long REGISTER_INTERVAL = 500; //ms between register attempts until acknowledged
+    private static final long KEEP_ALIVE_INTERVAL = 5000; //ms between keep alives once acknowledged
+    private static final long ACK_TIMEOUT = 15000; //ms without an acknowledgement before falling back to TCP
+    //Protocol Codes
+    private final String AP = "AP"; //audio packet
+    private final String MR = "MR"; //media register and its acknowledgement
+    //Client info
+    private final int clientID; //the user's client ID
+    private final long token; //media token given by the server
+    private final Consumer<Packet> audioPacketConsumer; //where received audio packets go
+    //Sockets
+    private final DatagramChannel channel; //UDP channel connected to the server
+    private final Selector selector; //selector used to wait for datagrams with a timeout
+    //Util
+    private volatile long lastAckTime = 0; //last time the server acknowledged, 0 if never
+    private volatile boolean close = false; //whether the thread needs to be closed
+
+    /**
+     * Constructor that connects the UDP channel to the server
+     *
+     * @param serverAddress       server's address, the same port as TCP
+     * @param clientID            the client's ID
+     * @param token               media token given by the server
+     * @param audioPacketConsumer where received audio packets go
+     * @throws IOException if the channel could not be opened
+     */
+    public MediaChannel(InetSocketAddress serverAddress, int clientID, long token, Consumer<Packet> audioPacketConsumer) throws IOException {
+        this.clientID = clientID;
+        this.token = token;
+        this.audioPacketConsumer = audioPacketConsumer;
+
+        channel = DatagramChannel.open();
+        channel.connect(serverAddress);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Run method that registers, keeps the registration alive, and receives audio until closed
+     */
+    public void run() {
+        ByteBuffer datagram = ByteBuffer.allocate(MediaDatagram.MAX_DATAGRAM_LENGTH);
+        long lastRegisterTime = 0;
+
+        while (!close) {
+            try {
+                //register until acknowledged, then only keep alive
+                long interval = isActive() ? KEEP_ALIVE_INTERVAL : REGISTER_INTERVAL;
+                if (System.currentTimeMillis() - lastRegisterTime >= interval) {
+                    channel.write(MediaDatagram.encode(token, new Packet(MR, clientID, null)));
+                    lastRegisterTime = System.currentTimeMillis();
+                }
+
+                //wait for datagrams until the next register is due
+                selector.select(REGISTER_INTERVAL);
+                selector.selectedKeys().clear();
+
+                datagram.clear();
+                while (channel.receive(datagram) != null) {
+                    datagram.flip();
+                    processDatagram(datagram);
+                    datagram.clear();
+                }
+            } catch (IOException e) {
+                //ICMP unreachable or a bad datagram, TCP keeps working meanwhile
+//                e.printStackTrace();
+            }
+        }
+
+        //release the socket once the loop is done with it
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+//            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Acts on a datagram from the server
+     *
+     * @param datagram received datagram
+     * @throws IOException if the datagram is malformed
+     */
+    private void processDatagram(ByteBuffer datagram) throws IOException {
+        Packet packet = MediaDatagram.readPacket(datagram);
+
+        switch (packet.getCode()) {
+            case MR: {
+                //server acknowledged, UDP works both ways
+                lastAckTime = System.currentTimeMillis();
+                break;
+            }
+            case AP: {
+                audioPacketConsumer.accept(packet);
+                break;
+            }
+            default: {
+                System.out.printf("%nInvalid Code: %s (MediaChannel.java)", packet.getCode());
+            }
+        }
+    }
+
+    /**
+     * Whether audio can go over UDP right now
+     *
+     * @return true if the server acknowledged recently
+     */
+    public boolean isActive() {
+        return !close && lastAckTime != 0 && System.currentTimeMillis() - lastAckTime < ACK_TIMEOUT;
+    }
+
+    /**
+     * Sends an audio packet over UDP
+     *
+     * @param packet audio packet to send
+     * @throws IOException if UDP failed, the caller should fall back to TCP
+     */
+    public void send(Packet packet) throws IOException {
+        channel.write(MediaDatagram.encode(token, packet));
+    }
+
+    /**
+     * Methods tells the thread to close
+     */
+    public void close() {
+        close = true;
+        selector.wakeup();
+    }
+}
@@ -2,6 +2,7 @@ package com.rossisurna.client.threads;
 
 import com.rossisurna.client.ui.ClientGroupController;
 import com.rossisurna.util.AudioPacket;
+import com.rossisurna.util.FrameCodec;
 import com.rossisurna.util.Packet;
 import javafx.scene.Scene;
 import javafx.scene.control.TextField;
@@ -11,12 +12,10 @@ import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.TargetDataLine;
-import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Network Programming Spring 2019 Final Project
@@ -34,7 +33,8 @@ import java.util.zip.GZIPOutputStream;
 public class MicToServer implements Runnable {
 
     //Server connection
-    private final ObjectOutputStream outO; //output stream
+    private final DataOutputStream outO; //output stream, framed
+    private volatile MediaChannel mediaChannel; //UDP media channel, audio goes over TCP while it is null or inactive
     //JavaFX
     private final ClientGroupController clientGroupController; //UI Controller
     //Client info
@@ -53,11 +53,11 @@ public class MicToServer implements Runnable {
      * Constructor that takes in the output stream, controller, clientID and then sets up the handlers and
      * initializes the microphone
      *
-     * @param outO                  the objectOutputStream of the client's socket
+     * @param outO                  the framed output stream of the client's socket
      * @param clientGroupController the client's group controller
      * @param clientID              the client's ID
      */
-    public MicToServer(ObjectOutputStream outO, ClientGroupController clientGroupController, int clientID) {
+    public MicToServer(DataOutputStream outO, ClientGroupController clientGroupController, int clientID) {
         this.outO = outO;
         this.clientGroupController = clientGroupController;
         this.pushToTalkHotKey = 'K';
@@ -109,36 +109,16 @@ public class MicToServer implements Runnable {
                     //grab the segment
                     byte[] audioPacketSegment = bytes.remove();
 
-                    //Calculates the average volume of the packet
-                    long volume = 0;
-                    for (int i = 0; i < audioPacketSegment.length; i++) {
-                        audioPacketSegment[i] *= amplification;
-                        volume += Math.abs(audioPacketSegment[i]);
-                    }
-                    volume *= 2.5;
-                    volume /= audioPacketSegment.length;
-
-                    //turns the volume into an average
-                    double averageVolume = volume / 100.0;
+                    //Amplifies the packet and calculates its average volume
+                    double averageVolume = AudioProcessing.amplify(audioPacketSegment, amplification);
 
                     //Create audio packet and send to server if the audi packet is a min of 50% volume, else discard
                     if (averageVolume >= .5) {
                         System.out.printf("%nSize: %d, Queue Size: %d, Total: %.2f", audioPacketSegment.length, bytes.size(), averageVolume);
                         try {
-                            //Creates packet and compresses it
-                            Packet packet;
-
-                            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
-                            gzipOutputStream.write(audioPacketSegment);
-                            gzipOutputStream.flush();
-                            gzipOutputStream.close();
-                            byteArrayOutputStream.flush();
-                            byteArrayOutputStream.close();
-
-                            //finishes creating packet and sends it off to server
-                            packet = new Packet("AP", clientID, new AudioPacket(byteArrayOutputStream.toByteArray(), sequence++));
-                            outO.writeObject(packet);
+                            //Creates packet and compresses it, then sends it off to server
+                            Packet packet = new Packet("AP", clientID, new AudioPacket(AudioProcessing.compress(audioPacketSegment), sequence++));
+                            sendAudioPacket(packet);
                         } catch (IOException e) {
                             //if error, discard packet
 //                                e.printStackTrace();
@@ -211,6 +191,34 @@ public class MicToServer implements Runnable {
         }
     }
 
+    /**
+     * Sends an audio packet over UDP when the media channel is up, otherwise or if UDP fails over TCP
+     *
+     * @param packet audio packet
+     * @throws IOException if the TCP stream is broken
+     */
+    private void sendAudioPacket(Packet packet) throws IOException {
+        MediaChannel currentMediaChannel = mediaChannel;
+        if (currentMediaChannel != null && currentMediaChannel.isActive()) {
+            try {
+                currentMediaChannel.send(packet);
+                return;
+            } catch (IOException e) {
+                //UDP failed, this packet goes over TCP instead
+            }
+        }
+        FrameCodec.writeFrame(outO, packet);
+    }
+
+    /**
+     * Sets the UDP media channel to send audio over
+     *
+     * @param mediaChannel media channel, or null to use TCP only
+     */
+    public void setMediaChannel(MediaChannel mediaChannel) {
+        this.mediaChannel = mediaChannel;
+    }
+
     /**
      * Launches event handlers for the Javafx to grab hot key information
      */
@@ -322,10 +322,16 @@ public class ClientGroupController {
      * @param status status of microphone
      */
     public void changeCircleColorDependingOnStatus(int key, int status) {
+        Circle circle = circleOfUsersInGroupHashMap.get(key);
+        if (circle == null) {
+            //no circle for this key, e.g. the mixed audio of a group that mixes on the server (ID 0)
+            return;
+        }
+
         if (status == 1) {
-            circleOfUsersInGroupHashMap.get(key).setFill(Color.GREEN);
+            circle.setFill(Color.GREEN);
         } else {
-            circleOfUsersInGroupHashMap.get(key).setFill(Color.web("#38383a"));
+            circle.setFill(Color.web("#38383a"));
         }
     }
 }
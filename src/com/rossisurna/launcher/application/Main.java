@@ -3,14 +3,20 @@ package com.rossisurna.launcher.application;
 import com.rossisurna.client.application.Client;
 import com.rossisurna.launcher.ui.LauncherController;
 import com.rossisurna.server.application.Server;
+import com.rossisurna.server.application.ServerSettings;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
-import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.lang.management.ManagementFactory;
 
 /**
  * Network Programming Spring 2019 Final Project
@@ -66,25 +72,11 @@ public class Main extends Application {
 
         Label threadCountLabel = launcherController.getThreadCountLabel();
 
-        //Launches new thread that updates the number of thrwad count in the UI
-        new Thread(() -> {
-            int threadCount = 0;
-            while (true) {
-                if (Thread.activeCount() != threadCount) {
-                    threadCount = Thread.activeCount();
-                    Platform.runLater(() -> {
-                        threadCountLabel.setText(String.valueOf(Thread.activeCount()));
-                        Thread.currentThread().interrupt();
-                    });
-                } else {
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }).start();
+        //Updates the thread count in the UI once a second, on the UI thread so no extra thread polls
+        Timeline threadCountTimeline = new Timeline(new KeyFrame(Duration.seconds(1),
+                event -> threadCountLabel.setText(String.valueOf(ManagementFactory.getThreadMXBean().getThreadCount()))));
+        threadCountTimeline.setCycleCount(Animation.INDEFINITE);
+        threadCountTimeline.play();
 
         //Event handler for when stage is closing, shut down everything
         stage.setOnCloseRequest(event -> {
@@ -103,7 +95,7 @@ public class Main extends Application {
         });
 
         //Launches or closes server on button press
-        Server serverHome = new Server();
+        Server serverHome = new Server(ServerSettings.fromSystemProperties());
         new Thread(serverHome).start();
         server = serverHome;
 
@@ -111,12 +103,13 @@ public class Main extends Application {
         launchServerButton.setOnAction(e -> {
             //if server is running then close and update text in button
             if (isServerRunning) {
-                server.close();
+                //the server drains its clients before it stops, which is not to hold up the UI
+                new Thread(server::close, "ServerClose").start();
                 launchServerButton.setText("Start Server");
                 isServerRunning = false;
             } else {
                 //else launch server and update text in button
-                server = new Server();
+                server = new Server(ServerSettings.fromSystemProperties());
                 new Thread(server).start();
                 launchServerButton.setText("Stop Server");
                 isServerRunning = true;
@@ -0,0 +1,289 @@
+package com.rossisurna.loadgen.application;
+
+import com.rossisurna.client.threads.AudioProcessing;
+import com.rossisurna.loadgen.threads.LoadStats;
+import com.rossisurna.loadgen.threads.SimulatedGroup;
+import com.rossisurna.loadgen.threads.SimulatedUser;
+import com.rossisurna.server.application.Server;
+import com.rossisurna.server.application.ServerMode;
+import com.rossisurna.server.application.ServerSettings;
+import com.rossisurna.server.metrics.HistogramSnapshot;
+import com.rossisurna.util.AudioPacket;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Headless load generator for capacity testing the server. It ramps simulated users up against a real server, a
+ * step of users at a time, fills groups with them, and has them chat and talk at the configured rates, then holds the
+ * full load for a while. After every step it prints one line: users in their groups, join latency, how long audio
+ * packets took from sender to member, how many never arrived, and the server's CPU.
+ * <p>
+ * By default the server runs in this process on loopback, its CPU then includes the generator's. To measure a server
+ * on its own, start it with JMX remote enabled (-Dcom.sun.management.jmxremote.port=9010 and so on), and run the
+ * generator with -Dvoip.loadgen.embedded=false -Dvoip.loadgen.jmx=host:9010. Every other setting is in LoadSettings.
+ * <p>
+ * Needs no JavaFX and no audio device, the audio sent is made up once at startup.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 3 2019
+ */
+
+public class LoadGenerator implements Runnable {
+
+    //Ticking
+    private static final int TICK_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2); //threads the users' talking and chatting runs on
+    //CPU
+    private static final String OPERATING_SYSTEM = "java.lang:type=OperatingSystem"; //MBean with the process CPU
+    private static final String PROCESS_CPU_LOAD = "ProcessCpuLoad"; //share of all cores the process used lately
+
+    private final LoadSettings loadSettings; //how hard to push
+    private final LoadStats loadStats = new LoadStats(); //what every user reports to
+    private final ConcurrentHashMap<Integer, SimulatedUser> userHashMap = new ConcurrentHashMap<>(); //users by client ID
+    private final ArrayList<SimulatedUser> userArrayList = new ArrayList<>(); //users in the order they started
+    private final ArrayList<SimulatedGroup> groupArrayList = new ArrayList<>(); //groups in the order they were made
+    private final ScheduledExecutorService tickExecutor = Executors.newScheduledThreadPool(TICK_THREADS); //ticks every user
+    private final Random random = new Random(0); //phases of the users' ticks
+    private final byte[] audio; //compressed audio every packet carries
+    private Server server; //embedded server, null if the server runs elsewhere
+    private MBeanServerConnection cpuConnection; //where the server's CPU is read from, null if unknown
+    //Totals at the last report
+    private long lastFramesExpected = 0;
+    private long lastFramesReceived = 0;
+    private long lastChatsSent = 0;
+    private long lastReportNanos = 0;
+
+    /**
+     * Runs the load generator with the settings from the voip.loadgen.* system properties
+     *
+     * @param args command line args, not used
+     */
+    public static void main(String[] args) {
+        new LoadGenerator(LoadSettings.fromSystemProperties()).run();
+        System.exit(0);
+    }
+
+    /**
+     * Constructor that takes in the load to generate
+     *
+     * @param loadSettings how hard to push
+     */
+    public LoadGenerator(LoadSettings loadSettings) {
+        this.loadSettings = loadSettings;
+        this.audio = makeAudio();
+    }
+
+    /**
+     * Ramps the users up, holds the load, prints a line per step, then disconnects everyone
+     */
+    @Override
+    public void run() {
+        System.out.printf("%nLoad Generator Launched, %s, latencies in ms", loadSettings);
+
+        if (loadSettings.isEmbedded()) {
+            server = new Server(ServerSettings.fromSystemProperties());
+            new Thread(server, "Server").start();
+            sleep(1000);
+        }
+        cpuConnection = connectToCPU();
+
+        System.out.printf("%n%n%7s %6s %6s %5s %5s %9s %9s %9s %9s %9s %7s %7s %6s",
+                "time s", "users", "joined", "fail", "drop", "join p50", "join p99", "frame p50", "frame p99", "frame max", "loss %", "chat/s", "cpu %");
+        long startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+
+        //ramp up a step of users at a time
+        int step = 0;
+        while (userArrayList.size() < loadSettings.getUsers()) {
+            int target = Math.min(loadSettings.getUsers(), userArrayList.size() + loadSettings.getRampUsers());
+            while (userArrayList.size() < target) {
+                startUser(userArrayList.size());
+            }
+            step++;
+            sleepUntil(startNanos + TimeUnit.SECONDS.toNanos((long) step * loadSettings.getStepSeconds()));
+            report(startNanos);
+        }
+
+        //hold the full load
+        long holdEndNanos = startNanos + TimeUnit.SECONDS.toNanos((long) step * loadSettings.getStepSeconds() + loadSettings.getHoldSeconds());
+        while (System.nanoTime() < holdEndNanos) {
+            step++;
+            sleepUntil(Math.min(holdEndNanos, startNanos + TimeUnit.SECONDS.toNanos((long) step * loadSettings.getStepSeconds())));
+            report(startNanos);
+        }
+
+        System.out.printf("%n%nLoad Generator Done, joined %d, failed %d, dropped %d, frames %d sent %d received of %d expected, chat %d sent %d received%n",
+                loadStats.getJoins(), loadStats.getFailures(), loadStats.getDisconnects(), loadStats.getFramesSent(),
+                loadStats.getFramesReceived(), loadStats.getFramesExpected(), loadStats.getChatsSent(), loadStats.getChatsReceived());
+        close();
+    }
+
+    /**
+     * Disconnects every user and stops the embedded server
+     */
+    public void close() {
+        tickExecutor.shutdownNow();
+        for (SimulatedUser simulatedUser : userArrayList) {
+            simulatedUser.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Starts a user on its own thread and ticks it at the audio cadence, the first user of every group creates it
+     *
+     * @param index number of the user
+     */
+    private void startUser(int index) {
+        int groupIndex = index / loadSettings.getGroupSize();
+        if (groupIndex == groupArrayList.size()) {
+            groupArrayList.add(new SimulatedGroup("load group " + groupIndex));
+        }
+
+        SimulatedUser simulatedUser = new SimulatedUser(index, index % loadSettings.getGroupSize() == 0, groupArrayList.get(groupIndex),
+                loadSettings, loadStats, userHashMap, audio);
+        userArrayList.add(simulatedUser);
+        //virtual threads when the runtime has them, thousands of readers that mostly wait
+        ServerMode.VIRTUAL_THREADS.startThread(simulatedUser, "SimulatedUser-" + index);
+
+        //users tick out of phase so their packets spread over the frame like real microphones
+        long frameMillis = loadSettings.getFrameMillis();
+        tickExecutor.scheduleAtFixedRate(() -> simulatedUser.tick(System.nanoTime()),
+                (long) (random.nextDouble() * frameMillis), frameMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Prints one line with everything that happened since the last line
+     *
+     * @param startNanos when the load started
+     */
+    private void report(long startNanos) {
+        long nowNanos = System.nanoTime();
+        HistogramSnapshot joinLatency = loadStats.cutJoinLatency();
+        HistogramSnapshot frameLatency = loadStats.cutFrameLatency();
+
+        long framesExpected = loadStats.getFramesExpected();
+        long framesReceived = loadStats.getFramesReceived();
+        long chatsSent = loadStats.getChatsSent();
+        long expected = framesExpected - lastFramesExpected;
+        long received = framesReceived - lastFramesReceived;
+        //packets still in flight at the cut count as lost until the next line, which then gets them back
+        double loss = expected == 0 ? 0 : Math.max(0, 100.0 * (expected - received) / expected);
+        double chatRate = (chatsSent - lastChatsSent) / ((nowNanos - lastReportNanos) / 1e9);
+        lastFramesExpected = framesExpected;
+        lastFramesReceived = framesReceived;
+        lastChatsSent = chatsSent;
+        lastReportNanos = nowNanos;
+
+        double cpu = readCPU();
+        System.out.printf("%n%7.1f %6d %6d %5d %5d %9.1f %9.1f %9.1f %9.1f %9.1f %7.2f %7.1f %6s",
+                (nowNanos - startNanos) / 1e9, userArrayList.size(), loadStats.getJoins() - loadStats.getDisconnects(),
+                loadStats.getFailures(), loadStats.getDisconnects(),
+                joinLatency.getP50() / 1000, joinLatency.getP99() / 1000,
+                frameLatency.getP50() / 1000, frameLatency.getP99() / 1000, frameLatency.getMax() / 1000,
+                loss, chatRate, cpu < 0 ? "-" : String.format("%.1f", cpu * 100));
+    }
+
+    /**
+     * Connects to where the server's CPU can be read, this process for an embedded server
+     *
+     * @return connection, or null if the server's CPU is not known
+     */
+    private MBeanServerConnection connectToCPU() {
+        if (loadSettings.isEmbedded()) {
+            return ManagementFactory.getPlatformMBeanServer();
+        }
+        if (loadSettings.getJmx() == null) {
+            return null;
+        }
+        try {
+            JMXServiceURL jmxServiceURL = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://" + loadSettings.getJmx() + "/jmxrmi");
+            return JMXConnectorFactory.connect(jmxServiceURL).getMBeanServerConnection();
+        } catch (IOException e) {
+            System.out.printf("%nCould not reach JMX at %s, server CPU will not be shown", loadSettings.getJmx());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the share of all cores the server's process used lately
+     *
+     * @return 0 to 1, negative if unknown
+     */
+    private double readCPU() {
+        if (cpuConnection == null) {
+            return -1;
+        }
+        try {
+            return ((Number) cpuConnection.getAttribute(new ObjectName(OPERATING_SYSTEM), PROCESS_CPU_LOAD)).doubleValue();
+        } catch (Exception e) {
+            //runtime without the attribute or the server went away
+            return -1;
+        }
+    }
+
+    /**
+     * Makes up one microphone segment of speech like audio and compresses it the way the client does
+     *
+     * @return compressed audio
+     */
+    private static byte[] makeAudio() {
+        Random noise = new Random(0);
+        double sampleRate = AudioPacket.audioFormat.getSampleRate();
+        byte[] pcm = new byte[AudioPacket.audioByteLength];
+        for (int s = 0; s + 1 < pcm.length; s += 2) {
+            double t = (s / 2) / sampleRate;
+            double sample = (0.5 + 0.5 * Math.sin(2 * Math.PI * 3 * t)) * (3000 * Math.sin(2 * Math.PI * 180 * t)
+                    + 1500 * Math.sin(2 * Math.PI * 720 * t)) + noise.nextGaussian() * 200;
+            int value = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            pcm[s] = (byte) value;
+            pcm[s + 1] = (byte) (value >> 8);
+        }
+        try {
+            return AudioProcessing.compress(pcm);
+        } catch (IOException e) {
+            return pcm;
+        }
+    }
+
+    /**
+     * Sleeps until the given time
+     *
+     * @param deadlineNanos time to wake up
+     */
+    private static void sleepUntil(long deadlineNanos) {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining > 0) {
+            sleep(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+        }
+    }
+
+    /**
+     * Sleeps, interruptions just cut it short
+     *
+     * @param millis ms to sleep
+     */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+//            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.rossisurna.loadgen.application;
+
+import com.rossisurna.util.AudioPacket;
+import com.rossisurna.util.SystemProperties;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * How hard the load generator pushes the server: where the server is, how many simulated users it ramps up to and how
+ * fast, how big their groups are, and how much each user chats and talks. Talking works like the client's push to
+ * talk, a user holds the key for a while and sends one audio packet every segment, then lets go for a while, the duty
+ * cycle is the share of time a user spends talking.
+ * <p>
+ * All settings can be set with system properties, see the constants below.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 3 2019
+ */
+
+public final class LoadSettings {
+
+    //System properties used to set the load at startup
+    public static final String HOST_PROPERTY = "voip.loadgen.host"; //server to connect to
+    public static final String PORT_PROPERTY = "voip.loadgen.port"; //port of the server
+    public static final String EMBEDDED_PROPERTY = "voip.loadgen.embedded"; //start a server in this process
+    public static final String JMX_PROPERTY = "voip.loadgen.jmx"; //host:port of a remote server's JMX agent
+    public static final String USERS_PROPERTY = "voip.loadgen.users"; //users ramped up to
+    public static final String GROUP_SIZE_PROPERTY = "voip.loadgen.groupSize"; //users per group
+    public static final String RAMP_USERS_PROPERTY = "voip.loadgen.rampUsers"; //users added per step
+    public static final String STEP_SECONDS_PROPERTY = "voip.loadgen.stepSeconds"; //length of a step
+    public static final String HOLD_SECONDS_PROPERTY = "voip.loadgen.holdSeconds"; //time at full load
+    public static final String CHAT_PER_MINUTE_PROPERTY = "voip.loadgen.chatPerMinute"; //chat messages per user
+    public static final String TALK_DUTY_PROPERTY = "voip.loadgen.talkDuty"; //share of time spent talking
+    public static final String TALK_SECONDS_PROPERTY = "voip.loadgen.talkSeconds"; //average time the key is held
+    public static final String FRAME_MILLIS_PROPERTY = "voip.loadgen.frameMillis"; //ms between audio packets
+
+    //Defaults
+    private static final String DEFAULT_HOST = "127.0.0.1"; //loopback
+    private static final int DEFAULT_PORT = 80; //port the server listens on
+    private static final int DEFAULT_USERS = 1000;
+    private static final int DEFAULT_GROUP_SIZE = 10;
+    private static final int DEFAULT_RAMP_USERS = 100;
+    private static final int DEFAULT_STEP_SECONDS = 10;
+    private static final int DEFAULT_HOLD_SECONDS = 30;
+    private static final double DEFAULT_CHAT_PER_MINUTE = 2;
+    private static final double DEFAULT_TALK_DUTY = 0.25; //a quarter of the time, most people mostly listen
+    private static final double DEFAULT_TALK_SECONDS = 4;
+    //same cadence as the client, one packet per microphone segment
+    private static final long DEFAULT_FRAME_MILLIS = (long) (AudioPacket.audioByteLength / 2 * 1000 / AudioPacket.audioFormat.getSampleRate());
+
+    private final String host; //server to connect to
+    private final int port; //port of the server
+    private final boolean embedded; //whether the server runs in this process
+    private final String jmx; //host:port of a remote server's JMX agent, null if its CPU is not read
+    private final int users; //users ramped up to
+    private final int groupSize; //users per group, at least 1
+    private final int rampUsers; //users added per step, at least 1
+    private final int stepSeconds; //length of a step, at least 1
+    private final int holdSeconds; //time at full load
+    private final double chatPerMinute; //chat messages sent per user per minute
+    private final double talkDuty; //share of time a user spends talking, 0 to 1
+    private final double talkSeconds; //average time a user holds the push to talk key
+    private final long frameMillis; //ms between audio packets while talking, at least 1
+
+    /**
+     * Constructor that takes in all settings
+     *
+     * @param host          server to connect to
+     * @param port          port of the server
+     * @param embedded      whether to start the server in this process
+     * @param jmx           host:port of a remote server's JMX agent, or null
+     * @param users         users ramped up to
+     * @param groupSize     users per group
+     * @param rampUsers     users added per step
+     * @param stepSeconds   length of a step
+     * @param holdSeconds   time at full load
+     * @param chatPerMinute chat messages per user per minute
+     * @param talkDuty      share of time spent talking
+     * @param talkSeconds   average time the key is held
+     * @param frameMillis   ms between audio packets while talking
+     */
+    public LoadSettings(String host, int port, boolean embedded, String jmx, int users, int groupSize, int rampUsers,
+                        int stepSeconds, int holdSeconds, double chatPerMinute, double talkDuty, double talkSeconds, long frameMillis) {
+        this.host = host;
+        this.port = port;
+        this.embedded = embedded;
+        this.jmx = jmx;
+        this.users = Math.max(0, users);
+        this.groupSize = Math.max(1, groupSize);
+        this.rampUsers = Math.max(1, rampUsers);
+        this.stepSeconds = Math.max(1, stepSeconds);
+        this.holdSeconds = Math.max(0, holdSeconds);
+        this.chatPerMinute = Math.max(0, chatPerMinute);
+        this.talkDuty = Math.min(1, Math.max(0, talkDuty));
+        this.talkSeconds = Math.max(0.001, talkSeconds);
+        this.frameMillis = Math.max(1, frameMillis);
+    }
+
+    /**
+     * Reads the settings from the voip.loadgen.* system properties, defaults for anything missing or invalid
+     *
+     * @return settings to run the load with
+     */
+    public static LoadSettings fromSystemProperties() {
+        String jmx = System.getProperty(JMX_PROPERTY, "").trim();
+        return new LoadSettings(
+                System.getProperty(HOST_PROPERTY, DEFAULT_HOST).trim(),
+                (int) SystemProperties.longProperty(PORT_PROPERTY, DEFAULT_PORT),
+                Boolean.parseBoolean(System.getProperty(EMBEDDED_PROPERTY, "true").trim()),
+                jmx.isEmpty() ? null : jmx,
+                (int) SystemProperties.longProperty(USERS_PROPERTY, DEFAULT_USERS),
+                (int) SystemProperties.longProperty(GROUP_SIZE_PROPERTY, DEFAULT_GROUP_SIZE),
+                (int) SystemProperties.longProperty(RAMP_USERS_PROPERTY, DEFAULT_RAMP_USERS),
+                (int) SystemProperties.longProperty(STEP_SECONDS_PROPERTY, DEFAULT_STEP_SECONDS),
+                (int) SystemProperties.longProperty(HOLD_SECONDS_PROPERTY, DEFAULT_HOLD_SECONDS),
+                SystemProperties.doubleProperty(CHAT_PER_MINUTE_PROPERTY, DEFAULT_CHAT_PER_MINUTE),
+                SystemProperties.doubleProperty(TALK_DUTY_PROPERTY, DEFAULT_TALK_DUTY),
+                SystemProperties.doubleProperty(TALK_SECONDS_PROPERTY, DEFAULT_TALK_SECONDS),
+                SystemProperties.longProperty(FRAME_MILLIS_PROPERTY, DEFAULT_FRAME_MILLIS));
+    }
+
+    //GETTERS
+
+    /**
+     * Get the server to connect to
+     *
+     * @return host name or address
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Get the port of the server
+     *
+     * @return port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get whether the server runs in this process
+     *
+     * @return true to start an embedded server
+     */
+    public boolean isEmbedded() {
+        return embedded;
+    }
+
+    /**
+     * Get the JMX agent of a remote server
+     *
+     * @return host:port, or null if the server's CPU is not read remotely
+     */
+    public String getJmx() {
+        return jmx;
+    }
+
+    /**
+     * Get the number of users ramped up to
+     *
+     * @return users
+     */
+    public int getUsers() {
+        return users;
+    }
+
+    /**
+     * Get the number of users per group
+     *
+     * @return group size
+     */
+    public int getGroupSize() {
+        return groupSize;
+    }
+
+    /**
+     * Get the number of users added per step
+     *
+     * @return users per step
+     */
+    public int getRampUsers() {
+        return rampUsers;
+    }
+
+    /**
+     * Get the length of a step, one report line is printed per step
+     *
+     * @return seconds
+     */
+    public int getStepSeconds() {
+        return stepSeconds;
+    }
+
+    /**
+     * Get how long the full load is held after the ramp
+     *
+     * @return seconds
+     */
+    public int getHoldSeconds() {
+        return holdSeconds;
+    }
+
+    /**
+     * Get the chat messages sent per user per minute
+     *
+     * @return chat rate
+     */
+    public double getChatPerMinute() {
+        return chatPerMinute;
+    }
+
+    /**
+     * Get the share of time a user spends talking
+     *
+     * @return duty cycle from 0 to 1
+     */
+    public double getTalkDuty() {
+        return talkDuty;
+    }
+
+    /**
+     * Get the average time a user holds the push to talk key
+     *
+     * @return seconds
+     */
+    public double getTalkSeconds() {
+        return talkSeconds;
+    }
+
+    /**
+     * Get the time between audio packets while talking
+     *
+     * @return ms
+     */
+    public long getFrameMillis() {
+        return frameMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%d%s, users=%d (+%d every %ds, hold %ds), group=%d, chat=%.1f/min, talk=%.0f%% in %.1fs spurts, frame=%dms",
+                host, port, embedded ? " (embedded)" : "", users, rampUsers, stepSeconds, holdSeconds, groupSize,
+                chatPerMinute, talkDuty * 100, talkSeconds, frameMillis);
+    }
+}
@@ -0,0 +1,196 @@
+package com.rossisurna.loadgen.threads;
+
+import com.rossisurna.server.metrics.HistogramSnapshot;
+import com.rossisurna.server.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * What every simulated user reports to, counters and latency histograms shared by all of them. Counters only ever go
+ * up, the generator takes the difference between two reports, histograms are cut per report so every line shows the
+ * latencies at the load of that line.
+ * <p>
+ * A frame is expected once for every other member of the sender's group that had joined when it was sent, so frames
+ * the server drops for slow clients, or that never arrive, show up as loss.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 3 2019
+ */
+
+public class LoadStats {
+
+    //Latencies
+    private final LatencyHistogram joinLatency = new LatencyHistogram(); //connect until the group's scene arrives
+    private final LatencyHistogram frameLatency = new LatencyHistogram(); //audio packet sent until a member has it
+    //Counters
+    private final LongAdder joins = new LongAdder(); //users that made it into their group
+    private final LongAdder failures = new LongAdder(); //users that could not connect or join
+    private final LongAdder disconnects = new LongAdder(); //users the server dropped after joining
+    private final LongAdder framesSent = new LongAdder(); //audio packets sent
+    private final LongAdder framesExpected = new LongAdder(); //audio packets that should have been received
+    private final LongAdder framesReceived = new LongAdder(); //audio packets received
+    private final LongAdder chatsSent = new LongAdder(); //chat messages sent
+    private final LongAdder chatsReceived = new LongAdder(); //chat messages received
+
+    //MUTATORS
+
+    /**
+     * Records a user making it into its group
+     *
+     * @param nanos time since it started connecting
+     */
+    void joined(long nanos) {
+        joins.increment();
+        joinLatency.record(nanos);
+    }
+
+    /**
+     * Records a user that could not connect or join
+     */
+    void failed() {
+        failures.increment();
+    }
+
+    /**
+     * Records a user the server dropped
+     */
+    void disconnected() {
+        disconnects.increment();
+    }
+
+    /**
+     * Records an audio packet sent
+     *
+     * @param receivers members expected to receive it
+     */
+    void frameSent(int receivers) {
+        framesSent.increment();
+        framesExpected.add(receivers);
+    }
+
+    /**
+     * Records an audio packet received
+     *
+     * @param nanos time since it was sent, negative if unknown
+     */
+    void frameReceived(long nanos) {
+        framesReceived.increment();
+        if (nanos >= 0) {
+            frameLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Records a chat message sent
+     */
+    void chatSent() {
+        chatsSent.increment();
+    }
+
+    /**
+     * Records a chat message received
+     */
+    void chatReceived() {
+        chatsReceived.increment();
+    }
+
+    /**
+     * Takes the join latencies recorded since the last cut and starts over
+     *
+     * @return join latencies in microseconds
+     */
+    public HistogramSnapshot cutJoinLatency() {
+        HistogramSnapshot snapshot = joinLatency.snapshot();
+        joinLatency.reset();
+        return snapshot;
+    }
+
+    /**
+     * Takes the frame latencies recorded since the last cut and starts over
+     *
+     * @return frame latencies in microseconds
+     */
+    public HistogramSnapshot cutFrameLatency() {
+        HistogramSnapshot snapshot = frameLatency.snapshot();
+        frameLatency.reset();
+        return snapshot;
+    }
+
+    //GETTERS
+
+    /**
+     * Get the users that made it into their group
+     *
+     * @return joins
+     */
+    public long getJoins() {
+        return joins.sum();
+    }
+
+    /**
+     * Get the users that could not connect or join
+     *
+     * @return failures
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Get the users the server dropped
+     *
+     * @return disconnects
+     */
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    /**
+     * Get the audio packets sent
+     *
+     * @return frames sent
+     */
+    public long getFramesSent() {
+        return framesSent.sum();
+    }
+
+    /**
+     * Get the audio packets that should have been received
+     *
+     * @return frames expected
+     */
+    public long getFramesExpected() {
+        return framesExpected.sum();
+    }
+
+    /**
+     * Get the audio packets received
+     *
+     * @return frames received
+     */
+    public long getFramesReceived() {
+        return framesReceived.sum();
+    }
+
+    /**
+     * Get the chat messages sent
+     *
+     * @return chats sent
+     */
+    public long getChatsSent() {
+        return chatsSent.sum();
+    }
+
+    /**
+     * Get the chat messages received
+     *
+     * @return chats received
+     */
+    public long getChatsReceived() {
+        return chatsReceived.sum();
+    }
+}
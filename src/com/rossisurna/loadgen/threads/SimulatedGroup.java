@@ -0,0 +1,93 @@
+package com.rossisurna.loadgen.threads;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * A group the load generator fills with simulated users. Its first user creates it, everyone after that waits for the
+ * URL the server handed out and joins with it.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 3 2019
+ */
+
+public class SimulatedGroup {
+
+    private final String groupName; //name the group is created with
+    private final CompletableFuture<String> groupURL = new CompletableFuture<>(); //URL once the group is created
+    private final AtomicInteger members = new AtomicInteger(); //simulated users that joined and are still in it
+
+    /**
+     * Constructor that takes in the group's name
+     *
+     * @param groupName name of the group
+     */
+    public SimulatedGroup(String groupName) {
+        this.groupName = groupName;
+    }
+
+    //MUTATORS
+
+    /**
+     * Sets the URL the server gave the group, members waiting on it go ahead and join
+     *
+     * @param url group URL
+     */
+    void created(String url) {
+        groupURL.complete(url);
+    }
+
+    /**
+     * Tells members waiting on the URL that the group will never be created
+     */
+    void failed() {
+        groupURL.complete(null);
+    }
+
+    /**
+     * Counts a member in
+     */
+    void memberJoined() {
+        members.incrementAndGet();
+    }
+
+    /**
+     * Counts a member out
+     */
+    void memberLeft() {
+        members.decrementAndGet();
+    }
+
+    //GETTERS
+
+    /**
+     * Get the name the group is created with
+     *
+     * @return group name
+     */
+    String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * Get the group's URL once it is created
+     *
+     * @return future URL, completed with null if the group's creator failed
+     */
+    CompletableFuture<String> getGroupURL() {
+        return groupURL;
+    }
+
+    /**
+     * Get the number of simulated users in the group
+     *
+     * @return members
+     */
+    int getMembers() {
+        return members.get();
+    }
+}
@@ -0,0 +1,343 @@
+package com.rossisurna.loadgen.threads;
+
+import com.rossisurna.loadgen.application.LoadSettings;
+import com.rossisurna.util.AudioPacket;
+import com.rossisurna.util.FrameCodec;
+import com.rossisurna.util.FrameReader;
+import com.rossisurna.util.Packet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * One simulated user, a client without a UI or an audio device that speaks the same protocol as Client. It connects,
+ * waits for its client ID, sends its username, and creates or joins its group. Its thread then only reads, every audio
+ * packet and chat message it receives is counted. The generator ticks it at the audio cadence and it talks and chats
+ * like a person at the keyboard would: it holds push to talk for a random while and sends one audio packet per tick,
+ * lets go for a random while, and sends a chat message every now and then.
+ * <p>
+ * Every audio packet's send time is kept by sequence number, so whoever receives it knows how long it took.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 3 2019
+ */
+
+public class SimulatedUser implements Runnable {
+
+    //Sizes
+    private static final int SENT_TIMES = 1024; //audio packets whose send time is kept, minutes of talking
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10000; //ms to connect and join before giving up
+    //Protocol Codes
+    private final String IMSG = "ISMG"; //client ID from the server
+    private final String MSG = "MSG"; //chat message
+    private final String SU = "SU"; //send username
+    private final String CG = "CG"; //create group
+    private final String JG = "JG"; //join group
+    private final String CS = "CS"; //change scene, the user is in its group
+    private final String AP = "AP"; //audio packet
+    private final String DS = "DS"; //disconnect
+    private final String HB = "HB"; //heartbeat, answered so a listener is not evicted for being silent
+    //Settings
+    private final String username; //name the user goes by
+    private final boolean creator; //whether this user creates its group
+    private final SimulatedGroup simulatedGroup; //group the user creates or joins
+    private final LoadSettings loadSettings; //how much to talk and chat
+    private final LoadStats loadStats; //where the user reports to
+    private final Map<Integer, SimulatedUser> userHashMap; //every simulated user by client ID, to find a packet's send time
+    private final byte[] audio; //compressed audio sent in every packet
+    private final Random random; //talk and chat timing
+    //Connection
+    private Socket socket; //socket to the server
+    private FrameReader in; //socket in stream, framed, unbundles what the server bundled
+    private DataOutputStream out; //socket out stream, framed
+    private int clientID; //client ID given by the server
+    private volatile boolean joined = false; //whether the user is in its group
+    private volatile boolean close = false; //whether the user is shutting down
+    //Talking
+    private final AtomicLongArray sentNanos = new AtomicLongArray(SENT_TIMES); //send time of the latest packets by sequence number
+    private int sequenceNumber = 0; //sequence number of the next audio packet
+    private boolean talking = false; //whether push to talk is held
+    private long nextTalkSwitchNanos = 0; //when push to talk is pressed or let go next
+    private long nextChatNanos = 0; //when the next chat message is sent
+    private int chatCount = 0; //chat messages sent
+
+    /**
+     * Constructor that takes in who the user is, its group, and what it reports to
+     *
+     * @param index          number of the user, used for its name and its random timing
+     * @param creator        whether the user creates its group
+     * @param simulatedGroup group to create or join
+     * @param loadSettings   how much to talk and chat
+     * @param loadStats      where to report to
+     * @param userHashMap    every simulated user by client ID
+     * @param audio          compressed audio to send
+     */
+    public SimulatedUser(int index, boolean creator, SimulatedGroup simulatedGroup, LoadSettings loadSettings, LoadStats loadStats,
+                         Map<Integer, SimulatedUser> userHashMap, byte[] audio) {
+        this.username = "load" + index;
+        this.creator = creator;
+        this.simulatedGroup = simulatedGroup;
+        this.loadSettings = loadSettings;
+        this.loadStats = loadStats;
+        this.userHashMap = userHashMap;
+        this.audio = audio;
+        this.random = new Random(index);
+    }
+
+    /**
+     * Connects, joins the group, then reads everything the server sends until the connection closes
+     */
+    @Override
+    public void run() {
+        long startNanos = System.nanoTime();
+        try {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(loadSettings.getHost(), loadSettings.getPort()), HANDSHAKE_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new FrameReader(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+
+            //client ID comes first
+            Packet packet = in.read();
+            while (!IMSG.equals(packet.getCode())) {
+                packet = in.read();
+            }
+            clientID = Integer.parseInt((String) packet.getSubPacket());
+            userHashMap.put(clientID, this);
+
+            //then the username and the group, members wait for their creator to get the URL
+            send(SU, username);
+            if (creator) {
+                send(CG, simulatedGroup.getGroupName());
+            } else {
+                String groupURL = simulatedGroup.getGroupURL().get(HANDSHAKE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (groupURL == null) {
+                    throw new IOException("group was never created");
+                }
+                send(JG, groupURL);
+            }
+
+            //in the group once the scene changes
+            packet = in.read();
+            while (!CS.equals(packet.getCode())) {
+                packet = in.read();
+            }
+            if (creator) {
+                simulatedGroup.created(((String[]) packet.getSubPacket())[0]);
+            }
+            socket.setSoTimeout(0);
+            simulatedGroup.memberJoined();
+            loadStats.joined(System.nanoTime() - startNanos);
+            joined = true;
+        } catch (IOException | RuntimeException | ExecutionException | TimeoutException e) {
+            handshakeFailed();
+            return;
+        } catch (InterruptedException e) {
+            handshakeFailed();
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        //reads until the server or the generator closes the connection
+        try {
+            while (!close) {
+                Packet packet = in.read();
+                switch (packet.getCode()) {
+                    case AP: {
+                        audioPacketReceived(packet);
+                        break;
+                    }
+                    case MSG: {
+                        loadStats.chatReceived();
+                        break;
+                    }
+                    case HB: {
+                        send(HB, null);
+                        break;
+                    }
+                    default: {
+                        //joins, leaves, and snapshots of other users do not matter here
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!close) {
+                loadStats.disconnected();
+            }
+        }
+        leave();
+    }
+
+    /**
+     * Talks and chats, called by the generator once every frame
+     *
+     * @param nowNanos current time
+     */
+    public void tick(long nowNanos) {
+        if (!joined) {
+            return;
+        }
+
+        try {
+            //first tick starts the user out talking or listening at random
+            if (nextTalkSwitchNanos == 0) {
+                talking = random.nextDouble() < loadSettings.getTalkDuty();
+                nextTalkSwitchNanos = nowNanos + nextTalkPeriodNanos();
+                nextChatNanos = nowNanos + nextChatPeriodNanos();
+            } else if (nowNanos >= nextTalkSwitchNanos) {
+                talking = !talking;
+                nextTalkSwitchNanos = nowNanos + nextTalkPeriodNanos();
+            }
+
+            if (talking) {
+                int sequence = sequenceNumber++;
+                sentNanos.set(sequence & (SENT_TIMES - 1), System.nanoTime());
+                loadStats.frameSent(Math.max(0, simulatedGroup.getMembers() - 1));
+                send(AP, new AudioPacket(audio, sequence));
+            }
+
+            if (nowNanos >= nextChatNanos) {
+                nextChatNanos = nowNanos + nextChatPeriodNanos();
+                loadStats.chatSent();
+                send(MSG, String.format("> %s: message %d", username, ++chatCount));
+            }
+        } catch (IOException e) {
+            //the reader notices the broken connection and reports it
+            closeSocket();
+        }
+    }
+
+    /**
+     * Disconnects from the server
+     */
+    public void close() {
+        close = true;
+        if (joined) {
+            try {
+                send(DS, null);
+            } catch (IOException e) {
+                //already gone
+            }
+        }
+        closeSocket();
+    }
+
+    /**
+     * Finds when a received audio packet was sent and reports it
+     *
+     * @param packet audio packet
+     */
+    private void audioPacketReceived(Packet packet) {
+        long receivedNanos = System.nanoTime();
+        SimulatedUser sender = userHashMap.get(packet.getSenderID());
+        if (sender == null || !(packet.getSubPacket() instanceof AudioPacket)) {
+            //mixed audio from the server has no single sender to time it against
+            loadStats.frameReceived(-1);
+            return;
+        }
+
+        long sent = sender.sentNanos.get(((AudioPacket) packet.getSubPacket()).getSequenceNumber() & (SENT_TIMES - 1));
+        loadStats.frameReceived(sent == 0 ? -1 : receivedNanos - sent);
+    }
+
+    /**
+     * Sends a packet to the server
+     *
+     * @param code    protocol code
+     * @param message sub packet
+     * @throws IOException if the connection is broken
+     */
+    private void send(String code, Object message) throws IOException {
+        synchronized (this) {
+            FrameCodec.writeFrame(out, new Packet(code, clientID, message));
+        }
+    }
+
+    /**
+     * Reports a user that never made it into its group, members waiting on a creator that failed give up as well
+     */
+    private void handshakeFailed() {
+        if (!close) {
+            loadStats.failed();
+        }
+        if (creator) {
+            simulatedGroup.failed();
+        }
+        closeSocket();
+    }
+
+    /**
+     * Takes the user out of its group's count once its connection is gone
+     */
+    private void leave() {
+        if (joined) {
+            joined = false;
+            simulatedGroup.memberLeft();
+        }
+        closeSocket();
+    }
+
+    /**
+     * Closes the socket, quietly
+     */
+    private void closeSocket() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+//            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Random time until push to talk is pressed or let go, talk spurts average the configured length and silences are
+     * as long as it takes to keep the duty cycle
+     *
+     * @return ns
+     */
+    private long nextTalkPeriodNanos() {
+        double duty = loadSettings.getTalkDuty();
+        if ((talking && duty >= 1) || (!talking && duty <= 0)) {
+            return Long.MAX_VALUE / 2;
+        }
+        double meanSeconds = talking ? loadSettings.getTalkSeconds() : loadSettings.getTalkSeconds() * (1 - duty) / duty;
+        return exponentialNanos(meanSeconds);
+    }
+
+    /**
+     * Random time until the next chat message
+     *
+     * @return ns
+     */
+    private long nextChatPeriodNanos() {
+        double chatPerMinute = loadSettings.getChatPerMinute();
+        return chatPerMinute <= 0 ? Long.MAX_VALUE / 2 : exponentialNanos(60 / chatPerMinute);
+    }
+
+    /**
+     * Random time with an exponential distribution, how long until something that happens at random at a steady rate
+     *
+     * @param meanSeconds average time
+     * @return ns
+     */
+    private long exponentialNanos(double meanSeconds) {
+        return (long) (-Math.log(1 - random.nextDouble()) * meanSeconds * 1e9);
+    }
+}
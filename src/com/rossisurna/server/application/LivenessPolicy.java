@@ -0,0 +1,110 @@
+package com.rossisurna.server.application;
+
+import com.rossisurna.util.SystemProperties;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * How the server tells live clients from dead ones, and how long an empty group is kept. A client whose connection
+ * has been silent for the heartbeat interval is sent HB, which every client answers with HB, so a session that is
+ * merely quiet still hears from its client. One that stays silent for the idle timeout is taken for dead, leaves its
+ * group like any client that disconnected, and is hung up on, which also catches half-open connections that TCP on its
+ * own would keep for hours.
+ * <p>
+ * A group whose last member left is kept open for the linger time before it closes, so a member who drops and
+ * reconnects, or a whole group rejoining after a restart, finds it still there with its history.
+ * <p>
+ * All of these are checked on the server's timer wheel, see TimerWheel, and can be set with system properties, see the
+ * constants below, or with the options of ServerMain. 0 turns heartbeats or idle eviction off, and closes empty groups
+ * right away.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 9 2019
+ */
+
+public final class LivenessPolicy {
+
+    //System properties used to set the limits at startup
+    public static final String HEARTBEAT_PROPERTY = "voip.liveness.heartbeatMillis";
+    public static final String IDLE_TIMEOUT_PROPERTY = "voip.liveness.idleTimeoutMillis";
+    public static final String EMPTY_GROUP_LINGER_PROPERTY = "voip.liveness.emptyGroupLingerMillis";
+
+    //Defaults
+    private static final long DEFAULT_HEARTBEAT_MILLIS = 15000; //ms of silence before the client is sent a heartbeat
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 45000; //ms of silence before the client is taken for dead, three heartbeats
+    private static final long DEFAULT_EMPTY_GROUP_LINGER_MILLIS = 10000; //ms an empty group is kept before it closes
+
+    private final long heartbeatMillis; //ms of silence before a heartbeat is sent, 0 for no heartbeats
+    private final long idleTimeoutMillis; //ms of silence before the session is evicted, 0 to never evict
+    private final long emptyGroupLingerMillis; //ms an empty group is kept open, 0 to close it right away
+
+    /**
+     * Constructor that takes in all limits
+     *
+     * @param heartbeatMillis        ms of silence before a heartbeat is sent, 0 for no heartbeats
+     * @param idleTimeoutMillis      ms of silence before the session is evicted, 0 to never evict
+     * @param emptyGroupLingerMillis ms an empty group is kept open, 0 to close it right away
+     */
+    public LivenessPolicy(long heartbeatMillis, long idleTimeoutMillis, long emptyGroupLingerMillis) {
+        this.heartbeatMillis = Math.max(0, heartbeatMillis);
+        this.idleTimeoutMillis = Math.max(0, idleTimeoutMillis);
+        this.emptyGroupLingerMillis = Math.max(0, emptyGroupLingerMillis);
+    }
+
+    /**
+     * Policy with the default limits
+     *
+     * @return default policy
+     */
+    public static LivenessPolicy defaults() {
+        return new LivenessPolicy(DEFAULT_HEARTBEAT_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_EMPTY_GROUP_LINGER_MILLIS);
+    }
+
+    /**
+     * Reads the limits from the voip.liveness.* system properties, defaults for anything missing or invalid
+     *
+     * @return policy to run the sessions and groups with
+     */
+    public static LivenessPolicy fromSystemProperties() {
+        return new LivenessPolicy(
+                SystemProperties.longProperty(HEARTBEAT_PROPERTY, DEFAULT_HEARTBEAT_MILLIS),
+                SystemProperties.longProperty(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MILLIS),
+                SystemProperties.longProperty(EMPTY_GROUP_LINGER_PROPERTY, DEFAULT_EMPTY_GROUP_LINGER_MILLIS));
+    }
+
+    //GETTERS
+
+    /**
+     * Get the ms of silence before a client is sent a heartbeat
+     *
+     * @return heartbeat interval, 0 for no heartbeats
+     */
+    public long getHeartbeatMillis() {
+        return heartbeatMillis;
+    }
+
+    /**
+     * Get the ms of silence before a session is evicted
+     *
+     * @return idle timeout, 0 to never evict
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Get the ms an empty group is kept open before it closes
+     *
+     * @return linger time, 0 to close right away
+     */
+    public long getEmptyGroupLingerMillis() {
+        return emptyGroupLingerMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("heartbeat=%dms, idleTimeout=%dms, emptyGroupLinger=%dms", heartbeatMillis, idleTimeoutMillis, emptyGroupLingerMillis);
+    }
+}
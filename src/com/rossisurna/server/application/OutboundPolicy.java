@@ -0,0 +1,320 @@
+package com.rossisurna.server.application;
+
+import com.rossisurna.util.SystemProperties;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Limits of the outbound queue every connection has, and what happens when a client can not keep up. Audio is only
+ * worth anything while it is fresh, so once a client has too many audio frames waiting some of them are dropped.
+ * Control messages (chat, joins, scene changes) are never dropped, a client that lets too many of them pile up, or
+ * whose queue has not been empty for too long, is disconnected instead of slowing down anyone else.
+ * <p>
+ * Audio also has a deadline. A frame that waited longer than that in one of the server's queues, its group's loop or a
+ * client's outbound queue, is dropped there instead of being sent late and pushing every later frame further behind,
+ * so under overload the delay stays bounded rather than growing.
+ * <p>
+ * Every frame belongs to a traffic class, control, audio, or bulk, and each class waits in a queue of its own. The
+ * writer serves them by weight, so a client's control messages go out ahead of a long run of audio, and a big history
+ * page never holds up the audio behind it, while bulk still gets its share under load. Join snapshots stay control,
+ * members that join or leave after one are only right on the client if they arrive after it.
+ * <p>
+ * Frames are written in bundles. Everything queued for a client within one tick of the bundle window goes out as one
+ * bundled frame in one write, instead of a write and often a TCP segment per frame, which is most of the cost of
+ * sending a busy group's many small audio packets. A window of 0 writes every frame on its own as soon as it is queued.
+ * <p>
+ * A policy is made with a Builder that starts from the defaults. All limits can also be set with system properties,
+ * see the constants below.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 25 2019
+ */
+
+public final class OutboundPolicy {
+
+    //System properties used to set the limits at startup
+    public static final String AUDIO_CAPACITY_PROPERTY = "voip.outbound.audioFrames";
+    public static final String CONTROL_CAPACITY_PROPERTY = "voip.outbound.controlFrames";
+    public static final String MAX_BACKLOG_PROPERTY = "voip.outbound.maxBacklogMillis";
+    public static final String AUDIO_OVERFLOW_PROPERTY = "voip.outbound.audioOverflow";
+    public static final String AUDIO_DEADLINE_PROPERTY = "voip.outbound.audioDeadlineMillis";
+    public static final String BUNDLE_WINDOW_PROPERTY = "voip.outbound.bundleWindowMillis";
+
+    //Defaults
+    private static final int DEFAULT_AUDIO_CAPACITY = 8; //a talker sends a frame about every 312 ms, so 2.5 s of one talker or a deadline's worth of several
+    private static final int DEFAULT_CONTROL_CAPACITY = 1000; //control messages waiting before the client is dropped
+    private static final long DEFAULT_MAX_BACKLOG_MILLIS = 5000; //ms the queue may stay non empty before the client is dropped
+    private static final long DEFAULT_AUDIO_DEADLINE_MILLIS = 400; //ms after which audio is too late to be worth playing
+    private static final long DEFAULT_BUNDLE_WINDOW_MILLIS = 5; //ms of frames written together, short next to the 312 ms between a talker's frames
+
+    private final int audioCapacity; //audio frames that may wait, at least 1
+    private final int controlCapacity; //control and bulk frames that may wait, at least 1
+    private final long maxBacklogMillis; //ms the queue may go without being emptied
+    private final AudioOverflow audioOverflow; //which audio frame is dropped once the audio capacity is reached
+    private final long audioDeadlineMillis; //ms audio may wait in one queue before it is dropped, 0 for no deadline
+    private final long bundleWindowMillis; //ms of queued frames written together as one bundle, 0 to not bundle
+
+    /**
+     * Constructor that takes the limits of a builder
+     *
+     * @param builder builder holding the limits
+     */
+    private OutboundPolicy(Builder builder) {
+        this.audioCapacity = Math.max(1, builder.audioCapacity);
+        this.controlCapacity = Math.max(1, builder.controlCapacity);
+        this.maxBacklogMillis = Math.max(1, builder.maxBacklogMillis);
+        this.audioOverflow = builder.audioOverflow;
+        this.audioDeadlineMillis = Math.max(0, builder.audioDeadlineMillis);
+        this.bundleWindowMillis = Math.max(0, builder.bundleWindowMillis);
+    }
+
+    /**
+     * Policy with the default limits
+     *
+     * @return default policy
+     */
+    public static OutboundPolicy defaults() {
+        return new Builder().build();
+    }
+
+    /**
+     * Reads the limits from the voip.outbound.* system properties, defaults for anything missing or invalid
+     *
+     * @return policy to run the connections with
+     */
+    public static OutboundPolicy fromSystemProperties() {
+        AudioOverflow audioOverflow = AudioOverflow.DROP_OLDEST;
+        String overflow = System.getProperty(AUDIO_OVERFLOW_PROPERTY);
+        if (overflow != null) {
+            try {
+                audioOverflow = AudioOverflow.valueOf(overflow.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%nUnknown audio overflow '%s', using %s", overflow, audioOverflow);
+            }
+        }
+
+        return new Builder()
+                .audioCapacity((int) SystemProperties.longProperty(AUDIO_CAPACITY_PROPERTY, DEFAULT_AUDIO_CAPACITY))
+                .controlCapacity((int) SystemProperties.longProperty(CONTROL_CAPACITY_PROPERTY, DEFAULT_CONTROL_CAPACITY))
+                .maxBacklogMillis(SystemProperties.longProperty(MAX_BACKLOG_PROPERTY, DEFAULT_MAX_BACKLOG_MILLIS))
+                .audioOverflow(audioOverflow)
+                .audioDeadlineMillis(SystemProperties.longProperty(AUDIO_DEADLINE_PROPERTY, DEFAULT_AUDIO_DEADLINE_MILLIS))
+                .bundleWindowMillis(SystemProperties.longProperty(BUNDLE_WINDOW_PROPERTY, DEFAULT_BUNDLE_WINDOW_MILLIS))
+                .build();
+    }
+
+    //GETTERS
+
+    /**
+     * Get the number of audio frames that may wait
+     *
+     * @return audio capacity
+     */
+    public int getAudioCapacity() {
+        return audioCapacity;
+    }
+
+    /**
+     * Get the number of control frames that may wait
+     *
+     * @return control capacity
+     */
+    public int getControlCapacity() {
+        return controlCapacity;
+    }
+
+    /**
+     * Get how long the queue may go without being emptied
+     *
+     * @return ms of sustained backlog before disconnecting
+     */
+    public long getMaxBacklogMillis() {
+        return maxBacklogMillis;
+    }
+
+    /**
+     * Get which audio frame is dropped once the audio capacity is reached
+     *
+     * @return audio overflow policy
+     */
+    public AudioOverflow getAudioOverflow() {
+        return audioOverflow;
+    }
+
+    /**
+     * Get how long audio may wait in one queue before it is dropped
+     *
+     * @return ms, 0 if audio never expires
+     */
+    public long getAudioDeadlineMillis() {
+        return audioDeadlineMillis;
+    }
+
+    /**
+     * Get the window of queued frames written together as one bundle
+     *
+     * @return ms, 0 if every frame is written on its own
+     */
+    public long getBundleWindowMillis() {
+        return bundleWindowMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("audio=%d (%s), control=%d, backlog=%dms, audio deadline=%dms, bundle window=%dms", audioCapacity, audioOverflow, controlCapacity, maxBacklogMillis, audioDeadlineMillis, bundleWindowMillis);
+    }
+
+    /**
+     * Builds an OutboundPolicy, every limit starts at its default
+     */
+    public static final class Builder {
+
+        private int audioCapacity = DEFAULT_AUDIO_CAPACITY;
+        private int controlCapacity = DEFAULT_CONTROL_CAPACITY;
+        private long maxBacklogMillis = DEFAULT_MAX_BACKLOG_MILLIS;
+        private AudioOverflow audioOverflow = AudioOverflow.DROP_OLDEST;
+        private long audioDeadlineMillis = DEFAULT_AUDIO_DEADLINE_MILLIS;
+        private long bundleWindowMillis = DEFAULT_BUNDLE_WINDOW_MILLIS;
+
+        /**
+         * Sets the number of audio frames that may wait
+         *
+         * @param audioCapacity audio frames
+         * @return this builder
+         */
+        public Builder audioCapacity(int audioCapacity) {
+            this.audioCapacity = audioCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the number of control frames that may wait
+         *
+         * @param controlCapacity control frames
+         * @return this builder
+         */
+        public Builder controlCapacity(int controlCapacity) {
+            this.controlCapacity = controlCapacity;
+            return this;
+        }
+
+        /**
+         * Sets how long the queue may go without being emptied
+         *
+         * @param maxBacklogMillis ms
+         * @return this builder
+         */
+        public Builder maxBacklogMillis(long maxBacklogMillis) {
+            this.maxBacklogMillis = maxBacklogMillis;
+            return this;
+        }
+
+        /**
+         * Sets which audio frame is dropped once the audio capacity is reached
+         *
+         * @param audioOverflow audio overflow policy
+         * @return this builder
+         */
+        public Builder audioOverflow(AudioOverflow audioOverflow) {
+            this.audioOverflow = audioOverflow;
+            return this;
+        }
+
+        /**
+         * Sets how long audio may wait in one queue before it is dropped
+         *
+         * @param audioDeadlineMillis ms, 0 for no deadline
+         * @return this builder
+         */
+        public Builder audioDeadlineMillis(long audioDeadlineMillis) {
+            this.audioDeadlineMillis = audioDeadlineMillis;
+            return this;
+        }
+
+        /**
+         * Sets the window of queued frames written together as one bundle
+         *
+         * @param bundleWindowMillis ms, 0 to not bundle
+         * @return this builder
+         */
+        public Builder bundleWindowMillis(long bundleWindowMillis) {
+            this.bundleWindowMillis = bundleWindowMillis;
+            return this;
+        }
+
+        /**
+         * Makes the policy
+         *
+         * @return policy holding what was set, defaults for the rest
+         */
+        public OutboundPolicy build() {
+            return new OutboundPolicy(this);
+        }
+    }
+
+    /**
+     * Kinds of traffic a client's outbound frames are split into, in the order the writer serves them. The weight is
+     * the number of frames of the class the writer sends in one round when every class has frames waiting.
+     * <p>
+     * CONTROL: joins, leaves, snapshots, scene changes, and chat, never dropped.
+     * AUDIO: audio packets, dropped when late or when the client is behind.
+     * BULK: chat history pages, large and in no hurry.
+     */
+    public enum TrafficClass {
+        CONTROL(8),
+        AUDIO(4),
+        BULK(1);
+
+        //Protocol Codes
+        private static final String AP = "AP"; //audio packet
+        private static final String HP = "HP"; //chat history page
+
+        private final int weight; //frames sent per round
+
+        /**
+         * Constructor that takes in the weight of the class
+         *
+         * @param weight frames sent per round
+         */
+        TrafficClass(int weight) {
+            this.weight = weight;
+        }
+
+        /**
+         * Returns the class a packet belongs to
+         *
+         * @param code protocol code of the packet
+         * @return traffic class, CONTROL for anything that is neither audio nor bulk
+         */
+        public static TrafficClass forCode(String code) {
+            if (AP.equals(code)) {
+                return AUDIO;
+            } else if (HP.equals(code)) {
+                return BULK;
+            }
+            return CONTROL;
+        }
+
+        /**
+         * Get the number of frames of the class sent per round
+         *
+         * @return weight
+         */
+        public int getWeight() {
+            return weight;
+        }
+    }
+
+    /**
+     * Which audio frame to drop when a client already has as many audio frames waiting as allowed
+     * <p>
+     * DROP_OLDEST: drop the frame that waited longest, the client skips ahead and stays close to live.
+     * DROP_NEWEST: drop the frame being queued, the client plays what it already has without a gap in the middle.
+     */
+    public enum AudioOverflow {
+        DROP_OLDEST,
+        DROP_NEWEST
+    }
+}
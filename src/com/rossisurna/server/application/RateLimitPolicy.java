@@ -0,0 +1,118 @@
+package com.rossisurna.server.application;
+
+import com.rossisurna.util.SystemProperties;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * How much audio and chat one client may push into its group. Everything a member sends is fanned out to every other
+ * member, so one client sending too much costs the whole group and the server's fan-out for everyone. Each session
+ * has a token bucket per limit, audio frames per second, audio bytes per second, and chat messages per second, and
+ * whatever it sends over a limit is dropped on the session's reader before it ever reaches the group.
+ * <p>
+ * A bucket holds one second of its rate, so a client may burst up to a second's worth after being quiet but never
+ * keeps up more than the rate. An audio frame has to fit in both audio buckets. The defaults leave plenty of room for
+ * the client's own 16 kHz mono audio, compressed or not, and for any person typing.
+ * <p>
+ * All limits can be set with system properties, see the constants below, or with the options of ServerMain. 0 turns a
+ * limit off.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 11 2019
+ */
+
+public final class RateLimitPolicy {
+
+    //System properties used to set the limits at startup
+    public static final String AUDIO_FRAMES_PROPERTY = "voip.rateLimit.audioFramesPerSecond";
+    public static final String AUDIO_BYTES_PROPERTY = "voip.rateLimit.audioBytesPerSecond";
+    public static final String CHAT_MESSAGES_PROPERTY = "voip.rateLimit.chatMessagesPerSecond";
+
+    //Defaults
+    private static final long DEFAULT_AUDIO_FRAMES_PER_SECOND = 10; //the client sends a 10000 byte frame about every 312 ms, 3.2 a second, so about three times that
+    private static final long DEFAULT_AUDIO_BYTES_PER_SECOND = 64000; //twice 16 kHz 16 bit mono uncompressed
+    private static final long DEFAULT_CHAT_MESSAGES_PER_SECOND = 10; //more than anyone types
+
+    private final long audioFramesPerSecond; //audio frames a client may send per second, 0 for no limit
+    private final long audioBytesPerSecond; //audio bytes a client may send per second, 0 for no limit
+    private final long chatMessagesPerSecond; //chat messages a client may send per second, 0 for no limit
+
+    /**
+     * Constructor that takes in all limits
+     *
+     * @param audioFramesPerSecond  audio frames a client may send per second, 0 for no limit
+     * @param audioBytesPerSecond   audio bytes a client may send per second, 0 for no limit
+     * @param chatMessagesPerSecond chat messages a client may send per second, 0 for no limit
+     */
+    public RateLimitPolicy(long audioFramesPerSecond, long audioBytesPerSecond, long chatMessagesPerSecond) {
+        this.audioFramesPerSecond = Math.max(0, audioFramesPerSecond);
+        this.audioBytesPerSecond = Math.max(0, audioBytesPerSecond);
+        this.chatMessagesPerSecond = Math.max(0, chatMessagesPerSecond);
+    }
+
+    /**
+     * Policy with the default limits
+     *
+     * @return default policy
+     */
+    public static RateLimitPolicy defaults() {
+        return new RateLimitPolicy(DEFAULT_AUDIO_FRAMES_PER_SECOND, DEFAULT_AUDIO_BYTES_PER_SECOND, DEFAULT_CHAT_MESSAGES_PER_SECOND);
+    }
+
+    /**
+     * Policy that lets everything through
+     *
+     * @return policy without limits
+     */
+    public static RateLimitPolicy unlimited() {
+        return new RateLimitPolicy(0, 0, 0);
+    }
+
+    /**
+     * Reads the limits from the voip.rateLimit.* system properties, defaults for anything missing or invalid
+     *
+     * @return policy to limit every session with
+     */
+    public static RateLimitPolicy fromSystemProperties() {
+        return new RateLimitPolicy(
+                SystemProperties.longProperty(AUDIO_FRAMES_PROPERTY, DEFAULT_AUDIO_FRAMES_PER_SECOND),
+                SystemProperties.longProperty(AUDIO_BYTES_PROPERTY, DEFAULT_AUDIO_BYTES_PER_SECOND),
+                SystemProperties.longProperty(CHAT_MESSAGES_PROPERTY, DEFAULT_CHAT_MESSAGES_PER_SECOND));
+    }
+
+    //GETTERS
+
+    /**
+     * Get the audio frames a client may send per second
+     *
+     * @return audio frame rate, 0 for no limit
+     */
+    public long getAudioFramesPerSecond() {
+        return audioFramesPerSecond;
+    }
+
+    /**
+     * Get the audio bytes a client may send per second
+     *
+     * @return audio byte rate, 0 for no limit
+     */
+    public long getAudioBytesPerSecond() {
+        return audioBytesPerSecond;
+    }
+
+    /**
+     * Get the chat messages a client may send per second
+     *
+     * @return chat message rate, 0 for no limit
+     */
+    public long getChatMessagesPerSecond() {
+        return chatMessagesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("audioFrames=%d/s, audioBytes=%d/s, chatMessages=%d/s", audioFramesPerSecond, audioBytesPerSecond, chatMessagesPerSecond);
+    }
+}
@@ -1,16 +1,33 @@
 package com.rossisurna.server.application;
 
+import com.rossisurna.server.cluster.ClusterNode;
+import com.rossisurna.server.cluster.NodeInfo;
+import com.rossisurna.server.metrics.ServerMetrics;
+import com.rossisurna.server.threads.ChatLogStore;
+import com.rossisurna.server.threads.Connection;
 import com.rossisurna.server.threads.Group;
+import com.rossisurna.server.threads.GroupRegistry;
+import com.rossisurna.server.threads.GroupScheduler;
+import com.rossisurna.server.threads.HandshakeStage;
+import com.rossisurna.server.threads.LivenessMonitor;
+import com.rossisurna.server.threads.MediaRelay;
+import com.rossisurna.server.threads.RelayLink;
+import com.rossisurna.server.threads.Session;
 import com.rossisurna.server.threads.SocketServer;
-import com.rossisurna.server.threads.UserWG;
-import com.rossisurna.server.threads.UserWNG;
+import com.rossisurna.server.threads.TimerWheel;
 import com.rossisurna.util.Packet;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.Random;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Network Programming Spring 2019 Final Project
@@ -26,197 +43,499 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class Server implements Runnable {
 
     //Data Structures
-    private final ConcurrentHashMap<Integer, UserWNG> userWNGConcurrentHashMap = new ConcurrentHashMap<>(); //Hashmap that holds all the users with no group, key is the clientID
-    private final ConcurrentHashMap<String, Group> groupConcurrentHashMap = new ConcurrentHashMap<>(); //Hashmap that holds all the groups, ket is the URL
-    private final ConcurrentLinkedQueue<Packet> instructionQueue = new ConcurrentLinkedQueue<>(); //Queue to hold all the instructions for the sever to rn
-    private final ArrayList<String> usedURLS = new ArrayList<>(); //ArrayList that holds all the URLS actively used for the groups
+    private final ConcurrentHashMap<Integer, Session> sessionConcurrentHashMap = new ConcurrentHashMap<>(); //Hashmap that holds the sessions of all users, in a group or not, key is the clientID
+    private final GroupRegistry groupRegistry = new GroupRegistry(); //all open groups by URL, hands out the URLs
+    private final LinkedBlockingQueue<Packet> instructionQueue = new LinkedBlockingQueue<>(); //Queue to hold all the instructions for the sever to rn
     //Protocols
-    private final String LG = "LG"; //tells user to leave group
-    private final String DS = "DS"; //disconnect user
     private final String JG = "JG"; //move user into a pre built group
     private final String CG = "CG"; //create group object
+    private final String RD = "RD"; //redirect user to another cluster node
+    private final String RL = "RL"; //another cluster node links to a group to span it
+    private final String RC = "RC"; //reconnect hint, sent to every client on close
+    private final String SO = "SO"; //a span's link to the owner was opened or failed, only ever queued by the server itself
+    //Timing
+    private static final long DRAIN_POLL = 10; //ms between checks whether every client was drained
+    private static final long RECONNECT_SPREAD = 1000; //ms over which the clients of a closing server reconnect elsewhere
     //Util
-    private boolean close = false; //Tells the server when to shut down
+    private volatile boolean close = false; //Tells the server when to shut down
+    private volatile Thread thread; //thread running the server, interrupted to wake it up on close
+    private volatile boolean started = false; //whether the port was bound and instructions are being handled
+    private final ServerMode serverMode; //execution model for the sessions
+    private final OutboundPolicy outboundPolicy; //limits of every connection's outbound queue
+    private final ServerSettings serverSettings; //where to listen and how many loops to run
+    private final LivenessPolicy livenessPolicy; //heartbeats, idle eviction, and how long empty groups are kept
+    private final RateLimitPolicy rateLimitPolicy; //how much audio and chat each client may send
+    private final boolean audioMixing; //whether new groups mix their audio on the server
     //Sockets
-    private SocketServer socketServer; //socket subserver that takes in all incoming sockets
-    
-    
+    private volatile SocketServer socketServer; //socket subserver that takes in all incoming sockets
+    private volatile HandshakeStage handshakeStage; //sets accepted connections up and hangs up on clients that never speak
+    private MediaRelay mediaRelay; //UDP media plane, null if UDP is unavailable and audio stays on TCP
+    //Timers
+    private volatile TimerWheel timerWheel; //every timeout of the server, handshakes, heartbeats, and empty groups
+    private LivenessMonitor livenessMonitor; //sends heartbeats, evicts silent sessions, and closes empty groups late
+    //Groups
+    private GroupScheduler groupScheduler; //fixed pool of loops every group runs on
+    private ChatLogStore chatLogStore; //where groups log their chat on disk, null if history only lives in memory
+    //Metrics
+    private final ServerMetrics serverMetrics = new ServerMetrics(); //counters and latencies, published through JMX
+    //Cluster
+    private final ClusterNode clusterNode; //this server's node of the cluster, null if it runs alone
+    private final HashMap<String, ArrayList<Session>> spanWaitingHashMap = new HashMap<>(); //sessions waiting for a span's link by group URL, server thread only
+    private final ExecutorService spanConnector = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "SpanConnector");
+        thread.setDaemon(true);
+        return thread;
+    }); //opens the links of new spans, which blocks until the owner answers
+
     /**
-     * Constructor
+     * Constructor that takes in everything the server runs with, see ServerSettings
+     *
+     * @param serverSettings where to listen, how many loops to run, the mode, the policies, and the cluster node
      */
-    public Server() {
-        System.out.printf("%nServer Home Launched.");
+    public Server(ServerSettings serverSettings) {
+        this.serverSettings = serverSettings;
+        this.serverMode = serverSettings.getServerMode();
+        this.outboundPolicy = serverSettings.getOutboundPolicy();
+        this.livenessPolicy = serverSettings.getLivenessPolicy();
+        this.rateLimitPolicy = serverSettings.getRateLimitPolicy();
+        this.audioMixing = serverSettings.isAudioMixing();
+        this.clusterNode = serverSettings.getClusterNode();
+        System.out.printf("%nServer Home Launched, Mode: %s, Outbound: %s, Settings: %s, Liveness: %s, Rate Limits: %s, Audio Mixing: %b, Cluster Node: %s.", serverMode, outboundPolicy, serverSettings, livenessPolicy, rateLimitPolicy, audioMixing, clusterNode == null ? "none" : clusterNode.getNodeID());
     }
 
     /**
-     * Main run method for the server that waits for instructions to come into it's queue for it to process
+     * Main run method for the server that waits for instructions to come into it's queue for it to process, returns
+     * right away if the port can not be bound
      */
     @Override
     public void run() {
-        //Launch Socket Server
-        socketServer = new SocketServer(userWNGConcurrentHashMap, instructionQueue);
-        new Thread(socketServer).start();
+        if (close) {
+            return;
+        }
+
+        //Launch Socket Server, bound first so a port that is taken stops the server before anything else starts
+        InetSocketAddress address = serverSettings.getSocketAddress();
+        timerWheel = new TimerWheel();
+        livenessMonitor = new LivenessMonitor(timerWheel, livenessPolicy, serverMetrics);
+        handshakeStage = new HandshakeStage(serverSettings.getMaxHandshakes(), serverSettings.getHandshakeTimeoutMillis(), serverMetrics, timerWheel);
+        socketServer = new SocketServer(sessionConcurrentHashMap, instructionQueue, serverMode, outboundPolicy, serverMetrics, serverSettings.getIOThreads(), address, serverSettings.getAcceptBacklog(), clusterNode == null ? 1 : clusterNode.getFirstClientID(), handshakeStage, livenessMonitor, rateLimitPolicy);
+        try {
+            socketServer.bind();
+        } catch (IOException e) {
+            System.out.printf("%nSocket Server could not bind %s: %s", address, e.getMessage());
+            handshakeStage.close();
+            timerWheel.close();
+            return;
+        }
+        serverMode.startThread(socketServer, "SocketServer");
+
+        //Launch the group loops
+        groupScheduler = new GroupScheduler(serverSettings.getGroupLoops());
+
+        //Publish the metrics through JMX
+        serverMetrics.setOpenGroups(groupRegistry::size);
+        serverMetrics.setGroupLoopQueueDepths(groupScheduler::getQueueDepths);
+        serverMetrics.setPendingTimers(timerWheel::getPendingTimeouts);
+        serverMetrics.register();
+
+        //Open the chat log directory, without it chat history only lives in memory
+        chatLogStore = ChatLogStore.fromSystemProperties();
+
+        //Launch the UDP media plane on the port TCP actually got, without it all audio simply stays on TCP
+        InetSocketAddress mediaAddress = new InetSocketAddress(address.getAddress(), socketServer.getLocalAddress().getPort());
+        try {
+            mediaRelay = new MediaRelay(mediaAddress);
+            serverMode.startThread(mediaRelay, "MediaRelay");
+        } catch (IOException e) {
+            System.out.printf("%nMedia Relay could not bind UDP port %d, audio will use TCP", mediaAddress.getPort());
+        }
 
-        //Server is in a constant loop checking to see if the queue is empty, if so then sleep, loop while close is false
+        //Join the cluster, other nodes place groups by the live sessions this node publishes
+        if (clusterNode != null) {
+            clusterNode.start(socketServer.getLocalAddress().getPort(), serverMetrics::getLiveSessions);
+        }
+
+        //Server waits on the queue and handles each instruction the moment it arrives, loop while close is false
+        thread = Thread.currentThread();
+        started = true;
         while (!close) {
-            //If there are instructions to run
-            while (!instructionQueue.isEmpty()) {
-                //Handle instruction (Instruction is a rename of the Packet object
-                System.out.printf("%nServer Instruction received, Size: %d", instructionQueue.size());
-                Packet instruction = instructionQueue.remove();
-
-                //Switch statement to check which CODE the instruction is
-                switch (instruction.getCode()) {
-                    case JG: {
-                        //Join Group instruction
-                        int clientID = instruction.getSenderID();
-                        String groupURL = (String) instruction.getSubPacket();
-
-                        //Get user and group
-                        UserWNG userWNG = userWNGConcurrentHashMap.get(clientID);
-                        Group group = groupConcurrentHashMap.get(groupURL);
-                        new Thread(group).start();
-
-                        //If both aren't null then...
-                        if (group != null && userWNG != null) {
-                            //Move user into the group
-                            group.addUserToGroup(userWNG.getSocket(), userWNG.getInO(), userWNG.getOutO(), userWNG.getClientID(), userWNG.getUsername());
-                            userWNGConcurrentHashMap.remove(clientID);
-                            userWNG.close(); //End userWNG thread
-                            System.out.printf("%nMoved Client %d to Group with URL %s", clientID, groupURL);
-                        } else {
-                            System.out.printf("%nNo such group error: %s", groupURL);
-                        }
+            //Handle instruction (Instruction is a rename of the Packet object
+            Packet instruction;
+            try {
+                instruction = instructionQueue.take();
+            } catch (InterruptedException e) {
+                //woken up by close
+                continue;
+            }
+            System.out.printf("%nServer Instruction received, Size: %d", instructionQueue.size());
+
+            //Switch statement to check which CODE the instruction is
+            switch (instruction.getCode()) {
+                case JG: {
+                    //Join Group instruction
+                    int clientID = instruction.getSenderID();
+                    String groupURL = (String) instruction.getSubPacket();
+
+                    //Get session and group, a session that disconnected meanwhile is gone or closed
+                    Session session = sessionConcurrentHashMap.get(clientID);
+                    Group group = groupRegistry.get(groupURL);
+                    if (session == null || session.getState() != Session.State.JOINING) {
                         break;
                     }
-                    case CG: {
-                        //Create Group instruction
-                        int clientID = instruction.getSenderID();
-                        String groupName = (String) instruction.getSubPacket();
-
-                        //Get user from hashmap
-                        UserWNG userWNG = userWNGConcurrentHashMap.get(clientID);
-
-                        //If user is not null
-                        if (userWNG != null) {
-                            //Make URL for group and make group
-                            String groupURL = groupURLGenerator();
-                            Group group = new Group(groupURL, groupName, instructionQueue);
-                            new Thread(group).start();
-
-                            //Put group into master hashmap
-                            groupConcurrentHashMap.put(groupURL, group);
-
-                            //Add user to the group
-                            group.addUserToGroup(userWNG.getSocket(), userWNG.getInO(), userWNG.getOutO(), userWNG.getClientID(), userWNG.getUsername());
-                            userWNGConcurrentHashMap.remove(clientID);
-                            userWNG.close();
-
-                            System.out.printf("%nCreated '%s' Group with URL '%s', Moved Client %d to Group ", groupName, groupURL, clientID);
-                        } else {
-                            //No such group
-                            System.out.printf("%nUser is null error: id %d", clientID);
+
+                    //a group another node owns is spanned here once the owner is busy, otherwise the user is sent there
+                    if (group == null && clusterNode != null) {
+                        NodeInfo owner = clusterNode.ownerOf(groupURL);
+                        if (owner != null && owner.getNodeID() != clusterNode.getNodeID()) {
+                            if (clusterNode.shouldSpan(owner)) {
+                                spanGroup(session, groupURL, owner);
+                            } else {
+                                redirect(session, owner, JG, groupURL);
+                            }
+                            break;
                         }
-                        break;
                     }
-                    case LG: {
-                        //moves client from UserWG to UserWNG
-                        UserWG userWG = (UserWG) instruction.getSubPacket();
 
-                        //new userWNG object
-                        UserWNG userWNG = new UserWNG(userWG.getSocket(), userWG.getInO(), userWG.getOutO(), instruction.getSenderID(), userWG.getUsername(), instructionQueue);
-                        new Thread(userWNG).start();
+                    if (group != null) {
+                        //Move session into the group, it keeps its connection
+                        group.addSession(session);
+                        System.out.printf("%nMoved Client %d to Group with URL %s", clientID, groupURL);
+                    } else {
+                        session.joinFailed();
+                        System.out.printf("%nNo such group error: %s", groupURL);
+                    }
+                    break;
+                }
+                case CG: {
+                    //Create Group instruction
+                    int clientID = instruction.getSenderID();
+                    String groupName = (String) instruction.getSubPacket();
+
+                    //Get session from hashmap
+                    Session session = sessionConcurrentHashMap.get(clientID);
+                    boolean joining = session != null && session.getState() == Session.State.JOINING;
+
+                    //a less loaded cluster node gets the group instead
+                    NodeInfo placement = clusterNode == null || !joining ? null : clusterNode.placeNewGroup();
+                    if (placement != null) {
+                        redirect(session, placement, CG, groupName);
+                        break;
+                    }
 
-                        //add the new object to hashmap
-                        userWNGConcurrentHashMap.put(instruction.getSenderID(), userWNG);
+                    //If session is still waiting
+                    if (joining) {
+                        //Make group under a new URL, the registry holds it until it closes, a URL another node claimed is skipped
+                        Group group = groupRegistry.create(url -> clusterNode != null && !clusterNode.claim(url) ? null :
+                                new Group(url, groupName, groupScheduler.loopFor(url), mediaRelay, audioMixing, groupRegistry, chatLogStore, serverMetrics, clusterNode, outboundPolicy.getAudioDeadlineMillis(), livenessMonitor));
+                        String groupURL = group.getGroupUrl();
 
-                        //close old object
-                        userWG.close();
+                        //Add session to the group
+                        group.addSession(session);
 
-                        System.out.printf("%nUserWNG Size: %d", userWNGConcurrentHashMap.size());
+                        System.out.printf("%nCreated '%s' Group with URL '%s', Moved Client %d to Group ", groupName, groupURL, clientID);
+                    } else {
+                        //No such session
+                        System.out.printf("%nUser is null error: id %d", clientID);
+                    }
+                    break;
+                }
+                case RL: {
+                    //another node spans one of this node's groups, the connection becomes the group's link to it once
+                    //it proved to be a node of the cluster, anyone else is hung up on
+                    String[] details = (String[]) instruction.getSubPacket();
+                    Session session = sessionConcurrentHashMap.get(instruction.getSenderID());
+                    if (session == null) {
                         break;
                     }
-                    case DS: {
-                        //Disconnect user from server by removing their object and closing it
-                        userWNGConcurrentHashMap.get(instruction.getSenderID()).closeSocket();
-                        userWNGConcurrentHashMap.remove(instruction.getSenderID());
+                    int peerNodeID = parseNodeID(details[1]);
+                    if (clusterNode == null || !clusterNode.isPeer(peerNodeID, session.getRemoteAddress(), details[2])) {
+                        System.out.printf("%nRefused relay link from client %d claiming to be node %s", instruction.getSenderID(), details[1]);
+                        session.closeSocket();
                         break;
                     }
-                    default: {
-                        System.out.printf("%nInvalid Code: %s (Server.java)", instruction.getCode());
+
+                    Connection connection = session.handOver();
+                    Group group = groupRegistry.get(details[0]);
+                    if (connection == null) {
+                        break;
                     }
-                }
-            }
-            try {
-                //if queue is empty then sleep
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-//                    e.printStackTrace();
 
+                    if (group != null && !group.isClosed()) {
+                        group.addRelayLink(connection, peerNodeID);
+                    } else {
+                        //hanging up tells the node there is no such group
+                        System.out.printf("%nNo such group to relay error: %s", details[0]);
+                        connection.close();
+                    }
+                    break;
+                }
+                case SO: {
+                    //the link of a span is open or failed, the sessions waiting for it join or are sent to the owner
+                    spanOpened((SpanLink) instruction.getSubPacket());
+                    break;
+                }
+                default: {
+                    System.out.printf("%nInvalid Code: %s (Server.java)", instruction.getCode());
+                }
             }
         }
     }
 
     /**
-     * Creates a randomly generated group URL length: 6, using alphabet
+     * Sends a user to another cluster node, the client reconnects there and repeats its request
      *
-     * @return randomly generate group URL
+     * @param session  session to send away
+     * @param nodeInfo node to send it to
+     * @param code     request the client repeats there, CG or JG
+     * @param argument group name or URL of the request
      */
-    private String groupURLGenerator() {
-        // Builds random url for group
-        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-        StringBuilder url = new StringBuilder();
-        Random randomGen = new Random();
+    private void redirect(Session session, NodeInfo nodeInfo, String code, String argument) {
+        session.send(new Packet(RD, 0, new String[]{nodeInfo.getHost(), String.valueOf(nodeInfo.getPort()), code, argument}));
+        session.closeSocket();
+        System.out.printf("%nRedirected Client %d to %s for %s %s", session.getClientID(), nodeInfo, code, argument);
+    }
 
-        //Randomly choose letters from the alphabet
-        while (url.length() < 6) {
-            url.append(alphabet.charAt((int) (randomGen.nextFloat() * alphabet.length())));
+    /**
+     * Serves a join for a group another node owns with a span of it here. Opening the link to the owner blocks until
+     * the owner sent its snapshot, so it is done off the server's thread, and the session waits in JOINING with
+     * anyone else who asks for the group meanwhile until spanOpened takes over. Server thread only.
+     *
+     * @param session  joining session
+     * @param groupURL group URL
+     * @param owner    node that owns the group
+     */
+    private void spanGroup(Session session, String groupURL, NodeInfo owner) {
+        ArrayList<Session> waitingSessions = spanWaitingHashMap.get(groupURL);
+        if (waitingSessions != null) {
+            //the link is being opened already
+            waitingSessions.add(session);
+            return;
         }
+        waitingSessions = new ArrayList<>();
+        waitingSessions.add(session);
+        spanWaitingHashMap.put(groupURL, waitingSessions);
 
-        //Checks if the url has been used before
-        boolean used = false;
+        spanConnector.execute(() -> {
+            RelayLink relayLink = null;
+            try {
+                relayLink = RelayLink.connect(new InetSocketAddress(owner.getHost(), owner.getPort()), groupURL, clusterNode, owner.getNodeID(), serverMode, outboundPolicy, serverMetrics);
+            } catch (IOException e) {
+                System.out.printf("%nCould not span group %s of %s: %s", groupURL, owner, e.getMessage());
+            }
+            instructionQueue.add(new Packet(SO, 0, new SpanLink(groupURL, owner, relayLink)));
+        });
+    }
 
-        for (String urlS : usedURLS) {
-            if (urlS.equals(url.toString())) {
-                used = true;
+    /**
+     * Creates the span once its link to the owner is open and moves the waiting sessions into it, or sends them to
+     * the owner if the link could not be opened, server thread only
+     *
+     * @param spanLink the link and the group it is for
+     */
+    private void spanOpened(SpanLink spanLink) {
+        ArrayList<Session> waitingSessions = spanWaitingHashMap.remove(spanLink.groupURL);
+        RelayLink relayLink = spanLink.relayLink;
+
+        Group group = null;
+        if (relayLink != null) {
+            //the owner logs the chat, a span only keeps it in memory
+            group = groupRegistry.createAt(spanLink.groupURL, url -> new Group(url, relayLink.getGroupName(), groupScheduler.loopFor(url), mediaRelay, audioMixing, groupRegistry, null, serverMetrics, clusterNode, outboundPolicy.getAudioDeadlineMillis(), livenessMonitor));
+            if (group == null) {
+                relayLink.close();
+                group = groupRegistry.get(spanLink.groupURL);
+            } else {
+                group.attachOwner(relayLink, serverMode);
+                System.out.printf("%nSpanning group %s of %s", spanLink.groupURL, spanLink.owner);
             }
         }
 
-        //If used then return a newly gen'd url through recursion
-        if (used) {
-            return groupURLGenerator();
-        } else {
-            usedURLS.add(url.toString());
-            return url.toString();
+        for (Session session : waitingSessions == null ? new ArrayList<Session>() : waitingSessions) {
+            if (session.getState() != Session.State.JOINING) {
+                //disconnected while it waited
+                continue;
+            }
+            if (group != null) {
+                group.addSession(session);
+                System.out.printf("%nMoved Client %d to Group with URL %s", session.getClientID(), spanLink.groupURL);
+            } else {
+                redirect(session, spanLink.owner, JG, spanLink.groupURL);
+            }
+        }
+    }
+
+    /**
+     * Reads the node ID a relay link claims
+     *
+     * @param nodeID node ID as sent
+     * @return the node ID, or -1 if it is not a number
+     */
+    private static int parseNodeID(String nodeID) {
+        try {
+            return Integer.parseInt(nodeID);
+        } catch (NumberFormatException e) {
+            return -1;
         }
+    }
+
+    //GETTERS
+
+    /**
+     * Get whether the server bound its port and is taking connections
+     *
+     * @return true once started, until closed
+     */
+    public boolean isRunning() {
+        return started && !close;
+    }
 
-        //in theory this could use all URLS ever but its VERY unlikely in a final project
+    /**
+     * Get the address the server listens on, which has the actual port when started on port 0
+     *
+     * @return bound address, or null before the server is started
+     */
+    public InetSocketAddress getLocalAddress() {
+        SocketServer currentSocketServer = socketServer;
+        return currentSocketServer == null ? null : currentSocketServer.getLocalAddress();
     }
 
+    /**
+     * Get the server's metrics, the same ones published through JMX
+     *
+     * @return server metrics
+     */
+    public ServerMetrics getServerMetrics() {
+        return serverMetrics;
+    }
 
     /**
-     * Tells server to shut down making it close all of it's sub threads and tell all users to disconnect.
+     * Tells server to shut down, draining for at most the drain time of its settings, see close(long)
      */
     public void close() {
+        close(serverSettings.getDrainMillis());
+    }
+
+    /**
+     * Tells server to shut down making it close all of it's sub threads and tell all users to disconnect. New
+     * connections and joins stop right away, then every group says goodbye on its own loop, all loops at once, and
+     * every client is told when and where to reconnect. The server waits until every client's queue has been written
+     * or the drain time ran out, whichever comes first, and cuts off whoever is left, so close takes at most about the
+     * drain time however many groups and clients there are.
+     *
+     * @param drainMillis ms to wait for the clients' queues to be written, 0 to cut everyone off right away
+     */
+    public synchronized void close(long drainMillis) {
+        if (close) {
+            return;
+        }
         close = true;
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, drainMillis));
 
-        //close socket server
-        socketServer.close();
+        //the server thread stops handling joins, and no new connections are taken, the I/O loops keep writing
+        Thread runner = thread;
+        if (runner != null) {
+            runner.interrupt();
+        }
+        if (socketServer != null) {
+            socketServer.stopAccepting();
+        }
+        if (handshakeStage != null) {
+            handshakeStage.close();
+        }
 
-        //kick all groups
-        for (Map.Entry<String, Group> entry : groupConcurrentHashMap.entrySet()) {
-            entry.getValue().close();
+        //other nodes stop sending users and groups here, the clients are pointed at the least loaded of them
+        String[] reconnectHint = reconnectHint(drainMillis);
+        spanConnector.shutdownNow();
+        if (clusterNode != null) {
+            clusterNode.close();
         }
 
-        //kick all users
-        for (Map.Entry<Integer, UserWNG> entry : userWNGConcurrentHashMap.entrySet()) {
-            entry.getValue().closeSocket();
+        //kick all groups, each one on its own loop so the loops say goodbye side by side
+        Collection<Group> groups = new ArrayList<>(groupRegistry.getGroups());
+        CountDownLatch groupsClosed = new CountDownLatch(groups.size());
+        for (Group group : groups) {
+            group.close(groupsClosed::countDown);
+        }
+        try {
+            groupsClosed.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+//            e.printStackTrace();
+        }
+
+        //kick all users, each is told where to reconnect and closes once its queue is written
+        ArrayList<Session> drainingSessions = new ArrayList<>(sessionConcurrentHashMap.values());
+        for (Session session : drainingSessions) {
+            session.send(new Packet(RC, 0, reconnectHint));
+            session.closeSocket();
+        }
+        while (serverMetrics.getLiveSessions() > 0 && deadline - System.nanoTime() > 0) {
+            try {
+                Thread.sleep(DRAIN_POLL);
+            } catch (InterruptedException e) {
+                break;
+            }
         }
 
-        System.out.printf("%nServer Stopped.");
-        Thread.currentThread().interrupt();
+        //out of time, whoever is left is cut off, then every loop stops
+        int cutOff = serverMetrics.getLiveSessions();
+        for (Session session : drainingSessions) {
+            session.abortSocket();
+        }
+        if (socketServer != null) {
+            socketServer.close();
+        }
+        if (mediaRelay != null) {
+            mediaRelay.close();
+        }
+        if (groupScheduler != null) {
+            groupScheduler.close();
+        }
+        if (timerWheel != null) {
+            timerWheel.close();
+        }
+
+        System.out.printf("%nServer Stopped. Drained %d groups and %d sessions in %d ms, %d connections cut off. Fan out latency: %s, by traffic class: %s", groups.size(), drainingSessions.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), cutOff, serverMetrics.getFanOutLatency(), serverMetrics.getFanOutLatencyByClass());
+        serverMetrics.close();
     }
 
+    /**
+     * Builds the reconnect hint every client gets on close. Its details are the ms to wait at most before
+     * reconnecting, then the host and port of another cluster node if there is one. Without one the client reconnects
+     * to this server once it is back, otherwise it goes to the other node, spread over a short time so not everyone
+     * arrives at once.
+     *
+     * @param drainMillis ms the server drains for
+     * @return details of the RC packet
+     */
+    private String[] reconnectHint(long drainMillis) {
+        NodeInfo peer = clusterNode == null ? null : clusterNode.leastLoadedPeer();
+        if (peer == null) {
+            return new String[]{String.valueOf(Math.max(drainMillis, RECONNECT_SPREAD))};
+        }
+        return new String[]{String.valueOf(RECONNECT_SPREAD), peer.getHost(), String.valueOf(peer.getPort())};
+    }
 
+    /**
+     * Outcome of opening a span's link to the owner, handed back to the server's thread
+     */
+    private static final class SpanLink {
+
+        private final String groupURL; //URL of the group to span
+        private final NodeInfo owner; //node that owns the group
+        private final RelayLink relayLink; //the open link, null if the owner could not be reached
+
+        /**
+         * Constructor that takes in the group, its owner, and the link
+         *
+         * @param groupURL  URL of the group
+         * @param owner     node that owns the group
+         * @param relayLink open link, null if it failed
+         */
+        private SpanLink(String groupURL, NodeInfo owner, RelayLink relayLink) {
+            this.groupURL = groupURL;
+            this.owner = owner;
+            this.relayLink = relayLink;
+        }
+    }
 }
-
@@ -0,0 +1,139 @@
+package com.rossisurna.server.application;
+
+import com.rossisurna.server.cluster.ClusterNode;
+import com.rossisurna.server.threads.ChatLogStore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Headless entry point for running the server on its own, without the launcher's UI or JavaFX. The server runs on
+ * the main thread. On SIGTERM or Ctrl+C a shutdown hook closes it, which tells every client where to reconnect, gives
+ * their queues at most --drain-millis to be written and stops every loop, and then waits for it to finish. If the port
+ * can not be bound the process exits with status 1.
+ * <p>
+ * Every option sets the voip.* system property next to it, so the same settings also work as -D flags:
+ * <pre>
+ * java -cp out com.rossisurna.server.application.ServerMain --bind 0.0.0.0 --port 5000 --mode NIO --io-threads 4
+ * </pre>
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 4 2019
+ */
+
+public class ServerMain {
+
+    private static final long SHUTDOWN_TIMEOUT = 10000; //ms the shutdown hook waits for the server to stop once it drained
+    //Options and the system property each one sets
+    private static final Map<String, String> OPTIONS = new LinkedHashMap<>();
+
+    static {
+        OPTIONS.put("--bind", ServerSettings.BIND_ADDRESS_PROPERTY);
+        OPTIONS.put("--port", ServerSettings.PORT_PROPERTY);
+        OPTIONS.put("--mode", ServerMode.MODE_PROPERTY);
+        OPTIONS.put("--io-threads", ServerSettings.IO_THREADS_PROPERTY);
+        OPTIONS.put("--group-loops", ServerSettings.GROUP_LOOPS_PROPERTY);
+        OPTIONS.put("--accept-backlog", ServerSettings.ACCEPT_BACKLOG_PROPERTY);
+        OPTIONS.put("--handshake-timeout-millis", ServerSettings.HANDSHAKE_TIMEOUT_PROPERTY);
+        OPTIONS.put("--max-handshakes", ServerSettings.MAX_HANDSHAKES_PROPERTY);
+        OPTIONS.put("--drain-millis", ServerSettings.DRAIN_PROPERTY);
+        OPTIONS.put("--heartbeat-millis", LivenessPolicy.HEARTBEAT_PROPERTY);
+        OPTIONS.put("--idle-timeout-millis", LivenessPolicy.IDLE_TIMEOUT_PROPERTY);
+        OPTIONS.put("--group-linger-millis", LivenessPolicy.EMPTY_GROUP_LINGER_PROPERTY);
+        OPTIONS.put("--audio-frames-per-second", RateLimitPolicy.AUDIO_FRAMES_PROPERTY);
+        OPTIONS.put("--audio-bytes-per-second", RateLimitPolicy.AUDIO_BYTES_PROPERTY);
+        OPTIONS.put("--chat-messages-per-second", RateLimitPolicy.CHAT_MESSAGES_PROPERTY);
+        OPTIONS.put("--audio-frames", OutboundPolicy.AUDIO_CAPACITY_PROPERTY);
+        OPTIONS.put("--control-frames", OutboundPolicy.CONTROL_CAPACITY_PROPERTY);
+        OPTIONS.put("--max-backlog-millis", OutboundPolicy.MAX_BACKLOG_PROPERTY);
+        OPTIONS.put("--audio-overflow", OutboundPolicy.AUDIO_OVERFLOW_PROPERTY);
+        OPTIONS.put("--audio-deadline-millis", OutboundPolicy.AUDIO_DEADLINE_PROPERTY);
+        OPTIONS.put("--bundle-window-millis", OutboundPolicy.BUNDLE_WINDOW_PROPERTY);
+        OPTIONS.put("--chat-log-dir", ChatLogStore.DIRECTORY_PROPERTY);
+        OPTIONS.put("--mixing", ServerSettings.AUDIO_MIXING_PROPERTY);
+        OPTIONS.put("--node-id", ClusterNode.NODE_ID_PROPERTY);
+        OPTIONS.put("--cluster-dir", ClusterNode.DIRECTORY_PROPERTY);
+        OPTIONS.put("--advertise", ClusterNode.ADVERTISE_PROPERTY);
+        OPTIONS.put("--span-above", ClusterNode.SPAN_ABOVE_PROPERTY);
+    }
+
+    private static volatile boolean shuttingDown = false; //set once the shutdown hook started closing the server
+
+    /**
+     * Runs the server until the process is told to stop
+     *
+     * @param args options, --name value or --name=value, --help lists them
+     */
+    public static void main(String[] args) {
+        if (!readOptions(args)) {
+            printUsage();
+            System.exit(2);
+        }
+
+        Server server = new Server(ServerSettings.fromSystemProperties());
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            shuttingDown = true;
+            server.close();
+            try {
+                mainThread.join(SHUTDOWN_TIMEOUT);
+            } catch (InterruptedException e) {
+//                e.printStackTrace();
+            }
+            System.out.printf("%nServer shut down%n");
+        }, "ServerShutdown"));
+
+        server.run();
+
+        //run only returns on its own if the server never started
+        if (!shuttingDown) {
+            System.out.printf("%nServer failed to start%n");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Turns the options into system properties
+     *
+     * @param args command line args
+     * @return false if an option is unknown, has no value, or help was asked for
+     */
+    private static boolean readOptions(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            String value = null;
+            int equals = name.indexOf('=');
+            if (equals > 0) {
+                value = name.substring(equals + 1);
+                name = name.substring(0, equals);
+            } else if (i + 1 < args.length) {
+                value = args[++i];
+            }
+
+            String property = OPTIONS.get(name);
+            if (property == null || value == null) {
+                if (!"--help".equals(name)) {
+                    System.out.printf("%nUnknown option or missing value: %s", name);
+                }
+                return false;
+            }
+            System.setProperty(property, value);
+        }
+        return true;
+    }
+
+    /**
+     * Prints every option and the property it sets
+     */
+    private static void printUsage() {
+        System.out.printf("%nUsage: ServerMain [option value]...");
+        for (Map.Entry<String, String> entry : OPTIONS.entrySet()) {
+            System.out.printf("%n  %-26s sets -D%s", entry.getKey(), entry.getValue());
+        }
+        System.out.printf("%n");
+    }
+}
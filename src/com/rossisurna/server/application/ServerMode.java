@@ -0,0 +1,115 @@
+package com.rossisurna.server.application;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * The execution model the server runs its sessions on, picked once at startup so the models can be compared under the
+ * same load.
+ * <p>
+ * NIO: a few I/O loops own every connection through a selector.
+ * PLATFORM_THREADS: every connection gets its own reader and writer platform thread doing blocking reads and writes.
+ * VIRTUAL_THREADS: same as PLATFORM_THREADS, but the socket server and the connections run on virtual threads. Needs
+ * Java 21, older runtimes fall back to platform threads.
+ * <p>
+ * Groups never get threads of their own in any mode, they share the fixed pool of group loops.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 21 2019
+ */
+
+public enum ServerMode {
+    NIO,
+    PLATFORM_THREADS,
+    VIRTUAL_THREADS;
+
+    //System property used to pick the mode at startup
+    public static final String MODE_PROPERTY = "voip.server.mode";
+
+    //Virtual thread builder methods, looked up once since the project still compiles against Java 11
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    private static final Method BUILDER_NAME = findMethod(builderClass(), "name", String.class);
+    private static final Method BUILDER_START = findMethod(builderClass(), "start", Runnable.class);
+    private static boolean virtualThreadsAvailable = OF_VIRTUAL != null && BUILDER_NAME != null && BUILDER_START != null;
+
+    /**
+     * Reads the mode from the voip.server.mode system property, NIO if missing or unknown
+     *
+     * @return mode to run the server in
+     */
+    public static ServerMode fromSystemProperty() {
+        String mode = System.getProperty(MODE_PROPERTY, NIO.name());
+        try {
+            return valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.printf("%nUnknown server mode '%s', using %s", mode, NIO);
+            return NIO;
+        }
+    }
+
+    /**
+     * Whether connections get their own threads doing blocking reads rather then sharing I/O loops
+     *
+     * @return true for the thread per connection modes
+     */
+    public boolean isBlocking() {
+        return this != NIO;
+    }
+
+    /**
+     * Starts a thread for the given task using this mode's kind of thread
+     *
+     * @param task task to run
+     * @param name name of the thread
+     * @return started thread
+     */
+    public Thread startThread(Runnable task, String name) {
+        if (this == VIRTUAL_THREADS && virtualThreadsAvailable) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (Thread) BUILDER_START.invoke(builder, task);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                //preview only runtime or blocked by a security manager, stop trying
+                virtualThreadsAvailable = false;
+                System.out.printf("%nVirtual threads unavailable, falling back to platform threads");
+            }
+        }
+
+        Thread thread = new Thread(task, name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Finds a public method or returns null if this runtime does not have it
+     *
+     * @param type           class to look in
+     * @param name           method name
+     * @param parameterTypes parameter types of the method
+     * @return the method or null
+     */
+    private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type == null ? null : type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the Thread.Builder interface or returns null before Java 21
+     *
+     * @return the builder class or null
+     */
+    private static Class<?> builderClass() {
+        try {
+            return Class.forName("java.lang.Thread$Builder");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
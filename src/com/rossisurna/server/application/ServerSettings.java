@@ -0,0 +1,473 @@
+package com.rossisurna.server.application;
+
+import com.rossisurna.server.cluster.ClusterNode;
+import com.rossisurna.util.SystemProperties;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Everything a server is started with. Where the server listens and how many threads it runs its work on, the
+ * execution model, the limits of the outbound queues, liveness and rate limits, whether groups mix their audio, and the
+ * server's node of a cluster. The TCP control channel and the UDP media channel bind the same address and port. I/O
+ * loops only exist in NIO mode, group loops exist in every mode. Every accepted connection has to send its first frame
+ * within the handshake timeout, and only so many may be doing so at once. On close the server drains for at most the
+ * drain time, however many groups and clients it has, see Server.close.
+ * <p>
+ * Settings are made with a Builder that starts from the defaults, so a caller only names what it changes. All of them
+ * can also be set with system properties, see the constants below and those of the policies, ServerMode, and
+ * ClusterNode, or with the options of ServerMain.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 4 2019
+ */
+
+public final class ServerSettings {
+
+    //System properties used to set the server up at startup
+    public static final String BIND_ADDRESS_PROPERTY = "voip.server.bind";
+    public static final String PORT_PROPERTY = "voip.server.port";
+    public static final String IO_THREADS_PROPERTY = "voip.server.ioThreads";
+    public static final String GROUP_LOOPS_PROPERTY = "voip.server.groupLoops";
+    public static final String ACCEPT_BACKLOG_PROPERTY = "voip.server.acceptBacklog";
+    public static final String HANDSHAKE_TIMEOUT_PROPERTY = "voip.server.handshakeTimeoutMillis";
+    public static final String MAX_HANDSHAKES_PROPERTY = "voip.server.maxHandshakes";
+    public static final String DRAIN_PROPERTY = "voip.server.drainMillis";
+    public static final String AUDIO_MIXING_PROPERTY = "voip.group.mixing";
+
+    //Defaults
+    private static final int DEFAULT_PORT = 80; //port the clients connect to
+    private static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors(); //one loop per core
+    private static final int DEFAULT_ACCEPT_BACKLOG = 0; //0 lets the operating system pick
+    private static final long DEFAULT_HANDSHAKE_TIMEOUT = 5000; //ms a client has to send its first frame
+    private static final int DEFAULT_MAX_HANDSHAKES = 1024; //handshakes in flight before new connections are closed
+    private static final long DEFAULT_DRAIN = 5000; //ms the server waits on close for every client to be flushed
+
+    //Listening and threads
+    private final String bindAddress; //address to listen on, null or empty for every interface
+    private final int port; //port to listen on, 0 for any free one
+    private final int ioThreads; //I/O loops in NIO mode, at least 1
+    private final int groupLoops; //group loops, at least 1
+    private final int acceptBacklog; //connections waiting to be accepted before new ones are refused
+    private final long handshakeTimeoutMillis; //ms a client has from being accepted to sending its first frame
+    private final int maxHandshakes; //handshakes in flight before new connections are closed right away
+    private final long drainMillis; //ms close waits for the clients' queues to be written before cutting them off
+    //Sessions and groups
+    private final ServerMode serverMode; //execution model for the sessions
+    private final OutboundPolicy outboundPolicy; //limits of every connection's outbound queue
+    private final LivenessPolicy livenessPolicy; //heartbeats, idle eviction, and how long empty groups are kept
+    private final RateLimitPolicy rateLimitPolicy; //how much audio and chat each client may send
+    private final boolean audioMixing; //whether new groups mix their audio on the server
+    //Cluster
+    private final ClusterNode clusterNode; //this server's node of the cluster, null if it runs alone
+
+    /**
+     * Constructor that takes the settings of a builder
+     *
+     * @param builder builder holding the settings
+     */
+    private ServerSettings(Builder builder) {
+        this.bindAddress = builder.bindAddress == null || builder.bindAddress.trim().isEmpty() ? null : builder.bindAddress.trim();
+        this.port = builder.port;
+        this.ioThreads = Math.max(1, builder.ioThreads);
+        this.groupLoops = Math.max(1, builder.groupLoops);
+        this.acceptBacklog = Math.max(0, builder.acceptBacklog);
+        this.handshakeTimeoutMillis = Math.max(1, builder.handshakeTimeoutMillis);
+        this.maxHandshakes = Math.max(1, builder.maxHandshakes);
+        this.drainMillis = Math.max(0, builder.drainMillis);
+        this.serverMode = builder.serverMode;
+        this.outboundPolicy = builder.outboundPolicy;
+        this.livenessPolicy = builder.livenessPolicy;
+        this.rateLimitPolicy = builder.rateLimitPolicy;
+        this.audioMixing = builder.audioMixing;
+        this.clusterNode = builder.clusterNode;
+    }
+
+    /**
+     * Settings with the defaults, every interface on port 80, one loop of each kind per core, NIO, default policies,
+     * no mixing, and no cluster
+     *
+     * @return default settings
+     */
+    public static ServerSettings defaults() {
+        return new Builder().build();
+    }
+
+    /**
+     * Reads the settings from the voip.* system properties, defaults for anything missing or invalid
+     *
+     * @return settings to run the server with
+     */
+    public static ServerSettings fromSystemProperties() {
+        String bindAddress = System.getProperty(BIND_ADDRESS_PROPERTY);
+        return new Builder()
+                .bindAddress(bindAddress)
+                .port((int) SystemProperties.longProperty(PORT_PROPERTY, DEFAULT_PORT))
+                .ioThreads((int) SystemProperties.longProperty(IO_THREADS_PROPERTY, DEFAULT_THREADS))
+                .groupLoops((int) SystemProperties.longProperty(GROUP_LOOPS_PROPERTY, DEFAULT_THREADS))
+                .acceptBacklog((int) SystemProperties.longProperty(ACCEPT_BACKLOG_PROPERTY, DEFAULT_ACCEPT_BACKLOG))
+                .handshakeTimeoutMillis(SystemProperties.longProperty(HANDSHAKE_TIMEOUT_PROPERTY, DEFAULT_HANDSHAKE_TIMEOUT))
+                .maxHandshakes((int) SystemProperties.longProperty(MAX_HANDSHAKES_PROPERTY, DEFAULT_MAX_HANDSHAKES))
+                .drainMillis(SystemProperties.longProperty(DRAIN_PROPERTY, DEFAULT_DRAIN))
+                .serverMode(ServerMode.fromSystemProperty())
+                .outboundPolicy(OutboundPolicy.fromSystemProperties())
+                .livenessPolicy(LivenessPolicy.fromSystemProperties())
+                .rateLimitPolicy(RateLimitPolicy.fromSystemProperties())
+                .audioMixing(Boolean.getBoolean(AUDIO_MIXING_PROPERTY))
+                .clusterNode(ClusterNode.fromSystemProperties(bindAddress))
+                .build();
+    }
+
+    /**
+     * Builder that starts from these settings, to run another server with a few of them changed
+     *
+     * @return builder holding these settings
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .bindAddress(bindAddress)
+                .port(port)
+                .ioThreads(ioThreads)
+                .groupLoops(groupLoops)
+                .acceptBacklog(acceptBacklog)
+                .handshakeTimeoutMillis(handshakeTimeoutMillis)
+                .maxHandshakes(maxHandshakes)
+                .drainMillis(drainMillis)
+                .serverMode(serverMode)
+                .outboundPolicy(outboundPolicy)
+                .livenessPolicy(livenessPolicy)
+                .rateLimitPolicy(rateLimitPolicy)
+                .audioMixing(audioMixing)
+                .clusterNode(clusterNode);
+    }
+
+    /**
+     * Socket address to bind, resolves the bind address if it is a host name
+     *
+     * @return address and port
+     */
+    public InetSocketAddress getSocketAddress() {
+        return bindAddress == null ? new InetSocketAddress(port) : new InetSocketAddress(bindAddress, port);
+    }
+
+    //GETTERS
+
+    /**
+     * Get the address to listen on
+     *
+     * @return address, or null for every interface
+     */
+    public String getBindAddress() {
+        return bindAddress;
+    }
+
+    /**
+     * Get the port to listen on
+     *
+     * @return port, 0 for any free one
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the number of I/O loops in NIO mode
+     *
+     * @return I/O threads
+     */
+    public int getIOThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Get the number of group loops
+     *
+     * @return group loops
+     */
+    public int getGroupLoops() {
+        return groupLoops;
+    }
+
+    /**
+     * Get the number of connections that may wait to be accepted
+     *
+     * @return accept backlog, 0 for the operating system's default
+     */
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    /**
+     * Get the time a client has from being accepted to sending its first frame
+     *
+     * @return handshake timeout in ms
+     */
+    public long getHandshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    /**
+     * Get the number of handshakes that may be in flight before new connections are closed right away
+     *
+     * @return handshakes in flight at most
+     */
+    public int getMaxHandshakes() {
+        return maxHandshakes;
+    }
+
+    /**
+     * Get the ms close waits for every client's queue to be written before it cuts the rest off
+     *
+     * @return drain time, 0 to cut everyone off right away
+     */
+    public long getDrainMillis() {
+        return drainMillis;
+    }
+
+    /**
+     * Get the execution model the sessions run on
+     *
+     * @return server mode
+     */
+    public ServerMode getServerMode() {
+        return serverMode;
+    }
+
+    /**
+     * Get the limits of every connection's outbound queue
+     *
+     * @return outbound policy
+     */
+    public OutboundPolicy getOutboundPolicy() {
+        return outboundPolicy;
+    }
+
+    /**
+     * Get the heartbeats, idle eviction, and how long empty groups are kept
+     *
+     * @return liveness policy
+     */
+    public LivenessPolicy getLivenessPolicy() {
+        return livenessPolicy;
+    }
+
+    /**
+     * Get how much audio and chat each client may send
+     *
+     * @return rate limit policy
+     */
+    public RateLimitPolicy getRateLimitPolicy() {
+        return rateLimitPolicy;
+    }
+
+    /**
+     * Get whether new groups mix their audio on the server
+     *
+     * @return true if groups mix
+     */
+    public boolean isAudioMixing() {
+        return audioMixing;
+    }
+
+    /**
+     * Get this server's node of the cluster
+     *
+     * @return cluster node, null if the server runs alone
+     */
+    public ClusterNode getClusterNode() {
+        return clusterNode;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%d, io=%d, groupLoops=%d, backlog=%s, handshake=%dms x%d, drain=%dms", bindAddress == null ? "*" : bindAddress, port, ioThreads,
+                groupLoops, acceptBacklog == 0 ? "default" : String.valueOf(acceptBacklog), handshakeTimeoutMillis, maxHandshakes, drainMillis);
+    }
+
+    /**
+     * Builds ServerSettings, every setting starts at its default
+     */
+    public static final class Builder {
+
+        private String bindAddress = null; //every interface
+        private int port = DEFAULT_PORT;
+        private int ioThreads = DEFAULT_THREADS;
+        private int groupLoops = DEFAULT_THREADS;
+        private int acceptBacklog = DEFAULT_ACCEPT_BACKLOG;
+        private long handshakeTimeoutMillis = DEFAULT_HANDSHAKE_TIMEOUT;
+        private int maxHandshakes = DEFAULT_MAX_HANDSHAKES;
+        private long drainMillis = DEFAULT_DRAIN;
+        private ServerMode serverMode = ServerMode.NIO;
+        private OutboundPolicy outboundPolicy = OutboundPolicy.defaults();
+        private LivenessPolicy livenessPolicy = LivenessPolicy.defaults();
+        private RateLimitPolicy rateLimitPolicy = RateLimitPolicy.defaults();
+        private boolean audioMixing = false;
+        private ClusterNode clusterNode = null; //runs alone
+
+        /**
+         * Sets the address to listen on
+         *
+         * @param bindAddress address, null or empty for every interface
+         * @return this builder
+         */
+        public Builder bindAddress(String bindAddress) {
+            this.bindAddress = bindAddress;
+            return this;
+        }
+
+        /**
+         * Sets the port to listen on
+         *
+         * @param port port, 0 for any free one
+         * @return this builder
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Sets the number of I/O loops in NIO mode
+         *
+         * @param ioThreads I/O loops
+         * @return this builder
+         */
+        public Builder ioThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        /**
+         * Sets the number of group loops
+         *
+         * @param groupLoops group loops
+         * @return this builder
+         */
+        public Builder groupLoops(int groupLoops) {
+            this.groupLoops = groupLoops;
+            return this;
+        }
+
+        /**
+         * Sets the number of connections that may wait to be accepted
+         *
+         * @param acceptBacklog accept backlog, 0 for the operating system's default
+         * @return this builder
+         */
+        public Builder acceptBacklog(int acceptBacklog) {
+            this.acceptBacklog = acceptBacklog;
+            return this;
+        }
+
+        /**
+         * Sets the time a client has to send its first frame
+         *
+         * @param handshakeTimeoutMillis ms
+         * @return this builder
+         */
+        public Builder handshakeTimeoutMillis(long handshakeTimeoutMillis) {
+            this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets the number of handshakes in flight before new connections are closed right away
+         *
+         * @param maxHandshakes handshakes in flight at most
+         * @return this builder
+         */
+        public Builder maxHandshakes(int maxHandshakes) {
+            this.maxHandshakes = maxHandshakes;
+            return this;
+        }
+
+        /**
+         * Sets how long close waits for the clients to be flushed
+         *
+         * @param drainMillis ms, 0 to cut them off right away
+         * @return this builder
+         */
+        public Builder drainMillis(long drainMillis) {
+            this.drainMillis = drainMillis;
+            return this;
+        }
+
+        /**
+         * Sets the execution model the sessions run on
+         *
+         * @param serverMode server mode
+         * @return this builder
+         */
+        public Builder serverMode(ServerMode serverMode) {
+            this.serverMode = serverMode;
+            return this;
+        }
+
+        /**
+         * Sets the limits of every connection's outbound queue
+         *
+         * @param outboundPolicy outbound policy
+         * @return this builder
+         */
+        public Builder outboundPolicy(OutboundPolicy outboundPolicy) {
+            this.outboundPolicy = outboundPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the heartbeats, idle eviction, and how long empty groups are kept
+         *
+         * @param livenessPolicy liveness policy
+         * @return this builder
+         */
+        public Builder livenessPolicy(LivenessPolicy livenessPolicy) {
+            this.livenessPolicy = livenessPolicy;
+            return this;
+        }
+
+        /**
+         * Sets how much audio and chat each client may send
+         *
+         * @param rateLimitPolicy rate limit policy
+         * @return this builder
+         */
+        public Builder rateLimitPolicy(RateLimitPolicy rateLimitPolicy) {
+            this.rateLimitPolicy = rateLimitPolicy;
+            return this;
+        }
+
+        /**
+         * Sets whether new groups mix their audio on the server
+         *
+         * @param audioMixing true to mix
+         * @return this builder
+         */
+        public Builder audioMixing(boolean audioMixing) {
+            this.audioMixing = audioMixing;
+            return this;
+        }
+
+        /**
+         * Sets this server's node of the cluster
+         *
+         * @param clusterNode cluster node, null to run alone
+         * @return this builder
+         */
+        public Builder clusterNode(ClusterNode clusterNode) {
+            this.clusterNode = clusterNode;
+            return this;
+        }
+
+        /**
+         * Makes the settings
+         *
+         * @return settings holding what was set, defaults for the rest
+         */
+        public ServerSettings build() {
+            return new ServerSettings(this);
+        }
+    }
+}
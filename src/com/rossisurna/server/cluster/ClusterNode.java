@@ -0,0 +1,366 @@
+package com.rossisurna.server.cluster;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * This server's place in a cluster. Every second it publishes its address and its live sessions to the group
+ * directory and reads back everyone else's, which is what placement works from. A new group goes to the least loaded
+ * node, a join for a group another node owns is either redirected to that node or, once the owner is past the span
+ * limit, served here by a span of the group linked to the owner.
+ * <p>
+ * Client IDs carry the ID of the node that handed them out in their top bits, so they stay unique across the cluster
+ * and relayed packets can be told apart by where they came from. Node 0 means the server runs alone.
+ * <p>
+ * A span asks the owner for a group with RL, after which its connection gets the group's whole fan-out and may speak
+ * for any member of its node. The owner only takes RL from a live node of the directory that connects from the
+ * address the node published and knows the cluster's shared secret, and a server running alone never takes it. Without
+ * a secret no node takes RL, so spanning needs the same secret on every node.
+ * <p>
+ * Configured through system properties, for example -Dvoip.cluster.nodeId=2 -Dvoip.cluster.directory=/tmp/voip-cluster
+ * -Dvoip.cluster.secret=....
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 5 2019
+ */
+
+public class ClusterNode {
+
+    //System properties
+    public static final String NODE_ID_PROPERTY = "voip.cluster.nodeId"; //ID of this node, 1 to 127, unset to run alone
+    public static final String DIRECTORY_PROPERTY = "voip.cluster.directory"; //directory shared by the cluster
+    public static final String ADVERTISE_PROPERTY = "voip.cluster.advertise"; //host others reach this node at
+    public static final String SPAN_ABOVE_PROPERTY = "voip.cluster.spanAbove"; //owner load past which joins span instead of redirect
+    public static final String SECRET_PROPERTY = "voip.cluster.secret"; //secret every node of the cluster shares, needed to span
+    //Client IDs
+    public static final int NODE_SHIFT = 24; //client IDs keep the node ID above this bit
+    public static final int MAX_NODE_ID = 127; //largest node ID that keeps client IDs positive
+    //Timing
+    private static final long PUBLISH_INTERVAL = 1000; //ms between publishing the load
+    private static final long NODE_TIMEOUT = 5000; //ms without publishing before a node counts as gone
+    //Placement
+    private static final int MIN_PLACEMENT_MARGIN = 2; //sessions another node has to be below this one to get a new group
+    private static final double PLACEMENT_MARGIN = 0.1; //share of this node's load another node has to be below it
+
+    private final int nodeID; //ID of this node
+    private final String host; //host clients and other nodes reach this node at
+    private final GroupDirectory groupDirectory; //directory shared by the cluster
+    private final int spanAbove; //owner load past which joins span instead of redirect, 0 to always redirect
+    private final byte[] secret; //secret a span proves it belongs to the cluster with, empty to take no spans
+    private final ScheduledExecutorService scheduler; //publishes the load and gives URLs up off the caller's thread
+    private volatile int port = 0; //TCP port this node listens on, known once the server is bound
+    private volatile IntSupplier load = () -> 0; //live sessions of this node
+    private volatile List<NodeInfo> nodeInfoList = Collections.emptyList(); //every live node as last read, this one included
+
+    /**
+     * Constructor that takes in who this node is, the directory it shares, and the secret of the cluster
+     *
+     * @param nodeID         ID of this node, 1 to 127
+     * @param host           host clients and other nodes reach this node at
+     * @param groupDirectory directory shared by the cluster
+     * @param spanAbove      owner load past which joins span, 0 to always redirect
+     * @param secret         secret every node shares, null or empty to take no spans
+     */
+    public ClusterNode(int nodeID, String host, GroupDirectory groupDirectory, int spanAbove, String secret) {
+        if (nodeID < 1 || nodeID > MAX_NODE_ID) {
+            throw new IllegalArgumentException("node ID must be 1 to " + MAX_NODE_ID + ": " + nodeID);
+        }
+        this.nodeID = nodeID;
+        this.host = host;
+        this.groupDirectory = groupDirectory;
+        this.spanAbove = Math.max(0, spanAbove);
+        this.secret = secret == null ? new byte[0] : secret.getBytes(StandardCharsets.UTF_8);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "ClusterNode-" + nodeID);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the voip.cluster.* system properties
+     *
+     * @param bindAddress address the server listens on, advertised if none is set, null for every interface
+     * @return this server's node, or null if no node ID is set and the server runs alone
+     */
+    public static ClusterNode fromSystemProperties(String bindAddress) {
+        String nodeID = System.getProperty(NODE_ID_PROPERTY, "").trim();
+        if (nodeID.isEmpty() || "0".equals(nodeID)) {
+            return null;
+        }
+
+        String directory = System.getProperty(DIRECTORY_PROPERTY, "cluster").trim();
+        String host = System.getProperty(ADVERTISE_PROPERTY, bindAddress == null || bindAddress.trim().isEmpty() || "0.0.0.0".equals(bindAddress.trim()) ? "127.0.0.1" : bindAddress).trim();
+        try {
+            return new ClusterNode(Integer.parseInt(nodeID), host, new FileGroupDirectory(Paths.get(directory)),
+                    Integer.parseInt(System.getProperty(SPAN_ABOVE_PROPERTY, "0").trim()), System.getProperty(SECRET_PROPERTY));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.printf("%nCluster unavailable, running alone: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Joins the cluster once the server is listening, gives up any URLs an earlier run of this node left claimed, and
+     * starts publishing
+     *
+     * @param port TCP port the server listens on
+     * @param load live sessions of the server
+     */
+    public void start(int port, IntSupplier load) {
+        this.port = port;
+        this.load = load;
+        try {
+            groupDirectory.releaseAll(nodeID);
+        } catch (IOException e) {
+            System.out.printf("%nCluster node %d could not release old claims: %s", nodeID, e.getMessage());
+        }
+        if (secret.length == 0) {
+            System.out.printf("%nCluster node %d has no %s, it neither spans nor takes spans", nodeID, SECRET_PROPERTY);
+        }
+        publish();
+        scheduler.scheduleAtFixedRate(this::publish, PUBLISH_INTERVAL, PUBLISH_INTERVAL, TimeUnit.MILLISECONDS);
+        System.out.printf("%nCluster Node %d Launched, Advertised: %s:%d", nodeID, host, port);
+    }
+
+    /**
+     * Publishes this node's load and reads everyone else's
+     */
+    private void publish() {
+        try {
+            long now = System.currentTimeMillis();
+            groupDirectory.publish(new NodeInfo(nodeID, host, port, load.getAsInt(), now));
+
+            ArrayList<NodeInfo> liveNodeInfoList = new ArrayList<>();
+            for (NodeInfo nodeInfo : groupDirectory.getNodes()) {
+                if (now - nodeInfo.getPublishedMillis() <= NODE_TIMEOUT) {
+                    liveNodeInfoList.add(nodeInfo);
+                }
+            }
+            nodeInfoList = liveNodeInfoList;
+        } catch (IOException e) {
+            System.out.printf("%nCluster node %d could not publish: %s", nodeID, e.getMessage());
+        }
+    }
+
+    /**
+     * Picks the node a new group goes to. This node keeps it unless another is clearly less loaded, so a client that
+     * was redirected is not sent on again because loads moved a little meanwhile.
+     *
+     * @return the node to redirect to, or null to create the group here
+     */
+    public NodeInfo placeNewGroup() {
+        int localLoad = load.getAsInt();
+        int margin = Math.max(MIN_PLACEMENT_MARGIN, (int) (localLoad * PLACEMENT_MARGIN));
+
+        NodeInfo leastLoaded = null;
+        for (NodeInfo nodeInfo : nodeInfoList) {
+            if (nodeInfo.getNodeID() != nodeID && nodeInfo.getLoad() + margin < localLoad
+                    && (leastLoaded == null || nodeInfo.getLoad() < leastLoaded.getLoad())) {
+                leastLoaded = nodeInfo;
+            }
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * Picks the node the clients of this one should reconnect to when it shuts down
+     *
+     * @return the least loaded other live node, or null if there is none
+     */
+    public NodeInfo leastLoadedPeer() {
+        NodeInfo leastLoaded = null;
+        for (NodeInfo nodeInfo : nodeInfoList) {
+            if (nodeInfo.getNodeID() != nodeID && (leastLoaded == null || nodeInfo.getLoad() < leastLoaded.getLoad())) {
+                leastLoaded = nodeInfo;
+            }
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * Claims a new group's URL for this node
+     *
+     * @param groupURL group URL
+     * @return true if the URL is now this node's, false if another live node owns it
+     */
+    public boolean claim(String groupURL) {
+        try {
+            if (groupDirectory.claim(groupURL, nodeID)) {
+                return true;
+            }
+
+            //the URL of a node that went away can be taken over
+            int owner = groupDirectory.ownerOf(groupURL);
+            if (owner != nodeID && findNode(owner) == null) {
+                groupDirectory.release(groupURL, owner);
+                return groupDirectory.claim(groupURL, nodeID);
+            }
+            return false;
+        } catch (IOException e) {
+            System.out.printf("%nCluster node %d could not claim %s: %s", nodeID, groupURL, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gives a closed group's URL up, off the caller's thread
+     *
+     * @param groupURL group URL
+     */
+    public void release(String groupURL) {
+        try {
+            scheduler.execute(() -> {
+                try {
+                    groupDirectory.release(groupURL, nodeID);
+                } catch (IOException e) {
+                    System.out.printf("%nCluster node %d could not release %s: %s", nodeID, groupURL, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //node closed, which gave every URL up already
+        }
+    }
+
+    /**
+     * Finds the live node that owns a group
+     *
+     * @param groupURL group URL
+     * @return the owner, or null if no live node owns it
+     */
+    public NodeInfo ownerOf(String groupURL) {
+        try {
+            return findNode(groupDirectory.ownerOf(groupURL));
+        } catch (IOException e) {
+            System.out.printf("%nCluster node %d could not look up %s: %s", nodeID, groupURL, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Whether a join for a group another node owns should be served here by a span of the group instead of being
+     * redirected to the owner
+     *
+     * @param owner node that owns the group
+     * @return true once the owner is past the span limit
+     */
+    public boolean shouldSpan(NodeInfo owner) {
+        return spanAbove > 0 && secret.length != 0 && owner.getLoad() >= spanAbove;
+    }
+
+    /**
+     * Builds what a span sends with RL to ask the owner for a group
+     *
+     * @param groupURL URL of the group to span
+     * @return group URL, this node's ID, and the cluster's secret
+     */
+    public String[] relayRequest(String groupURL) {
+        return new String[]{groupURL, String.valueOf(nodeID), new String(secret, StandardCharsets.UTF_8)};
+    }
+
+    /**
+     * Checks that a connection asking for a relay link really comes from another node of the cluster: the node is
+     * live in the directory, the connection comes from the address the node published, and it knows the secret. The
+     * published host is normally an address, a name is looked up.
+     *
+     * @param peerNodeID    node the connection claims to be
+     * @param remoteAddress address the connection comes from
+     * @param peerSecret    secret the connection sent
+     * @return true if it may become a relay link
+     */
+    public boolean isPeer(int peerNodeID, InetAddress remoteAddress, String peerSecret) {
+        if (secret.length == 0 || peerSecret == null || remoteAddress == null
+                || !MessageDigest.isEqual(secret, peerSecret.getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
+
+        NodeInfo nodeInfo = peerNodeID == nodeID ? null : findNode(peerNodeID);
+        if (nodeInfo == null) {
+            return false;
+        }
+        try {
+            for (InetAddress address : InetAddress.getAllByName(nodeInfo.getHost())) {
+                if (address.equals(remoteAddress)) {
+                    return true;
+                }
+            }
+        } catch (UnknownHostException e) {
+            System.out.printf("%nCluster node %d could not look up node %d: %s", nodeID, peerNodeID, e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Leaves the cluster, URLs of groups still open are given up
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            groupDirectory.withdraw(nodeID);
+            groupDirectory.releaseAll(nodeID);
+        } catch (IOException e) {
+            System.out.printf("%nCluster node %d could not withdraw: %s", nodeID, e.getMessage());
+        }
+    }
+
+    /**
+     * Finds a live node by ID
+     *
+     * @param nodeID node ID
+     * @return the node, or null if it is not live
+     */
+    private NodeInfo findNode(int nodeID) {
+        for (NodeInfo nodeInfo : nodeInfoList) {
+            if (nodeInfo.getNodeID() == nodeID) {
+                return nodeInfo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the node that handed a client ID out
+     *
+     * @param clientID client ID
+     * @return node ID, 0 if the server runs alone
+     */
+    public static int nodeOf(int clientID) {
+        return clientID >>> NODE_SHIFT;
+    }
+
+    //GETTERS
+
+    /**
+     * Get the ID of this node
+     *
+     * @return node ID
+     */
+    public int getNodeID() {
+        return nodeID;
+    }
+
+    /**
+     * Get the first client ID this node hands out
+     *
+     * @return client ID with the node ID in its top bits
+     */
+    public int getFirstClientID() {
+        return (nodeID << NODE_SHIFT) + 1;
+    }
+}
@@ -0,0 +1,141 @@
+package com.rossisurna.server.cluster;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Group directory kept in a directory on disk, so servers running as separate processes on one machine, or on
+ * machines sharing a file system, form one cluster. Every node has a file under nodes/ with its host, port, and load,
+ * replaced as a whole on every publish so readers never see half of one. Every claimed URL is a file under groups/
+ * holding the owner's ID, created only if it does not exist yet, which is what makes a claim atomic.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 5 2019
+ */
+
+public class FileGroupDirectory implements GroupDirectory {
+
+    //File names
+    private static final String NODE_SUFFIX = ".node"; //suffix of the node files
+    private static final String TEMPORARY_SUFFIX = ".tmp"; //suffix of a node file being written
+    //Directories
+    private final Path nodeDirectory; //one file per node
+    private final Path groupDirectory; //one file per claimed URL
+
+    /**
+     * Constructor that takes in the directory the cluster shares, creating it if needed
+     *
+     * @param directory shared directory
+     * @throws IOException if the directory could not be created
+     */
+    public FileGroupDirectory(Path directory) throws IOException {
+        this.nodeDirectory = Files.createDirectories(directory.resolve("nodes"));
+        this.groupDirectory = Files.createDirectories(directory.resolve("groups"));
+    }
+
+    @Override
+    public void publish(NodeInfo nodeInfo) throws IOException {
+        String line = String.format("%s %d %d %d", nodeInfo.getHost(), nodeInfo.getPort(), nodeInfo.getLoad(), nodeInfo.getPublishedMillis());
+        Path temporary = nodeDirectory.resolve(nodeInfo.getNodeID() + TEMPORARY_SUFFIX);
+        Files.write(temporary, line.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, nodeDirectory.resolve(nodeInfo.getNodeID() + NODE_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void withdraw(int nodeID) throws IOException {
+        Files.deleteIfExists(nodeDirectory.resolve(nodeID + NODE_SUFFIX));
+    }
+
+    @Override
+    public List<NodeInfo> getNodes() throws IOException {
+        ArrayList<NodeInfo> nodeInfoArrayList = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(nodeDirectory, "*" + NODE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    String[] fields = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(" ");
+                    nodeInfoArrayList.add(new NodeInfo(Integer.parseInt(name.substring(0, name.length() - NODE_SUFFIX.length())),
+                            fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Long.parseLong(fields[3])));
+                } catch (NoSuchFileException e) {
+                    //withdrawn while listing
+                } catch (RuntimeException e) {
+                    //not a node file, skip it
+                }
+            }
+        }
+        return nodeInfoArrayList;
+    }
+
+    @Override
+    public boolean claim(String groupURL, int nodeID) throws IOException {
+        if (!isValidURL(groupURL)) {
+            return false;
+        }
+        try {
+            Files.write(Files.createFile(groupDirectory.resolve(groupURL)), String.valueOf(nodeID).getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public int ownerOf(String groupURL) throws IOException {
+        if (!isValidURL(groupURL)) {
+            return -1;
+        }
+        try {
+            String owner = new String(Files.readAllBytes(groupDirectory.resolve(groupURL)), StandardCharsets.UTF_8).trim();
+            //a claim that is still being written has no owner yet
+            return owner.isEmpty() ? -1 : Integer.parseInt(owner);
+        } catch (NoSuchFileException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void release(String groupURL, int nodeID) throws IOException {
+        if (ownerOf(groupURL) == nodeID) {
+            Files.deleteIfExists(groupDirectory.resolve(groupURL));
+        }
+    }
+
+    @Override
+    public void releaseAll(int nodeID) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(groupDirectory)) {
+            for (Path file : files) {
+                release(file.getFileName().toString(), nodeID);
+            }
+        }
+    }
+
+    /**
+     * Checks that a URL, which may come straight from a client, is safe to use as a file name
+     *
+     * @param groupURL group URL
+     * @return true if it only has letters and digits
+     */
+    private static boolean isValidURL(String groupURL) {
+        if (groupURL == null || groupURL.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < groupURL.length(); i++) {
+            if (!Character.isLetterOrDigit(groupURL.charAt(i)) || groupURL.charAt(i) > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
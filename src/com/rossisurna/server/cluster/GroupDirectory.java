@@ -0,0 +1,83 @@
+package com.rossisurna.server.cluster;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Directory every node of a cluster shares. Nodes publish where they are and how loaded they are, and every open
+ * group's URL is claimed by the node that owns the group, so a URL is unique across the cluster and any node can tell
+ * where a group lives. The directory only stores, deciding whether a node is still alive is up to the caller.
+ * <p>
+ * LocalGroupDirectory keeps everything in memory for a cluster inside one process, FileGroupDirectory keeps it in a
+ * directory every node can reach, for a cluster of processes on one machine or on a shared file system.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 5 2019
+ */
+
+public interface GroupDirectory {
+
+    /**
+     * Publishes a node or refreshes what is known about it
+     *
+     * @param nodeInfo the node's address and load
+     * @throws IOException if the directory could not be written
+     */
+    void publish(NodeInfo nodeInfo) throws IOException;
+
+    /**
+     * Takes a node out, its claims stay until released
+     *
+     * @param nodeID ID of the node
+     * @throws IOException if the directory could not be written
+     */
+    void withdraw(int nodeID) throws IOException;
+
+    /**
+     * Get every node published, including ones that stopped publishing
+     *
+     * @return nodes
+     * @throws IOException if the directory could not be read
+     */
+    List<NodeInfo> getNodes() throws IOException;
+
+    /**
+     * Claims a group URL for a node
+     *
+     * @param groupURL group URL
+     * @param nodeID   node that owns the group
+     * @return true if the URL was free and is now the node's
+     * @throws IOException if the directory could not be written
+     */
+    boolean claim(String groupURL, int nodeID) throws IOException;
+
+    /**
+     * Finds the node that claimed a group URL
+     *
+     * @param groupURL group URL
+     * @return node ID, or -1 if nobody claimed it
+     * @throws IOException if the directory could not be read
+     */
+    int ownerOf(String groupURL) throws IOException;
+
+    /**
+     * Gives a group URL up, unless another node claimed it meanwhile
+     *
+     * @param groupURL group URL
+     * @param nodeID   node giving it up
+     * @throws IOException if the directory could not be written
+     */
+    void release(String groupURL, int nodeID) throws IOException;
+
+    /**
+     * Gives every group URL of a node up, used when a node starts over
+     *
+     * @param nodeID node giving its URLs up
+     * @throws IOException if the directory could not be written
+     */
+    void releaseAll(int nodeID) throws IOException;
+}
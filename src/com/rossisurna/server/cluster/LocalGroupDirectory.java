@@ -0,0 +1,58 @@
+package com.rossisurna.server.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Group directory kept in memory, shared by every server of a cluster that runs inside one process. Meant for trying
+ * a cluster out on one machine, nothing survives the process.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 5 2019
+ */
+
+public class LocalGroupDirectory implements GroupDirectory {
+
+    private final ConcurrentHashMap<Integer, NodeInfo> nodeConcurrentHashMap = new ConcurrentHashMap<>(); //nodes by ID
+    private final ConcurrentHashMap<String, Integer> ownerConcurrentHashMap = new ConcurrentHashMap<>(); //owner node by group URL
+
+    @Override
+    public void publish(NodeInfo nodeInfo) {
+        nodeConcurrentHashMap.put(nodeInfo.getNodeID(), nodeInfo);
+    }
+
+    @Override
+    public void withdraw(int nodeID) {
+        nodeConcurrentHashMap.remove(nodeID);
+    }
+
+    @Override
+    public List<NodeInfo> getNodes() {
+        return new ArrayList<>(nodeConcurrentHashMap.values());
+    }
+
+    @Override
+    public boolean claim(String groupURL, int nodeID) {
+        return ownerConcurrentHashMap.putIfAbsent(groupURL, nodeID) == null;
+    }
+
+    @Override
+    public int ownerOf(String groupURL) {
+        return ownerConcurrentHashMap.getOrDefault(groupURL, -1);
+    }
+
+    @Override
+    public void release(String groupURL, int nodeID) {
+        ownerConcurrentHashMap.remove(groupURL, nodeID);
+    }
+
+    @Override
+    public void releaseAll(int nodeID) {
+        ownerConcurrentHashMap.values().removeIf(owner -> owner == nodeID);
+    }
+}
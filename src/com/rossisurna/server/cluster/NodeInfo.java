@@ -0,0 +1,91 @@
+package com.rossisurna.server.cluster;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * What the group directory knows about one server of the cluster: where clients and other nodes reach it, how loaded
+ * it was when it last published, and when that was.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 5 2019
+ */
+
+public final class NodeInfo {
+
+    private final int nodeID; //ID of the node, also the high bits of every client ID it hands out
+    private final String host; //host clients and other nodes connect to
+    private final int port; //TCP port clients and other nodes connect to
+    private final int load; //live sessions when it last published
+    private final long publishedMillis; //when it last published
+
+    /**
+     * Constructor that takes in everything published about a node
+     *
+     * @param nodeID          ID of the node
+     * @param host            host to connect to
+     * @param port            port to connect to
+     * @param load            live sessions
+     * @param publishedMillis when it was published
+     */
+    public NodeInfo(int nodeID, String host, int port, int load, long publishedMillis) {
+        this.nodeID = nodeID;
+        this.host = host;
+        this.port = port;
+        this.load = load;
+        this.publishedMillis = publishedMillis;
+    }
+
+    //GETTERS
+
+    /**
+     * Get the ID of the node
+     *
+     * @return node ID
+     */
+    public int getNodeID() {
+        return nodeID;
+    }
+
+    /**
+     * Get the host clients and other nodes connect to
+     *
+     * @return host name or address
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Get the port clients and other nodes connect to
+     *
+     * @return TCP port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the node's live sessions when it last published
+     *
+     * @return load
+     */
+    public int getLoad() {
+        return load;
+    }
+
+    /**
+     * Get when the node last published
+     *
+     * @return ms since the epoch
+     */
+    public long getPublishedMillis() {
+        return publishedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("node %d at %s:%d, load %d", nodeID, host, port, load);
+    }
+}
@@ -0,0 +1,193 @@
+package com.rossisurna.server.metrics;
+
+import com.rossisurna.util.WireFormat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Metrics of one group. The group counts every packet it sends out by opcode, and its loop calls updateRates once a
+ * second, which turns the counts into per second rates that JMX can read at any time. Audio shed for missing its
+ * deadline is counted apart, by where it was found: in the group's loop, or in a member's outbound queue.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 1 2019
+ */
+
+public class GroupMetrics implements GroupMetricsMXBean {
+
+    //Group data
+    private final String groupURL; //URL of the group
+    private final IntSupplier members; //number of members
+    //Counters, indexed by opcode
+    private final LongAdder[] packets = newAdders(); //packets sent out
+    private final LongAdder[] bytes = newAdders(); //bytes sent out, every recipient counted
+    //Shed audio
+    private final LongAdder audioShedInGroup = new LongAdder(); //audio that expired waiting for the group's loop
+    private final LongAdder audioShedOutbound = new LongAdder(); //audio that expired in a member's outbound queue
+    //Rates, indexed by opcode
+    private final long[] lastPackets = new long[WireFormat.opcodeCount()]; //packets at the last update, updater only
+    private final long[] lastBytes = new long[WireFormat.opcodeCount()]; //bytes at the last update, updater only
+    private volatile long[] packetsPerSecond = new long[WireFormat.opcodeCount()]; //packets during the last second
+    private volatile long[] bytesPerSecond = new long[WireFormat.opcodeCount()]; //bytes during the last second
+    private long lastUpdateNanos = System.nanoTime(); //time of the last update, updater only
+
+    /**
+     * Constructor that takes in the group's URL and where to read its members from
+     *
+     * @param groupURL URL of the group
+     * @param members  number of members
+     */
+    GroupMetrics(String groupURL, IntSupplier members) {
+        this.groupURL = groupURL;
+        this.members = members;
+    }
+
+    //GETTERS
+
+    @Override
+    public String getGroupURL() {
+        return groupURL;
+    }
+
+    @Override
+    public int getMembers() {
+        return members.getAsInt();
+    }
+
+    @Override
+    public Map<String, Long> getPacketsPerSecond() {
+        return byCode(packetsPerSecond);
+    }
+
+    @Override
+    public Map<String, Long> getBytesPerSecond() {
+        return byCode(bytesPerSecond);
+    }
+
+    @Override
+    public Map<String, Long> getPackets() {
+        return byCode(sums(packets));
+    }
+
+    @Override
+    public Map<String, Long> getBytes() {
+        return byCode(sums(bytes));
+    }
+
+    @Override
+    public long getAudioShedInGroup() {
+        return audioShedInGroup.sum();
+    }
+
+    @Override
+    public long getAudioShedOutbound() {
+        return audioShedOutbound.sum();
+    }
+
+    //MUTATORS
+
+    /**
+     * Counts one packet sent out
+     *
+     * @param code  protocol code of the packet
+     * @param bytes bytes handed to the recipients, all of them together
+     */
+    public void recordPacket(String code, long bytes) {
+        byte opcode = WireFormat.opcodeOf(code);
+        packets[opcode].increment();
+        this.bytes[opcode].add(bytes);
+    }
+
+    /**
+     * Counts one audio packet dropped because it waited for the group's loop past the deadline
+     */
+    public void recordAudioShedInGroup() {
+        audioShedInGroup.increment();
+    }
+
+    /**
+     * Counts one audio frame dropped because it waited in a member's outbound queue past the deadline
+     */
+    public void recordAudioShedOutbound() {
+        audioShedOutbound.increment();
+    }
+
+    /**
+     * Turns the counts since the last update into per second rates, only ever called by one thread
+     */
+    public void updateRates() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastUpdateNanos) / 1e9;
+        lastUpdateNanos = now;
+        packetsPerSecond = rates(packets, lastPackets, seconds);
+        bytesPerSecond = rates(bytes, lastBytes, seconds);
+    }
+
+    /**
+     * Computes the rate of every counter since the last update
+     *
+     * @param counters counters by opcode
+     * @param last     counts at the last update, updated to the current counts
+     * @param seconds  seconds since the last update
+     * @return rates by opcode
+     */
+    private static long[] rates(LongAdder[] counters, long[] last, double seconds) {
+        long[] rates = new long[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            long current = counters[i].sum();
+            rates[i] = Math.round((current - last[i]) / seconds);
+            last[i] = current;
+        }
+        return rates;
+    }
+
+    /**
+     * Sums every counter
+     *
+     * @param counters counters by opcode
+     * @return sums by opcode
+     */
+    private static long[] sums(LongAdder[] counters) {
+        long[] sums = new long[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            sums[i] = counters[i].sum();
+        }
+        return sums;
+    }
+
+    /**
+     * Keys values by protocol code, leaving out the zeros
+     *
+     * @param values values by opcode
+     * @return values by protocol code, codes without an opcode of their own are under EXT
+     */
+    private static Map<String, Long> byCode(long[] values) {
+        LinkedHashMap<String, Long> valuesByCode = new LinkedHashMap<>();
+        for (byte opcode = 0; opcode < values.length; opcode++) {
+            if (values[opcode] != 0) {
+                valuesByCode.put(opcode == WireFormat.OP_EXT ? "EXT" : WireFormat.codeOf(opcode), values[opcode]);
+            }
+        }
+        return valuesByCode;
+    }
+
+    /**
+     * Creates one counter per opcode
+     *
+     * @return counters by opcode
+     */
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[WireFormat.opcodeCount()];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,75 @@
+package com.rossisurna.server.metrics;
+
+import java.util.Map;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Metrics of one group as seen through JMX, registered as com.rossisurna.voip:type=Group,url=URL. Packets and bytes
+ * are what the group sends out, keyed by protocol code, bytes count every recipient.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 1 2019
+ */
+
+public interface GroupMetricsMXBean {
+
+    /**
+     * Get the URL of the group
+     *
+     * @return group URL
+     */
+    String getGroupURL();
+
+    /**
+     * Get the number of members
+     *
+     * @return members
+     */
+    int getMembers();
+
+    /**
+     * Get the packets sent out during the last full second
+     *
+     * @return packets per second by protocol code
+     */
+    Map<String, Long> getPacketsPerSecond();
+
+    /**
+     * Get the bytes sent out during the last full second
+     *
+     * @return bytes per second by protocol code
+     */
+    Map<String, Long> getBytesPerSecond();
+
+    /**
+     * Get the packets sent out since the group opened
+     *
+     * @return packets by protocol code
+     */
+    Map<String, Long> getPackets();
+
+    /**
+     * Get the bytes sent out since the group opened
+     *
+     * @return bytes by protocol code
+     */
+    Map<String, Long> getBytes();
+
+    /**
+     * Get the audio packets dropped since the group opened because they waited for the group's loop past the deadline
+     *
+     * @return audio packets shed in the group
+     */
+    long getAudioShedInGroup();
+
+    /**
+     * Get the audio frames dropped since the group opened because they waited in a member's outbound queue past the
+     * deadline
+     *
+     * @return audio frames shed on the way out
+     */
+    long getAudioShedOutbound();
+}
@@ -0,0 +1,123 @@
+package com.rossisurna.server.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Summary of a latency histogram at one point in time, shown by JMX as one composite attribute. All latencies are in
+ * microseconds.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 1 2019
+ */
+
+public class HistogramSnapshot {
+
+    private final long count; //values recorded
+    private final double mean; //mean latency
+    private final double p50; //median latency
+    private final double p90; //90th percentile latency
+    private final double p99; //99th percentile latency
+    private final double p999; //99.9th percentile latency
+    private final double max; //largest latency
+
+    /**
+     * Constructor that takes in every value of the summary
+     *
+     * @param count values recorded
+     * @param mean  mean latency
+     * @param p50   median latency
+     * @param p90   90th percentile latency
+     * @param p99   99th percentile latency
+     * @param p999  99.9th percentile latency
+     * @param max   largest latency
+     */
+    @ConstructorProperties({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+    public HistogramSnapshot(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    //GETTERS
+
+    /**
+     * Get the number of values recorded
+     *
+     * @return values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the mean latency
+     *
+     * @return mean latency in microseconds
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Get the median latency
+     *
+     * @return median latency in microseconds
+     */
+    public double getP50() {
+        return p50;
+    }
+
+    /**
+     * Get the 90th percentile latency
+     *
+     * @return 90th percentile latency in microseconds
+     */
+    public double getP90() {
+        return p90;
+    }
+
+    /**
+     * Get the 99th percentile latency
+     *
+     * @return 99th percentile latency in microseconds
+     */
+    public double getP99() {
+        return p99;
+    }
+
+    /**
+     * Get the 99.9th percentile latency
+     *
+     * @return 99.9th percentile latency in microseconds
+     */
+    public double getP999() {
+        return p999;
+    }
+
+    /**
+     * Get the largest latency
+     *
+     * @return largest latency in microseconds
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Summary on one line for the logs
+     *
+     * @return summary
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", count, mean, p50, p90, p99, p999, max);
+    }
+}
@@ -0,0 +1,139 @@
+package com.rossisurna.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Lock free latency histogram with log linear buckets, the same layout an HDR histogram uses. Every power of two is cut
+ * into 32 equal buckets, so any recorded value is off by at most about 3% and the whole range from 1 ns to about 18
+ * minutes fits in under 1200 counters. Recording is a couple of shifts and one atomic increment, so it can sit on any
+ * hot path and be recorded from any number of threads at once.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 1 2019
+ */
+
+public class LatencyHistogram {
+
+    //Layout
+    private static final int SUB_BUCKET_BITS = 5; //log2 of the buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; //buckets per power of two
+    private static final int MAX_EXPONENT = 40; //largest power of two tracked, 2^40 ns is about 18 minutes
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS; //number of buckets
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1; //values above are recorded as this
+    //Counts
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS); //values recorded per bucket
+    private final LongAdder count = new LongAdder(); //values recorded
+    private final LongAdder sum = new LongAdder(); //sum of all values recorded
+    private final AtomicLong max = new AtomicLong(); //largest value recorded
+
+    /**
+     * Records one value
+     *
+     * @param nanos latency in ns, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the histogram, values recorded meanwhile may or may not be in it
+     *
+     * @return count, mean, percentiles, and max in microseconds
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        long recorded = count.sum();
+        double mean = recorded == 0 ? 0 : sum.sum() / (double) recorded / 1000.0;
+        return new HistogramSnapshot(total, mean,
+                valueAtPercentile(counts, total, 50.0) / 1000.0,
+                valueAtPercentile(counts, total, 90.0) / 1000.0,
+                valueAtPercentile(counts, total, 99.0) / 1000.0,
+                valueAtPercentile(counts, total, 99.9) / 1000.0,
+                max.get() / 1000.0);
+    }
+
+    /**
+     * Forgets everything recorded so far, values recorded during the reset may be lost
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Finds the value a percentile of the recorded values are at or below
+     *
+     * @param counts     values per bucket
+     * @param total      sum of the counts
+     * @param percentile percentile, 0 to 100
+     * @return highest value of the bucket the percentile falls in, in ns, 0 if nothing was recorded
+     */
+    private static long valueAtPercentile(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    /**
+     * Returns the bucket of a value, the first 32 values each have their own bucket, after that every power of two
+     * has 32
+     *
+     * @param value value between 0 and MAX_VALUE
+     * @return index of the bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the highest value that falls in a bucket
+     *
+     * @param bucket index of the bucket
+     * @return highest value of the bucket
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (bucket % SUB_BUCKETS + 1) * width - 1;
+    }
+}
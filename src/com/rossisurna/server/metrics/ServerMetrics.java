@@ -0,0 +1,491 @@
+package com.rossisurna.server.metrics;
+
+import com.rossisurna.server.application.OutboundPolicy.TrafficClass;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Registry of all the server's metrics. Counters are lock free adders, latencies go into lock free histograms, and
+ * anything that already has a size somewhere, like the groups or the queues, is read from there only when someone asks.
+ * Recording a metric never blocks and never allocates. The registry and every group's metrics are published as JMX
+ * MBeans under com.rossisurna.voip, so they can be read with jconsole or any JMX scraper while the server runs.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 1 2019
+ */
+
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    //JMX
+    public static final String DOMAIN = "com.rossisurna.voip"; //domain of all the server's MBeans
+    //Traffic classes the outbound metrics are split by
+    private static final TrafficClass[] TRAFFIC_CLASSES = TrafficClass.values();
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer(); //where the MBeans are published
+    //Counters
+    private final LongAdder acceptedConnections = new LongAdder(); //connections accepted since start
+    private final LongAdder acceptFailures = new LongAdder(); //accepts that failed while the server kept listening
+    private final LongAdder writes = new LongAdder(); //writes of one frame or one bundle to a client
+    private final LongAdder framesWritten = new LongAdder(); //frames written to clients, bundled or not
+    private final LongAdder handshakesCompleted = new LongAdder(); //clients that sent their first frame in time
+    private final LongAdder handshakesTimedOut = new LongAdder(); //clients hung up on for sending nothing in time
+    private final LongAdder handshakesRejected = new LongAdder(); //connections closed because too many handshakes were in flight
+    private final LongAdder heartbeatsSent = new LongAdder(); //heartbeats sent to clients that went quiet
+    private final LongAdder idleEvictions = new LongAdder(); //sessions hung up on for staying silent past the idle timeout
+    private final LongAdder rateLimitedAudioFrames = new LongAdder(); //audio frames dropped for going over a rate limit
+    private final LongAdder rateLimitedChatMessages = new LongAdder(); //chat messages dropped for going over a rate limit
+    //Latencies
+    private final LatencyHistogram fanOutLatency = new LatencyHistogram(); //ns from queueing a frame to writing it
+    private final LatencyHistogram[] fanOutLatencyByClass = new LatencyHistogram[TRAFFIC_CLASSES.length]; //same per traffic class
+    private final LatencyHistogram handshakeLatency = new LatencyHistogram(); //ns from accepting a connection to its first frame
+    //Gauges
+    private final ConcurrentHashMap<Integer, Supplier<int[]>> outboundBacklogConcurrentHashMap = new ConcurrentHashMap<>(); //backlog per traffic class of every open connection, key is clientID
+    private final ConcurrentHashMap<Integer, SessionTraffic> sessionTrafficConcurrentHashMap = new ConcurrentHashMap<>(); //byte counters of every open connection, key is clientID
+    private volatile IntSupplier openGroups = () -> 0; //number of open groups
+    private volatile IntSupplier handshakesInFlight = () -> 0; //connections accepted that have not sent their first frame
+    private volatile IntSupplier pendingTimers = () -> 0; //timeouts waiting on the timer wheel
+    private volatile Supplier<int[]> groupLoopQueueDepths = () -> new int[0]; //tasks waiting per group loop
+
+    /**
+     * Constructor that creates a latency histogram for every traffic class
+     */
+    public ServerMetrics() {
+        for (int i = 0; i < fanOutLatencyByClass.length; i++) {
+            fanOutLatencyByClass[i] = new LatencyHistogram();
+        }
+    }
+
+    //GETTERS
+
+    @Override
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    @Override
+    public long getAcceptFailures() {
+        return acceptFailures.sum();
+    }
+
+    @Override
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    @Override
+    public long getFramesWritten() {
+        return framesWritten.sum();
+    }
+
+    @Override
+    public long getHandshakesCompleted() {
+        return handshakesCompleted.sum();
+    }
+
+    @Override
+    public long getHandshakesTimedOut() {
+        return handshakesTimedOut.sum();
+    }
+
+    @Override
+    public long getHandshakesRejected() {
+        return handshakesRejected.sum();
+    }
+
+    @Override
+    public int getHandshakesInFlight() {
+        return handshakesInFlight.getAsInt();
+    }
+
+    @Override
+    public HistogramSnapshot getHandshakeLatency() {
+        return handshakeLatency.snapshot();
+    }
+
+    @Override
+    public long getHeartbeatsSent() {
+        return heartbeatsSent.sum();
+    }
+
+    @Override
+    public long getIdleEvictions() {
+        return idleEvictions.sum();
+    }
+
+    @Override
+    public long getRateLimitedAudioFrames() {
+        return rateLimitedAudioFrames.sum();
+    }
+
+    @Override
+    public long getRateLimitedChatMessages() {
+        return rateLimitedChatMessages.sum();
+    }
+
+    @Override
+    public int getPendingTimers() {
+        return pendingTimers.getAsInt();
+    }
+
+    @Override
+    public int getLiveSessions() {
+        return outboundBacklogConcurrentHashMap.size();
+    }
+
+    @Override
+    public int getOpenGroups() {
+        return openGroups.getAsInt();
+    }
+
+    @Override
+    public int[] getGroupLoopQueueDepths() {
+        return groupLoopQueueDepths.get();
+    }
+
+    @Override
+    public HistogramSnapshot getFanOutLatency() {
+        return fanOutLatency.snapshot();
+    }
+
+    @Override
+    public Map<String, HistogramSnapshot> getFanOutLatencyByClass() {
+        HashMap<String, HistogramSnapshot> latency = new HashMap<>();
+        for (TrafficClass trafficClass : TRAFFIC_CLASSES) {
+            latency.put(trafficClass.name(), fanOutLatencyByClass[trafficClass.ordinal()].snapshot());
+        }
+        return latency;
+    }
+
+    @Override
+    public Map<Integer, Integer> getOutboundBacklog() {
+        HashMap<Integer, Integer> backlog = new HashMap<>();
+        for (Map.Entry<Integer, Supplier<int[]>> entry : outboundBacklogConcurrentHashMap.entrySet()) {
+            int frames = 0;
+            for (int classFrames : entry.getValue().get()) {
+                frames += classFrames;
+            }
+            backlog.put(entry.getKey(), frames);
+        }
+        return backlog;
+    }
+
+    @Override
+    public int getMaxOutboundBacklog() {
+        int max = 0;
+        for (int backlog : getOutboundBacklog().values()) {
+            max = Math.max(max, backlog);
+        }
+        return max;
+    }
+
+    @Override
+    public Map<String, Integer> getOutboundBacklogByClass() {
+        int[] total = new int[TRAFFIC_CLASSES.length];
+        for (Supplier<int[]> backlog : outboundBacklogConcurrentHashMap.values()) {
+            int[] classFrames = backlog.get();
+            for (int i = 0; i < total.length; i++) {
+                total[i] += classFrames[i];
+            }
+        }
+        return byClass(total);
+    }
+
+    @Override
+    public Map<String, Integer> getMaxOutboundBacklogByClass() {
+        int[] max = new int[TRAFFIC_CLASSES.length];
+        for (Supplier<int[]> backlog : outboundBacklogConcurrentHashMap.values()) {
+            int[] classFrames = backlog.get();
+            for (int i = 0; i < max.length; i++) {
+                max[i] = Math.max(max[i], classFrames[i]);
+            }
+        }
+        return byClass(max);
+    }
+
+    @Override
+    public Map<Integer, Long> getInboundBytesBySession() {
+        return bySession(SessionTraffic::getInboundBytes);
+    }
+
+    @Override
+    public Map<Integer, Long> getFanOutBytesBySession() {
+        return bySession(SessionTraffic::getFanOutBytes);
+    }
+
+    @Override
+    public Map<Integer, Long> getOutboundBytesBySession() {
+        return bySession(SessionTraffic::getOutboundBytes);
+    }
+
+    @Override
+    public Map<Integer, Long> getRateLimitedBySession() {
+        return bySession(SessionTraffic::getRateLimited);
+    }
+
+    /**
+     * Reads one counter of every open connection
+     *
+     * @param counter counter to read
+     * @return the counter by client ID
+     */
+    private Map<Integer, Long> bySession(ToLongFunction<SessionTraffic> counter) {
+        HashMap<Integer, Long> values = new HashMap<>();
+        for (Map.Entry<Integer, SessionTraffic> entry : sessionTrafficConcurrentHashMap.entrySet()) {
+            values.put(entry.getKey(), counter.applyAsLong(entry.getValue()));
+        }
+        return values;
+    }
+
+    //SETTERS
+
+    /**
+     * Sets where the number of open groups is read from
+     *
+     * @param openGroups number of open groups
+     */
+    public void setOpenGroups(IntSupplier openGroups) {
+        this.openGroups = openGroups;
+    }
+
+    /**
+     * Sets where the number of handshakes in flight is read from
+     *
+     * @param handshakesInFlight connections accepted that have not sent their first frame
+     */
+    public void setHandshakesInFlight(IntSupplier handshakesInFlight) {
+        this.handshakesInFlight = handshakesInFlight;
+    }
+
+    /**
+     * Sets where the number of timeouts waiting on the timer wheel is read from
+     *
+     * @param pendingTimers timeouts that have not fired yet
+     */
+    public void setPendingTimers(IntSupplier pendingTimers) {
+        this.pendingTimers = pendingTimers;
+    }
+
+    /**
+     * Sets where the queue depths of the group loops are read from
+     *
+     * @param groupLoopQueueDepths tasks waiting per group loop
+     */
+    public void setGroupLoopQueueDepths(Supplier<int[]> groupLoopQueueDepths) {
+        this.groupLoopQueueDepths = groupLoopQueueDepths;
+    }
+
+    //MUTATORS
+
+    /**
+     * Counts an accepted connection
+     */
+    public void connectionAccepted() {
+        acceptedConnections.increment();
+    }
+
+    /**
+     * Counts an accept that failed, out of file descriptors for instance, while the server kept listening
+     */
+    public void acceptFailed() {
+        acceptFailures.increment();
+    }
+
+    /**
+     * Counts a client that sent its first frame in time
+     *
+     * @param nanos ns from accepting the connection to its first frame
+     */
+    public void handshakeCompleted(long nanos) {
+        handshakesCompleted.increment();
+        handshakeLatency.record(nanos);
+    }
+
+    /**
+     * Counts a client hung up on for sending nothing in time
+     */
+    public void handshakeTimedOut() {
+        handshakesTimedOut.increment();
+    }
+
+    /**
+     * Counts a connection closed right away because too many handshakes were in flight
+     */
+    public void handshakeRejected() {
+        handshakesRejected.increment();
+    }
+
+    /**
+     * Counts a heartbeat sent to a client that went quiet
+     */
+    public void heartbeatSent() {
+        heartbeatsSent.increment();
+    }
+
+    /**
+     * Counts a session hung up on for staying silent past the idle timeout
+     */
+    public void idleEvicted() {
+        idleEvictions.increment();
+    }
+
+    /**
+     * A connection opened, it counts as a live session until it closes
+     *
+     * @param clientID        client's ID
+     * @param outboundBacklog number of frames waiting to be written to the client, indexed by traffic class ordinal
+     * @return the byte counters of the client
+     */
+    public SessionTraffic sessionOpened(int clientID, Supplier<int[]> outboundBacklog) {
+        SessionTraffic sessionTraffic = new SessionTraffic(rateLimitedAudioFrames, rateLimitedChatMessages);
+        sessionTrafficConcurrentHashMap.put(clientID, sessionTraffic);
+        outboundBacklogConcurrentHashMap.put(clientID, outboundBacklog);
+        return sessionTraffic;
+    }
+
+    /**
+     * A connection closed
+     *
+     * @param clientID client's ID
+     */
+    public void sessionClosed(int clientID) {
+        outboundBacklogConcurrentHashMap.remove(clientID);
+        sessionTrafficConcurrentHashMap.remove(clientID);
+    }
+
+    /**
+     * Counts a frame or bundle written to a client
+     *
+     * @param frames frames written together
+     */
+    public void recordWrite(int frames) {
+        writes.increment();
+        framesWritten.add(frames);
+    }
+
+    /**
+     * Records the time a frame spent between being queued for a client and being written to its socket
+     *
+     * @param trafficClass class the frame was queued in
+     * @param nanos        latency in ns
+     */
+    public void recordFanOutLatency(TrafficClass trafficClass, long nanos) {
+        fanOutLatency.record(nanos);
+        fanOutLatencyByClass[trafficClass.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void resetLatencies() {
+        fanOutLatency.reset();
+        for (LatencyHistogram latencyHistogram : fanOutLatencyByClass) {
+            latencyHistogram.reset();
+        }
+        handshakeLatency.reset();
+    }
+
+    /**
+     * Creates the metrics of a group and publishes them
+     *
+     * @param groupURL URL of the group
+     * @param members  number of members of the group
+     * @return the group's metrics
+     */
+    public GroupMetrics registerGroup(String groupURL, IntSupplier members) {
+        GroupMetrics groupMetrics = new GroupMetrics(groupURL, members);
+        register(groupName(groupURL), groupMetrics);
+        return groupMetrics;
+    }
+
+    /**
+     * Takes the metrics of a closed group down
+     *
+     * @param groupURL URL of the group
+     */
+    public void unregisterGroup(String groupURL) {
+        unregister(groupName(groupURL));
+    }
+
+    /**
+     * Publishes the server wide metrics
+     */
+    public void register() {
+        register(DOMAIN + ":type=Server", this);
+    }
+
+    /**
+     * Takes the server wide metrics down
+     */
+    public void close() {
+        unregister(DOMAIN + ":type=Server");
+    }
+
+    /**
+     * Labels per traffic class values with the class names
+     *
+     * @param values values indexed by traffic class ordinal
+     * @return values by traffic class name
+     */
+    private static Map<String, Integer> byClass(int[] values) {
+        HashMap<String, Integer> byClass = new HashMap<>();
+        for (TrafficClass trafficClass : TRAFFIC_CLASSES) {
+            byClass.put(trafficClass.name(), values[trafficClass.ordinal()]);
+        }
+        return byClass;
+    }
+
+    /**
+     * Returns the MBean name of a group's metrics
+     *
+     * @param groupURL URL of the group
+     * @return MBean name
+     */
+    private static String groupName(String groupURL) {
+        return DOMAIN + ":type=Group,url=" + groupURL;
+    }
+
+    /**
+     * Publishes an MBean, replacing whatever had the name before, the server runs fine without it
+     *
+     * @param name  MBean name
+     * @param mBean MBean
+     */
+    private void register(String name, Object mBean) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(mBean, objectName);
+        } catch (JMException e) {
+            System.out.printf("%nCould not publish metrics %s: %s", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Takes an MBean down if it is there
+     *
+     * @param name MBean name
+     */
+    private void unregister(String name) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+//            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.rossisurna.server.metrics;
+
+import java.util.Map;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Server wide metrics as seen through JMX, registered as com.rossisurna.voip:type=Server
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 1 2019
+ */
+
+public interface ServerMetricsMXBean {
+
+    /**
+     * Get the number of connections accepted since the server started
+     *
+     * @return accepted connections
+     */
+    long getAcceptedConnections();
+
+    /**
+     * Get the number of accepts that failed while the server kept listening, out of file descriptors for instance
+     *
+     * @return failed accepts since the server started
+     */
+    long getAcceptFailures();
+
+    /**
+     * Get the number of writes to clients, a bundle of frames counts once
+     *
+     * @return writes since the server started
+     */
+    long getWrites();
+
+    /**
+     * Get the number of frames written to clients, divided by the writes it tells how well bundling works
+     *
+     * @return frames written since the server started
+     */
+    long getFramesWritten();
+
+    /**
+     * Get the number of clients that sent their first frame within the handshake timeout
+     *
+     * @return completed handshakes since the server started
+     */
+    long getHandshakesCompleted();
+
+    /**
+     * Get the number of clients hung up on for sending nothing within the handshake timeout
+     *
+     * @return timed out handshakes since the server started
+     */
+    long getHandshakesTimedOut();
+
+    /**
+     * Get the number of connections closed right after being accepted because too many handshakes were in flight
+     *
+     * @return rejected connections since the server started
+     */
+    long getHandshakesRejected();
+
+    /**
+     * Get the number of connections accepted that have not sent their first frame yet
+     *
+     * @return handshakes in flight
+     */
+    int getHandshakesInFlight();
+
+    /**
+     * Get the time from accepting a connection to its first frame
+     *
+     * @return handshake latency since the last reset
+     */
+    HistogramSnapshot getHandshakeLatency();
+
+    /**
+     * Get the number of heartbeats sent to clients whose connection had gone quiet
+     *
+     * @return heartbeats sent since the server started
+     */
+    long getHeartbeatsSent();
+
+    /**
+     * Get the number of sessions hung up on for staying silent past the idle timeout
+     *
+     * @return evicted sessions since the server started
+     */
+    long getIdleEvictions();
+
+    /**
+     * Get the number of audio frames dropped because their client went over an audio rate limit
+     *
+     * @return rate limited audio frames since the server started
+     */
+    long getRateLimitedAudioFrames();
+
+    /**
+     * Get the number of chat messages dropped because their client went over the chat rate limit
+     *
+     * @return rate limited chat messages since the server started
+     */
+    long getRateLimitedChatMessages();
+
+    /**
+     * Get the number of timeouts waiting on the server's timer wheel, cancelled ones until they are thrown out
+     *
+     * @return pending timers
+     */
+    int getPendingTimers();
+
+    /**
+     * Get the number of connections currently open
+     *
+     * @return live sessions
+     */
+    int getLiveSessions();
+
+    /**
+     * Get the number of groups currently open
+     *
+     * @return open groups
+     */
+    int getOpenGroups();
+
+    /**
+     * Get the number of tasks waiting on each group loop
+     *
+     * @return queue depth per group loop
+     */
+    int[] getGroupLoopQueueDepths();
+
+    /**
+     * Get the time frames spend between being queued for a client and being written to its socket
+     *
+     * @return fan out latency since the last reset
+     */
+    HistogramSnapshot getFanOutLatency();
+
+    /**
+     * Get the fan out latency of each traffic class, control latency should stay flat however much audio is sent
+     *
+     * @return fan out latency since the last reset by traffic class
+     */
+    Map<String, HistogramSnapshot> getFanOutLatencyByClass();
+
+    /**
+     * Get the frames waiting to be written to each client
+     *
+     * @return outbound backlog by client ID
+     */
+    Map<Integer, Integer> getOutboundBacklog();
+
+    /**
+     * Get the largest number of frames waiting to be written to any one client
+     *
+     * @return largest outbound backlog
+     */
+    int getMaxOutboundBacklog();
+
+    /**
+     * Get the frames of each traffic class waiting to be written to all clients together
+     *
+     * @return outbound backlog by traffic class
+     */
+    Map<String, Integer> getOutboundBacklogByClass();
+
+    /**
+     * Get the largest number of frames of each traffic class waiting to be written to any one client
+     *
+     * @return largest outbound backlog by traffic class
+     */
+    Map<String, Integer> getMaxOutboundBacklogByClass();
+
+    /**
+     * Get the audio and chat bytes each client got into its group
+     *
+     * @return inbound bytes by client ID
+     */
+    Map<Integer, Long> getInboundBytesBySession();
+
+    /**
+     * Get the bytes sent to other members and nodes for each client's packets, every recipient counted, which is
+     * what each client costs the server's fan-out
+     *
+     * @return fan-out bytes by client ID
+     */
+    Map<Integer, Long> getFanOutBytesBySession();
+
+    /**
+     * Get the bytes sent to each client
+     *
+     * @return outbound bytes by client ID
+     */
+    Map<Integer, Long> getOutboundBytesBySession();
+
+    /**
+     * Get the audio frames and chat messages of each client dropped for going over a rate limit
+     *
+     * @return rate limited packets by client ID
+     */
+    Map<Integer, Long> getRateLimitedBySession();
+
+    /**
+     * Starts the latency histograms over
+     */
+    void resetLatencies();
+}
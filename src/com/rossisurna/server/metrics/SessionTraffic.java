@@ -0,0 +1,124 @@
+package com.rossisurna.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Byte counters of one client, created by ServerMetrics when its connection opens. Inbound counts the audio and chat
+ * the client got into its group, fan-out what the group then sent to everyone else because of it, every recipient
+ * counted, and outbound what was sent to the client itself. Fan-out is what a client costs the server, so sorting the
+ * sessions by it shows who is using up the capacity. Traffic dropped for going over a rate limit is counted here and
+ * in the server's totals.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 11 2019
+ */
+
+public final class SessionTraffic {
+
+    //Counters
+    private final LongAdder inboundBytes = new LongAdder(); //audio and chat bytes let into the group
+    private final LongAdder fanOutBytes = new LongAdder(); //bytes sent to other members and nodes for the client's packets
+    private final LongAdder outboundBytes = new LongAdder(); //bytes sent to the client
+    private final LongAdder rateLimited = new LongAdder(); //audio frames and chat messages dropped for going over a limit
+    //Server totals
+    private final LongAdder rateLimitedAudioFrames; //audio frames of all clients dropped for going over a limit
+    private final LongAdder rateLimitedChatMessages; //chat messages of all clients dropped for going over a limit
+
+    /**
+     * Constructor that takes in the server's totals the drops are added to
+     *
+     * @param rateLimitedAudioFrames  audio frames dropped by all clients
+     * @param rateLimitedChatMessages chat messages dropped by all clients
+     */
+    SessionTraffic(LongAdder rateLimitedAudioFrames, LongAdder rateLimitedChatMessages) {
+        this.rateLimitedAudioFrames = rateLimitedAudioFrames;
+        this.rateLimitedChatMessages = rateLimitedChatMessages;
+    }
+
+    //GETTERS
+
+    /**
+     * Get the audio and chat bytes the client got into its group
+     *
+     * @return inbound bytes
+     */
+    public long getInboundBytes() {
+        return inboundBytes.sum();
+    }
+
+    /**
+     * Get the bytes sent to other members and nodes for the client's packets
+     *
+     * @return fan-out bytes
+     */
+    public long getFanOutBytes() {
+        return fanOutBytes.sum();
+    }
+
+    /**
+     * Get the bytes sent to the client
+     *
+     * @return outbound bytes
+     */
+    public long getOutboundBytes() {
+        return outboundBytes.sum();
+    }
+
+    /**
+     * Get the audio frames and chat messages of the client dropped for going over a limit
+     *
+     * @return rate limited packets
+     */
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    //MUTATORS
+
+    /**
+     * Counts audio or chat the client got into its group
+     *
+     * @param bytes bytes of audio or chat
+     */
+    public void received(int bytes) {
+        inboundBytes.add(bytes);
+    }
+
+    /**
+     * Counts what the group sent out for one of the client's packets
+     *
+     * @param bytes bytes sent, every recipient counted
+     */
+    public void fannedOut(long bytes) {
+        fanOutBytes.add(bytes);
+    }
+
+    /**
+     * Counts a frame sent to the client
+     *
+     * @param bytes bytes of the frame
+     */
+    public void sent(int bytes) {
+        outboundBytes.add(bytes);
+    }
+
+    /**
+     * Counts an audio frame dropped for going over a limit
+     */
+    public void audioRateLimited() {
+        rateLimited.increment();
+        rateLimitedAudioFrames.increment();
+    }
+
+    /**
+     * Counts a chat message dropped for going over a limit
+     */
+    public void chatRateLimited() {
+        rateLimited.increment();
+        rateLimitedChatMessages.increment();
+    }
+}
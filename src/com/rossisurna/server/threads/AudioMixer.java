@@ -0,0 +1,245 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.metrics.GroupMetrics;
+import com.rossisurna.util.AudioCodec;
+import com.rossisurna.util.AudioPacket;
+import com.rossisurna.util.FrameCodec;
+import com.rossisurna.util.Packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Server side mixer of a group that mixes its audio (MCU mode). Instead of relaying every talker's audio packets to
+ * every member, the group hands them to the mixer, which decodes them into a buffer per talker. The group's loop
+ * ticks the mixer every 20 ms and it adds
+ * up 20 ms of every active talker and sends each member one audio packet with everyone but the member itself, so a
+ * client only ever plays one stream no matter how many people talk. Mixed packets come from client ID 0.
+ * <p>
+ * Members that are not talking all hear the same mix, which is encoded once and shared. A talker hears the mix minus
+ * its own voice, which is the full sum with its own samples taken back out. All mixing buffers are allocated up front,
+ * a tick only allocates the encoded packets it sends. The mixer only ever runs on its group's loop.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 26 2019
+ */
+
+public class AudioMixer {
+
+    //Timing
+    static final int TICK_MILLIS = 20; //length of one mixed frame, the group ticks the mixer this often
+    private static final int TICK_SAMPLES = (int) AudioPacket.audioFormat.getSampleRate() * TICK_MILLIS / 1000; //samples in one mixed frame
+    private static final long TALKER_TIMEOUT = 5000; //ms of silence before a talker's buffer is released
+    //Sizes
+    private static final int TALKER_BUFFER_SAMPLES = 1 << 14; //about one second of audio buffered per talker
+    private static final int MAX_DECODED_BYTES = 1 << 16; //largest decoded audio packet accepted
+    //Protocol Codes
+    private final String AP = "AP"; //audio packet
+    //Lists
+    private final Map<Integer, Session> sessionHashMap; //members of the group, each one gets a mix
+    private final GroupMetrics groupMetrics; //where the mixed packets are counted
+    private final ArrayList<Talker> talkerArrayList = new ArrayList<>(); //everyone that talked recently
+    //Mixing buffers
+    private final AudioCodec audioCodec = new AudioCodec(); //decodes incoming and encodes mixed audio
+    private final byte[] decodeBuffer = new byte[MAX_DECODED_BYTES]; //decoded audio of one incoming packet
+    private final int[] mix = new int[TICK_SAMPLES]; //sum of all active talkers this tick
+    private final byte[] pcm = new byte[TICK_SAMPLES * 2]; //mix of one listener, 16 bit little endian
+    private int sequence = 0; //sequence number of the mixed packets
+
+    /**
+     * Constructor that takes in the members of the group and the group's metrics
+     *
+     * @param sessionHashMap members of the group
+     * @param groupMetrics  where the mixed packets are counted
+     */
+    AudioMixer(Map<Integer, Session> sessionHashMap, GroupMetrics groupMetrics) {
+        this.sessionHashMap = sessionHashMap;
+        this.groupMetrics = groupMetrics;
+    }
+
+    /**
+     * Decodes an audio packet of a member into the member's buffer
+     *
+     * @param packet audio packet
+     */
+    void addAudioPacket(Packet packet) {
+        if (!(packet.getSubPacket() instanceof AudioPacket)) {
+            return;
+        }
+
+        try {
+            int length = audioCodec.decompress(((AudioPacket) packet.getSubPacket()).getAudioDataInByteForm(), decodeBuffer);
+            talker(packet.getSenderID()).write(decodeBuffer, length);
+        } catch (IOException e) {
+            //bad audio, discard packet
+//            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Mixes and sends one frame
+     */
+    void tick() {
+        //add up 20 ms of every talker that has audio buffered
+        Arrays.fill(mix, 0);
+        int activeTalkers = 0;
+        long now = System.currentTimeMillis();
+        for (int i = talkerArrayList.size() - 1; i >= 0; i--) {
+            Talker talker = talkerArrayList.get(i);
+            if (talker.nextFrame()) {
+                for (int s = 0; s < TICK_SAMPLES; s++) {
+                    mix[s] += talker.frame[s];
+                }
+                activeTalkers++;
+            } else if (now - talker.lastHeard > TALKER_TIMEOUT) {
+                talkerArrayList.remove(i);
+            }
+        }
+        if (activeTalkers == 0) {
+            return;
+        }
+
+        //everyone gets the mix without their own voice, members that are quiet share one encoded packet
+        Packet sharedPacket = null;
+        ByteBuffer sharedFrame = null;
+        try {
+            for (Session session : sessionHashMap.values()) {
+                Talker talker = activeTalker(session.getClientID());
+                if (talker == null) {
+                    if (sharedPacket == null) {
+                        sharedPacket = mixPacket(null);
+                        sharedFrame = FrameCodec.encode(sharedPacket).asReadOnlyBuffer();
+                    }
+                    groupMetrics.recordPacket(AP, session.sendBroadcastDataToClient(sharedPacket, sharedFrame));
+                } else if (activeTalkers > 1) {
+                    Packet packet = mixPacket(talker.frame);
+                    groupMetrics.recordPacket(AP, session.sendBroadcastDataToClient(packet, FrameCodec.encode(packet).asReadOnlyBuffer()));
+                }
+            }
+        } catch (IOException e) {
+            System.out.printf("%nMixer could not encode a mixed packet: %s", e.getMessage());
+        }
+        sequence++;
+    }
+
+    /**
+     * Builds the mixed audio packet for one listener
+     *
+     * @param leaveOut samples of the listener's own voice to take out of the mix, null for the full mix
+     * @return audio packet from client ID 0
+     */
+    private Packet mixPacket(short[] leaveOut) {
+        for (int s = 0; s < TICK_SAMPLES; s++) {
+            int sample = leaveOut == null ? mix[s] : mix[s] - leaveOut[s];
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            pcm[2 * s] = (byte) sample;
+            pcm[2 * s + 1] = (byte) (sample >> 8);
+        }
+        return new Packet(AP, 0, new AudioPacket(audioCodec.compress(pcm, 0, pcm.length), sequence));
+    }
+
+    /**
+     * Finds the talker of a client, creating it if it has not talked recently
+     *
+     * @param clientID client's ID
+     * @return the talker
+     */
+    private Talker talker(int clientID) {
+        for (Talker talker : talkerArrayList) {
+            if (talker.clientID == clientID) {
+                return talker;
+            }
+        }
+        Talker talker = new Talker(clientID);
+        talkerArrayList.add(talker);
+        return talker;
+    }
+
+    /**
+     * Finds the talker of a client if it contributed to this tick
+     *
+     * @param clientID client's ID
+     * @return the talker, or null if the client is quiet
+     */
+    private Talker activeTalker(int clientID) {
+        for (int i = 0; i < talkerArrayList.size(); i++) {
+            Talker talker = talkerArrayList.get(i);
+            if (talker.clientID == clientID) {
+                return talker.active ? talker : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Buffered audio of one member that talked recently
+     */
+    private static final class Talker {
+        private final int clientID; //client's ID
+        private final short[] buffer = new short[TALKER_BUFFER_SAMPLES]; //ring buffer of decoded samples
+        private final short[] frame = new short[TICK_SAMPLES]; //samples contributed to the current tick
+        private int readIndex = 0; //index of the oldest buffered sample
+        private int count = 0; //number of buffered samples
+        private boolean active = false; //whether the talker contributed to the current tick
+        private long lastHeard = System.currentTimeMillis(); //last time audio arrived
+
+        /**
+         * Constructor that takes in the client's ID
+         *
+         * @param clientID client's ID
+         */
+        private Talker(int clientID) {
+            this.clientID = clientID;
+        }
+
+        /**
+         * Buffers decoded 16 bit little endian audio, dropping the oldest samples if the buffer is full
+         *
+         * @param pcm    decoded audio
+         * @param length number of bytes of audio
+         */
+        private void write(byte[] pcm, int length) {
+            lastHeard = System.currentTimeMillis();
+            for (int i = 0; i + 1 < length; i += 2) {
+                if (count == buffer.length) {
+                    readIndex = (readIndex + 1) % buffer.length;
+                    count--;
+                }
+                buffer[(readIndex + count) % buffer.length] = (short) ((pcm[i] & 0xff) | pcm[i + 1] << 8);
+                count++;
+            }
+        }
+
+        /**
+         * Moves the next 20 ms of audio into frame, padding with silence if less is buffered
+         *
+         * @return true if the talker had any audio buffered
+         */
+        private boolean nextFrame() {
+            active = count > 0;
+            if (!active) {
+                return false;
+            }
+
+            int samples = Math.min(count, TICK_SAMPLES);
+            for (int s = 0; s < samples; s++) {
+                frame[s] = buffer[readIndex];
+                readIndex = (readIndex + 1) % buffer.length;
+            }
+            Arrays.fill(frame, samples, TICK_SAMPLES, (short) 0);
+            count -= samples;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.application.OutboundPolicy;
+import com.rossisurna.server.metrics.ServerMetrics;
+import com.rossisurna.server.application.ServerMode;
+import com.rossisurna.util.FrameCodec;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Connection that owns a reader and a writer thread of its own, used by the thread per connection server modes. The
+ * reader blocks on the channel until a whole frame is in, the writer blocks on the outbound queue until there is
+ * something to send, so neither ever polls.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 21 2019
+ */
+
+public class BlockingConnection extends Connection {
+
+    //Socket handling
+    private final SocketChannel channel; //the client's channel, in blocking mode
+
+    /**
+     * Constructor that takes in the blocking channel and the client's ID
+     *
+     * @param channel        client's channel, in blocking mode
+     * @param clientID       client's ID
+     * @param outboundPolicy limits of the outbound queue
+     * @param serverMetrics  where the connection reports its backlog and write latency
+     */
+    BlockingConnection(SocketChannel channel, int clientID, OutboundPolicy outboundPolicy, ServerMetrics serverMetrics) {
+        super(clientID, outboundPolicy, serverMetrics);
+        this.channel = channel;
+    }
+
+    /**
+     * Launches the reader and writer threads using the server mode's kind of thread
+     *
+     * @param serverMode mode deciding between platform and virtual threads
+     */
+    void start(ServerMode serverMode) {
+        serverMode.startThread(this::readLoop, "Reader-" + getClientID());
+        serverMode.startThread(this::writeLoop, "Writer-" + getClientID());
+    }
+
+    /**
+     * Nothing to do, the writer thread is woken up by the queue itself
+     */
+    @Override
+    protected void wakeWriter() {
+    }
+
+    /**
+     * Closes the connection once everything already queued has been written
+     */
+    @Override
+    public void close() {
+        if (!closeRequested) {
+            closeRequested = true;
+            if (!outboundQueue.finish()) {
+                //too far behind to write the rest, close right away
+                closeChannel();
+            }
+        }
+    }
+
+    /**
+     * Reads whole frames with blocking reads and dispatches them until the channel breaks
+     */
+    private void readLoop() {
+        ByteBuffer header = ByteBuffer.allocate(FrameCodec.HEADER_LENGTH);
+
+        try {
+            while (!closed) {
+                header.clear();
+                readFully(header);
+                int length = header.getInt(0);
+                if (length < 0 || length > FrameCodec.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(payload);
+                payload.flip();
+                dispatch(FrameCodec.decode(payload));
+            }
+        } catch (IOException e) {
+            //broken stream or garbage on the wire, drop the client
+            lost();
+        } catch (RuntimeException e) {
+            //a packet the session could not handle, drop the client rather than leave it without a reader
+            System.out.printf("%nClient %d sent a packet that could not be handled, disconnecting: %s", getClientID(), e);
+            lost();
+        }
+    }
+
+    /**
+     * Waits for frames on the outbound queue and writes them until closed. Once a frame is in, the writer waits for
+     * the rest of the bundle window so whatever else is queued meanwhile goes out in the same write.
+     */
+    private void writeLoop() {
+        try {
+            while (!closed) {
+                OutboundQueue.OutboundFrame outboundFrame = outboundQueue.take();
+                if (outboundFrame == null) {
+                    //close was asked for and everything queued before it was written
+                    closeChannel();
+                    return;
+                }
+
+                long window = outboundFrame.enqueuedNanos + bundleWindowNanos - System.nanoTime();
+                if (window > 0) {
+                    TimeUnit.NANOSECONDS.sleep(window);
+                }
+                outboundBundle.fill(outboundFrame, outboundQueue);
+                while (!outboundBundle.write(channel)) {
+                    //a blocking write takes everything, unless it stopped short for some reason
+                }
+                bundleWritten();
+            }
+        } catch (IOException e) {
+            lost();
+        } catch (InterruptedException e) {
+            closeChannel();
+        }
+    }
+
+    /**
+     * Blocks until the buffer is full
+     *
+     * @param buffer buffer to fill
+     * @throws IOException if the channel closed first
+     */
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Channel closed");
+            }
+        }
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        return channel.socket().getInetAddress();
+    }
+
+    /**
+     * Closes the channel which also wakes up the reader, and forgets all queued frames
+     */
+    @Override
+    protected void closeChannel() {
+        closed = true;
+        outboundQueue.clear();
+        serverMetrics.sessionClosed(getClientID());
+        //wake the writer if it is waiting
+        outboundQueue.finish();
+        try {
+            channel.close();
+        } catch (IOException e) {
+//            e.printStackTrace();
+        }
+    }
+}
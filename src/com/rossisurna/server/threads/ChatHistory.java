@@ -0,0 +1,140 @@
+package com.rossisurna.server.threads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Chat history of a group, a ring buffer of the last messages. Every message gets a sequence number, counted from 0
+ * when the group was created, and once the ring is full the oldest message is overwritten. Only the group's loop
+ * appends, but any thread can read, a reader that races the writer skips the slots that were overwritten under it.
+ * <p>
+ * When the group has a chat log every message is also appended to it, and messages that already left the ring are
+ * read back from the log. Their text stays in UTF-8 in the log's mapping and is copied from there into the history
+ * page, it is never decoded on the server.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 29 2019
+ */
+
+public class ChatHistory {
+
+    //Sizes
+    static final int DEFAULT_CAPACITY = 1024; //messages kept per group
+    //Ring
+    private final AtomicReferenceArray<ChatMessage> ring; //slot of a message is its sequence number modulo the capacity
+    private volatile long nextSequence = 0; //sequence number of the next message, written by the group loop only
+    private final ChatLog chatLog; //log on disk, null if history only lives in memory
+
+    /**
+     * Constructor that takes in the number of messages to keep in memory and the log to keep all of them in
+     *
+     * @param capacity number of messages to keep in memory
+     * @param chatLog  log on disk, null if history only lives in memory
+     */
+    ChatHistory(int capacity, ChatLog chatLog) {
+        this.ring = new AtomicReferenceArray<>(Math.max(1, capacity));
+        this.chatLog = chatLog;
+    }
+
+    /**
+     * Adds a message to the history, group loop only
+     *
+     * @param senderID ID of the client that sent the message
+     * @param text     message
+     * @return sequence number of the message
+     */
+    long append(int senderID, String text) {
+        long sequence = nextSequence;
+        ring.set((int) (sequence % ring.length()), new ChatMessage(sequence, senderID, text));
+        nextSequence = sequence + 1;
+        if (chatLog != null) {
+            chatLog.append(sequence, senderID, text);
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the newest messages, any thread
+     *
+     * @param maxMessages most messages to return
+     * @return messages oldest first
+     */
+    List<ChatMessage> latest(int maxMessages) {
+        return before(Long.MAX_VALUE, maxMessages);
+    }
+
+    /**
+     * Returns the messages right before a sequence number that are still in the ring or the log, any thread
+     *
+     * @param beforeSequence sequence number the messages come before
+     * @param maxMessages    most messages to return
+     * @return messages oldest first, empty if there is nothing older
+     */
+    List<ChatMessage> before(long beforeSequence, int maxMessages) {
+        long next = nextSequence;
+        long end = Math.min(beforeSequence, next);
+        long start = Math.max(0, end - maxMessages);
+
+        ArrayList<ChatMessage> chatMessageArrayList = new ArrayList<>();
+        if (start < next - ring.length()) {
+            //part of the page already left the ring, the whole page comes from the log
+            if (chatLog != null) {
+                chatLog.read(start, end, chatMessageArrayList);
+            }
+            return chatMessageArrayList;
+        }
+        for (long sequence = start; sequence < end; sequence++) {
+            ChatMessage chatMessage = ring.get((int) (sequence % ring.length()));
+            //the writer may have lapped this slot since next was read, the message is gone then
+            if (chatMessage != null && chatMessage.sequence == sequence) {
+                chatMessageArrayList.add(chatMessage);
+            }
+        }
+        return chatMessageArrayList;
+    }
+
+    /**
+     * Get the sequence number the next message will get
+     *
+     * @return next sequence number, also the number of messages ever sent to the group
+     */
+    long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Closes the log, group loop only
+     */
+    void close() {
+        if (chatLog != null) {
+            chatLog.close();
+        }
+    }
+
+    /**
+     * One chat message, never changes once created
+     */
+    static final class ChatMessage {
+        final long sequence; //position in the group's history
+        final int senderID; //ID of the client that sent it
+        final Object text; //message, a String, or a read only ByteBuffer of its UTF-8 in the log's mapping
+
+        /**
+         * Constructor that takes in the sequence number, sender, and message
+         *
+         * @param sequence position in the group's history
+         * @param senderID ID of the client that sent it
+         * @param text     message, a String, or a read only ByteBuffer of its UTF-8 in the log's mapping
+         */
+        ChatMessage(long sequence, int senderID, Object text) {
+            this.sequence = sequence;
+            this.senderID = senderID;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.rossisurna.server.threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Append only log of a group's chat messages on disk. The log is a list of segments, each one a file of fixed size
+ * mapped into memory, so an append is a copy into the mapping and never a system call on the group's loop. Once a
+ * segment is full the next one is started, and the oldest segments are deleted once the log is over its size limit or
+ * they are older than the age limit.
+ * <p>
+ * Record layout: [int32 length][int64 sequence][int32 senderID][UTF-8 text], the length counts everything after itself
+ * and a length of 0 marks the end of a segment. Next to every segment is a sparse index with one entry
+ * [int32 sequence - base sequence][int32 position] per 4 KB of records, so a read finds its first record with a binary
+ * search and a short scan. A read hands out read only slices of the mapping rather than copies of the text, and as a
+ * record never changes once written a slice stays valid even after its segment was deleted. The group loop appends
+ * while any other thread may read, a record is only visible to readers once it has been fully written.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 30 2019
+ */
+
+public class ChatLog {
+
+    //Layout
+    private static final int RECORD_HEADER_BYTES = 16; //length, sequence, and senderID of a record
+    private static final int INDEX_ENTRY_BYTES = 8; //relative sequence and position of an index entry
+    private static final int INDEX_INTERVAL_BYTES = 4096; //bytes of records between index entries
+    //Log data
+    private final ChatLogStore chatLogStore; //store the log is told it closed to
+    private final String groupURL; //group the log belongs to
+    private final File directory; //directory of the group's segments
+    private final int segmentBytes; //size of a segment file
+    private final long maxBytes; //bytes of records kept before the oldest segments are deleted
+    private final long maxAgeMillis; //ms a segment is kept after its last append
+    //Segments
+    private volatile Segment[] segments = new Segment[0]; //oldest first, the last one is appended to
+    //Util
+    private boolean failed = false; //the disk failed, the log stops appending, group loop only
+
+    /**
+     * Constructor that takes in where and how the log keeps its segments
+     *
+     * @param chatLogStore store the log belongs to
+     * @param groupURL     group the log belongs to
+     * @param directory    directory of the group's segments, must exist
+     * @param segmentBytes size of a segment file
+     * @param maxBytes     bytes of records kept before the oldest segments are deleted
+     * @param maxAgeMillis ms a segment is kept after its last append
+     */
+    ChatLog(ChatLogStore chatLogStore, String groupURL, File directory, int segmentBytes, long maxBytes, long maxAgeMillis) {
+        this.chatLogStore = chatLogStore;
+        this.groupURL = groupURL;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Appends a message to the log, group loop only
+     *
+     * @param sequence sequence number of the message, higher than any before it
+     * @param senderID ID of the client that sent the message
+     * @param text     message
+     */
+    void append(long sequence, int senderID, String text) {
+        if (failed) {
+            return;
+        }
+
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        int recordBytes = RECORD_HEADER_BYTES + utf8.length;
+        if (recordBytes > segmentBytes) {
+            //would not even fit an empty segment, it only stays in memory
+            return;
+        }
+
+        try {
+            Segment active = segments.length == 0 ? null : segments[segments.length - 1];
+            if (active == null || active.committedPosition + recordBytes > segmentBytes) {
+                if (active != null) {
+                    active.seal();
+                }
+                active = roll(sequence);
+            }
+            active.append(sequence, senderID, utf8);
+            expire();
+        } catch (IOException e) {
+            failed = true;
+            System.out.printf("%nChat log of group %s failed, history stays in memory only: %s", groupURL, e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the messages with sequence numbers in a range that are still in the log, any thread
+     *
+     * @param fromSequence    first sequence number, inclusive
+     * @param toSequence      last sequence number, exclusive
+     * @param chatMessageList list the messages are added to, oldest first
+     */
+    void read(long fromSequence, long toSequence, List<ChatHistory.ChatMessage> chatMessageList) {
+        Segment[] current = segments;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].baseSequence >= toSequence) {
+                break;
+            }
+            //the segment ends before the range starts
+            if (i + 1 < current.length && current[i + 1].baseSequence <= fromSequence) {
+                continue;
+            }
+            current[i].read(fromSequence, toSequence, chatMessageList);
+        }
+    }
+
+    /**
+     * Starts a new segment, group loop only
+     *
+     * @param baseSequence sequence number of the segment's first message
+     * @return the new segment
+     * @throws IOException if the segment files could not be created
+     */
+    private Segment roll(long baseSequence) throws IOException {
+        Segment segment = new Segment(directory, baseSequence, segmentBytes);
+        Segment[] rolled = Arrays.copyOf(segments, segments.length + 1);
+        rolled[segments.length] = segment;
+        segments = rolled;
+        return segment;
+    }
+
+    /**
+     * Deletes the oldest segments while the log is over its size limit or they are too old, the segment being
+     * appended to is always kept, group loop only
+     */
+    private void expire() {
+        long totalBytes = 0;
+        for (Segment segment : segments) {
+            totalBytes += segment.committedPosition;
+        }
+
+        long now = System.currentTimeMillis();
+        while (segments.length > 1 && (totalBytes > maxBytes || now - segments[0].lastAppendMillis > maxAgeMillis)) {
+            Segment oldest = segments[0];
+            totalBytes -= oldest.committedPosition;
+            segments = Arrays.copyOfRange(segments, 1, segments.length);
+            //a reader still holding the mapping keeps reading it, the files are gone once it lets go
+            oldest.delete();
+        }
+    }
+
+    /**
+     * Closes the log, whatever was written stays on disk until it is too old, group loop only
+     */
+    void close() {
+        if (segments.length > 0) {
+            segments[segments.length - 1].seal();
+        }
+        chatLogStore.closed(groupURL);
+    }
+
+    /**
+     * One segment of the log, a mapped log file and its mapped sparse index
+     */
+    private static final class Segment {
+        private final long baseSequence; //sequence number of the first message
+        private final File logFile; //records
+        private final File indexFile; //sparse index
+        private final MappedByteBuffer log; //mapping of the log file
+        private final MappedByteBuffer index; //mapping of the index file
+        private final ByteBuffer writer; //view of the log the text is copied in with, group loop only
+        private final int[] indexSequences; //relative sequence of every index entry, same as on disk
+        private final int[] indexPositions; //position of every index entry, same as on disk
+        private volatile int indexCount = 0; //index entries readers may use
+        private volatile int committedPosition = 0; //bytes of complete records readers may use
+        private volatile long lastAppendMillis = System.currentTimeMillis(); //time of the last append
+        private int lastIndexedPosition = -INDEX_INTERVAL_BYTES; //position of the last index entry
+
+        /**
+         * Constructor that creates and maps the segment's files
+         *
+         * @param directory    directory of the segments
+         * @param baseSequence sequence number of the first message
+         * @param segmentBytes size of the log file
+         * @throws IOException if the files could not be created or mapped
+         */
+        private Segment(File directory, long baseSequence, int segmentBytes) throws IOException {
+            this.baseSequence = baseSequence;
+            String name = String.format("%020d", baseSequence);
+            this.logFile = new File(directory, name + ".log");
+            this.indexFile = new File(directory, name + ".idx");
+
+            int indexEntries = segmentBytes / INDEX_INTERVAL_BYTES + 1;
+            this.log = map(logFile, segmentBytes);
+            this.index = map(indexFile, indexEntries * INDEX_ENTRY_BYTES);
+            this.writer = log.duplicate();
+            this.indexSequences = new int[indexEntries];
+            this.indexPositions = new int[indexEntries];
+        }
+
+        /**
+         * Creates a file of a fixed size and maps it, the mapping stays valid after the file is closed
+         *
+         * @param file  file to create
+         * @param bytes size of the file
+         * @return mapping of the whole file
+         * @throws IOException if the file could not be created or mapped
+         */
+        private static MappedByteBuffer map(File file, int bytes) throws IOException {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(bytes);
+                return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+        }
+
+        /**
+         * Writes one record and publishes it to readers, the caller made sure it fits
+         *
+         * @param sequence sequence number of the message
+         * @param senderID ID of the client that sent the message
+         * @param utf8     message in UTF-8
+         */
+        private void append(long sequence, int senderID, byte[] utf8) {
+            int position = committedPosition;
+            log.putLong(position + 4, sequence);
+            log.putInt(position + 12, senderID);
+            writer.position(position + RECORD_HEADER_BYTES);
+            writer.put(utf8);
+            log.putInt(position, RECORD_HEADER_BYTES - 4 + utf8.length);
+
+            if (position - lastIndexedPosition >= INDEX_INTERVAL_BYTES) {
+                int entry = indexCount;
+                int relativeSequence = (int) (sequence - baseSequence);
+                index.putInt(entry * INDEX_ENTRY_BYTES, relativeSequence);
+                index.putInt(entry * INDEX_ENTRY_BYTES + 4, position);
+                indexSequences[entry] = relativeSequence;
+                indexPositions[entry] = position;
+                lastIndexedPosition = position;
+                indexCount = entry + 1;
+            }
+
+            lastAppendMillis = System.currentTimeMillis();
+            committedPosition = position + RECORD_HEADER_BYTES + utf8.length;
+        }
+
+        /**
+         * Reads the messages with sequence numbers in a range, any thread
+         *
+         * @param fromSequence    first sequence number, inclusive
+         * @param toSequence      last sequence number, exclusive
+         * @param chatMessageList list the messages are added to, oldest first
+         */
+        private void read(long fromSequence, long toSequence, List<ChatHistory.ChatMessage> chatMessageList) {
+            int end = committedPosition;
+            int position = indexLookup(fromSequence);
+
+            //a view of its own, every message gets a slice of it over its text
+            ByteBuffer view = log.asReadOnlyBuffer();
+            while (position < end) {
+                int length = view.getInt(position);
+                long sequence = view.getLong(position + 4);
+                if (sequence >= toSequence) {
+                    break;
+                }
+                if (sequence >= fromSequence) {
+                    int senderID = view.getInt(position + 12);
+                    view.limit(position + 4 + length).position(position + RECORD_HEADER_BYTES);
+                    chatMessageList.add(new ChatHistory.ChatMessage(sequence, senderID, view.slice()));
+                    view.clear();
+                }
+                position += 4 + length;
+            }
+        }
+
+        /**
+         * Finds the position of the last indexed record at or before a sequence number
+         *
+         * @param sequence sequence number looked for
+         * @return position to start scanning at
+         */
+        private int indexLookup(long sequence) {
+            int low = 0;
+            int high = indexCount - 1;
+            int position = 0;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (baseSequence + indexSequences[middle] <= sequence) {
+                    position = indexPositions[middle];
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return position;
+        }
+
+        /**
+         * Cuts the files down to what was written once nothing more will be appended
+         */
+        private void seal() {
+            try (RandomAccessFile logRandomAccessFile = new RandomAccessFile(logFile, "rw");
+                 RandomAccessFile indexRandomAccessFile = new RandomAccessFile(indexFile, "rw")) {
+                logRandomAccessFile.setLength(committedPosition);
+                indexRandomAccessFile.setLength((long) indexCount * INDEX_ENTRY_BYTES);
+            } catch (IOException e) {
+                //some systems do not shrink a mapped file, it simply stays full size with a 0 length at the end
+//                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Deletes the segment's files
+         */
+        private void delete() {
+            if (!logFile.delete() || !indexFile.delete()) {
+                logFile.deleteOnExit();
+                indexFile.deleteOnExit();
+            }
+        }
+    }
+}
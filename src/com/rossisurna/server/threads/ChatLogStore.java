@@ -0,0 +1,163 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Directory every group writes its chat log to, one sub directory per group URL. Logs stay on disk after their group
+ * closes or the server stops, and are deleted once their last append is older than the age limit.
+ * <p>
+ * A log is never read back after a restart. Groups only live in memory, so once the server stops no group will ever
+ * have that log's URL again except by chance, and a new group that gets it must not see an earlier group's chat. The
+ * log a group finds under its URL is therefore deleted when it opens its own. What the logs give is scroll back past
+ * the in memory ring while the group is open, and a record of the chat on disk until the age limit.
+ * <p>
+ * Off unless configured through system properties, for example -Dvoip.chat.logDir=/var/lib/voip/chat, without a
+ * directory history only lives in memory.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 30 2019
+ */
+
+public class ChatLogStore {
+
+    //System properties
+    public static final String DIRECTORY_PROPERTY = "voip.chat.logDir"; //directory of the logs, missing or empty for none
+    public static final String SEGMENT_BYTES_PROPERTY = "voip.chat.segmentBytes"; //size of a segment file
+    public static final String MAX_BYTES_PROPERTY = "voip.chat.maxBytes"; //bytes kept per group
+    public static final String MAX_AGE_HOURS_PROPERTY = "voip.chat.maxAgeHours"; //hours kept after the last append
+    //Defaults
+    private static final int DEFAULT_SEGMENT_BYTES = 8 << 20; //8 MB
+    private static final long DEFAULT_MAX_BYTES = 64 << 20; //64 MB
+    private static final long DEFAULT_MAX_AGE_HOURS = 24 * 7; //a week
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1); //ms between looks at closed logs
+    //Store data
+    private final File directory; //directory of the logs
+    private final int segmentBytes; //size of a segment file
+    private final long maxBytes; //bytes kept per group
+    private final long maxAgeMillis; //ms kept after the last append
+    private final Set<String> openURLSet = ConcurrentHashMap.newKeySet(); //URLs of the logs still being written
+    private volatile long lastSweepMillis = 0; //last time the closed logs were looked at
+
+    /**
+     * Constructor that takes in where and how logs are kept
+     *
+     * @param directory    directory of the logs
+     * @param segmentBytes size of a segment file
+     * @param maxBytes     bytes kept per group
+     * @param maxAgeMillis ms kept after the last append
+     * @throws IOException if the directory could not be created
+     */
+    public ChatLogStore(File directory, int segmentBytes, long maxBytes, long maxAgeMillis) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Creates the store configured by the system properties
+     *
+     * @return the store, or null if logs are turned off or the directory is unusable
+     */
+    public static ChatLogStore fromSystemProperties() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY, "").trim();
+        if (directory.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return new ChatLogStore(new File(directory),
+                    (int) SystemProperties.longProperty(SEGMENT_BYTES_PROPERTY, DEFAULT_SEGMENT_BYTES),
+                    SystemProperties.longProperty(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES),
+                    TimeUnit.HOURS.toMillis(SystemProperties.longProperty(MAX_AGE_HOURS_PROPERTY, DEFAULT_MAX_AGE_HOURS)));
+        } catch (IOException e) {
+            System.out.printf("%nChat logs turned off, history stays in memory only: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens a new log for a group, deleting whatever an earlier group with the same URL left behind, before this run
+     * of the server or during it
+     *
+     * @param groupURL URL of the group
+     * @return the group's log
+     * @throws IOException if the group's directory could not be created
+     */
+    ChatLog open(String groupURL) throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - lastSweepMillis > SWEEP_INTERVAL_MILLIS) {
+            lastSweepMillis = now;
+            sweep(now);
+        }
+
+        File groupDirectory = new File(directory, groupURL);
+        deleteFiles(groupDirectory, Long.MAX_VALUE);
+        if (!groupDirectory.isDirectory() && !groupDirectory.mkdirs()) {
+            throw new IOException("cannot create " + groupDirectory);
+        }
+
+        openURLSet.add(groupURL);
+        return new ChatLog(this, groupURL, groupDirectory, segmentBytes, maxBytes, maxAgeMillis);
+    }
+
+    /**
+     * A log was closed, from now on it is only kept until it is too old
+     *
+     * @param groupURL URL of the log's group
+     */
+    void closed(String groupURL) {
+        openURLSet.remove(groupURL);
+    }
+
+    /**
+     * Deletes the segments of closed logs that are too old and the directories left empty
+     *
+     * @param now current time in ms
+     */
+    private void sweep(long now) {
+        File[] groupDirectories = directory.listFiles(File::isDirectory);
+        if (groupDirectories == null) {
+            return;
+        }
+
+        for (File groupDirectory : groupDirectories) {
+            if (!openURLSet.contains(groupDirectory.getName())) {
+                deleteFiles(groupDirectory, now - maxAgeMillis);
+            }
+        }
+    }
+
+    /**
+     * Deletes the files of a directory last changed before a time, and the directory if that leaves it empty
+     *
+     * @param groupDirectory directory of a group's log
+     * @param before         time in ms, files changed at or after it are kept
+     */
+    private static void deleteFiles(File groupDirectory, long before) {
+        File[] files = groupDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (file.lastModified() < before) {
+                file.delete();
+            }
+        }
+        groupDirectory.delete();
+    }
+}
@@ -0,0 +1,298 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.application.OutboundPolicy;
+import com.rossisurna.server.application.OutboundPolicy.TrafficClass;
+import com.rossisurna.server.metrics.GroupMetrics;
+import com.rossisurna.server.metrics.ServerMetrics;
+import com.rossisurna.server.metrics.SessionTraffic;
+import com.rossisurna.util.FrameCodec;
+import com.rossisurna.util.Packet;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * One client's connection to the server. It hands every packet read from the client to its current handler and
+ * queues packets for the client without ever blocking the caller. How the bytes are actually moved depends on the
+ * server mode, either by an I/O loop or by a reader and writer thread of its own.
+ * <p>
+ * The outbound queue is bounded, so a client on a bad link only ever costs itself: its oldest audio gets dropped and
+ * if it still can not keep up it is disconnected, while everyone else in the group keeps getting their packets. Within
+ * the queue control packets are served ahead of audio, and audio ahead of bulk.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 20 2019
+ */
+
+public abstract class Connection {
+
+    //Protocol Codes
+    private final String BN = "BN"; //bundle of frames, a relay link's other end bundles like the server
+    //Connection data
+    private final int clientID; //client's ID
+    private volatile PacketHandler handler; //object that currently receives the packets
+    protected final OutboundQueue outboundQueue; //frames waiting to be written
+    protected final OutboundBundle outboundBundle; //frames being written together, writer only
+    protected final long bundleWindowNanos; //ns of queued frames written together, 0 to write every frame on its own
+    protected final ServerMetrics serverMetrics; //where the connection reports its backlog and write latency
+    private final SessionTraffic sessionTraffic; //byte counters of the client, published with the server's metrics
+    private volatile long lastReadNanos = System.nanoTime(); //when the last packet was read, or the connection was opened
+    private volatile boolean bundlesAccepted = false; //whether BN is taken in, only from a relay link, clients never bundle
+    //Util
+    protected volatile boolean closeRequested = false; //close once the outbound queue is empty
+    protected volatile boolean closed = false; //channel has been closed
+
+    /**
+     * Constructor that takes in the client's ID and the limits of its outbound queue
+     *
+     * @param clientID       client's ID
+     * @param outboundPolicy limits of the outbound queue
+     * @param serverMetrics  where the connection reports its backlog and write latency
+     */
+    Connection(int clientID, OutboundPolicy outboundPolicy, ServerMetrics serverMetrics) {
+        this.clientID = clientID;
+        this.outboundQueue = new OutboundQueue(outboundPolicy);
+        this.bundleWindowNanos = TimeUnit.MILLISECONDS.toNanos(outboundPolicy.getBundleWindowMillis());
+        this.outboundBundle = new OutboundBundle(bundleWindowNanos > 0);
+        this.serverMetrics = serverMetrics;
+        this.sessionTraffic = serverMetrics.sessionOpened(clientID, outboundQueue::sizes);
+    }
+
+    //GETTERS
+
+    /**
+     * Get the client ID of this connection
+     *
+     * @return client's ID
+     */
+    public int getClientID() {
+        return clientID;
+    }
+
+    /**
+     * Get the address the client connected from
+     *
+     * @return remote address, null if there is none
+     */
+    public abstract InetAddress getRemoteAddress();
+
+    /**
+     * Whether the connection has been closed
+     *
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the number of audio packets dropped because the client was behind
+     *
+     * @return dropped audio packets
+     */
+    public long getDroppedAudioFrames() {
+        return outboundQueue.getDroppedAudioFrames();
+    }
+
+    /**
+     * Get the number of audio packets skipped because they waited past the audio deadline
+     *
+     * @return expired audio packets
+     */
+    public long getExpiredAudioFrames() {
+        return outboundQueue.getExpiredAudioFrames();
+    }
+
+    /**
+     * Get the byte counters of the client, what it sends, what it costs the group's fan-out, and what it is sent
+     *
+     * @return the client's traffic
+     */
+    public SessionTraffic getSessionTraffic() {
+        return sessionTraffic;
+    }
+
+    /**
+     * Get when the last packet was read from the client, any packet counts, heartbeats included
+     *
+     * @return nanoTime of the last packet, or of opening the connection if none was read yet
+     */
+    public long getLastReadNanos() {
+        return lastReadNanos;
+    }
+
+    //SETTERS
+
+    /**
+     * Sets the object that receives the packets of this connection
+     *
+     * @param handler new packet handler
+     */
+    public void setHandler(PacketHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Lets the other end send bundles, once the connection turned out to be a relay link of another cluster node
+     */
+    void acceptBundles() {
+        bundlesAccepted = true;
+    }
+
+    /**
+     * Sets the metrics of the group the client is in, where audio that expires on its way out is counted
+     *
+     * @param groupMetrics group's metrics, null once the client left the group
+     */
+    void setGroupMetrics(GroupMetrics groupMetrics) {
+        outboundQueue.setGroupMetrics(groupMetrics);
+    }
+
+    //MUTATORS
+
+    /**
+     * Marks the client as heard from by something that did not come over this connection, like its UDP audio
+     */
+    void touch() {
+        lastReadNanos = System.nanoTime();
+    }
+
+    /**
+     * Queues a packet to be written to the client, never blocks
+     *
+     * @param packet packet to send
+     */
+    public void send(Packet packet) {
+        if (closed || closeRequested) {
+            return;
+        }
+
+        try {
+            sendFrame(packet.getCode(), FrameCodec.encode(packet));
+        } catch (IOException e) {
+            System.out.printf("%nCould not encode packet %s for client %d", packet.getCode(), clientID);
+        }
+    }
+
+    /**
+     * Queues an already encoded frame to be written to the client, never blocks. The frame itself is left untouched
+     * so the same buffer can be handed to every member of a group.
+     *
+     * @param code  protocol code of the packet in the frame, decides its traffic class
+     * @param frame frame including its length prefix
+     */
+    public void sendFrame(String code, ByteBuffer frame) {
+        if (closed || closeRequested) {
+            return;
+        }
+
+        if (outboundQueue.offer(frame.duplicate(), TrafficClass.forCode(code))) {
+            sessionTraffic.sent(frame.remaining());
+            wakeWriter();
+        } else {
+            //the client stopped keeping up, let it go rather then hold on to its backlog
+            System.out.printf("%nClient %d fell too far behind, disconnecting", clientID);
+            lost();
+        }
+    }
+
+    /**
+     * Closes the connection once everything already queued has been written
+     */
+    public abstract void close();
+
+    /**
+     * Closes the connection right away, dropping whatever is still queued, used once there is no time left to write
+     * it. Does nothing if the connection is already closed.
+     */
+    public synchronized void abort() {
+        if (!closed) {
+            closeChannel();
+        }
+    }
+
+    /**
+     * Lets the writer know that a frame was queued
+     */
+    protected abstract void wakeWriter();
+
+    /**
+     * Closes the underlying channel right away and forgets all queued frames
+     */
+    protected abstract void closeChannel();
+
+    /**
+     * Makes sure the bundle has something to write, filling it from the queue once the last one is out
+     *
+     * @return false if nothing is left to write
+     */
+    protected boolean nextBundle() {
+        if (outboundBundle.isEmpty()) {
+            OutboundQueue.OutboundFrame outboundFrame = outboundQueue.poll();
+            if (outboundFrame == null) {
+                return false;
+            }
+            outboundBundle.fill(outboundFrame, outboundQueue);
+        }
+        return true;
+    }
+
+    /**
+     * Records how long every frame of the bundle waited from being queued until it was fully written to the socket,
+     * then empties the bundle
+     */
+    protected void bundleWritten() {
+        long now = System.nanoTime();
+        for (int i = 0; i < outboundBundle.size(); i++) {
+            OutboundQueue.OutboundFrame outboundFrame = outboundBundle.get(i);
+            serverMetrics.recordFanOutLatency(outboundFrame.trafficClass, now - outboundFrame.enqueuedNanos);
+        }
+        serverMetrics.recordWrite(outboundBundle.size());
+        outboundBundle.clear();
+    }
+
+    /**
+     * Hands a packet that was read to the current handler, the packets of a bundle one by one. Only a relay link may
+     * send bundles, a client that does is ignored.
+     *
+     * @param packet packet received from the client
+     */
+    protected void dispatch(Packet packet) {
+        lastReadNanos = System.nanoTime();
+        if (BN.equals(packet.getCode())) {
+            if (!bundlesAccepted) {
+                System.out.printf("%nClient %d sent a bundle, ignored", clientID);
+                return;
+            }
+            for (Packet bundledPacket : (Packet[]) packet.getSubPacket()) {
+                dispatch(bundledPacket);
+            }
+            return;
+        }
+
+        PacketHandler currentHandler = handler;
+        if (currentHandler != null) {
+            currentHandler.handlePacket(packet);
+        }
+    }
+
+    /**
+     * Called when the channel broke or the client fell behind, closes it and tells the handler unless the close was
+     * asked for. Synchronized since a sender and the reader can both find out at the same time.
+     */
+    protected synchronized void lost() {
+        if (!closed) {
+            closeChannel();
+            PacketHandler currentHandler = handler;
+            if (currentHandler != null && !closeRequested) {
+                currentHandler.connectionClosed();
+            }
+        }
+    }
+}
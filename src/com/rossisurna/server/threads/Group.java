@@ -1,20 +1,42 @@
 package com.rossisurna.server.threads;
 
+import com.rossisurna.server.application.ServerMode;
+import com.rossisurna.server.cluster.ClusterNode;
+import com.rossisurna.server.metrics.GroupMetrics;
+import com.rossisurna.server.metrics.ServerMetrics;
+import com.rossisurna.util.FrameCodec;
 import com.rossisurna.util.Packet;
 
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Network Programming Spring 2019 Final Project
  * <p>
- * Group thread that manages all users under it's control and all the data incoming to it
+ * Group that manages all users under it's control and all the data incoming to it
  * it will also send out all the data to the clients that it has received from the clients
+ * <p>
+ * A group has no thread of its own. It is pinned to one group loop and everything it does, joins, leaves, fan out and
+ * mixing, runs as a task on that loop, so its lists are only ever touched by one thread and need no locks. Packets
+ * are encoded once and the same read only buffer is queued for every member, a slow member never holds up the rest.
+ * <p>
+ * A member that joins gets one snapshot packet with everyone already in the group and the last chat messages, no
+ * matter how long the group has been open. Older messages are fetched a page at a time when the client asks for them.
+ * <p>
+ * In a cluster a group lives on the node that owns its URL, and other nodes may serve some of its members with a span
+ * of it, linked to the owner by a relay link. Whatever a member sends goes to the local members and over the links,
+ * the owner passing it on to the other spans, and members of other nodes are kept as remote members so snapshots list
+ * them too.
+ * <p>
+ * Once the last member left, the group stays open for the empty group linger and only closes if nobody joined by then,
+ * so members who drop and come back find it with its history.
  *
  * @author Stephen R
  * @author Tomas S
@@ -22,166 +44,740 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * @since Mar 18 2019
  */
 
-public class Group implements Runnable {
-    
+public class Group {
+
     //Group Data
     private final String groupUrl; //Identifier of group used to join and used by server home
-    //Lists
-    private final ConcurrentHashMap<Integer, UserWG> userWGConcurrentHashMap = new ConcurrentHashMap<>(); //Stores all users within the group, key is clientID
-    private final ConcurrentLinkedQueue<Packet> packetQueue = new ConcurrentLinkedQueue<>(); //Queue that holds all the info that need to be send out to the clients
-    private final ArrayList<Packet> requiredPacketArrayList = new ArrayList<>(); //A list that will hold all the information a user will need the moment they join the group.
-    private final ConcurrentLinkedQueue<Packet> instructionQueue = new ConcurrentLinkedQueue<>(); //Instruction queue that tells the the group what to do from the client's perspective
-    private final ConcurrentLinkedQueue<Packet> serverInstructionQueue; //Instruction queue for the server to do tasks
+    //Lists, group loop only
+    private final HashMap<Integer, Session> sessionHashMap = new HashMap<>(); //Stores the sessions of all users within the group, key is clientID
+    private final ChatHistory chatHistory; //chat messages, appended on the group loop and read from any thread
     //Protocol Codes
     private final String UJ = "UJ"; // User joined
     private final String LG = "LG"; //leave group
     private final String UL = "UL"; //User left
     private final String MSG = "MSG"; //message
+    private final String AP = "AP"; //audio packet
     private final String DS = "DS"; //client disconnected
+    private final String SN = "SN"; //join snapshot
+    private final String HF = "HF"; //history fetch
+    private final String HP = "HP"; //history page
+    private final String CS = "CS"; //change scene, tells a relay link the group's name
+    //Sizes
+    private static final int SNAPSHOT_MESSAGES = 50; //chat messages in a join snapshot
+    private static final int PAGE_MESSAGES = 50; //chat messages in a history page
     private String groupName; //name of the group
+    //Scheduling
+    private final GroupLoop groupLoop; //loop every task of this group runs on
+    private AudioMixer audioMixer; //mixes the group's audio on the server, null if audio is relayed as is
+    private GroupLoop.PeriodicTask mixerTask; //the mixer's tick, null if the group does not mix
+    private final MediaRelay mediaRelay; //UDP media plane, null if UDP is unavailable
+    private final GroupRegistry groupRegistry; //registry the group leaves once it closes
+    //Cluster, group loop only
+    private final ClusterNode clusterNode; //this server's node of the cluster, null if it runs alone
+    private final ArrayList<RelayLink> relayLinkArrayList = new ArrayList<>(); //links of the nodes spanning this group, owner only
+    private RelayLink ownerLink; //link to the node that owns the group, null if this node owns it
+    private final HashMap<Integer, RemoteMember> remoteMemberHashMap = new HashMap<>(); //members on other nodes, key is clientID
+    //Stats
+    private final ServerMetrics serverMetrics; //registry the group's metrics are published in
+    private final GroupMetrics groupMetrics; //packets and bytes sent out by opcode
+    private final GroupLoop.PeriodicTask metricsTask; //turns the counts into rates once a second
+    private final LongAdder bytesEncoded = new LongAdder(); //bytes produced by encoding packets, once per packet
+    private final LongAdder bytesWritten = new LongAdder(); //bytes handed to the members, once per recipient
+    private final long audioDeadlineNanos; //ns audio may wait for the loop before it is shed, 0 for no deadline
     //Util
-    private boolean close = false; //tells group to shutdown
-    //Broadcaster
-    private Broadcaster broadcaster;
-    
+    private final LivenessMonitor livenessMonitor; //keeps the group open for a while once empty, null to close right away
+    private TimerWheel.Timeout lingerTimeout; //closes the group unless someone joins, null while not empty, group loop only
+    private int lingerCount = 0; //number of the latest linger, an older one that fires late is ignored, group loop only
+    private volatile boolean close = false; //group has shut down
+
     /**
-     * Constructor that takes in group url, name, and queue to add packets to for the server
+     * Constructor that takes in group url, name, and where the group runs
      *
      * @param groupUrl  group url
      * @param groupName group name
-     * @param serverInstructionQueue instruction queue for server
+     * @param groupLoop loop the group is pinned to
+     * @param mediaRelay UDP media plane, null if UDP is unavailable
+     * @param audioMixing whether the server mixes the group's audio into one stream per member
+     * @param groupRegistry registry the group is removed from once it closes
+     * @param chatLogStore where the group logs its chat on disk, null if history only lives in memory
+     * @param serverMetrics registry the group's metrics are published in
+     * @param clusterNode this server's node of the cluster, gets the URL back once the group closes, null if it runs alone
+     * @param audioDeadlineMillis ms audio may wait for the group's loop before it is shed, 0 for no deadline
+     * @param livenessMonitor keeps the group open for the linger time once it is empty, null to close it right away
      */
-    public Group(String groupUrl, String groupName, ConcurrentLinkedQueue<Packet> serverInstructionQueue) {
+    public Group(String groupUrl, String groupName, GroupLoop groupLoop, MediaRelay mediaRelay, boolean audioMixing, GroupRegistry groupRegistry, ChatLogStore chatLogStore, ServerMetrics serverMetrics, ClusterNode clusterNode, long audioDeadlineMillis, LivenessMonitor livenessMonitor) {
         this.groupUrl = groupUrl;
+        this.livenessMonitor = livenessMonitor;
+        this.clusterNode = clusterNode;
+        this.audioDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(audioDeadlineMillis);
+        this.mediaRelay = mediaRelay;
         this.groupName = groupName;
-        this.serverInstructionQueue = serverInstructionQueue;
-    
-        //launches broadcaster
-        broadcaster = new Broadcaster(packetQueue, userWGConcurrentHashMap);
-        new Thread(broadcaster).start();
-    
-    }
-    
-    /**
-     * Main run method that is in a constant loop waiting for instructions to come in from the clients
-     */
-    public void run() {
-        while (!close) {
-            //Launch thread which will wait for a broadcast packet to then broadcast out to every client
-            while (!instructionQueue.isEmpty()) {
-                Packet instruction = instructionQueue.remove();
-    
-                //sends code to the proper protocol
-                switch (instruction.getCode()) {
-                    case LG: {
-                        //user wants to leave group therefore make new WNG and delete this
-                        int clientID = instruction.getSenderID();
-    
-                        //add to the server instruction queue and then to broadcast queue
-                        serverInstructionQueue.add(new Packet(LG, clientID, userWGConcurrentHashMap.get(clientID)));
-                        packetQueue.add(new Packet(UL, clientID, userWGConcurrentHashMap.get(clientID).getUsername()));
-    
-                        //remove user
-                        userWGConcurrentHashMap.remove(clientID);
-    
-                        //remove the packet from the requirepacketlist that says he ever joined
-                        int index = 0;
-                        int removeIndex = -1;
-                        for (Packet packet : requiredPacketArrayList) {
-                            if ((packet.getSenderID() == clientID) && (packet.getCode().equals(UJ))) {
-                                removeIndex = index;
-                                break;
-                            }
-                            index++;
-                        }
-    
-                        //remove packet from list
-                        if (removeIndex != -1) {
-                            System.out.printf("%n-----Sender ID: %d, Client ID: %d Code: %s, Index: %d, IndexRemove: %d", requiredPacketArrayList.get(removeIndex).getSenderID(), clientID, requiredPacketArrayList.get(removeIndex).getCode(), index, removeIndex);
-                            requiredPacketArrayList.remove(removeIndex);
-                        }
-    
-                        //check if group is empty, if so then close it self
-                        checkIfGroupIsEmpty();
-                        break;
-                    }
-                    case DS: {
-                        //User wants to disconnect, close his objects and remove them
-                        userWGConcurrentHashMap.get(instruction.getSenderID()).closeSocket();
-                        userWGConcurrentHashMap.remove(instruction.getSenderID());
-    
-                        //check if group is empty
-                        checkIfGroupIsEmpty();
-                        break;
-                    }
-                    default: {
-                        System.out.printf("%nInvalid Code: %s (Group.java)", instruction.getCode());
-                    }
+        this.groupLoop = groupLoop;
+        this.groupRegistry = groupRegistry;
+
+        //opens the group's chat log, without one history only lives in memory
+        ChatLog chatLog = null;
+        if (chatLogStore != null) {
+            try {
+                chatLog = chatLogStore.open(groupUrl);
+            } catch (IOException e) {
+                System.out.printf("%nGroup %s has no chat log, history stays in memory only: %s", groupUrl, e.getMessage());
+            }
+        }
+        this.chatHistory = new ChatHistory(ChatHistory.DEFAULT_CAPACITY, chatLog);
+
+        //publishes the group's metrics, the member count is read from the loop's map and may be a moment old
+        this.serverMetrics = serverMetrics;
+        this.groupMetrics = serverMetrics.registerGroup(groupUrl, sessionHashMap::size);
+        this.metricsTask = groupLoop.schedulePeriodic(groupMetrics::updateRates, 1000);
+
+        //starts the mixer's tick if this group mixes its audio
+        if (audioMixing) {
+            audioMixer = new AudioMixer(sessionHashMap, groupMetrics);
+            mixerTask = groupLoop.schedulePeriodic(audioMixer::tick, AudioMixer.TICK_MILLIS);
+        }
+    }
+
+    /**
+     * Hands a packet from a member to the group, runs on the group's loop later and never blocks the caller
+     *
+     * @param packet packet from a member
+     */
+    void receive(Packet packet) {
+        long receivedNanos = System.nanoTime();
+        groupLoop.execute(() -> {
+            if (!isExpiredAudio(packet, receivedNanos)) {
+                handleInstruction(packet);
+            }
+        });
+    }
+
+    /**
+     * Checks whether a packet is audio that waited for the loop past the deadline, and counts it if so. Chat and
+     * control packets never expire. Group loop only.
+     *
+     * @param packet        packet about to be handled
+     * @param receivedNanos nanoTime the packet was handed to the group
+     * @return true if the packet is to be shed
+     */
+    private boolean isExpiredAudio(Packet packet, long receivedNanos) {
+        if (audioDeadlineNanos == 0 || !AP.equals(packet.getCode()) || System.nanoTime() - receivedNanos <= audioDeadlineNanos) {
+            return false;
+        }
+        groupMetrics.recordAudioShedInGroup();
+        return true;
+    }
+
+    /**
+     * Acts on a packet from a member, group loop only
+     *
+     * @param instruction packet from a member
+     */
+    private void handleInstruction(Packet instruction) {
+        if (close) {
+            return;
+        }
+
+        //sends code to the proper protocol
+        switch (instruction.getCode()) {
+            case MSG: {
+                //chat message, everyone gets it first, then it is kept for snapshots and scroll back
+                broadcast(instruction);
+                chatHistory.append(instruction.getSenderID(), (String) instruction.getSubPacket());
+                break;
+            }
+            case AP: {
+                //audio goes to the mixer if the group mixes, otherwise straight to everyone, other nodes mix their own
+                if (audioMixer != null) {
+                    audioMixer.addAudioPacket(instruction);
+                    relay(instruction, null);
+                } else {
+                    broadcast(instruction);
                 }
+                break;
             }
-    
-            //Sleep if the queue is empty
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-//                e.printStackTrace();
+            case LG: {
+                //user wants to leave group, its session goes back to the lobby on the same connection
+                int clientID = instruction.getSenderID();
+
+                //remove user
+                Session session = sessionHashMap.remove(clientID);
+                if (session == null) {
+                    break;
+                }
+
+                //let the session go and then broadcast
+                session.leftGroup(this);
+                broadcast(new Packet(UL, clientID, session.getUsername()));
+
+                //check if group is empty, if so then close it self
+                checkIfGroupIsEmpty();
+                break;
+            }
+            case HF: {
+                //member scrolled back past its oldest message, a page that left the ring is read from the log here
+                //so its page faults stall this loop rather than the I/O thread of every client sharing it
+                Session session = sessionHashMap.get(instruction.getSenderID());
+                if (session != null) {
+                    session.send(historyPage((Long) instruction.getSubPacket()));
+                }
+                break;
+            }
+            case DS: {
+                //User disconnected, its session closed itself already, remove it and tell everyone
+                Session session = sessionHashMap.remove(instruction.getSenderID());
+                if (session != null) {
+                    broadcast(new Packet(UL, session.getClientID(), session.getUsername()));
+                }
+
+                //check if group is empty
+                checkIfGroupIsEmpty();
+                break;
+            }
+            default: {
+                System.out.printf("%nInvalid Code: %s (Group.java)", instruction.getCode());
             }
-    
         }
     }
-    
+
     /**
-     * Creates and adds user to the master hashmap for this group
+     * Hands a packet that came over a relay link to the group, runs on the group's loop later
      *
-     * @param socket   client's socket
-     * @param inO      objectInputStream of client's socket
-     * @param outO     objectOutputStream of client's socket
-     * @param clientID client's ID
-     * @param username client's username
+     * @param packet    packet from another node
+     * @param relayLink link it came over
      */
-    public void addUserToGroup(Socket socket, ObjectInputStream inO, ObjectOutputStream outO, int clientID, String username) {
-        //creates new user with group
-        UserWG userWG = new UserWG(socket, inO, outO, clientID, username, groupUrl, groupName, packetQueue, requiredPacketArrayList, instructionQueue);
-        new Thread(userWG).start();
-    
-        //Add to broadcast queue and required queue that user joined
-        packetQueue.add(new Packet(UJ, clientID, username));
-        packetQueue.add(new Packet(MSG, clientID, String.format("%s has joined the group.", username)));
-        requiredPacketArrayList.add(new Packet(UJ, clientID, username));
-    
-        //adds user into this group
-        userWGConcurrentHashMap.put(clientID, userWG);
-    
-        System.out.printf("%nClient %d (%s) had been added to group %s through url: %s", clientID, username, groupName, groupUrl);
+    void receiveRelayed(Packet packet, RelayLink relayLink) {
+        long receivedNanos = System.nanoTime();
+        groupLoop.execute(() -> {
+            if (!isExpiredAudio(packet, receivedNanos)) {
+                handleRelayed(packet, relayLink);
+            }
+        });
     }
-    
+
     /**
-     * Closes the group thread
+     * Acts on a packet from another node, everything is passed on to the local members and the other links but never
+     * back over the link it came from, group loop only
+     *
+     * @param packet    packet from another node
+     * @param relayLink link it came over
      */
-    public void close() {
-        packetQueue.add(new Packet(LG, 0, null));
-    
-        for (Map.Entry<Integer, UserWG> entry : userWGConcurrentHashMap.entrySet()) {
-            entry.getValue().closeSocket();
+    private void handleRelayed(Packet packet, RelayLink relayLink) {
+        if (close || (relayLink != ownerLink && !relayLinkArrayList.contains(relayLink))) {
+            return;
+        }
+        //a span only speaks for members of its own node, the owner for anyone
+        if (relayLink != ownerLink && ClusterNode.nodeOf(packet.getSenderID()) != relayLink.getPeerNodeID()) {
+            System.out.printf("%nNode %d relayed %s for client %d of another node, ignored", relayLink.getPeerNodeID(), packet.getCode(), packet.getSenderID());
+            return;
+        }
+
+        switch (packet.getCode()) {
+            case MSG: {
+                //chat message of a remote member, kept here too so this node can answer snapshots and scroll back
+                if (!(packet.getSubPacket() instanceof String)) {
+                    break;
+                }
+                broadcast(packet, relayLink);
+                chatHistory.append(packet.getSenderID(), (String) packet.getSubPacket());
+                break;
+            }
+            case AP: {
+                //remote audio, mixed in here if the group mixes, passed on as is to the other nodes
+                if (audioMixer != null) {
+                    audioMixer.addAudioPacket(packet);
+                    relay(packet, relayLink);
+                } else {
+                    broadcast(packet, relayLink);
+                }
+                break;
+            }
+            case UJ: {
+                //member joined on another node
+                if (!(packet.getSubPacket() instanceof String)) {
+                    break;
+                }
+                remoteMemberHashMap.put(packet.getSenderID(), new RemoteMember((String) packet.getSubPacket(), relayLink));
+                broadcast(packet, relayLink);
+                break;
+            }
+            case UL: {
+                //member on another node left
+                if (remoteMemberHashMap.remove(packet.getSenderID()) != null) {
+                    broadcast(packet, relayLink);
+                }
+                break;
+            }
+            default: {
+                System.out.printf("%nInvalid Relayed Code: %s (Group.java)", packet.getCode());
+            }
+        }
+    }
+
+    /**
+     * Encodes a packet once and sends it to all users but the origin user and to every relay link, group loop only
+     *
+     * @param packet packet to send
+     */
+    private void broadcast(Packet packet) {
+        broadcast(packet, null);
+    }
+
+    /**
+     * Encodes a packet once and sends it to all users but the origin user and to every relay link but one, group loop
+     * only
+     *
+     * @param packet packet to send
+     * @param except link the packet came over, null if it came from a local member
+     */
+    private void broadcast(Packet packet, RelayLink except) {
+        try {
+            ByteBuffer frame = FrameCodec.encode(packet).asReadOnlyBuffer();
+            bytesEncoded.add(frame.remaining());
+
+            long written = 0;
+            for (Session session : sessionHashMap.values()) {
+                written += session.sendBroadcastDataToClient(packet, frame);
+            }
+            written += sendToRelayLinks(packet, frame, except);
+            bytesWritten.add(written);
+            groupMetrics.recordPacket(packet.getCode(), written);
+            countFanOut(packet, written);
+        } catch (IOException e) {
+            //packet could not be encoded, nobody gets it
+            System.out.printf("%nGroup %s could not encode packet: %s", groupUrl, e.getMessage());
         }
-    
+    }
+
+    /**
+     * Sends a packet to every relay link but one and to no local member, used for audio the local members get mixed,
+     * group loop only
+     *
+     * @param packet packet to send
+     * @param except link the packet came over, null if it came from a local member
+     */
+    private void relay(Packet packet, RelayLink except) {
+        if (ownerLink == null && relayLinkArrayList.isEmpty()) {
+            return;
+        }
+
         try {
-            Thread.sleep(1000);
-        } catch (InterruptedException e) {
-//            e.printStackTrace();
+            ByteBuffer frame = FrameCodec.encode(packet).asReadOnlyBuffer();
+            bytesEncoded.add(frame.remaining());
+            long written = sendToRelayLinks(packet, frame, except);
+            bytesWritten.add(written);
+            groupMetrics.recordPacket(packet.getCode(), written);
+            countFanOut(packet, written);
+        } catch (IOException e) {
+            System.out.printf("%nGroup %s could not encode packet: %s", groupUrl, e.getMessage());
+        }
+    }
+
+    /**
+     * Counts what was sent out for a packet against the member who sent it, packets from other nodes count against
+     * nobody here, group loop only
+     *
+     * @param packet  packet that was sent out
+     * @param written bytes sent, every recipient counted
+     */
+    private void countFanOut(Packet packet, long written) {
+        Session sender = sessionHashMap.get(packet.getSenderID());
+        if (sender != null) {
+            sender.fannedOut(written);
+        }
+    }
+
+    /**
+     * Queues an encoded packet on every relay link but one, group loop only
+     *
+     * @param packet packet in the frame
+     * @param frame  the packet already encoded, length prefix included
+     * @param except link to skip, null for none
+     * @return number of bytes queued
+     */
+    private long sendToRelayLinks(Packet packet, ByteBuffer frame, RelayLink except) {
+        long written = 0;
+        if (ownerLink != null && ownerLink != except) {
+            written += ownerLink.sendFrame(packet.getCode(), frame);
+        }
+        for (RelayLink relayLink : relayLinkArrayList) {
+            if (relayLink != except) {
+                written += relayLink.sendFrame(packet.getCode(), frame);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Takes in a relay link another node opened to span this group, runs on the group's loop later. The node gets the
+     * group's name and a snapshot first, then everything the group broadcasts.
+     *
+     * @param connection connection the node's request arrived on
+     * @param peerNodeID node spanning the group
+     */
+    public void addRelayLink(Connection connection, int peerNodeID) {
+        RelayLink relayLink = new RelayLink(connection, peerNodeID);
+        groupLoop.execute(() -> {
+            if (close || ownerLink != null) {
+                //only the owner takes links, a span would make a chain
+                connection.close();
+                return;
+            }
+
+            relayLink.send(new Packet(CS, 0, new String[]{groupUrl, groupName}));
+            relayLink.send(snapshot());
+            relayLinkArrayList.add(relayLink);
+            relayLink.setGroup(this);
+            cancelLinger();
+            System.out.printf("%nNode %d now spans group %s", peerNodeID, groupUrl);
+
+            //the link may have dropped before it was handed over, nobody would have told the group
+            if (relayLink.isClosed()) {
+                relayLinkClosed(relayLink);
+            }
+        });
+    }
+
+    /**
+     * Links a span of a group to the node that owns it, runs on the group's loop later. The members and recent chat of
+     * the owner's snapshot are taken in before any local member joins.
+     *
+     * @param relayLink  link to the owner, opened with RelayLink.connect
+     * @param serverMode mode deciding between platform and virtual threads for the link
+     */
+    public void attachOwner(RelayLink relayLink, ServerMode serverMode) {
+        groupLoop.execute(() -> {
+            if (close) {
+                relayLink.close();
+                return;
+            }
+            ownerLink = relayLink;
+
+            //the snapshot lists the members first, then the recent chat, see snapshot()
+            String[] details = (String[]) relayLink.getSnapshot().getSubPacket();
+            int memberCount = Integer.parseInt(details[0]);
+            int index = 1;
+            for (int i = 0; i < memberCount; i++, index += 2) {
+                remoteMemberHashMap.put(Integer.parseInt(details[index]), new RemoteMember(details[index + 1], relayLink));
+            }
+            for (; index + 2 < details.length; index += 3) {
+                chatHistory.append(Integer.parseInt(details[index + 1]), details[index + 2]);
+            }
+
+            relayLink.setGroup(this);
+            relayLink.start(serverMode);
+            System.out.printf("%nGroup %s spans node %d's group", groupUrl, relayLink.getPeerNodeID());
+        });
+    }
+
+    /**
+     * Drops a relay link that closed, runs on the group's loop later. If it was the link to the owner the span closes,
+     * otherwise the members of that node leave.
+     *
+     * @param relayLink link that closed
+     */
+    void relayLinkClosed(RelayLink relayLink) {
+        groupLoop.execute(() -> {
+            if (close) {
+                return;
+            }
+
+            if (relayLink == ownerLink) {
+                System.out.printf("%nGroup %s lost its owner, node %d", groupUrl, relayLink.getPeerNodeID());
+                closeGroup();
+                return;
+            }
+            if (!relayLinkArrayList.remove(relayLink)) {
+                return;
+            }
+            relayLink.close();
+
+            //everyone who was on that node is gone
+            Iterator<Map.Entry<Integer, RemoteMember>> iterator = remoteMemberHashMap.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Integer, RemoteMember> entry = iterator.next();
+                if (entry.getValue().relayLink == relayLink) {
+                    iterator.remove();
+                    broadcast(new Packet(UL, entry.getKey(), entry.getValue().username));
+                }
+            }
+            System.out.printf("%nNode %d no longer spans group %s", relayLink.getPeerNodeID(), groupUrl);
+
+            checkIfGroupIsEmpty();
+        });
+    }
+
+    /**
+     * Adds a joining session to the master hashmap for this group, runs on the group's loop later
+     *
+     * @param session session of the client, waiting in its joining state
+     */
+    public void addSession(Session session) {
+        groupLoop.execute(() -> {
+            if (close) {
+                //group closed meanwhile, the session stays in the lobby
+                session.joinFailed();
+                return;
+            }
+
+            //the session takes the group in, the snapshot is taken before the user is in it, a client that disconnected meanwhile is left out
+            if (!session.joined(this, snapshot(), mediaRelay)) {
+                checkIfGroupIsEmpty();
+                return;
+            }
+            int clientID = session.getClientID();
+            String username = session.getUsername();
+
+            //adds user into this group
+            sessionHashMap.put(clientID, session);
+            cancelLinger();
+
+            //Broadcast that user joined, later joiners find the user in their snapshot
+            broadcast(new Packet(UJ, clientID, username));
+            broadcast(new Packet(MSG, clientID, String.format("%s has joined the group.", username)));
+
+            System.out.printf("%nClient %d (%s) had been added to group %s through url: %s", clientID, username, groupName, groupUrl);
+        });
+    }
+
+    /**
+     * Builds the snapshot a joining user gets, group loop only. Its details are the number of members, then the ID and
+     * username of each member, then the sequence number, sender ID, and text of each of the last chat messages.
+     *
+     * @return snapshot packet
+     */
+    private Packet snapshot() {
+        ArrayList<Object> details = new ArrayList<>();
+        details.add(String.valueOf(sessionHashMap.size() + remoteMemberHashMap.size()));
+        for (Session session : sessionHashMap.values()) {
+            details.add(String.valueOf(session.getClientID()));
+            details.add(session.getUsername());
+        }
+        for (Map.Entry<Integer, RemoteMember> entry : remoteMemberHashMap.entrySet()) {
+            details.add(String.valueOf(entry.getKey()));
+            details.add(entry.getValue().username);
+        }
+        addChatMessages(details, chatHistory.latest(SNAPSHOT_MESSAGES));
+        return new Packet(SN, 0, details.toArray());
+    }
+
+    /**
+     * Builds the page of chat messages right before a sequence number, group loop only
+     *
+     * @param beforeSequence sequence number of the oldest message the client has
+     * @return history page packet with the sequence number, sender ID, and text of each message, empty if there is
+     * nothing older
+     */
+    private Packet historyPage(long beforeSequence) {
+        ArrayList<Object> details = new ArrayList<>();
+        addChatMessages(details, chatHistory.before(beforeSequence, PAGE_MESSAGES));
+        return new Packet(HP, 0, details.toArray());
+    }
+
+    /**
+     * Adds chat messages to the details of a snapshot or history page, text read from the log is added as the UTF-8
+     * slice it is and only copied when the packet is encoded
+     *
+     * @param details         details of the packet
+     * @param chatMessageList messages oldest first
+     */
+    private static void addChatMessages(ArrayList<Object> details, List<ChatHistory.ChatMessage> chatMessageList) {
+        for (ChatHistory.ChatMessage chatMessage : chatMessageList) {
+            details.add(String.valueOf(chatMessage.sequence));
+            details.add(String.valueOf(chatMessage.senderID));
+            details.add(chatMessage.text);
+        }
+    }
+
+    //GETTERS
+
+    /**
+     * Get the URL of the group
+     *
+     * @return group url
+     */
+    public String getGroupUrl() {
+        return groupUrl;
+    }
+
+    /**
+     * Get the name of the group
+     *
+     * @return group name
+     */
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * Get the group's metrics
+     *
+     * @return group metrics
+     */
+    GroupMetrics getGroupMetrics() {
+        return groupMetrics;
+    }
+
+    /**
+     * Whether the group has shut down
+     *
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return close;
+    }
+
+    /**
+     * Get the number of bytes produced by encoding broadcast packets
+     *
+     * @return bytes encoded
+     */
+    public long getBytesEncoded() {
+        return bytesEncoded.sum();
+    }
+
+    /**
+     * Get the number of bytes handed to members, each recipient counted separately
+     *
+     * @return bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Closes the group, runs on the group's loop later
+     */
+    public void close() {
+        close(() -> {
+        });
+    }
+
+    /**
+     * Closes the group, runs on the group's loop later, and says so once every goodbye is queued
+     *
+     * @param closed called on the group's loop once the group closed
+     */
+    public void close(Runnable closed) {
+        groupLoop.execute(() -> {
+            try {
+                closeGroup();
+            } finally {
+                closed.run();
+            }
+        });
+    }
+
+    /**
+     * Says goodbye to every member, sends their sessions back to the lobby, and stops the group, group loop only
+     */
+    private void closeGroup() {
+        if (close) {
+            return;
+        }
+        cancelLinger();
+
+        broadcast(new Packet(LG, 0, null));
+
+        //every goodbye is already queued, each session goes back to the lobby on its connection
+        for (Session session : sessionHashMap.values()) {
+            session.groupClosed(this);
+        }
+        sessionHashMap.clear();
+
+        //the goodbye tells the other nodes too, then the links close and the owner gives the URL back
+        if (ownerLink != null) {
+            ownerLink.close();
+        } else if (clusterNode != null) {
+            clusterNode.release(groupUrl);
         }
-        broadcaster.close();
+        for (RelayLink relayLink : relayLinkArrayList) {
+            relayLink.close();
+        }
+        relayLinkArrayList.clear();
+        remoteMemberHashMap.clear();
+
+        if (mixerTask != null) {
+            mixerTask.cancel();
+        }
+        chatHistory.close();
+        metricsTask.cancel();
+        serverMetrics.unregisterGroup(groupUrl);
         close = true;
-        Thread.currentThread().interrupt();
+        groupRegistry.remove(this);
+        System.out.printf("%nGroup %s closed, bytes encoded: %d, bytes written: %d", groupUrl, getBytesEncoded(), getBytesWritten());
     }
-    
+
     /**
-     * Checks if the group is empty and if so then close itself
+     * Checks if the group is empty and if so then close itself once the linger time passed without anyone joining,
+     * the owner stays open while other nodes span it, group loop only
      */
     private void checkIfGroupIsEmpty() {
-        if (userWGConcurrentHashMap.size() == 0) {
+        if (!isEmpty() || lingerTimeout != null) {
+            return;
+        }
+
+        //the wheel only hands the close to the group's loop, a join queued before it still gets in
+        int linger = ++lingerCount;
+        lingerTimeout = livenessMonitor == null ? null : livenessMonitor.lingerEmptyGroup(() -> groupLoop.execute(() -> lingerEnded(linger)));
+        if (lingerTimeout == null) {
+            lingerEnded(linger);
+        }
+    }
+
+    /**
+     * Closes the group if it is still empty when its linger ends, group loop only
+     *
+     * @param linger number of the linger that ended
+     */
+    private void lingerEnded(int linger) {
+        if (close || linger != lingerCount) {
+            return;
+        }
+        lingerTimeout = null;
+        if (isEmpty()) {
             System.out.printf("%nClosing Group Url: %s, Name %s", groupUrl, groupName);
-            close();
+            closeGroup();
+        }
+    }
+
+    /**
+     * Someone joined, the group is not closing anymore, group loop only
+     */
+    private void cancelLinger() {
+        if (lingerTimeout != null) {
+            lingerTimeout.cancel();
+            lingerTimeout = null;
+            lingerCount++;
+        }
+    }
+
+    /**
+     * Whether the group has nobody left, group loop only
+     *
+     * @return true if no member is on this node and, on the owner, no other node spans it
+     */
+    private boolean isEmpty() {
+        return sessionHashMap.size() == 0 && (ownerLink != null || relayLinkArrayList.isEmpty());
+    }
+
+    /**
+     * Member of the group connected to another node
+     */
+    private static final class RemoteMember {
+
+        private final String username; //member's username
+        private final RelayLink relayLink; //link the member's packets come over
+
+        /**
+         * Constructor that takes in the member's username and the link it is behind
+         *
+         * @param username  member's username
+         * @param relayLink link the member's packets come over
+         */
+        private RemoteMember(String username, RelayLink relayLink) {
+            this.username = username;
+            this.relayLink = relayLink;
         }
     }
 }
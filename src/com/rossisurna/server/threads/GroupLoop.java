@@ -0,0 +1,173 @@
+package com.rossisurna.server.threads;
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Single threaded event loop that runs every group pinned to it. All of a group's membership changes, fan out and
+ * mixing run here one task at a time, so a group never needs a lock and never needs a thread of its own. The loop
+ * blocks on its task queue until a task arrives or the next periodic task is due.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 27 2019
+ */
+
+public class GroupLoop implements Runnable {
+
+    //Sizes
+    private static final int MAX_TASKS_PER_PASS = 256; //tasks run before periodic tasks get another look
+    //Queues
+    private final LinkedBlockingQueue<Runnable> taskQueue = new LinkedBlockingQueue<>(); //tasks waiting to run
+    private final ArrayList<PeriodicTask> periodicTaskArrayList = new ArrayList<>(); //periodic tasks, loop thread only
+    //Loop data
+    private final int loopID; //index of this loop, used for the thread name
+    //Util
+    private volatile boolean close = false; //tells the loop to shut down
+
+    /**
+     * Constructor that takes in the index of the loop
+     *
+     * @param loopID index of this loop
+     */
+    GroupLoop(int loopID) {
+        this.loopID = loopID;
+    }
+
+    /**
+     * Main run method that runs tasks as they arrive and periodic tasks when they are due
+     */
+    public void run() {
+        System.out.printf("%nGroup Loop %d Up and Running", loopID);
+
+        while (!close) {
+            try {
+                long wait = runDuePeriodicTasks();
+                Runnable task = wait < 0 ? taskQueue.take() : taskQueue.poll(wait, TimeUnit.NANOSECONDS);
+                for (int ran = 0; task != null; task = ++ran < MAX_TASKS_PER_PASS ? taskQueue.poll() : null) {
+                    runTask(task);
+                }
+            } catch (InterruptedException e) {
+                //nothing interrupts a group loop on purpose, keep running
+//                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Queues a task to run on this loop, never blocks
+     *
+     * @param task task to run
+     */
+    public void execute(Runnable task) {
+        taskQueue.add(task);
+    }
+
+    /**
+     * Get the number of tasks waiting to run
+     *
+     * @return tasks in the queue
+     */
+    public int getQueueDepth() {
+        return taskQueue.size();
+    }
+
+    /**
+     * Runs a task over and over on this loop, the first time one period from now
+     *
+     * @param task         task to run
+     * @param periodMillis ms between runs
+     * @return handle used to cancel the task
+     */
+    public PeriodicTask schedulePeriodic(Runnable task, long periodMillis) {
+        PeriodicTask periodicTask = new PeriodicTask(task, TimeUnit.MILLISECONDS.toNanos(periodMillis));
+        execute(() -> periodicTaskArrayList.add(periodicTask));
+        return periodicTask;
+    }
+
+    /**
+     * Runs every periodic task that is due and drops the cancelled ones
+     *
+     * @return ns until the next periodic task is due, or -1 if there is none
+     */
+    private long runDuePeriodicTasks() {
+        long next = -1;
+        for (int i = periodicTaskArrayList.size() - 1; i >= 0; i--) {
+            PeriodicTask periodicTask = periodicTaskArrayList.get(i);
+            if (periodicTask.cancelled) {
+                periodicTaskArrayList.remove(i);
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (now - periodicTask.nextRun >= 0) {
+                runTask(periodicTask.task);
+                periodicTask.nextRun += periodicTask.period;
+                //fell far behind, skip ahead rather then rushing to catch up
+                if (now - periodicTask.nextRun > 5 * periodicTask.period) {
+                    periodicTask.nextRun = now + periodicTask.period;
+                }
+            }
+
+            long wait = Math.max(0, periodicTask.nextRun - System.nanoTime());
+            if (next < 0 || wait < next) {
+                next = wait;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Runs one task, a task that throws does not take the loop and its other groups down with it
+     *
+     * @param task task to run
+     */
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.out.printf("%nGroup Loop %d task failed: %s", loopID, e);
+//            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Close the loop once every task queued so far has run, so groups closed just before still say goodbye
+     */
+    public void close() {
+        execute(() -> close = true);
+    }
+
+    /**
+     * Handle of a task that runs periodically on a group loop
+     */
+    public static final class PeriodicTask {
+        private final Runnable task; //task to run
+        private final long period; //ns between runs
+        private long nextRun; //nanoTime of the next run, loop thread only
+        private volatile boolean cancelled = false; //whether the task should stop running
+
+        /**
+         * Constructor that takes in the task and its period
+         *
+         * @param task   task to run
+         * @param period ns between runs
+         */
+        private PeriodicTask(Runnable task, long period) {
+            this.task = task;
+            this.period = period;
+            this.nextRun = System.nanoTime() + period;
+        }
+
+        /**
+         * Stops the task, it is dropped the next time the loop looks at it
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
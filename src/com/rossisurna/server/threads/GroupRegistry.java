@@ -0,0 +1,150 @@
+package com.rossisurna.server.threads;
+
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Registry of all open groups by URL. A URL is 6 letters, so there are 26^6 of them. The URL is the only thing a user
+ * needs to join a group, so every letter is drawn from a SecureRandom and knowing one URL says nothing about any other.
+ * A URL that is already open is simply drawn again, with far fewer open groups than 26^6 that rarely happens and
+ * creating a group stays O(1) on average. A closed group is removed right away and its URL can come up again.
+ * <p>
+ * Creating a group opens its chat log and publishes its metrics, so it is never done inside the map, where it would
+ * hold the lock of the map's bin. A URL is reserved while its group is made, then the group is put in with
+ * putIfAbsent.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 28 2019
+ */
+
+public class GroupRegistry {
+
+    //URL format
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"; //letters a URL is made of
+    private static final int URL_LENGTH = 6; //letters in a URL
+    //Lists
+    private final ConcurrentHashMap<String, Group> groupConcurrentHashMap = new ConcurrentHashMap<>(); //all open groups, key is the URL
+    private final Set<String> reservedUrlSet = ConcurrentHashMap.newKeySet(); //URLs whose group is being made
+    //URL generation
+    private final Random random; //draws the letters of new URLs
+
+    /**
+     * Constructor that draws the URLs from a SecureRandom
+     */
+    public GroupRegistry() {
+        this(new SecureRandom());
+    }
+
+    /**
+     * Constructor that draws the URLs from the given random generator
+     *
+     * @param random random generator, thread safe
+     */
+    GroupRegistry(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Creates a group under a new URL and registers it
+     *
+     * @param groupFactory creates the group for the URL it is given, or returns null if the URL can not be used, for
+     *                     instance because another cluster node claimed it
+     * @return the new group
+     */
+    public Group create(Function<String, Group> groupFactory) {
+        while (true) {
+            //a URL that is open already is drawn again
+            Group group = createAt(nextURL(), groupFactory);
+            if (group != null) {
+                return group;
+            }
+        }
+    }
+
+    /**
+     * Creates a group under a URL given by someone else and registers it, used for a span of a group another cluster
+     * node owns
+     *
+     * @param url          group URL
+     * @param groupFactory creates the group for the URL, or returns null if the URL can not be used
+     * @return the new group, or null if a group with that URL is open already or the factory gave none
+     */
+    public Group createAt(String url, Function<String, Group> groupFactory) {
+        //reserved before looking, so a group put in by someone else is seen or their reservation is
+        if (!reservedUrlSet.add(url)) {
+            return null;
+        }
+        try {
+            if (groupConcurrentHashMap.containsKey(url)) {
+                return null;
+            }
+            Group group = groupFactory.apply(url);
+            if (group != null && groupConcurrentHashMap.putIfAbsent(url, group) != null) {
+                //someone got past the reservation, their group stays
+                group.close();
+                return null;
+            }
+            return group;
+        } finally {
+            reservedUrlSet.remove(url);
+        }
+    }
+
+    /**
+     * Returns the open group with the URL
+     *
+     * @param url group URL
+     * @return the group, or null if there is no open group with that URL
+     */
+    public Group get(String url) {
+        return url == null ? null : groupConcurrentHashMap.get(url);
+    }
+
+    /**
+     * Removes a group that closed, its URL can be handed out again
+     *
+     * @param group closed group
+     */
+    public void remove(Group group) {
+        groupConcurrentHashMap.remove(group.getGroupUrl(), group);
+    }
+
+    /**
+     * Get all open groups
+     *
+     * @return live view of the open groups
+     */
+    public Collection<Group> getGroups() {
+        return groupConcurrentHashMap.values();
+    }
+
+    /**
+     * Get the number of open groups
+     *
+     * @return number of open groups
+     */
+    public int size() {
+        return groupConcurrentHashMap.size();
+    }
+
+    /**
+     * Draws a random URL
+     *
+     * @return 6 letter URL
+     */
+    private String nextURL() {
+        char[] url = new char[URL_LENGTH];
+        for (int i = 0; i < URL_LENGTH; i++) {
+            url[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(url);
+    }
+}
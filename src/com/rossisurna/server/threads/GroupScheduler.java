@@ -0,0 +1,72 @@
+package com.rossisurna.server.threads;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Fixed pool of group loops. Every group is pinned to one loop by hashing its URL, so the number of threads stays the
+ * same no matter how many groups exist, and everything a group does happens on the same thread.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 27 2019
+ */
+
+public class GroupScheduler {
+
+    private final GroupLoop[] groupLoops; //the loops groups are spread over
+
+    /**
+     * Constructor that launches the loops
+     *
+     * @param loopCount number of loops, usually the number of cores
+     */
+    public GroupScheduler(int loopCount) {
+        groupLoops = new GroupLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < groupLoops.length; i++) {
+            groupLoops[i] = new GroupLoop(i);
+            new Thread(groupLoops[i], "GroupLoop-" + i).start();
+        }
+    }
+
+    /**
+     * Returns the loop a group is pinned to
+     *
+     * @param groupURL group's URL
+     * @return the group's loop, always the same one for the same URL
+     */
+    public GroupLoop loopFor(String groupURL) {
+        return groupLoops[Math.floorMod(groupURL.hashCode(), groupLoops.length)];
+    }
+
+    /**
+     * Get the number of loops
+     *
+     * @return number of loops
+     */
+    public int getLoopCount() {
+        return groupLoops.length;
+    }
+
+    /**
+     * Get the number of tasks waiting on each loop
+     *
+     * @return queue depth per loop
+     */
+    public int[] getQueueDepths() {
+        int[] queueDepths = new int[groupLoops.length];
+        for (int i = 0; i < groupLoops.length; i++) {
+            queueDepths[i] = groupLoops[i].getQueueDepth();
+        }
+        return queueDepths;
+    }
+
+    /**
+     * Close all loops
+     */
+    public void close() {
+        for (GroupLoop groupLoop : groupLoops) {
+            groupLoop.close();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.metrics.ServerMetrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Stage every accepted connection goes through before it counts as a session. The socket server only accepts and
+ * hands the channel over, the stage's own thread sets the connection up, greets the client and starts a timer on the
+ * server's timer wheel. The handshake is done once the client sends its first whole frame, normally its username. A client that says nothing
+ * before the timeout is hung up on, so a slow or idle client can not hold anything up past it.
+ * <p>
+ * Only so many handshakes may be in flight at once. Past that, new connections are closed right after being accepted,
+ * which keeps accepting fast during a storm of reconnects and lets the clients retry once the stage caught up.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 8 2019
+ */
+
+public class HandshakeStage {
+
+    private final int maxInFlight; //handshakes that may be in flight before new connections are closed
+    private final long timeoutNanos; //ns a client has from being accepted to sending its first frame
+    private final ServerMetrics serverMetrics; //where handshakes are counted and timed
+    private final AtomicInteger inFlight = new AtomicInteger(); //handshakes admitted and not done yet
+    private final ExecutorService executor; //sets connections up
+    private final TimerWheel timerWheel; //times handshakes out
+
+    /**
+     * Constructor that takes in the limits of the stage and starts its thread
+     *
+     * @param maxInFlight   handshakes that may be in flight at once
+     * @param timeoutMillis ms a client has to send its first frame
+     * @param serverMetrics where handshakes are counted and timed
+     * @param timerWheel    wheel the timeouts are scheduled on
+     */
+    public HandshakeStage(int maxInFlight, long timeoutMillis, ServerMetrics serverMetrics, TimerWheel timerWheel) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+        this.serverMetrics = serverMetrics;
+        this.timerWheel = timerWheel;
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "HandshakeStage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        serverMetrics.setHandshakesInFlight(inFlight::get);
+    }
+
+    /**
+     * Takes in a connection that was just accepted, called by the socket server
+     *
+     * @return the connection's handshake, or null if too many are in flight and the connection is to be closed
+     */
+    Handshake admit() {
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            serverMetrics.handshakeRejected();
+            return null;
+        }
+        return new Handshake();
+    }
+
+    /**
+     * Runs the setup of an admitted connection on the stage's thread
+     *
+     * @param handshake handshake of the connection
+     * @param setup     creates the connection and its session and starts reading
+     * @return false if the stage is closed and the connection is to be closed
+     */
+    boolean execute(Handshake handshake, Runnable setup) {
+        try {
+            executor.execute(setup);
+            return true;
+        } catch (RejectedExecutionException e) {
+            handshake.abandon();
+            return false;
+        }
+    }
+
+    /**
+     * Stops the stage, handshakes still in flight are left to the server which closes every session, the timer wheel
+     * is the server's to stop
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Handshake of one connection, from the moment it was accepted until it sent its first frame, timed out, or
+     * closed. Exactly one of these ends it, whichever comes first.
+     */
+    final class Handshake {
+
+        private final long acceptedNanos = System.nanoTime(); //when the connection was accepted
+        private final AtomicBoolean done = new AtomicBoolean(false); //set by whatever ended the handshake
+        private volatile TimerWheel.Timeout timeout; //timer hanging up on the client, null until started
+
+        /**
+         * Constructor only the stage uses
+         */
+        private Handshake() {
+        }
+
+        /**
+         * Starts the timer, the timeout counts from when the connection was accepted
+         *
+         * @param onTimeout hangs up on the client, runs on the timer wheel's thread
+         */
+        void start(Runnable onTimeout) {
+            long delay = acceptedNanos + timeoutNanos - System.nanoTime();
+            timeout = timerWheel.newTimeout(() -> {
+                if (end()) {
+                    serverMetrics.handshakeTimedOut();
+                    onTimeout.run();
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * The client sent its first frame
+         *
+         * @return false if the handshake timed out first and the client is being hung up on
+         */
+        boolean complete() {
+            if (!end()) {
+                return false;
+            }
+            TimerWheel.Timeout currentTimeout = timeout;
+            if (currentTimeout != null) {
+                currentTimeout.cancel();
+            }
+            serverMetrics.handshakeCompleted(System.nanoTime() - acceptedNanos);
+            return true;
+        }
+
+        /**
+         * The connection closed before the handshake was done, it no longer counts as in flight
+         */
+        void abandon() {
+            if (end()) {
+                TimerWheel.Timeout currentTimeout = timeout;
+                if (currentTimeout != null) {
+                    currentTimeout.cancel();
+                }
+            }
+        }
+
+        /**
+         * Ends the handshake, only the first caller gets true
+         *
+         * @return true if this call ended it
+         */
+        private boolean end() {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            inFlight.decrementAndGet();
+            return true;
+        }
+    }
+}
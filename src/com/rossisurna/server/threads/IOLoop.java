@@ -0,0 +1,170 @@
+package com.rossisurna.server.threads;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * I/O loop thread that owns a share of all the client connections. It waits on a selector until a channel is readable
+ * or writable, or until another thread queued something to send, so idle connections cost no wakeups at all.
+ * <p>
+ * With a bundle window the loop flushes on ticks instead. Sends only put the connection on the write queue, and once
+ * per tick the loop writes everything queued for each of them meanwhile as one bundle, so a busy group costs one write
+ * per member and tick rather than one per frame. A loop with nothing to flush still sleeps in the selector.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 20 2019
+ */
+
+public class IOLoop implements Runnable {
+
+    //Queues
+    private final ConcurrentLinkedQueue<NioConnection> registrationQueue = new ConcurrentLinkedQueue<>(); //connections waiting to be registered
+    private final ConcurrentLinkedQueue<NioConnection> writeQueue = new ConcurrentLinkedQueue<>(); //connections with frames to flush
+    private final AtomicBoolean tickPending = new AtomicBoolean(false); //true once the loop was woken for the coming tick
+    //Selector
+    private final Selector selector; //selector for all the channels of this loop
+    private final int loopID; //index of this loop, used for the thread name
+    private final long tickNanos; //ns between flushes, 0 to flush as soon as something is queued
+    //Util
+    private volatile boolean close = false; //tells the loop to shut down
+
+    /**
+     * Constructor that opens the selector
+     *
+     * @param loopID     index of this loop
+     * @param tickMillis ms between flushes, 0 to flush as soon as something is queued
+     * @throws IOException if the selector could not be opened
+     */
+    IOLoop(int loopID, long tickMillis) throws IOException {
+        this.loopID = loopID;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Main run method that waits on the selector and services the ready channels
+     */
+    public void run() {
+        System.out.printf("%nI/O Loop %d Up and Running", loopID);
+
+        long nextTick = System.nanoTime();
+        while (!close) {
+            try {
+                long untilTick = nextTick - System.nanoTime();
+                if (tickNanos != 0 && writeQueue.isEmpty()) {
+                    //nothing waits for a tick, so the next connection asking to be flushed has to wake the loop again
+                    tickPending.set(false);
+                }
+                if (tickNanos == 0 || writeQueue.isEmpty()) {
+                    selector.select();
+                } else if (untilTick > 0) {
+                    selector.select((untilTick + 999999) / 1000000);
+                } else {
+                    selector.selectNow();
+                }
+
+                //register any new connections, then flush whoever has frames queued, on ticks if bundling
+                NioConnection connection;
+                while ((connection = registrationQueue.poll()) != null) {
+                    try {
+                        connection.setSelectionKey(connection.getChannel().register(selector, SelectionKey.OP_READ, connection));
+                        connection.flush();
+                    } catch (ClosedChannelException e) {
+                        connection.closeChannel();
+                    }
+                }
+                long now = System.nanoTime();
+                if (tickNanos == 0) {
+                    while ((connection = writeQueue.poll()) != null) {
+                        connection.flush();
+                    }
+                } else if (now - nextTick >= 0) {
+                    tickPending.set(false);
+                    while ((connection = writeQueue.poll()) != null) {
+                        connection.flush();
+                    }
+                    //ticks stay on the same clock, a frame queued after a quiet spell waits for the next one
+                    nextTick += ((now - nextTick) / tickNanos + 1) * tickNanos;
+                }
+
+                //service ready channels
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    NioConnection readyConnection = (NioConnection) key.attachment();
+
+                    try {
+                        if (key.isReadable()) {
+                            readyConnection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            readyConnection.flush();
+                        }
+                    } catch (CancelledKeyException e) {
+                        //connection was closed while being serviced, nothing to do
+                    } catch (RuntimeException e) {
+                        //a packet the session could not handle costs its own client the connection, not the whole loop
+                        System.out.printf("%nClient %d sent a packet that could not be handled, disconnecting: %s", readyConnection.getClientID(), e);
+                        readyConnection.lost();
+                    }
+                }
+            } catch (IOException e) {
+                //selector failed, discard and try again
+//                e.printStackTrace();
+            }
+        }
+
+        //close everything this loop owns
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).closeChannel();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+//            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Hands a new connection to this loop, may be called from any thread
+     *
+     * @param connection connection to register
+     */
+    void register(NioConnection connection) {
+        registrationQueue.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Asks this loop to flush a connection, may be called from any thread
+     *
+     * @param connection connection with frames queued
+     */
+    void requestWrite(NioConnection connection) {
+        writeQueue.add(connection);
+        //when bundling only the first connection of a tick wakes the loop, so it waits for the tick
+        if (tickNanos == 0 || tickPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Close the loop and all of its connections
+     */
+    public void close() {
+        close = true;
+        selector.wakeup();
+    }
+}
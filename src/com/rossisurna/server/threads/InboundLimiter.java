@@ -0,0 +1,75 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.application.RateLimitPolicy;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * The token buckets of one session, see RateLimitPolicy. A limit that is off has no bucket and lets everything
+ * through. Audio comes in on the session's connection reader and on the media relay's thread, so both checks
+ * synchronize on the limiter, uncontended unless the client uses TCP and UDP at once.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 11 2019
+ */
+
+final class InboundLimiter {
+
+    private final TokenBucket audioFrameBucket; //audio frames per second, null for no limit
+    private final TokenBucket audioByteBucket; //audio bytes per second, null for no limit
+    private final TokenBucket chatBucket; //chat messages per second, null for no limit
+
+    /**
+     * Constructor that takes in the limits and starts with full buckets
+     *
+     * @param rateLimitPolicy limits of every session
+     */
+    InboundLimiter(RateLimitPolicy rateLimitPolicy) {
+        long now = System.nanoTime();
+        this.audioFrameBucket = bucket(rateLimitPolicy.getAudioFramesPerSecond(), now);
+        this.audioByteBucket = bucket(rateLimitPolicy.getAudioBytesPerSecond(), now);
+        this.chatBucket = bucket(rateLimitPolicy.getChatMessagesPerSecond(), now);
+    }
+
+    /**
+     * Creates the bucket of a limit
+     *
+     * @param tokensPerSecond limit, 0 for none
+     * @param nowNanos        current nanoTime
+     * @return the bucket, null if there is no limit
+     */
+    private static TokenBucket bucket(long tokensPerSecond, long nowNanos) {
+        return tokensPerSecond == 0 ? null : new TokenBucket(tokensPerSecond, nowNanos);
+    }
+
+    /**
+     * Checks an audio frame against both audio limits, it only uses up tokens if it is let through
+     *
+     * @param audioBytes bytes of audio in the frame
+     * @return true if the frame may go to the group
+     */
+    synchronized boolean admitAudio(int audioBytes) {
+        long now = System.nanoTime();
+        if (audioFrameBucket != null && !audioFrameBucket.tryTake(1, now)) {
+            return false;
+        }
+        if (audioByteBucket != null && !audioByteBucket.tryTake(audioBytes, now)) {
+            if (audioFrameBucket != null) {
+                audioFrameBucket.giveBack(1);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks a chat message against the chat limit
+     *
+     * @return true if the message may go to the group
+     */
+    synchronized boolean admitChat() {
+        return chatBucket == null || chatBucket.tryTake(1, System.nanoTime());
+    }
+}
@@ -0,0 +1,114 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.application.LivenessPolicy;
+import com.rossisurna.server.metrics.ServerMetrics;
+import com.rossisurna.util.Packet;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Keeps an eye on every session and every empty group through the server's timer wheel, see LivenessPolicy for what
+ * it does. Each session has exactly one timeout on the wheel at a time, which checks how long its connection has been
+ * silent, sends a heartbeat or evicts it, and schedules the next check, so watching a session costs one small object
+ * and no thread, whatever the number of sessions.
+ * <p>
+ * The checks run on the wheel's thread and only queue packets or hand work to a group's loop, never blocking it.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 9 2019
+ */
+
+public class LivenessMonitor {
+
+    //Protocol Codes
+    private final String HB = "HB"; //heartbeat, the client answers with one
+
+    private final TimerWheel timerWheel; //wheel every check is scheduled on
+    private final ServerMetrics serverMetrics; //where heartbeats and evictions are counted
+    private final long heartbeatNanos; //ns of silence before a heartbeat is sent, 0 for no heartbeats
+    private final long idleTimeoutNanos; //ns of silence before a session is evicted, 0 to never evict
+    private final long emptyGroupLingerMillis; //ms an empty group is kept open, 0 to close it right away
+
+    /**
+     * Constructor that takes in the wheel to run on and the limits to check
+     *
+     * @param timerWheel     wheel every check is scheduled on
+     * @param livenessPolicy heartbeat, idle timeout, and empty group linger
+     * @param serverMetrics  where heartbeats and evictions are counted
+     */
+    public LivenessMonitor(TimerWheel timerWheel, LivenessPolicy livenessPolicy, ServerMetrics serverMetrics) {
+        this.timerWheel = timerWheel;
+        this.serverMetrics = serverMetrics;
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(livenessPolicy.getHeartbeatMillis());
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(livenessPolicy.getIdleTimeoutMillis());
+        this.emptyGroupLingerMillis = livenessPolicy.getEmptyGroupLingerMillis();
+    }
+
+    /**
+     * Starts watching a new session until it closes
+     *
+     * @param session session of a connection that was just set up
+     */
+    void watch(Session session) {
+        if (heartbeatNanos > 0 || idleTimeoutNanos > 0) {
+            schedule(session, 0);
+        }
+    }
+
+    /**
+     * Checks a session on the wheel's thread: evicts it if it was silent past the idle timeout, otherwise sends it a
+     * heartbeat if it was silent past the interval, then schedules the next check
+     *
+     * @param session session to check
+     */
+    private void check(Session session) {
+        if (session.getState() == Session.State.CLOSED) {
+            //closed or handed over to a relay link, nothing left to watch
+            return;
+        }
+
+        long idleNanos = session.getIdleNanos();
+        if (idleTimeoutNanos > 0 && idleNanos >= idleTimeoutNanos) {
+            serverMetrics.idleEvicted();
+            session.evict(TimeUnit.NANOSECONDS.toMillis(idleNanos));
+            return;
+        }
+        if (heartbeatNanos > 0 && idleNanos >= heartbeatNanos) {
+            serverMetrics.heartbeatSent();
+            session.send(new Packet(HB, 0, null));
+        }
+        schedule(session, idleNanos);
+    }
+
+    /**
+     * Schedules the next check of a session for when its next heartbeat is due, one interval of silence after the last
+     * packet or the last heartbeat, or sooner if it would be evicted before that
+     *
+     * @param session   session to check
+     * @param idleNanos ns the session has been silent for
+     */
+    private void schedule(Session session, long idleNanos) {
+        long delayNanos = heartbeatNanos == 0 ? idleTimeoutNanos : idleNanos < heartbeatNanos ? heartbeatNanos - idleNanos : heartbeatNanos;
+        if (idleTimeoutNanos > 0) {
+            delayNanos = Math.min(delayNanos, Math.max(0, idleTimeoutNanos - idleNanos));
+        }
+        timerWheel.newTimeout(() -> check(session), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts the linger of a group whose last member left
+     *
+     * @param closeIfStillEmpty closes the group unless someone joined meanwhile, runs on the wheel's thread
+     * @return the linger's timeout, cancel it once someone joins, or null if empty groups close right away
+     */
+    TimerWheel.Timeout lingerEmptyGroup(Runnable closeIfStillEmpty) {
+        if (emptyGroupLingerMillis == 0) {
+            return null;
+        }
+        return timerWheel.newTimeout(closeIfStillEmpty, emptyGroupLingerMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,202 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.util.MediaDatagram;
+import com.rossisurna.util.Packet;
+import com.rossisurna.util.PacketEncoder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * UDP media plane of the server. After joining a group a client gets a media token over TCP and registers its UDP
+ * endpoint by sending that token here. From then on its audio packets arrive here and the audio of the rest of the
+ * group is relayed to it over UDP, so a lost datagram costs one frame instead of stalling everything behind it on the
+ * TCP stream. A client that never registered, or went quiet on UDP for too long, gets its audio over TCP as before.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 23 2019
+ */
+
+public class MediaRelay implements Runnable {
+
+    //Timeouts
+    private static final long ENDPOINT_TIMEOUT = 15000; //ms without a keep alive before an endpoint falls back to TCP
+    //Protocol Codes
+    private final String AP = "AP"; //audio packet
+    private final String MR = "MR"; //media register and its acknowledgement
+    //Endpoints
+    private final ConcurrentHashMap<Integer, MediaEndpoint> mediaEndpointConcurrentHashMap = new ConcurrentHashMap<>(); //media endpoints of users in a group, key is clientID
+    private final SecureRandom tokenGenerator = new SecureRandom(); //generates the media tokens
+    //Sockets
+    private final DatagramChannel channel; //UDP channel shared by all clients
+    //Util
+    private volatile boolean close = false; //tells the relay to shut down
+
+    /**
+     * Constructor that binds the UDP channel
+     *
+     * @param address UDP address and port, the same as the TCP ones
+     * @throws IOException if the port could not be bound
+     */
+    public MediaRelay(InetSocketAddress address) throws IOException {
+        channel = DatagramChannel.open();
+        try {
+            channel.bind(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Main run method that receives datagrams until closed
+     */
+    public void run() {
+        System.out.printf("%nMedia Relay Launched, UDP Port: %d", channel.socket().getLocalPort());
+        ByteBuffer datagram = ByteBuffer.allocate(MediaDatagram.MAX_DATAGRAM_LENGTH);
+
+        while (!close) {
+            try {
+                datagram.clear();
+                SocketAddress address = channel.receive(datagram);
+                datagram.flip();
+                processDatagram(datagram, address);
+            } catch (IOException e) {
+                //bad datagram or closed channel, discard
+//                e.printStackTrace();
+            } catch (RuntimeException e) {
+                //a datagram that could not be handled costs only itself, the relay keeps running for everyone else
+                System.out.printf("%nDatagram could not be handled, dropped: %s", e);
+            }
+        }
+    }
+
+    /**
+     * Checks the token of a datagram and acts on its packet
+     *
+     * @param datagram received datagram
+     * @param address  address it came from
+     * @throws IOException if the datagram is malformed
+     */
+    private void processDatagram(ByteBuffer datagram, SocketAddress address) throws IOException {
+        long token = MediaDatagram.readToken(datagram);
+        Packet packet = MediaDatagram.readPacket(datagram);
+
+        //only accept datagrams carrying the token that was given to that client
+        MediaEndpoint mediaEndpoint = mediaEndpointConcurrentHashMap.get(packet.getSenderID());
+        if (mediaEndpoint == null || mediaEndpoint.token != token) {
+            return;
+        }
+
+        //remember where the client is, this also follows NAT rebinding
+        mediaEndpoint.address = address;
+        mediaEndpoint.lastSeen = System.currentTimeMillis();
+
+        switch (packet.getCode()) {
+            case MR: {
+                //register or keep alive, echo it back so the client knows UDP works both ways
+                channel.send(PacketEncoder.encode(new Packet(MR, 0, null)), address);
+                break;
+            }
+            case AP: {
+                //audio takes the same path into the group as audio that came over TCP
+                mediaEndpoint.session.handleMediaPacket(packet);
+                break;
+            }
+            default: {
+                System.out.printf("%nInvalid Code: %s (MediaRelay.java)", packet.getCode());
+            }
+        }
+    }
+
+    /**
+     * Creates a media endpoint for a user that just joined a group
+     *
+     * @param clientID client's ID
+     * @param session  session that gets the client's audio
+     * @return media token the client has to send with every datagram
+     */
+    public long register(int clientID, Session session) {
+        long token = tokenGenerator.nextLong();
+        mediaEndpointConcurrentHashMap.put(clientID, new MediaEndpoint(token, session));
+        return token;
+    }
+
+    /**
+     * Forgets the media endpoint of a user that left its group
+     *
+     * @param clientID client's ID
+     * @param session  session the endpoint was registered for, an endpoint of another session is left alone
+     */
+    public void unregister(int clientID, Session session) {
+        mediaEndpointConcurrentHashMap.computeIfPresent(clientID, (key, mediaEndpoint) -> mediaEndpoint.session == session ? null : mediaEndpoint);
+    }
+
+    /**
+     * Sends an encoded frame to a client over UDP if its endpoint is registered and alive
+     *
+     * @param clientID client's ID
+     * @param frame    frame to send, left untouched so it can be shared by the whole group
+     * @return true if it was sent, false if the caller has to fall back to TCP
+     */
+    public boolean send(int clientID, ByteBuffer frame) {
+        MediaEndpoint mediaEndpoint = mediaEndpointConcurrentHashMap.get(clientID);
+        if (mediaEndpoint == null || mediaEndpoint.address == null || System.currentTimeMillis() - mediaEndpoint.lastSeen > ENDPOINT_TIMEOUT) {
+            return false;
+        }
+        if (frame.remaining() > MediaDatagram.MAX_DATAGRAM_LENGTH) {
+            return false;
+        }
+
+        try {
+            channel.send(frame.duplicate(), mediaEndpoint.address);
+            return true;
+        } catch (IOException e) {
+            //UDP broke for this client, stop using it until it registers again
+            mediaEndpoint.address = null;
+            return false;
+        }
+    }
+
+    /**
+     * Close the relay
+     */
+    public void close() {
+        close = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+//            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Media endpoint of one client
+     */
+    private static class MediaEndpoint {
+        private final long token; //token the client has to present
+        private final Session session; //session that gets the client's audio
+        private volatile SocketAddress address; //where the client's datagrams come from, null until registered
+        private volatile long lastSeen; //last time a valid datagram arrived
+
+        /**
+         * Constructor that takes in the token and the session
+         *
+         * @param token  media token
+         * @param session session that gets the client's audio
+         */
+        private MediaEndpoint(long token, Session session) {
+            this.token = token;
+            this.session = session;
+        }
+    }
+}
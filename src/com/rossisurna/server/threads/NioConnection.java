@@ -0,0 +1,202 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.application.OutboundPolicy;
+import com.rossisurna.server.metrics.ServerMetrics;
+import com.rossisurna.util.FrameCodec;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * One client's socket channel as seen by an I/O loop. The connection cuts incoming bytes into frames and hands the
+ * packets to its current handler, and queues outgoing frames until the I/O loop can write them. Any thread may send,
+ * only the owning I/O loop ever touches the channel.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 20 2019
+ */
+
+public class NioConnection extends Connection {
+
+    //Sizes
+    private static final int READ_BUFFER_SIZE = 64 * 1024; //initial size of the read buffer
+    //Socket handling
+    private final SocketChannel channel; //the client's channel
+    private final IOLoop ioLoop; //I/O loop that owns the channel
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false); //true while the I/O loop has been asked to flush
+    private SelectionKey selectionKey; //key of the channel in the I/O loop's selector
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE); //bytes read but not yet turned into packets
+
+    /**
+     * Constructor that takes in the channel, the loop it belongs to and the client's ID
+     *
+     * @param channel        client's channel, already non blocking
+     * @param ioLoop         I/O loop that will own the channel
+     * @param clientID       client's ID
+     * @param outboundPolicy limits of the outbound queue
+     * @param serverMetrics  where the connection reports its backlog and write latency
+     */
+    NioConnection(SocketChannel channel, IOLoop ioLoop, int clientID, OutboundPolicy outboundPolicy, ServerMetrics serverMetrics) {
+        super(clientID, outboundPolicy, serverMetrics);
+        this.channel = channel;
+        this.ioLoop = ioLoop;
+    }
+
+    //GETTERS
+
+    /**
+     * Get the channel of this connection
+     *
+     * @return client's channel
+     */
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        return channel.socket().getInetAddress();
+    }
+
+    //SETTERS
+
+    /**
+     * Sets the selection key once the I/O loop registered the channel
+     *
+     * @param selectionKey key of the channel
+     */
+    void setSelectionKey(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    //MUTATORS
+
+    /**
+     * Asks the I/O loop to write the frame that was just queued
+     */
+    @Override
+    protected void wakeWriter() {
+        requestWrite();
+    }
+
+    /**
+     * Closes the connection once everything already queued has been written
+     */
+    @Override
+    public void close() {
+        closeRequested = true;
+        requestWrite();
+    }
+
+    /**
+     * Asks the I/O loop to flush this connection, only once until it has done so
+     */
+    private void requestWrite() {
+        if (writeRequested.compareAndSet(false, true)) {
+            ioLoop.requestWrite(this);
+        }
+    }
+
+    /**
+     * Reads what is available on the channel and dispatches every complete frame, called by the I/O loop
+     */
+    void read() {
+        try {
+            if (channel.read(readBuffer) < 0) {
+                lost();
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.remaining() >= FrameCodec.HEADER_LENGTH) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 0 || length > FrameCodec.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+
+                //frame not fully here yet
+                if (readBuffer.remaining() < FrameCodec.HEADER_LENGTH + length) {
+                    break;
+                }
+
+                //cut the payload out and hand it over
+                ByteBuffer payload = readBuffer.duplicate();
+                payload.position(readBuffer.position() + FrameCodec.HEADER_LENGTH);
+                payload.limit(payload.position() + length);
+                readBuffer.position(payload.limit());
+
+                dispatch(FrameCodec.decode(payload));
+            }
+            readBuffer.compact();
+
+            //grow the buffer if the next frame would not fit
+            if (readBuffer.position() >= FrameCodec.HEADER_LENGTH) {
+                int needed = FrameCodec.HEADER_LENGTH + readBuffer.getInt(0);
+                if (needed > readBuffer.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(needed);
+                    readBuffer.flip();
+                    bigger.put(readBuffer);
+                    readBuffer = bigger;
+                }
+            }
+        } catch (IOException e) {
+            //broken stream or garbage on the wire, drop the client
+            lost();
+        }
+    }
+
+    /**
+     * Writes as much of the outbound queue as the channel accepts, called by the I/O loop
+     */
+    void flush() {
+        writeRequested.set(false);
+        if (closed || selectionKey == null) {
+            //not registered yet, the I/O loop flushes again once it is
+            return;
+        }
+
+        try {
+            while (nextBundle()) {
+                if (!outboundBundle.write(channel)) {
+                    //socket buffer is full, wait until it is writable again
+                    selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                bundleWritten();
+            }
+            selectionKey.interestOps(SelectionKey.OP_READ);
+
+            if (closeRequested) {
+                closeChannel();
+            }
+        } catch (IOException e) {
+            lost();
+        }
+    }
+
+    /**
+     * Closes the channel and forgets all queued frames
+     */
+    @Override
+    protected void closeChannel() {
+        closed = true;
+        outboundQueue.clear();
+        serverMetrics.sessionClosed(getClientID());
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+//            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.util.FrameCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Frames taken off a client's outbound queue to be written with one gathering write. A single frame is written as it
+ * is, two or more go out behind a bundle header as one BN frame, which the client unbundles. The frames are never
+ * copied, the write gathers the header and the frames' own buffers, so the same encoded frame can still be shared by
+ * every member of a group.
+ * <p>
+ * Each connection has one bundle that it refills once the last one is out, only the connection's writer touches it.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 6 2019
+ */
+
+final class OutboundBundle {
+
+    //Limits
+    private static final int MAX_FRAMES = 256; //frames in one bundle
+    private static final int MAX_BYTES = 64 * 1024; //bytes of frames in one bundle, length prefixes included
+
+    private final boolean bundling; //whether more than one frame is taken at a time
+    private final ByteBuffer header = ByteBuffer.allocate(FrameCodec.BUNDLE_HEADER_LENGTH); //header of the bundle, reused
+    private final OutboundQueue.OutboundFrame[] frames = new OutboundQueue.OutboundFrame[MAX_FRAMES]; //frames in the bundle
+    private final ByteBuffer[] buffers = new ByteBuffer[MAX_FRAMES + 1]; //what the write gathers, header first if any
+    private int frameCount = 0; //frames in the bundle
+    private int bufferCount = 0; //buffers to write
+    private int offset = 0; //first buffer with bytes left to write
+
+    /**
+     * Constructor that takes in whether frames are bundled at all
+     *
+     * @param bundling false to write every frame on its own
+     */
+    OutboundBundle(boolean bundling) {
+        this.bundling = bundling;
+    }
+
+    //GETTERS
+
+    /**
+     * Whether the bundle has no frames, either never filled or written and cleared
+     *
+     * @return true if empty
+     */
+    boolean isEmpty() {
+        return frameCount == 0;
+    }
+
+    /**
+     * Get the number of frames in the bundle
+     *
+     * @return frames
+     */
+    int size() {
+        return frameCount;
+    }
+
+    /**
+     * Get a frame of the bundle
+     *
+     * @param index index of the frame in the order it is written
+     * @return the frame
+     */
+    OutboundQueue.OutboundFrame get(int index) {
+        return frames[index];
+    }
+
+    //MUTATORS
+
+    /**
+     * Fills the empty bundle with a frame and, if bundling, whatever else is queued up to the limits
+     *
+     * @param first         frame already taken off the queue
+     * @param outboundQueue queue to take the rest from
+     */
+    void fill(OutboundQueue.OutboundFrame first, OutboundQueue outboundQueue) {
+        frames[0] = first;
+        frameCount = 1;
+        int bytes = first.frame.remaining();
+
+        if (bundling) {
+            OutboundQueue.OutboundFrame next;
+            while (frameCount < MAX_FRAMES && bytes < MAX_BYTES && (next = outboundQueue.poll(MAX_BYTES - bytes)) != null) {
+                frames[frameCount++] = next;
+                bytes += next.frame.remaining();
+            }
+        }
+
+        if (frameCount == 1) {
+            buffers[0] = first.frame;
+            bufferCount = 1;
+        } else {
+            FrameCodec.putBundleHeader(header, bytes);
+            buffers[0] = header;
+            for (int i = 0; i < frameCount; i++) {
+                buffers[i + 1] = frames[i].frame;
+            }
+            bufferCount = frameCount + 1;
+        }
+        offset = 0;
+    }
+
+    /**
+     * Writes as much of the bundle as the channel takes with one gathering write
+     *
+     * @param channel client's channel
+     * @return true once the whole bundle is written
+     * @throws IOException if the channel is broken
+     */
+    boolean write(GatheringByteChannel channel) throws IOException {
+        channel.write(buffers, offset, bufferCount - offset);
+        while (offset < bufferCount && !buffers[offset].hasRemaining()) {
+            offset++;
+        }
+        return offset == bufferCount;
+    }
+
+    /**
+     * Empties the bundle once written, so the frames can be collected
+     */
+    void clear() {
+        for (int i = 0; i < bufferCount; i++) {
+            buffers[i] = null;
+        }
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = null;
+        }
+        frameCount = 0;
+        bufferCount = 0;
+        offset = 0;
+    }
+}
@@ -0,0 +1,303 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.application.OutboundPolicy;
+import com.rossisurna.server.application.OutboundPolicy.TrafficClass;
+import com.rossisurna.server.metrics.GroupMetrics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Bounded queue of frames waiting to be written to one client. Every traffic class has a queue of its own, and frames
+ * leave a class in the order they were queued. The classes are served by weighted round robin: each round control may
+ * send as many frames as its weight, then audio, then bulk, and a new round starts once no class with frames waiting
+ * has any of its share left. Control goes out ahead of a pile of audio without starving it, and bulk always gets a
+ * frame per round.
+ * <p>
+ * Audio frames past the audio capacity are dropped as the policy says, control and bulk frames are never dropped. An
+ * offer is refused when the client has too many control and bulk frames waiting or the queue has not been empty for
+ * too long, which tells the connection to give up on the client.
+ * <p>
+ * Audio frames that waited longer than the audio deadline are skipped when they reach the head of their queue, they
+ * would only be played late and hold up the fresher frames behind them.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 25 2019
+ */
+
+final class OutboundQueue {
+
+    //Traffic classes in the order they are served
+    private static final TrafficClass[] TRAFFIC_CLASSES = TrafficClass.values();
+
+    //Policy
+    private final int audioCapacity; //audio frames that may wait
+    private final int controlCapacity; //control and bulk frames that may wait
+    private final long maxBacklogNanos; //ns the queue may go without being emptied
+    private final boolean dropOldestAudio; //drop the oldest audio frame rather then the new one once full
+    private final long audioDeadlineNanos; //ns an audio frame may wait before it is skipped, 0 for no deadline
+    //Queues
+    private final ArrayDeque<OutboundFrame>[] frames; //frames of every traffic class in the order they were queued
+    private final int[] credits; //frames every traffic class may still send this round
+    private int size = 0; //frames in all queues
+    private long backlogSince = 0; //nanoTime the queue last went from empty to non empty
+    private boolean finished = false; //no more frames will be queued, take returns null once the rest is out
+    //Stats
+    private long droppedAudioFrames = 0; //audio frames dropped because the client was behind
+    private long expiredAudioFrames = 0; //audio frames skipped because they waited past the deadline
+    private GroupMetrics groupMetrics; //metrics of the group the client is in, counts the expired audio, null outside a group
+
+    /**
+     * Constructor that takes in the limits
+     *
+     * @param outboundPolicy limits of the queue
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    OutboundQueue(OutboundPolicy outboundPolicy) {
+        this.audioCapacity = outboundPolicy.getAudioCapacity();
+        this.controlCapacity = outboundPolicy.getControlCapacity();
+        this.maxBacklogNanos = TimeUnit.MILLISECONDS.toNanos(outboundPolicy.getMaxBacklogMillis());
+        this.dropOldestAudio = outboundPolicy.getAudioOverflow() == OutboundPolicy.AudioOverflow.DROP_OLDEST;
+        this.audioDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(outboundPolicy.getAudioDeadlineMillis());
+        this.frames = new ArrayDeque[TRAFFIC_CLASSES.length];
+        this.credits = new int[TRAFFIC_CLASSES.length];
+        for (TrafficClass trafficClass : TRAFFIC_CLASSES) {
+            frames[trafficClass.ordinal()] = new ArrayDeque<>();
+            credits[trafficClass.ordinal()] = trafficClass.getWeight();
+        }
+    }
+
+    //GETTERS
+
+    /**
+     * Get the number of audio frames dropped so far
+     *
+     * @return dropped audio frames
+     */
+    synchronized long getDroppedAudioFrames() {
+        return droppedAudioFrames;
+    }
+
+    /**
+     * Get the number of audio frames skipped so far because they waited past the deadline
+     *
+     * @return expired audio frames
+     */
+    synchronized long getExpiredAudioFrames() {
+        return expiredAudioFrames;
+    }
+
+    /**
+     * Get the number of frames waiting
+     *
+     * @return frames in the queue
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of frames waiting in every traffic class
+     *
+     * @return frames in the queue, indexed by traffic class ordinal
+     */
+    synchronized int[] sizes() {
+        int[] sizes = new int[TRAFFIC_CLASSES.length];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = frames[i].size();
+        }
+        return sizes;
+    }
+
+    //SETTERS
+
+    /**
+     * Sets the metrics of the group the client is in, which count the audio that expires in this queue
+     *
+     * @param groupMetrics group's metrics, null once the client left the group
+     */
+    synchronized void setGroupMetrics(GroupMetrics groupMetrics) {
+        this.groupMetrics = groupMetrics;
+    }
+
+    //MUTATORS
+
+    /**
+     * Queues a frame, never blocks
+     *
+     * @param frame        frame including its length prefix
+     * @param trafficClass class of the frame, only audio may be dropped
+     * @return false if the client fell too far behind and has to be disconnected
+     */
+    synchronized boolean offer(ByteBuffer frame, TrafficClass trafficClass) {
+        long now = System.nanoTime();
+        if (isBacklogged(now)) {
+            return false;
+        }
+
+        ArrayDeque<OutboundFrame> classFrames = frames[trafficClass.ordinal()];
+        if (trafficClass == TrafficClass.AUDIO) {
+            if (classFrames.size() >= audioCapacity) {
+                droppedAudioFrames++;
+                if (!dropOldestAudio) {
+                    return true;
+                }
+                classFrames.pollFirst();
+                size--;
+            }
+        } else if (size - frames[TrafficClass.AUDIO.ordinal()].size() >= controlCapacity) {
+            return false;
+        }
+
+        if (size == 0) {
+            backlogSince = now;
+        }
+        classFrames.addLast(new OutboundFrame(frame, trafficClass, now));
+        size++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Takes the next frame without waiting, picking the traffic class by weight and skipping audio that waited past
+     * the deadline
+     *
+     * @return next frame, or null if the queue is empty
+     */
+    synchronized OutboundFrame poll() {
+        return poll(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Takes the next frame without waiting if it is no larger than given, used to fill a bundle. A larger frame stays
+     * where it is, taking a frame from behind it would break the order the classes are served in.
+     *
+     * @param maxBytes largest frame to take, length prefix included
+     * @return next frame, or null if the queue is empty or the next frame is too large
+     */
+    synchronized OutboundFrame poll(int maxBytes) {
+        long now = System.nanoTime();
+        while (size > 0) {
+            for (TrafficClass trafficClass : TRAFFIC_CLASSES) {
+                int index = trafficClass.ordinal();
+                if (credits[index] > 0 && skipExpired(index, now)) {
+                    OutboundFrame outboundFrame = frames[index].peekFirst();
+                    if (outboundFrame.frame.remaining() > maxBytes) {
+                        return null;
+                    }
+                    credits[index]--;
+                    size--;
+                    return frames[index].pollFirst();
+                }
+            }
+
+            //every class with frames waiting used up its share, start a new round
+            for (TrafficClass trafficClass : TRAFFIC_CLASSES) {
+                credits[trafficClass.ordinal()] = trafficClass.getWeight();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes the next frame, waiting until there is one
+     *
+     * @return next frame, or null once the queue is finished and everything queued before was taken
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized OutboundFrame take() throws InterruptedException {
+        while (true) {
+            //every frame waiting may have expired
+            OutboundFrame outboundFrame = poll();
+            if (outboundFrame != null || finished) {
+                return outboundFrame;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Accepts no more frames, take returns null once everything already queued was taken. A marker frame would not do
+     * since it could overtake frames of a lower class queued before it.
+     *
+     * @return false if the client is too far behind to be worth writing the rest to
+     */
+    synchronized boolean finish() {
+        finished = true;
+        notifyAll();
+        return !isBacklogged(System.nanoTime());
+    }
+
+    /**
+     * Forgets all queued frames
+     */
+    synchronized void clear() {
+        for (ArrayDeque<OutboundFrame> classFrames : frames) {
+            classFrames.clear();
+        }
+        size = 0;
+    }
+
+    /**
+     * Drops the audio at the head of one traffic class that waited past the deadline
+     *
+     * @param index traffic class ordinal
+     * @param now   current nanoTime
+     * @return true if the class still has frames waiting
+     */
+    private boolean skipExpired(int index, long now) {
+        OutboundFrame outboundFrame;
+        while ((outboundFrame = frames[index].peekFirst()) != null) {
+            if (outboundFrame.trafficClass != TrafficClass.AUDIO || audioDeadlineNanos == 0
+                    || now - outboundFrame.enqueuedNanos <= audioDeadlineNanos) {
+                return true;
+            }
+
+            //too late to be worth playing
+            frames[index].pollFirst();
+            size--;
+            expiredAudioFrames++;
+            if (groupMetrics != null) {
+                groupMetrics.recordAudioShedOutbound();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the queue has not been empty for longer than allowed
+     *
+     * @param now current nanoTime
+     * @return true if the client has to be given up on
+     */
+    private boolean isBacklogged(long now) {
+        return size > 0 && now - backlogSince > maxBacklogNanos;
+    }
+
+    /**
+     * One queued frame
+     */
+    static final class OutboundFrame {
+        final ByteBuffer frame; //frame including its length prefix
+        final TrafficClass trafficClass; //class the frame is served and measured in
+        final long enqueuedNanos; //nanoTime the frame was queued
+
+        /**
+         * Constructor that takes in the frame, its class, and when it was queued
+         *
+         * @param frame         frame including its length prefix
+         * @param trafficClass  class of the frame
+         * @param enqueuedNanos nanoTime the frame was queued
+         */
+        private OutboundFrame(ByteBuffer frame, TrafficClass trafficClass, long enqueuedNanos) {
+            this.frame = frame;
+            this.trafficClass = trafficClass;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.util.Packet;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Receives the packets read off a connection. The user with no group and the user with group objects implement this,
+ * and the connection hands every decoded packet to whichever of them currently owns it.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 20 2019
+ */
+
+public interface PacketHandler {
+
+    /**
+     * Called on the connection's I/O loop or reader thread for every packet that arrives, must not block
+     *
+     * @param packet packet received from the client
+     */
+    void handlePacket(Packet packet);
+
+    /**
+     * Called once when the connection is lost without the client saying goodbye
+     */
+    void connectionClosed();
+}
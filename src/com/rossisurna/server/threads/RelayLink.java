@@ -0,0 +1,267 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.application.OutboundPolicy;
+import com.rossisurna.server.application.ServerMode;
+import com.rossisurna.server.cluster.ClusterNode;
+import com.rossisurna.server.metrics.ServerMetrics;
+import com.rossisurna.util.FrameCodec;
+import com.rossisurna.util.FrameReader;
+import com.rossisurna.util.Packet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * TCP link between the node that owns a group and a node that serves some of the group's members with a span of it.
+ * The span node opens it like any client, then sends RL with the group URL, its node ID and the cluster's secret
+ * instead of a username, and the owner checks it is a node of the cluster, see ClusterNode.isPeer, and answers with
+ * the group's name and a snapshot. From then on both ends send each other their members' chat, audio,
+ * joins and leaves, the owner passing what one span sends on to every other span, so the members of all nodes hear
+ * each other as if they were in one group.
+ * <p>
+ * Both ends use this class, the span end creates it with connect, the owner end wraps the connection the RL arrived
+ * on.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 5 2019
+ */
+
+public class RelayLink implements PacketHandler {
+
+    //Protocol Codes
+    private static final String IMSG = "ISMG"; //Initial message with the client ID
+    private static final String RL = "RL"; //relay link
+    private static final String CS = "CS"; //change scene, carries the group's name
+    private static final String SN = "SN"; //join snapshot
+    private static final String LG = "LG"; //leave group, the other end closed the group
+    //Timing
+    private static final int CONNECT_TIMEOUT = 2000; //ms to connect and get the snapshot before giving up
+    //IDs of span end links, negative so they never clash with a client ID
+    private static final AtomicInteger linkKeyCount = new AtomicInteger();
+
+    private final Connection connection; //the link's connection
+    private final int peerNodeID; //node at the other end
+    private final String groupName; //name of the group, as the owner sent it
+    private final Packet snapshot; //snapshot the owner sent, null on the owner end
+    private final List<Packet> pendingPacketList; //packets bundled after the snapshot, handed to the group on start
+    private volatile Group group; //group this end of the link belongs to
+
+    /**
+     * Constructor that takes in the connection of the link and the node at the other end
+     *
+     * @param connection link's connection
+     * @param peerNodeID node at the other end
+     */
+    RelayLink(Connection connection, int peerNodeID) {
+        this(connection, peerNodeID, null, null, Collections.emptyList());
+    }
+
+    /**
+     * Constructor that also takes in what the owner sent when the link was opened
+     *
+     * @param connection        link's connection
+     * @param peerNodeID        node at the other end
+     * @param groupName         name of the group
+     * @param snapshot          snapshot the owner sent
+     * @param pendingPacketList packets that came in the same bundle as the snapshot, after it
+     */
+    private RelayLink(Connection connection, int peerNodeID, String groupName, Packet snapshot, List<Packet> pendingPacketList) {
+        this.connection = connection;
+        this.peerNodeID = peerNodeID;
+        this.groupName = groupName;
+        this.snapshot = snapshot;
+        this.pendingPacketList = pendingPacketList;
+        connection.acceptBundles();
+    }
+
+    /**
+     * Opens a link to the node that owns a group, blocks until the owner sent the group's snapshot. The link only
+     * starts reading once it is attached to the span.
+     *
+     * @param address        where the owner listens
+     * @param groupURL       URL of the group to span
+     * @param clusterNode    this node, which the owner has to recognize
+     * @param ownerNodeID    ID of the owner
+     * @param serverMode     mode deciding between platform and virtual threads
+     * @param outboundPolicy limits of the link's outbound queue
+     * @param serverMetrics  where the link reports its backlog and write latency
+     * @return the link
+     * @throws IOException if the owner could not be reached or does not have the group
+     */
+    public static RelayLink connect(InetSocketAddress address, String groupURL, ClusterNode clusterNode, int ownerNodeID, ServerMode serverMode, OutboundPolicy outboundPolicy, ServerMetrics serverMetrics) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(address, CONNECT_TIMEOUT);
+            channel.socket().setSoTimeout(CONNECT_TIMEOUT);
+            channel.socket().setTcpNoDelay(true);
+
+            //the streams do not buffer, so nothing past the snapshot is read before the connection takes over
+            FrameReader in = new FrameReader(new DataInputStream(channel.socket().getInputStream()));
+            DataOutputStream out = new DataOutputStream(channel.socket().getOutputStream());
+
+            //wait to be greeted like any client, then ask for the group
+            while (!IMSG.equals(in.read().getCode())) {
+                //nothing else is sent before the greeting
+            }
+            FrameCodec.writeFrame(out, new Packet(RL, 0, clusterNode.relayRequest(groupURL)));
+
+            //the owner answers with the group's name and its snapshot, or hangs up if it has no such group
+            String groupName = groupURL;
+            while (true) {
+                Packet packet = in.read();
+                if (CS.equals(packet.getCode()) && packet.getSubPacket() instanceof String[]) {
+                    groupName = ((String[]) packet.getSubPacket())[1];
+                } else if (SN.equals(packet.getCode())) {
+                    channel.socket().setSoTimeout(0);
+                    Connection connection = new BlockingConnection(channel, -linkKeyCount.incrementAndGet(), outboundPolicy, serverMetrics);
+                    RelayLink relayLink = new RelayLink(connection, ownerNodeID, groupName, packet, in.takePending());
+                    connection.setHandler(relayLink);
+                    return relayLink;
+                } else if (LG.equals(packet.getCode())) {
+                    throw new IOException("Node " + ownerNodeID + " has no group " + groupURL);
+                }
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Hands the group whatever came bundled with the snapshot, then starts reading, once the group is attached, span
+     * end only
+     *
+     * @param serverMode mode deciding between platform and virtual threads
+     */
+    void start(ServerMode serverMode) {
+        for (Packet packet : pendingPacketList) {
+            handlePacket(packet);
+        }
+        ((BlockingConnection) connection).start(serverMode);
+    }
+
+    /**
+     * Hands a packet from the other node to the group
+     *
+     * @param packet packet received over the link
+     */
+    @Override
+    public void handlePacket(Packet packet) {
+        Group currentGroup = group;
+        if (currentGroup == null || IMSG.equals(packet.getCode())) {
+            return;
+        }
+
+        if (LG.equals(packet.getCode())) {
+            //the other end closed the group
+            currentGroup.relayLinkClosed(this);
+        } else {
+            currentGroup.receiveRelayed(packet, this);
+        }
+    }
+
+    /**
+     * Link dropped, the group drops whatever came over it
+     */
+    @Override
+    public void connectionClosed() {
+        Group currentGroup = group;
+        if (currentGroup != null) {
+            currentGroup.relayLinkClosed(this);
+        }
+    }
+
+    //GETTERS
+
+    /**
+     * Get the node at the other end
+     *
+     * @return node ID
+     */
+    public int getPeerNodeID() {
+        return peerNodeID;
+    }
+
+    /**
+     * Get the name of the group, as the owner sent it
+     *
+     * @return group name, null on the owner end
+     */
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * Whether the link's connection has been closed
+     *
+     * @return true once closed
+     */
+    boolean isClosed() {
+        return connection.isClosed();
+    }
+
+    /**
+     * Get the snapshot the owner sent when the link was opened
+     *
+     * @return snapshot, null on the owner end
+     */
+    Packet getSnapshot() {
+        return snapshot;
+    }
+
+    //SETTERS
+
+    /**
+     * Sets the group this end of the link belongs to, from then on it gets the link's packets
+     *
+     * @param group group
+     */
+    void setGroup(Group group) {
+        this.group = group;
+        connection.setGroupMetrics(group.getGroupMetrics());
+        connection.setHandler(this);
+    }
+
+    //MUTATORS
+
+    /**
+     * Queues a packet for the other node, never blocks
+     *
+     * @param packet packet to send
+     */
+    void send(Packet packet) {
+        connection.send(packet);
+    }
+
+    /**
+     * Queues an already encoded frame for the other node, never blocks
+     *
+     * @param code  protocol code of the packet in the frame
+     * @param frame frame including its length prefix
+     * @return number of bytes queued
+     */
+    int sendFrame(String code, ByteBuffer frame) {
+        connection.sendFrame(code, frame);
+        return frame.remaining();
+    }
+
+    /**
+     * Closes the link once everything already queued has been written
+     */
+    public void close() {
+        group = null;
+        connection.setGroupMetrics(null);
+        connection.close();
+    }
+}
@@ -0,0 +1,582 @@
+package com.rossisurna.server.threads;
+
+import com.rossisurna.server.application.RateLimitPolicy;
+import com.rossisurna.util.AudioPacket;
+import com.rossisurna.util.FrameCodec;
+import com.rossisurna.util.Packet;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * One client's session with the server, from the moment its connection is accepted until it is closed. The session
+ * is the connection's only packet handler for its whole life, and which packets it accepts and where it sends them
+ * depends on its state:
+ * <p>
+ * HANDSHAKE: just accepted, the first whole frame the client sends completes the handshake and the session moves to the
+ * LOBBY, a client that sends nothing in time is hung up on, see HandshakeStage.
+ * LOBBY: no group, takes the username and requests to create or join a group, which go to the server.
+ * JOINING: a create or join was handed to the server, waits for a group to take the session or for the server to
+ * turn it down.
+ * IN_GROUP: chat, audio, history fetches and the request to leave go to the group.
+ * LEAVING: asked its group to leave, waits for the group to let it go, then it is back in the LOBBY.
+ * CLOSED: the session is over, the connection is closed or was handed over to a relay link.
+ * <p>
+ * Moving between groups only changes the state and the group the session points at, the connection, its reader and
+ * writer, and its streams stay the same, so nothing has to be rebuilt and no packet can arrive at a handler that
+ * already let the connection go.
+ * <p>
+ * In every state a client that goes silent is sent heartbeats, and one that stays silent past the idle timeout is
+ * evicted as if it had disconnected, see LivenessMonitor.
+ * <p>
+ * Audio and chat are checked against the session's rate limits before they go to the group, anything over a limit is
+ * dropped right there, see RateLimitPolicy. What the client sends, what it costs the group's fan-out, and what it is
+ * sent are counted in its SessionTraffic.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 7 2019
+ */
+
+public class Session implements PacketHandler {
+
+    //Protocol CODES
+    private final String IMSG = "ISMG"; //Initial message to send clientID
+    private final String MSG = "MSG"; //Message
+    private final String CS = "CS"; //Change scene
+    private final String JG = "JG"; //Join group
+    private final String CG = "CG"; //Create group
+    private final String SU = "SU"; //Set Username
+    private final String AP = "AP"; //audio packet
+    private final String LG = "LG"; //leave group
+    private final String DS = "DS"; //client disconnected
+    private final String MT = "MT"; //media token
+    private final String HF = "HF"; //history fetch
+    private final String RL = "RL"; //relay link, another cluster node spanning a group
+    private final String HB = "HB"; //heartbeat, the client's answer to the server's
+    //Session data
+    private final int clientID; //Client's specific ID used to identify them within the master HashMap
+    private final Connection connection; //the connection to the client, the same for the session's whole life
+    private final LinkedBlockingQueue<Packet> instructionQueue; //instruction queue that the server is waiting for instructions
+    private final ConcurrentHashMap<Integer, Session> sessionConcurrentHashMap; //server's sessions, this one leaves it once closed
+    private volatile String username; //the client username
+    //State
+    private State state; //where the session is, guarded by this
+    private final HandshakeStage.Handshake handshake; //handshake the session starts with, null to start in the lobby
+    private volatile Group group; //group the session is in or leaving, null in the lobby
+    private volatile MediaRelay mediaRelay; //UDP media plane the session registered with in its group, null if none, written under this
+    private final InboundLimiter inboundLimiter; //token buckets of the client's audio and chat, used by the reader and the media relay
+
+    /**
+     * Constructor that takes in the new connection, clientID, the server's queue and sessions, and gives the client
+     * its ID, without rate limits
+     *
+     * @param connection               client's connection
+     * @param clientID                 client's ID
+     * @param instructionQueue         instruction queue for server
+     * @param sessionConcurrentHashMap server's sessions, the session removes itself once closed
+     * @param handshake                handshake the client has to finish, null to start right in the lobby
+     */
+    Session(Connection connection, int clientID, LinkedBlockingQueue<Packet> instructionQueue, ConcurrentHashMap<Integer, Session> sessionConcurrentHashMap, HandshakeStage.Handshake handshake) {
+        this(connection, clientID, instructionQueue, sessionConcurrentHashMap, handshake, RateLimitPolicy.unlimited());
+    }
+
+    /**
+     * Constructor that takes in the new connection, clientID, the server's queue and sessions, and the rate limits, and
+     * gives the client its ID
+     *
+     * @param connection               client's connection
+     * @param clientID                 client's ID
+     * @param instructionQueue         instruction queue for server
+     * @param sessionConcurrentHashMap server's sessions, the session removes itself once closed
+     * @param handshake                handshake the client has to finish, null to start right in the lobby
+     * @param rateLimitPolicy          how much audio and chat the client may send
+     */
+    Session(Connection connection, int clientID, LinkedBlockingQueue<Packet> instructionQueue, ConcurrentHashMap<Integer, Session> sessionConcurrentHashMap, HandshakeStage.Handshake handshake, RateLimitPolicy rateLimitPolicy) {
+        this.connection = connection;
+        this.clientID = clientID;
+        this.instructionQueue = instructionQueue;
+        this.sessionConcurrentHashMap = sessionConcurrentHashMap;
+        this.handshake = handshake;
+        this.inboundLimiter = new InboundLimiter(rateLimitPolicy);
+        this.state = handshake == null ? State.LOBBY : State.HANDSHAKE;
+        connection.setHandler(this);
+
+        System.out.printf("%nSession, ClientID: %d Created", clientID);
+
+        //send initial message to client giving them their clientID, then give it until the timeout to answer
+        connection.send(new Packet(IMSG, 0, String.valueOf(clientID)));
+        if (handshake != null) {
+            handshake.start(this::handshakeTimedOut);
+        }
+    }
+
+    /**
+     * Handles a packet read off the client's connection, runs on the connection's I/O loop or reader thread
+     *
+     * @param packet packet received from the client
+     */
+    @Override
+    public void handlePacket(Packet packet) {
+        String code = packet.getCode();
+
+        //the first whole frame completes the handshake, unless the client was hung up on for being too slow already
+        if (getState() == State.HANDSHAKE) {
+            if (!handshake.complete()) {
+                return;
+            }
+            transition(State.HANDSHAKE, State.LOBBY);
+        }
+
+        //the answer to a heartbeat only has to arrive, reading it already showed the client is alive
+        if (HB.equals(code)) {
+            return;
+        }
+
+        //a goodbye is taken in every state
+        if (DS.equals(code)) {
+            disconnect();
+            return;
+        }
+
+        switch (getState()) {
+            case LOBBY: {
+                handleLobbyPacket(packet);
+                break;
+            }
+            case IN_GROUP: {
+                handleGroupPacket(packet);
+                break;
+            }
+            case CLOSED: {
+                return;
+            }
+            default: {
+                //joining or leaving, the client waits for the answer before it sends anything else
+                System.out.printf("%nIgnored Code: %s while %s (Session.java)", code, getState());
+            }
+        }
+    }
+
+    /**
+     * Acts on a packet of a client in the lobby
+     *
+     * @param packet packet received from the client
+     */
+    private void handleLobbyPacket(Packet packet) {
+        Object subPacket = packet.getSubPacket();
+
+        //takes the incoming code and determines the task for it
+        switch (packet.getCode()) {
+            case SU: {
+                //set username that is received from socket
+                if (subPacket instanceof String) {
+                    username = (String) subPacket;
+                }
+                break;
+            }
+            case JG:
+            case CG: {
+                //Join or create group case, tells server by giving it an instruction, the server hands the session to
+                //the group or turns the request down
+                if (subPacket instanceof String && transition(State.LOBBY, State.JOINING)) {
+                    instructionQueue.add(new Packet(packet.getCode(), clientID, subPacket));
+                }
+                break;
+            }
+            case RL: {
+                //claims to be another cluster node asking for a group, with the group URL, its node ID and the secret,
+                //the server checks the claim before the connection becomes a relay link
+                if (subPacket instanceof String[] && ((String[]) subPacket).length == 3 && transition(State.LOBBY, State.JOINING)) {
+                    instructionQueue.add(new Packet(RL, clientID, subPacket));
+                }
+                break;
+            }
+            default: {
+                System.out.printf("%nInvalid Code: %s in lobby (Session.java)", packet.getCode());
+            }
+        }
+    }
+
+    /**
+     * Acts on a packet of a client in a group. What goes on to the group carries the session's own client ID, never
+     * the sender ID the client put in the packet, so the group credits, excludes, and charges the right member.
+     *
+     * @param packet packet received from the client
+     */
+    private void handleGroupPacket(Packet packet) {
+        Group currentGroup = group;
+        Object subPacket = packet.getSubPacket();
+
+        switch (packet.getCode()) {
+            case MSG: {
+                //Chat Client message, empty chat is not worth sending on, chat over the limit is dropped
+                if (subPacket instanceof String && ((String) subPacket).length() != 0) {
+                    if (inboundLimiter.admitChat()) {
+                        connection.getSessionTraffic().received(((String) subPacket).getBytes(StandardCharsets.UTF_8).length);
+                        currentGroup.receive(new Packet(MSG, clientID, subPacket));
+                    } else {
+                        connection.getSessionTraffic().chatRateLimited();
+                    }
+                }
+                break;
+            }
+            case AP: {
+                //Audio packet received, transfer to group unless the client is over its audio limits
+                if (!(subPacket instanceof AudioPacket)) {
+                    break;
+                }
+                int audioBytes = audioBytesOf((AudioPacket) subPacket);
+                if (inboundLimiter.admitAudio(audioBytes)) {
+                    connection.getSessionTraffic().received(audioBytes);
+                    currentGroup.receive(new Packet(AP, clientID, subPacket));
+                } else {
+                    connection.getSessionTraffic().audioRateLimited();
+                }
+                break;
+            }
+            case HF: {
+                //client scrolled back past its oldest message, the group answers from its history on its own loop
+                if (subPacket instanceof Long) {
+                    currentGroup.receive(new Packet(HF, clientID, subPacket));
+                }
+                break;
+            }
+            case LG: {
+                //the group lets the session go on its own loop, until then the session is leaving
+                if (transition(State.IN_GROUP, State.LEAVING)) {
+                    currentGroup.receive(new Packet(LG, clientID, null));
+                }
+                break;
+            }
+            default: {
+                System.out.printf("%nInvalid Code: %s in group (Session.java)", packet.getCode());
+            }
+        }
+    }
+
+    /**
+     * Get the number of audio bytes in an audio packet, which is what the audio byte limit counts
+     *
+     * @param audioPacket sub packet of an AP packet
+     * @return bytes of audio, 0 if it holds none
+     */
+    private static int audioBytesOf(AudioPacket audioPacket) {
+        byte[] audio = audioPacket.getAudioDataInByteForm();
+        return audio == null ? 0 : audio.length;
+    }
+
+    /**
+     * Connection dropped without a goodbye, same as the client sending DS
+     */
+    @Override
+    public void connectionClosed() {
+        disconnect();
+    }
+
+    //GETTERS
+
+    /**
+     * get username
+     *
+     * @return client's username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * get clientID
+     *
+     * @return client's ID
+     */
+    public int getClientID() {
+        return clientID;
+    }
+
+    /**
+     * Get the address the client connected from
+     *
+     * @return remote address, null if there is none
+     */
+    public InetAddress getRemoteAddress() {
+        return connection.getRemoteAddress();
+    }
+
+    /**
+     * Get the state the session is in
+     *
+     * @return session state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get how long the client has been silent
+     *
+     * @return ns since the last packet was read from the client, or since its connection was opened
+     */
+    long getIdleNanos() {
+        return System.nanoTime() - connection.getLastReadNanos();
+    }
+
+    //MUTATORS
+
+    /**
+     * Handles a packet the client sent over UDP, runs on the media relay's thread. It counts as hearing from the
+     * client and takes the same path and the same limits as a packet read off the connection.
+     *
+     * @param packet packet received from the client
+     */
+    void handleMediaPacket(Packet packet) {
+        connection.touch();
+        handlePacket(packet);
+    }
+
+    /**
+     * Counts what the group sent out for one of the client's packets, against the client
+     *
+     * @param bytes bytes sent to other members and nodes, every recipient counted
+     */
+    void fannedOut(long bytes) {
+        connection.getSessionTraffic().fannedOut(bytes);
+    }
+
+    /**
+     * Moves the session from one state to another
+     *
+     * @param from state the session has to be in
+     * @param to   state to move to
+     * @return false if the session was in another state and nothing changed
+     */
+    private synchronized boolean transition(State from, State to) {
+        if (state != from) {
+            return false;
+        }
+        state = to;
+        return true;
+    }
+
+    /**
+     * A group takes the joining session in, runs on the group's loop. The client gets the scene change, the media
+     * token, and the snapshot, then its packets go to the group.
+     *
+     * @param group      group taking the session in
+     * @param snapshot   roster and recent chat of the group, taken before the session is in it
+     * @param mediaRelay UDP media plane, null if UDP is unavailable
+     * @return false if the session is not joining anymore, the client disconnected meanwhile
+     */
+    synchronized boolean joined(Group group, Packet snapshot, MediaRelay mediaRelay) {
+        if (state != State.JOINING) {
+            return false;
+        }
+
+        //automatically tell client to change scene and give it the URL
+        connection.send(new Packet(CS, clientID, new String[]{group.getGroupUrl(), group.getGroupName()}));
+
+        //offer the UDP media plane, the client keeps using TCP for audio until it registered
+        if (mediaRelay != null) {
+            connection.send(new Packet(MT, clientID, mediaRelay.register(clientID, this)));
+        }
+        this.mediaRelay = mediaRelay;
+
+        //Send everything the client needs on launch in one packet
+        connection.send(snapshot);
+
+        //from now on the group gets the client's packets, and audio that expires on its way out counts for the group
+        connection.setGroupMetrics(group.getGroupMetrics());
+        this.group = group;
+        state = State.IN_GROUP;
+        return true;
+    }
+
+    /**
+     * The server turned a create or join down, the session is back in the lobby
+     */
+    public void joinFailed() {
+        transition(State.JOINING, State.LOBBY);
+    }
+
+    /**
+     * The group let the session go after it asked to leave, runs on the group's loop. The client gets the leave
+     * confirmation and is back in the lobby.
+     *
+     * @param group group the session left
+     */
+    synchronized void leftGroup(Group group) {
+        if (this.group != group || state == State.CLOSED) {
+            return;
+        }
+        leaveGroup();
+        connection.send(new Packet(LG, 0, null));
+        state = State.LOBBY;
+    }
+
+    /**
+     * The group closed with the session still in it, runs on the group's loop. The group already told the client,
+     * the session is back in the lobby.
+     *
+     * @param group group that closed
+     */
+    synchronized void groupClosed(Group group) {
+        if (this.group != group || state == State.CLOSED) {
+            return;
+        }
+        leaveGroup();
+        state = State.LOBBY;
+    }
+
+    /**
+     * Forgets the group's media endpoint and metrics, guarded by this
+     */
+    private void leaveGroup() {
+        if (mediaRelay != null) {
+            mediaRelay.unregister(clientID, this);
+            mediaRelay = null;
+        }
+        connection.setGroupMetrics(null);
+        group = null;
+    }
+
+    /**
+     * Hands the connection over to someone else, used when it turns out to be a relay link of another cluster node.
+     * The session is over but the connection stays open.
+     *
+     * @return the connection, or null if the session was not waiting for the server
+     */
+    public Connection handOver() {
+        synchronized (this) {
+            if (state != State.JOINING) {
+                return null;
+            }
+            state = State.CLOSED;
+        }
+        sessionConcurrentHashMap.remove(clientID, this);
+        return connection;
+    }
+
+    /**
+     * Client sent nothing before its handshake timed out, runs on the timer wheel's thread
+     */
+    private void handshakeTimedOut() {
+        System.out.printf("%nClient %d sent nothing within its handshake timeout, hanging up", clientID);
+        closeSocket();
+    }
+
+    /**
+     * Client stayed silent past the idle timeout, runs on the timer wheel's thread. The session leaves its group like
+     * a client that disconnected and is hung up on.
+     *
+     * @param idleMillis ms the client has been silent for
+     */
+    void evict(long idleMillis) {
+        System.out.printf("%nClient %d silent for %d ms, evicting", clientID, idleMillis);
+        disconnect();
+    }
+
+    /**
+     * Client disconnected or its connection dropped, leaves its group and closes the session
+     */
+    private void disconnect() {
+        Group currentGroup;
+        synchronized (this) {
+            currentGroup = group;
+        }
+        if (currentGroup != null) {
+            currentGroup.receive(new Packet(DS, clientID, null));
+        }
+        closeSocket();
+    }
+
+    /**
+     * Broadcast a packet to this client unless it sent it, encoding it just for this client
+     *
+     * @param packet packet to send to client
+     */
+    public void sendBroadcastDataToClient(Packet packet) {
+        try {
+            sendBroadcastDataToClient(packet, FrameCodec.encode(packet));
+        } catch (IOException e) {
+            System.out.printf("%nCould not encode packet %s for client %d", packet.getCode(), clientID);
+        }
+    }
+
+    /**
+     * Broadcast any data in the broadcast queue to all the clients expect the one that was send. The frame is shared
+     * by every member of the group and is never modified.
+     *
+     * @param packet packet to send to client
+     * @param frame  the packet already encoded, length prefix included
+     * @return number of bytes handed to the client's connection or UDP endpoint, 0 if it was the sender
+     */
+    public int sendBroadcastDataToClient(Packet packet, ByteBuffer frame) {
+        if (packet.getSenderID() != clientID) {
+            //audio goes over UDP when the client registered an endpoint, anything else or a failed send uses TCP
+            MediaRelay currentMediaRelay = mediaRelay;
+            if (AP.equals(packet.getCode()) && currentMediaRelay != null && currentMediaRelay.send(clientID, frame)) {
+                connection.getSessionTraffic().sent(frame.remaining());
+                return frame.remaining();
+            }
+
+            connection.sendFrame(packet.getCode(), frame);
+            return frame.remaining();
+        }
+        return 0;
+    }
+
+    /**
+     * Sends a packet to the client, used by the server for answers that come from neither the lobby nor a group
+     *
+     * @param packet packet to send
+     */
+    public void send(Packet packet) {
+        connection.send(packet);
+    }
+
+    /**
+     * Cuts the socket off right away, dropping whatever is still queued, used once the server's drain ran out of time
+     */
+    public void abortSocket() {
+        closeSocket();
+        connection.abort();
+    }
+
+    /**
+     * Close the session and its socket, once everything already queued is written
+     */
+    public void closeSocket() {
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            state = State.CLOSED;
+            leaveGroup();
+        }
+        if (handshake != null) {
+            handshake.abandon();
+        }
+        System.out.printf("%nClosing Session %d", clientID);
+        sessionConcurrentHashMap.remove(clientID, this);
+        connection.close();
+    }
+
+    /**
+     * Where a session is, see the class comment
+     */
+    public enum State {
+        HANDSHAKE,
+        LOBBY,
+        JOINING,
+        IN_GROUP,
+        LEAVING,
+        CLOSED
+    }
+}
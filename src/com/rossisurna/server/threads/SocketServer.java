@@ -1,18 +1,28 @@
 package com.rossisurna.server.threads;
 
+import com.rossisurna.server.application.OutboundPolicy;
+import com.rossisurna.server.application.RateLimitPolicy;
+import com.rossisurna.server.application.ServerMode;
+import com.rossisurna.server.cluster.ClusterNode;
+import com.rossisurna.server.metrics.ServerMetrics;
 import com.rossisurna.util.Packet;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Network Programming Spring 2019 Final Project
  * <p>
  * This class is used to accept all incoming sockets from there adds them into
- * the master hashmap that contains alls the user with no group
+ * the master hashmap that contains alls the user with no group. The accepting thread only accepts, every connection
+ * is set up on the handshake stage, so a connection storm or a client that never speaks can not hold accepting up. In
+ * NIO mode accepted channels are spread over a small
+ * fixed number of I/O loops which do all of the reading and writing, in the thread modes every channel gets its own
+ * reader and writer thread.
  *
  * @author Stephen R
  * @author Tomas S
@@ -22,25 +32,77 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class SocketServer implements Runnable {
 
-    private static int userWNGKeyCount = 1; //Current key count for usersWithNoGroup
-    private final ConcurrentLinkedQueue<Packet> instructionQueue; //Queue to add instructions for server home to run
+    //Timing
+    private static final long ACCEPT_BACKOFF = 100; //ms to wait after a failed accept before trying again
+    //Client IDs
+    private static final int CLIENT_IDS_PER_NODE = 1 << ClusterNode.NODE_SHIFT; //IDs in one node's range, 0 is never handed out
+
+    private final int clientIDBase; //the cluster node ID in the top bits, 0 if the server runs alone
+    private int nextClientIndex; //low bits of the next client ID to try, accepting thread only
+    private final LinkedBlockingQueue<Packet> instructionQueue; //Queue to add instructions for server home to run
     //Lists
-    private ConcurrentHashMap<Integer, UserWNG> userWNGConcurrentHashMap; //Hashmap that holds all users with no group, data is taken in from server home
+    private ConcurrentHashMap<Integer, Session> sessionConcurrentHashMap; //Hashmap that holds the sessions of all users, data is taken in from server home
     //Sockets
-    private ServerSocket serverSocket; //socket server itself
+    private ServerSocketChannel serverSocket; //socket server itself
+    private final IOLoop[] ioLoops; //I/O loops that own the accepted connections, NIO mode only
+    private final ServerMode serverMode; //how connections are run
+    private final OutboundPolicy outboundPolicy; //limits of every connection's outbound queue
+    private final ServerMetrics serverMetrics; //where accepted connections are counted
+    private final InetSocketAddress address; //address and port to listen on
+    private final int acceptBacklog; //connections waiting to be accepted, 0 for the operating system's default
+    private final HandshakeStage handshakeStage; //sets accepted connections up and times their handshakes out
+    private final LivenessMonitor livenessMonitor; //sends heartbeats to every session and evicts the silent ones
+    private final RateLimitPolicy rateLimitPolicy; //how much audio and chat each client may send
+    private int nextIOLoop = 0; //round robin index of the loop that gets the next connection
 
     //Util
-    private boolean close = false; //tells server when to close
+    private volatile boolean close = false; //tells server when to close
 
     /**
-     * Constructor that takes in master user hashmap and instruction queue for the server
+     * Constructor that takes in master session hashmap and instruction queue for the server
      *
-     * @param userWNGConcurrentHashMap user WNG hashmap list
+     * @param sessionConcurrentHashMap session hashmap list
      * @param instructionQueue         instruction Queue
+     * @param serverMode               how connections are run
+     * @param outboundPolicy           limits of every connection's outbound queue
+     * @param serverMetrics            where accepted connections are counted
+     * @param ioThreadCount            number of I/O loops to spread the connections over in NIO mode
+     * @param address                  address and port to listen on
+     * @param acceptBacklog            connections waiting to be accepted, 0 for the operating system's default
+     * @param firstClientID            ID of the first client, 1 unless the server is a cluster node
+     * @param handshakeStage           stage every accepted connection goes through
+     * @param livenessMonitor          watches every session for silence
+     * @param rateLimitPolicy          how much audio and chat each client may send
      */
-    public SocketServer(ConcurrentHashMap<Integer, UserWNG> userWNGConcurrentHashMap, ConcurrentLinkedQueue<Packet> instructionQueue) {
-        this.userWNGConcurrentHashMap = userWNGConcurrentHashMap;
+    public SocketServer(ConcurrentHashMap<Integer, Session> sessionConcurrentHashMap, LinkedBlockingQueue<Packet> instructionQueue, ServerMode serverMode, OutboundPolicy outboundPolicy, ServerMetrics serverMetrics, int ioThreadCount, InetSocketAddress address, int acceptBacklog, int firstClientID, HandshakeStage handshakeStage, LivenessMonitor livenessMonitor, RateLimitPolicy rateLimitPolicy) {
+        this.clientIDBase = firstClientID & -CLIENT_IDS_PER_NODE;
+        this.nextClientIndex = Math.max(1, firstClientID & (CLIENT_IDS_PER_NODE - 1));
+        this.address = address;
+        this.acceptBacklog = acceptBacklog;
+        this.handshakeStage = handshakeStage;
+        this.livenessMonitor = livenessMonitor;
+        this.rateLimitPolicy = rateLimitPolicy;
+        this.sessionConcurrentHashMap = sessionConcurrentHashMap;
         this.instructionQueue = instructionQueue;
+        this.serverMode = serverMode;
+        this.outboundPolicy = outboundPolicy;
+        this.serverMetrics = serverMetrics;
+        this.ioLoops = new IOLoop[serverMode.isBlocking() ? 0 : Math.max(1, ioThreadCount)];
+    }
+
+    /**
+     * Binds the server socket, done before the server thread starts so a port that is taken fails the startup
+     *
+     * @throws IOException if the address could not be bound
+     */
+    public void bind() throws IOException {
+        serverSocket = ServerSocketChannel.open();
+        try {
+            serverSocket.bind(address, acceptBacklog);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
     }
 
     /**
@@ -52,21 +114,45 @@ public class SocketServer implements Runnable {
             the user object and throws them into a hashmap
          */
         try {
-            //launches server socket
-            serverSocket = new ServerSocket(80); //Add port and IP address
-            System.out.printf("%nSocket Server Launched, Address: %s, Chat Server Port: %d, (SocketServer.java)", serverSocket.getInetAddress(), serverSocket.getLocalPort());
+            //launches the I/O loops
+            for (int i = 0; i < ioLoops.length; i++) {
+                ioLoops[i] = new IOLoop(i, outboundPolicy.getBundleWindowMillis());
+                new Thread(ioLoops[i], "IOLoop-" + i).start();
+            }
+
+            //launches server socket, unless it is bound already
+            if (serverSocket == null) {
+                bind();
+            }
+            System.out.printf("%nSocket Server Launched, Address: %s, Chat Server Port: %d, Mode: %s, I/O Loops: %d, (SocketServer.java)", serverSocket.socket().getInetAddress(), serverSocket.socket().getLocalPort(), serverMode, ioLoops.length);
 
             //while the server is running
             while (!close) {
-                //launch into a new thread that manages the specific socket
-                Socket s = serverSocket.accept();
+                SocketChannel s = accept();
+                if (s == null) {
+                    continue;
+                }
+                serverMetrics.connectionAccepted();
+
+                //every ID of this node's range is held by a session, refuse rather than hand out another node's IDs
+                int clientID = nextClientID();
+                if (clientID == -1) {
+                    System.out.printf("%nEvery client ID of this node is in use, connection refused");
+                    closeChannel(s);
+                    continue;
+                }
 
-                //create new user and add them to hashmap and launch their thread
-                UserWNG userWNG = new UserWNG(s, userWNGKeyCount, instructionQueue);
-                new Thread(userWNG).start();
-                userWNGConcurrentHashMap.put(userWNGKeyCount++, userWNG);
+                //too many handshakes in flight, hang up right away so accepting keeps up
+                HandshakeStage.Handshake handshake = handshakeStage.admit();
+                if (handshake == null) {
+                    closeChannel(s);
+                    continue;
+                }
 
-                System.out.printf("%nSocket received, HashMap Size: %d (ServerHome (Client.java))", userWNGConcurrentHashMap.size());
+                //the handshake stage sets the connection up, the accepting thread goes straight back to accepting
+                if (!handshakeStage.execute(handshake, () -> open(s, clientID, handshake))) {
+                    closeChannel(s);
+                }
             }
         } catch (IOException e) {
             //error with socket, discard
@@ -75,17 +161,143 @@ public class SocketServer implements Runnable {
     }
 
     /**
-     * Try to close server and close thread
+     * Accepts the next connection. A failed accept, out of file descriptors during a reconnect storm for instance,
+     * only costs that one attempt, it is counted and logged and accepting goes on after a short pause.
+     *
+     * @return accepted channel, null if the accept failed or the server is closing
+     * @throws IOException if the server socket was closed without the server closing
      */
-    public void close() {
+    private SocketChannel accept() throws IOException {
+        try {
+            return serverSocket.accept();
+        } catch (IOException e) {
+            if (close) {
+                return null;
+            }
+            if (!serverSocket.isOpen()) {
+                System.out.printf("%nServer socket closed, no longer accepting: %s", e);
+                throw e;
+            }
+            serverMetrics.acceptFailed();
+            System.out.printf("%nAccept failed, retrying in %d ms: %s", ACCEPT_BACKOFF, e);
+            try {
+                Thread.sleep(ACCEPT_BACKOFF);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Picks the ID of the next client. IDs run through this node's range, the bits below the node ID, and wrap around
+     * at its end, skipping 0 and every ID a session still holds, so ClusterNode.nodeOf always finds this node in them.
+     * Accepting thread only.
+     *
+     * @return client ID, or -1 if every ID of the range is in use
+     */
+    private int nextClientID() {
+        for (int tried = 1; tried < CLIENT_IDS_PER_NODE; tried++) {
+            int clientID = clientIDBase | nextClientIndex;
+            nextClientIndex = nextClientIndex + 1 == CLIENT_IDS_PER_NODE ? 1 : nextClientIndex + 1;
+            if (!sessionConcurrentHashMap.containsKey(clientID)) {
+                return clientID;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates the connection and session of an accepted channel and starts reading, runs on the handshake stage
+     *
+     * @param s         accepted channel
+     * @param clientID  ID the client gets
+     * @param handshake handshake the client has to finish
+     */
+    private void open(SocketChannel s, int clientID, HandshakeStage.Handshake handshake) {
+        try {
+            s.socket().setTcpNoDelay(true);
+
+            if (serverMode.isBlocking()) {
+                //the channel gets its own reader and writer threads
+                BlockingConnection connection = new BlockingConnection(s, clientID, outboundPolicy, serverMetrics);
+                Session session = new Session(connection, clientID, instructionQueue, sessionConcurrentHashMap, handshake, rateLimitPolicy);
+                sessionConcurrentHashMap.put(clientID, session);
+                livenessMonitor.watch(session);
+                connection.start(serverMode);
+            } else {
+                //hand the channel to the next I/O loop which manages it from now on
+                s.configureBlocking(false);
+                IOLoop ioLoop = ioLoops[nextIOLoop];
+                nextIOLoop = (nextIOLoop + 1) % ioLoops.length;
+
+                //create new session and add it to hashmap, then let the loop start reading
+                NioConnection connection = new NioConnection(s, ioLoop, clientID, outboundPolicy, serverMetrics);
+                Session session = new Session(connection, clientID, instructionQueue, sessionConcurrentHashMap, handshake, rateLimitPolicy);
+                sessionConcurrentHashMap.put(clientID, session);
+                livenessMonitor.watch(session);
+                ioLoop.register(connection);
+            }
+
+            System.out.printf("%nSocket received, HashMap Size: %d (ServerHome (Client.java))", sessionConcurrentHashMap.size());
+        } catch (IOException e) {
+            //client went away before it was set up
+            handshake.abandon();
+            closeChannel(s);
+        }
+    }
+
+    /**
+     * Closes a channel that never became a connection
+     *
+     * @param s channel to close
+     */
+    private static void closeChannel(SocketChannel s) {
+        try {
+            s.close();
+        } catch (IOException e) {
+//            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the address the server socket is bound to, which has the actual port when bound to port 0
+     *
+     * @return bound address, or null if not bound
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return serverSocket == null ? null : (InetSocketAddress) serverSocket.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops taking new connections, the I/O loops keep writing to the ones already open. The accepting thread ends
+     * once the close wakes its blocked accept up.
+     */
+    public void stopAccepting() {
         try {
-            System.out.printf("%nSocket Server Closed");
             close = true;
-            serverSocket.close();
-            Thread.currentThread().interrupt();
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
         } catch (IOException e) {
-            Thread.currentThread().interrupt();
 //            e.printStackTrace();
         }
     }
+
+    /**
+     * Try to close server, the I/O loops close whatever connections they still have
+     */
+    public void close() {
+        System.out.printf("%nSocket Server Closed");
+        stopAccepting();
+        for (IOLoop ioLoop : ioLoops) {
+            if (ioLoop != null) {
+                ioLoop.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,214 @@
+package com.rossisurna.server.threads;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Hashed timing wheel that keeps the server's timers, handshake timeouts, heartbeats, idle checks, and empty groups
+ * waiting to close, however many sessions there are, on one thread. The wheel is a ring of slots, one per tick, and a
+ * timeout sits in the slot of the tick it is due in, with a count of how many more times round the wheel it has to
+ * wait if it is further away than one turn. Adding and cancelling are O(1) from any thread, and every tick only the
+ * one slot that is due gets looked at, so thousands of timers cost next to nothing while few of them fire.
+ * <p>
+ * Timeouts fire up to a tick late, never early. Cancelled ones stay in their slot until it comes round and are thrown
+ * out then. Tasks run on the wheel's own thread, so they must be short and never block, anything more is handed to a
+ * group or I/O loop.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 9 2019
+ */
+
+public class TimerWheel implements Runnable {
+
+    //Defaults
+    public static final long DEFAULT_TICK_MILLIS = 100; //ms per slot, plenty for timeouts counted in seconds
+    public static final int DEFAULT_SLOTS = 512; //slots in the ring, 51.2 s per turn at the default tick
+
+    private final long tickNanos; //ns per slot
+    private final int mask; //slots - 1, the number of slots is a power of two
+    private final ArrayList<Timeout>[] slots; //timeouts by the slot they are due in, wheel thread only
+    private final ConcurrentLinkedQueue<Timeout> newTimeoutQueue = new ConcurrentLinkedQueue<>(); //added and not in a slot yet
+    private final AtomicInteger pendingCount = new AtomicInteger(); //timeouts not fired yet, cancelled ones until thrown out
+    private final long startNanos; //when tick 0 began
+    private final Thread thread; //the wheel's thread
+    private long tick = 0; //tick being worked on, wheel thread only
+    private volatile boolean close = false; //wheel has been stopped
+
+    /**
+     * Constructor that takes in the default tick and size and starts the wheel's thread
+     */
+    public TimerWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Constructor that takes in the tick and size of the wheel and starts its thread
+     *
+     * @param tickMillis ms per slot, how late a timeout may fire at most
+     * @param slotCount  slots in the ring, rounded up to a power of two
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMillis, int slotCount) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.mask = size - 1;
+        this.slots = new ArrayList[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.startNanos = System.nanoTime();
+
+        thread = new Thread(this, "TimerWheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Turns the wheel one slot per tick until it is stopped
+     */
+    @Override
+    public void run() {
+        while (!close) {
+            //sleeps until the current tick is over, the timeouts due in it are due by then
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long waitNanos;
+            while (!close && (waitNanos = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+            }
+            if (close) {
+                break;
+            }
+
+            transferNewTimeouts();
+            expire(slots[(int) (tick & mask)]);
+            tick++;
+        }
+        System.out.printf("%nTimer wheel stopped with %d timeouts pending", pendingCount.get());
+    }
+
+    /**
+     * Puts the timeouts added since the last tick into the slots they are due in, wheel thread only
+     */
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeoutQueue.poll()) != null) {
+            if (timeout.cancelled) {
+                pendingCount.decrementAndGet();
+                continue;
+            }
+
+            //the tick the deadline falls in, or the current one if it is already past
+            long dueTick = Math.max(tick, (timeout.deadlineNanos - startNanos) / tickNanos);
+            timeout.remainingRounds = (dueTick - tick) / slots.length;
+            slots[(int) (dueTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Fires the timeouts of a slot that are due this turn and throws out the cancelled ones, wheel thread only
+     *
+     * @param slot slot of the current tick
+     */
+    private void expire(ArrayList<Timeout> slot) {
+        //compacts the slot in place, keeping only the timeouts due in a later turn
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Timeout timeout = slot.get(i);
+            if (timeout.cancelled) {
+                pendingCount.decrementAndGet();
+            } else if (timeout.remainingRounds <= 0) {
+                pendingCount.decrementAndGet();
+                timeout.fire();
+            } else {
+                timeout.remainingRounds--;
+                slot.set(kept++, timeout);
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    /**
+     * Schedules a task to run once after a delay, from any thread
+     *
+     * @param task  what to run, on the wheel's thread, must be short and never block
+     * @param delay how long to wait
+     * @param unit  unit of the delay
+     * @return the timeout, cancel it if the task is no longer needed
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        if (close) {
+            //nothing runs once the wheel stopped, the timeout just never fires
+            timeout.cancelled = true;
+            return timeout;
+        }
+        pendingCount.incrementAndGet();
+        newTimeoutQueue.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Get the number of timeouts that have not fired yet, cancelled ones count until their slot comes round
+     *
+     * @return pending timeouts
+     */
+    public int getPendingTimeouts() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Stops the wheel, timeouts still pending never fire
+     */
+    public void close() {
+        close = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Task waiting in the wheel
+     */
+    public static final class Timeout {
+
+        private final Runnable task; //what to run once due
+        private final long deadlineNanos; //nanoTime the task is due at
+        private long remainingRounds; //turns of the wheel left before it is due, wheel thread only
+        private volatile boolean cancelled = false; //set once cancelled, the wheel throws it out
+
+        /**
+         * Constructor only the wheel uses
+         *
+         * @param task          what to run
+         * @param deadlineNanos nanoTime it is due at
+         */
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Keeps the task from running if it has not already, from any thread
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Runs the task on the wheel's thread, a task that throws does not stop the wheel
+         */
+        private void fire() {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.printf("%nTimer task failed: %s", e);
+//                e.printStackTrace();
+            }
+        }
+    }
+}
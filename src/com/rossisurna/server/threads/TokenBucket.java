@@ -0,0 +1,63 @@
+package com.rossisurna.server.threads;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Token bucket that refills at a fixed rate up to one second's worth of tokens. Taking tokens succeeds only while the
+ * bucket holds enough of them, so over any stretch of time no more than the rate plus one bucket gets through. The
+ * bucket is refilled lazily from the time of each take, it needs no timer and no thread.
+ * <p>
+ * Not thread safe, a bucket belongs to one session's InboundLimiter, which synchronizes on itself.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 11 2019
+ */
+
+final class TokenBucket {
+
+    private final double tokensPerNano; //tokens added per ns
+    private final double capacity; //most tokens the bucket holds, one second's worth
+    private double tokens; //tokens left
+    private long refilledNanos; //nanoTime the tokens were last brought up to date
+
+    /**
+     * Constructor that takes in the rate and starts with a full bucket
+     *
+     * @param tokensPerSecond tokens added per second, at least 1
+     * @param nowNanos        current nanoTime
+     */
+    TokenBucket(long tokensPerSecond, long nowNanos) {
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.capacity = tokensPerSecond;
+        this.tokens = capacity;
+        this.refilledNanos = nowNanos;
+    }
+
+    /**
+     * Takes tokens if there are enough of them, otherwise takes none
+     *
+     * @param amount   tokens needed
+     * @param nowNanos current nanoTime
+     * @return true if the tokens were taken
+     */
+    boolean tryTake(long amount, long nowNanos) {
+        tokens = Math.min(capacity, tokens + (nowNanos - refilledNanos) * tokensPerNano);
+        refilledNanos = nowNanos;
+        if (tokens < amount) {
+            return false;
+        }
+        tokens -= amount;
+        return true;
+    }
+
+    /**
+     * Gives back tokens that were taken for something that was not let through after all
+     *
+     * @param amount tokens to give back
+     */
+    void giveBack(long amount) {
+        tokens = Math.min(capacity, tokens + amount);
+    }
+}
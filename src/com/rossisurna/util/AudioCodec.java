@@ -0,0 +1,203 @@
+package com.rossisurna.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * GZIP codec for the audio inside audio packets. It reads and writes the same format as GZIPInputStream and
+ * GZIPOutputStream, but keeps its deflater, inflater and scratch buffers between calls, so code running every few
+ * milliseconds does not create new streams for every frame. An instance is not thread safe, every thread that needs
+ * one keeps its own.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 26 2019
+ */
+
+public final class AudioCodec {
+
+    //GZIP format
+    private static final int GZIP_MAGIC = 0x8b1f; //first two bytes of every gzip member, little endian
+    private static final int HEADER_LENGTH = 10; //fixed part of the header
+    private static final int TRAILER_LENGTH = 8; //CRC32 and uncompressed size
+    private static final int FLAG_HEADER_CRC = 2; //header is followed by a CRC16
+    private static final int FLAG_EXTRA = 4; //header has an extra field
+    private static final int FLAG_NAME = 8; //header has a file name
+    private static final int FLAG_COMMENT = 16; //header has a comment
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff}; //header written by compress
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true); //raw deflate, the gzip framing is done here
+    private final Inflater inflater = new Inflater(true); //raw inflate, the gzip framing is done here
+    private final CRC32 crc = new CRC32(); //checksum of the uncompressed data
+    private byte[] compressBuffer = new byte[4096]; //scratch buffer compress writes into, grows when needed
+
+    /**
+     * Compresses audio into a gzip member
+     *
+     * @param pcm    raw audio
+     * @param offset start of the audio in the array
+     * @param length number of bytes of audio
+     * @return gzip bytes, readable with GZIPInputStream
+     */
+    public byte[] compress(byte[] pcm, int offset, int length) {
+        crc.reset();
+        crc.update(pcm, offset, length);
+        deflater.reset();
+        deflater.setInput(pcm, offset, length);
+        deflater.finish();
+
+        System.arraycopy(HEADER, 0, compressBuffer, 0, HEADER_LENGTH);
+        int size = HEADER_LENGTH;
+        while (!deflater.finished()) {
+            if (size == compressBuffer.length) {
+                compressBuffer = Arrays.copyOf(compressBuffer, compressBuffer.length * 2);
+            }
+            size += deflater.deflate(compressBuffer, size, compressBuffer.length - size);
+        }
+
+        if (size + TRAILER_LENGTH > compressBuffer.length) {
+            compressBuffer = Arrays.copyOf(compressBuffer, size + TRAILER_LENGTH);
+        }
+        writeIntLE(compressBuffer, size, (int) crc.getValue());
+        writeIntLE(compressBuffer, size + 4, length);
+        return Arrays.copyOf(compressBuffer, size + TRAILER_LENGTH);
+    }
+
+    /**
+     * Decompresses a gzip member into a caller supplied buffer
+     *
+     * @param gzip bytes of one gzip member
+     * @param out  buffer the raw audio is written to
+     * @return number of bytes written to out
+     * @throws IOException if the data is not gzip, is corrupt, or does not fit into out
+     */
+    public int decompress(byte[] gzip, byte[] out) throws IOException {
+        int position = skipHeader(gzip);
+
+        inflater.reset();
+        inflater.setInput(gzip, position, gzip.length - position);
+        int size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (size == out.length) {
+                    throw new IOException("Audio does not fit into the buffer");
+                }
+                int inflated = inflater.inflate(out, size, out.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated gzip data");
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt gzip data", e);
+        }
+
+        //check the trailer
+        int trailer = gzip.length - inflater.getRemaining();
+        if (trailer + TRAILER_LENGTH > gzip.length) {
+            throw new IOException("Truncated gzip trailer");
+        }
+        crc.reset();
+        crc.update(out, 0, size);
+        if (readIntLE(gzip, trailer) != (int) crc.getValue() || readIntLE(gzip, trailer + 4) != size) {
+            throw new IOException("Corrupt gzip data");
+        }
+        return size;
+    }
+
+    /**
+     * Checks the gzip header and skips it including any optional fields
+     *
+     * @param gzip bytes of one gzip member
+     * @return index of the first byte of compressed data
+     * @throws IOException if the header is invalid
+     */
+    private static int skipHeader(byte[] gzip) throws IOException {
+        if (gzip.length < HEADER_LENGTH + TRAILER_LENGTH || readShortLE(gzip, 0) != GZIP_MAGIC || gzip[2] != Deflater.DEFLATED) {
+            throw new IOException("Not gzip data");
+        }
+
+        int flags = gzip[3];
+        int position = HEADER_LENGTH;
+        if ((flags & FLAG_EXTRA) != 0) {
+            position += 2 + readShortLE(gzip, position);
+        }
+        if ((flags & FLAG_NAME) != 0) {
+            position = skipString(gzip, position);
+        }
+        if ((flags & FLAG_COMMENT) != 0) {
+            position = skipString(gzip, position);
+        }
+        if ((flags & FLAG_HEADER_CRC) != 0) {
+            position += 2;
+        }
+        if (position > gzip.length) {
+            throw new IOException("Truncated gzip header");
+        }
+        return position;
+    }
+
+    /**
+     * Skips a zero terminated string of the gzip header
+     *
+     * @param gzip     bytes of one gzip member
+     * @param position start of the string
+     * @return index after the terminating zero
+     * @throws IOException if the string is not terminated
+     */
+    private static int skipString(byte[] gzip, int position) throws IOException {
+        while (position < gzip.length) {
+            if (gzip[position++] == 0) {
+                return position;
+            }
+        }
+        throw new IOException("Truncated gzip header");
+    }
+
+    /**
+     * Reads an unsigned little endian short
+     *
+     * @param bytes    array to read from
+     * @param position index of the first byte
+     * @return the value
+     * @throws IOException if the array is too short
+     */
+    private static int readShortLE(byte[] bytes, int position) throws IOException {
+        if (position + 2 > bytes.length) {
+            throw new IOException("Truncated gzip header");
+        }
+        return (bytes[position] & 0xff) | (bytes[position + 1] & 0xff) << 8;
+    }
+
+    /**
+     * Reads a little endian int
+     *
+     * @param bytes    array to read from
+     * @param position index of the first byte
+     * @return the value
+     */
+    private static int readIntLE(byte[] bytes, int position) {
+        return (bytes[position] & 0xff) | (bytes[position + 1] & 0xff) << 8 | (bytes[position + 2] & 0xff) << 16 | (bytes[position + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Writes a little endian int
+     *
+     * @param bytes    array to write to
+     * @param position index of the first byte
+     * @param value    the value
+     */
+    private static void writeIntLE(byte[] bytes, int position, int value) {
+        bytes[position] = (byte) value;
+        bytes[position + 1] = (byte) (value >>> 8);
+        bytes[position + 2] = (byte) (value >>> 16);
+        bytes[position + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,103 @@
+package com.rossisurna.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Turns packets into length prefixed frames and back. Every frame on the wire is a 4 byte big endian length followed
+ * by that many bytes of payload, which lets the server cut frames out of a non blocking channel without needing a
+ * stream per socket. The payload itself is the binary format of PacketEncoder and PacketDecoder.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 20 2019
+ */
+
+public class FrameCodec {
+
+    public static final int HEADER_LENGTH = 4; //bytes used by the length prefix
+    public static final int MAX_FRAME_LENGTH = 1 << 20; //largest payload accepted from the wire
+    public static final int BUNDLE_HEADER_LENGTH = HEADER_LENGTH + 3; //length prefix, version, opcode, and sender of a bundle
+
+    /**
+     * Static helper, no instances
+     */
+    private FrameCodec() {
+    }
+
+    /**
+     * Encodes a packet into a full frame, length prefix included, ready to be written to a channel
+     *
+     * @param packet packet to encode
+     * @return flipped buffer holding the frame
+     * @throws IOException if the packet could not be encoded
+     */
+    public static ByteBuffer encode(Packet packet) throws IOException {
+        return PacketEncoder.encode(packet);
+    }
+
+    /**
+     * Decodes the payload of one frame, without the length prefix, back into a packet
+     *
+     * @param payload buffer positioned at the start of the payload and limited to its end
+     * @return decoded packet
+     * @throws IOException if the payload is not a packet
+     */
+    public static Packet decode(ByteBuffer payload) throws IOException {
+        return PacketDecoder.decode(payload);
+    }
+
+    /**
+     * Writes the header of a bundle, the frames it carries follow it on the wire as they are
+     *
+     * @param header       buffer of at least BUNDLE_HEADER_LENGTH bytes, cleared and flipped ready to be written
+     * @param framesLength bytes of all bundled frames together, length prefixes included
+     */
+    public static void putBundleHeader(ByteBuffer header, int framesLength) {
+        header.clear();
+        header.putInt(BUNDLE_HEADER_LENGTH - HEADER_LENGTH + framesLength);
+        header.put(WireFormat.VERSION);
+        header.put(WireFormat.OP_BN);
+        header.put((byte) 0); //server
+        header.flip();
+    }
+
+    /**
+     * Writes a packet as one frame to a blocking stream. Several threads share the client's stream so the write is
+     * done while holding the stream's lock.
+     *
+     * @param out    stream to write to
+     * @param packet packet to write
+     * @throws IOException if the stream is broken
+     */
+    public static void writeFrame(DataOutputStream out, Packet packet) throws IOException {
+        ByteBuffer frame = PacketEncoder.encode(packet);
+        synchronized (out) {
+            out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads one frame from a blocking stream and decodes it, a bundle comes back as one BN packet, see FrameReader
+     *
+     * @param in stream to read from
+     * @return decoded packet
+     * @throws IOException if the stream is broken or the frame is invalid
+     */
+    public static Packet readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return PacketDecoder.decode(ByteBuffer.wrap(payload));
+    }
+}
@@ -0,0 +1,87 @@
+package com.rossisurna.util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Reads packets from a blocking stream one at a time, whether the server wrote them as frames of their own or bundled
+ * several into one. The packets of a bundle are handed out in the order they were bundled, so a reader never sees a
+ * BN packet.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 6 2019
+ */
+
+public class FrameReader {
+
+    //Protocol Codes
+    private static final String BN = "BN"; //bundle of frames
+
+    private final DataInputStream in; //stream to read from
+    private final ArrayDeque<Packet> pendingPackets = new ArrayDeque<>(); //packets of the last bundle not handed out yet
+
+    /**
+     * Constructor that takes in the stream to read from
+     *
+     * @param in framed stream
+     */
+    public FrameReader(DataInputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns the next packet, reading a frame if none is left of the last bundle
+     *
+     * @return next packet
+     * @throws IOException if the stream is broken or a frame is invalid
+     */
+    public Packet read() throws IOException {
+        while (pendingPackets.isEmpty()) {
+            Packet packet = FrameCodec.readFrame(in);
+            if (!BN.equals(packet.getCode())) {
+                return packet;
+            }
+            Collections.addAll(pendingPackets, (Packet[]) packet.getSubPacket());
+        }
+        return pendingPackets.poll();
+    }
+
+    /**
+     * Whether read would return without blocking for long, either because a bundle has packets left or because the
+     * stream has bytes waiting
+     *
+     * @return true if a packet is at hand
+     * @throws IOException if the stream is broken
+     */
+    public boolean hasPacket() throws IOException {
+        return !pendingPackets.isEmpty() || in.available() > 0;
+    }
+
+    /**
+     * Takes the packets left of the last bundle, for when the stream is handed over to someone else
+     *
+     * @return packets not read yet, in order
+     */
+    public List<Packet> takePending() {
+        ArrayList<Packet> packetArrayList = new ArrayList<>(pendingPackets);
+        pendingPackets.clear();
+        return packetArrayList;
+    }
+
+    /**
+     * Closes the stream
+     *
+     * @throws IOException if closing failed
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+}
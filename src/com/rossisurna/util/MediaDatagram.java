@@ -0,0 +1,78 @@
+package com.rossisurna.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Layout of the datagrams of the UDP media channel. A client to server datagram is the client's 8 byte media token
+ * followed by one frame, so the server can tell the datagram really comes from that client. A server to client
+ * datagram is just the frame, the client only listens to the server's address anyway.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 23 2019
+ */
+
+public final class MediaDatagram {
+
+    public static final int TOKEN_LENGTH = 8; //bytes used by the media token
+    public static final int MAX_DATAGRAM_LENGTH = 65507; //largest UDP payload
+
+    /**
+     * Static helper, no instances
+     */
+    private MediaDatagram() {
+    }
+
+    /**
+     * Encodes a client to server datagram
+     *
+     * @param token  the client's media token
+     * @param packet packet to send
+     * @return flipped buffer holding the datagram
+     * @throws IOException if the packet could not be encoded or is too big for a datagram
+     */
+    public static ByteBuffer encode(long token, Packet packet) throws IOException {
+        ByteBuffer frame = PacketEncoder.encode(packet);
+        if (TOKEN_LENGTH + frame.remaining() > MAX_DATAGRAM_LENGTH) {
+            throw new IOException("Packet too big for a datagram");
+        }
+
+        ByteBuffer datagram = ByteBuffer.allocate(TOKEN_LENGTH + frame.remaining());
+        datagram.putLong(token);
+        datagram.put(frame);
+        datagram.flip();
+        return datagram;
+    }
+
+    /**
+     * Reads the media token at the start of a client to server datagram
+     *
+     * @param datagram flipped datagram, left positioned at the frame
+     * @return the token
+     * @throws IOException if the datagram is too short
+     */
+    public static long readToken(ByteBuffer datagram) throws IOException {
+        if (datagram.remaining() < TOKEN_LENGTH) {
+            throw new IOException("Datagram too short");
+        }
+        return datagram.getLong();
+    }
+
+    /**
+     * Decodes the frame that makes up the rest of a datagram
+     *
+     * @param datagram buffer positioned at the frame
+     * @return decoded packet
+     * @throws IOException if the frame is malformed or does not fill the datagram
+     */
+    public static Packet readPacket(ByteBuffer datagram) throws IOException {
+        if (datagram.remaining() < FrameCodec.HEADER_LENGTH || datagram.getInt() != datagram.remaining()) {
+            throw new IOException("Datagram does not hold exactly one frame");
+        }
+        return PacketDecoder.decode(datagram);
+    }
+}
@@ -31,6 +31,18 @@ public class Packet implements Serializable {
         SU - Send Username from client to server
         AP - Audio Packet w/ data
         LG - Leave group
+        UL - User left
+        DS - Disconnect
+        MT - Media token for the UDP media channel, sent after joining a group
+        MR - Media register over UDP, echoed back by the server as acknowledgement
+        SN - Join snapshot, the roster and the last chat messages in one packet
+        HF - History fetch, asks for the chat messages before a sequence number
+        HP - History page, the chat messages asked for by a history fetch
+        RD - Redirect, reconnect to another cluster node and repeat the request there
+        RL - Relay link, a cluster node attaching to a group it spans
+        BN - Bundle, several frames the server wrote together, never handed to the application
+
+        On the wire each code is a one byte opcode, see WireFormat
      */
 
     /**
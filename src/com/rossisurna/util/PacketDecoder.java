@@ -0,0 +1,182 @@
+package com.rossisurna.util;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Decodes the payload of a frame of the binary wire format described in WireFormat back into a packet. Used by both
+ * the client and the server.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 22 2019
+ */
+
+public final class PacketDecoder {
+
+    /**
+     * Static helper, no instances
+     */
+    private PacketDecoder() {
+    }
+
+    /**
+     * Decodes one frame's payload, the bytes after the length prefix
+     *
+     * @param payload buffer positioned at the start of the payload and limited to its end
+     * @return decoded packet
+     * @throws IOException if the payload is malformed or of another version
+     */
+    public static Packet decode(ByteBuffer payload) throws IOException {
+        try {
+            byte version = payload.get();
+            if (version != WireFormat.VERSION) {
+                throw new IOException("Unsupported protocol version: " + version);
+            }
+
+            byte opcode = payload.get();
+            int senderID = getVarInt(payload);
+            if (opcode == WireFormat.OP_BN) {
+                return new Packet(WireFormat.codeOf(opcode), senderID, getFrames(payload));
+            }
+            String code = opcode == WireFormat.OP_EXT ? getString(payload) : WireFormat.codeOf(opcode);
+            if (code == null) {
+                throw new IOException("Unknown opcode: " + opcode);
+            }
+
+            return new Packet(code, senderID, getValue(payload));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated frame", e);
+        }
+    }
+
+    /**
+     * Reads the frames of a bundle, up to the end of the payload. Bundles are never nested, a bundle inside a bundle
+     * is malformed, which also keeps a crafted frame from nesting deep enough to overflow the stack.
+     *
+     * @param buffer buffer positioned at the first frame
+     * @return the packets in the order they were bundled
+     * @throws IOException if a frame is malformed or is itself a bundle
+     */
+    private static Packet[] getFrames(ByteBuffer buffer) throws IOException {
+        ArrayList<Packet> packetArrayList = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Invalid bundled frame length: " + length);
+            }
+
+            ByteBuffer frame = buffer.duplicate();
+            frame.limit(frame.position() + length);
+            if (length >= 2 && frame.get(frame.position() + 1) == WireFormat.OP_BN) {
+                throw new IOException("Bundle inside a bundle");
+            }
+            packetArrayList.add(decode(frame));
+            buffer.position(frame.limit());
+        }
+        return packetArrayList.toArray(new Packet[0]);
+    }
+
+    /**
+     * Reads a tagged value
+     *
+     * @param buffer buffer to read from
+     * @return the value
+     * @throws IOException if the tag is unknown
+     */
+    private static Object getValue(ByteBuffer buffer) throws IOException {
+        byte tag = buffer.get();
+        switch (tag) {
+            case WireFormat.TAG_NULL: {
+                return null;
+            }
+            case WireFormat.TAG_STRING: {
+                return getString(buffer);
+            }
+            case WireFormat.TAG_STRING_ARRAY: {
+                String[] strings = new String[getLength(buffer)];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = getString(buffer);
+                }
+                return strings;
+            }
+            case WireFormat.TAG_AUDIO: {
+                int sequenceNumber = getVarInt(buffer);
+                return new AudioPacket(getBytes(buffer), sequenceNumber);
+            }
+            case WireFormat.TAG_BYTES: {
+                return getBytes(buffer);
+            }
+            case WireFormat.TAG_LONG: {
+                return buffer.getLong();
+            }
+            default: {
+                throw new IOException("Unknown value tag: " + tag);
+            }
+        }
+    }
+
+    /**
+     * Reads a string written as its UTF-8 length and bytes
+     *
+     * @param buffer buffer to read from
+     * @return the string
+     * @throws IOException if the length is invalid
+     */
+    private static String getString(ByteBuffer buffer) throws IOException {
+        return new String(getBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a byte array written as its length and bytes
+     *
+     * @param buffer buffer to read from
+     * @return the bytes
+     * @throws IOException if the length is invalid
+     */
+    private static byte[] getBytes(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[getLength(buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a varint length and checks it against what is left of the frame
+     *
+     * @param buffer buffer to read from
+     * @return the length
+     * @throws IOException if the length cannot be right
+     */
+    private static int getLength(ByteBuffer buffer) throws IOException {
+        int length = getVarInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint
+     *
+     * @param buffer buffer to read from
+     * @return the value
+     * @throws IOException if the varint is longer than 5 bytes
+     */
+    private static int getVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
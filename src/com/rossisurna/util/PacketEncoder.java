@@ -0,0 +1,198 @@
+package com.rossisurna.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Encodes packets into frames of the binary wire format described in WireFormat. Used by both the client and the
+ * server, so an audio frame costs a dozen bytes of overhead rather then a serialized object graph.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 22 2019
+ */
+
+public final class PacketEncoder {
+
+    //Sizes
+    private static final int HEADER_ESTIMATE = 32; //room for the fixed part of a frame before it needs to grow
+
+    /**
+     * Static helper, no instances
+     */
+    private PacketEncoder() {
+    }
+
+    /**
+     * Encodes a packet into a full frame, length prefix included
+     *
+     * @param packet packet to encode
+     * @return flipped buffer holding the frame
+     * @throws IOException if the sub packet has a type the format cannot carry
+     */
+    public static ByteBuffer encode(Packet packet) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_ESTIMATE + estimateSize(packet.getSubPacket()));
+
+        //length is filled in at the end
+        buffer.position(FrameCodec.HEADER_LENGTH);
+        buffer.put(WireFormat.VERSION);
+
+        byte opcode = WireFormat.opcodeOf(packet.getCode());
+        buffer.put(opcode);
+        buffer = putVarInt(buffer, packet.getSenderID());
+        if (opcode == WireFormat.OP_EXT) {
+            buffer = putString(buffer, packet.getCode());
+        }
+        buffer = putValue(buffer, packet.getSubPacket());
+
+        buffer.putInt(0, buffer.position() - FrameCodec.HEADER_LENGTH);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes a tagged value
+     *
+     * @param buffer buffer to write to
+     * @param value  value to write
+     * @return the buffer, or a bigger copy if it had to grow
+     * @throws IOException if the value has an unsupported type
+     */
+    private static ByteBuffer putValue(ByteBuffer buffer, Object value) throws IOException {
+        if (value == null) {
+            buffer = ensure(buffer, 1);
+            buffer.put(WireFormat.TAG_NULL);
+        } else if (value instanceof String) {
+            buffer = ensure(buffer, 1);
+            buffer.put(WireFormat.TAG_STRING);
+            buffer = putString(buffer, (String) value);
+        } else if (value instanceof Object[]) {
+            //strings, a ByteBuffer among them is a string already in UTF-8, like chat read out of a log
+            Object[] strings = (Object[]) value;
+            buffer = ensure(buffer, 1);
+            buffer.put(WireFormat.TAG_STRING_ARRAY);
+            buffer = putVarInt(buffer, strings.length);
+            for (Object string : strings) {
+                if (string instanceof ByteBuffer) {
+                    buffer = putUtf8(buffer, (ByteBuffer) string);
+                } else if (string == null || string instanceof String) {
+                    buffer = putString(buffer, (String) string);
+                } else {
+                    throw new IOException("Unsupported string array element: " + string.getClass().getName());
+                }
+            }
+        } else if (value instanceof AudioPacket) {
+            AudioPacket audioPacket = (AudioPacket) value;
+            buffer = ensure(buffer, 1);
+            buffer.put(WireFormat.TAG_AUDIO);
+            buffer = putVarInt(buffer, audioPacket.getSequenceNumber());
+            buffer = putBytes(buffer, audioPacket.getAudioDataInByteForm());
+        } else if (value instanceof byte[]) {
+            buffer = ensure(buffer, 1);
+            buffer.put(WireFormat.TAG_BYTES);
+            buffer = putBytes(buffer, (byte[]) value);
+        } else if (value instanceof Long) {
+            buffer = ensure(buffer, 9);
+            buffer.put(WireFormat.TAG_LONG);
+            buffer.putLong((Long) value);
+        } else {
+            throw new IOException("Unsupported sub packet type: " + value.getClass().getName());
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes, null is written as an empty string
+     *
+     * @param buffer buffer to write to
+     * @param string string to write
+     * @return the buffer, or a bigger copy if it had to grow
+     */
+    private static ByteBuffer putString(ByteBuffer buffer, String string) {
+        return putBytes(buffer, string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a string that is already in UTF-8 as its length and bytes, the bytes are copied without being decoded
+     *
+     * @param buffer buffer to write to
+     * @param utf8   string in UTF-8 between position and limit, left untouched
+     * @return the buffer, or a bigger copy if it had to grow
+     */
+    private static ByteBuffer putUtf8(ByteBuffer buffer, ByteBuffer utf8) {
+        buffer = putVarInt(buffer, utf8.remaining());
+        buffer = ensure(buffer, utf8.remaining());
+        buffer.put(utf8.duplicate());
+        return buffer;
+    }
+
+    /**
+     * Writes a byte array as its length and bytes
+     *
+     * @param buffer buffer to write to
+     * @param bytes  bytes to write
+     * @return the buffer, or a bigger copy if it had to grow
+     */
+    private static ByteBuffer putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer = putVarInt(buffer, bytes.length);
+        buffer = ensure(buffer, bytes.length);
+        buffer.put(bytes);
+        return buffer;
+    }
+
+    /**
+     * Writes an int as an unsigned LEB128 varint, 1 byte for values below 128
+     *
+     * @param buffer buffer to write to
+     * @param value  value to write
+     * @return the buffer, or a bigger copy if it had to grow
+     */
+    private static ByteBuffer putVarInt(ByteBuffer buffer, int value) {
+        buffer = ensure(buffer, 5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        return buffer;
+    }
+
+    /**
+     * Makes sure the buffer has room for more bytes, growing it if needed
+     *
+     * @param buffer buffer to check
+     * @param needed bytes about to be written
+     * @return the buffer, or a bigger copy of it
+     */
+    private static ByteBuffer ensure(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    /**
+     * Rough size of a value so most frames are encoded without growing the buffer
+     *
+     * @param value value to size
+     * @return estimated encoded size
+     */
+    private static int estimateSize(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length() * 3;
+        } else if (value instanceof AudioPacket) {
+            return ((AudioPacket) value).getAudioDataInByteForm().length + 10;
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length + 5;
+        }
+        return 64;
+    }
+}
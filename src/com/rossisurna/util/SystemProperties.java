@@ -0,0 +1,62 @@
+package com.rossisurna.util;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Reads the numeric system properties the settings and policies of the server and the load generator are started
+ * with. A missing property gives the default, and so does one that is not a number, after saying so.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since May 12 2019
+ */
+
+public final class SystemProperties {
+
+    /**
+     * Static helper, no instances
+     */
+    private SystemProperties() {
+    }
+
+    /**
+     * Reads a whole number system property
+     *
+     * @param name         property name
+     * @param defaultValue value used if missing or not a number
+     * @return the value
+     */
+    public static long longProperty(String name, long defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.printf("%nInvalid value '%s' for %s, using %d", value, name, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a decimal system property
+     *
+     * @param name         property name
+     * @param defaultValue value used if missing or not a number
+     * @return the value
+     */
+    public static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.printf("%nInvalid value '%s' for %s, using %s", value, name, defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.rossisurna.util;
+
+/**
+ * Network Programming Spring 2019 Final Project
+ * <p>
+ * Constants of the binary wire format shared by the packet encoder and decoder.
+ * <p>
+ * Frame layout: [int32 length][version byte][opcode byte][varint senderID][tagged value]
+ * <p>
+ * The length counts everything after itself. A tagged value is a one byte type tag followed by the value, strings are
+ * a varint byte length followed by UTF-8 bytes. Codes without an opcode of their own are sent as EXT, which carries the
+ * code as a string before the value, so new codes can be added without breaking older peers.
+ * <p>
+ * Bundle layout: [int32 length][version byte][BN opcode][varint senderID 0][frame][frame]...
+ * <p>
+ * A bundle carries whole frames, length prefixes included, in place of a tagged value. The server uses it to write
+ * everything queued for a client within one tick with one write, readers unbundle it with FrameReader.
+ *
+ * @author Stephen R
+ * @author Tomas S
+ * @version 1.0
+ * @since Apr 22 2019
+ */
+
+public final class WireFormat {
+
+    //Version of the format, bumped on any incompatible change
+    public static final byte VERSION = 1;
+
+    //Opcodes
+    public static final byte OP_EXT = 0x00; //any code without an opcode of its own
+    public static final byte OP_MSG = 0x01; //chat message
+    public static final byte OP_UJ = 0x02; //user joined
+    public static final byte OP_CS = 0x03; //change scene
+    public static final byte OP_IMSG = 0x04; //initial message with the client ID
+    public static final byte OP_JG = 0x05; //join group
+    public static final byte OP_CG = 0x06; //create group
+    public static final byte OP_SU = 0x07; //set username
+    public static final byte OP_AP = 0x08; //audio packet
+    public static final byte OP_LG = 0x09; //leave group
+    public static final byte OP_UL = 0x0A; //user left
+    public static final byte OP_DS = 0x0B; //disconnect
+    public static final byte OP_MT = 0x0C; //media token for the UDP media channel
+    public static final byte OP_MR = 0x0D; //media register over UDP, also its acknowledgement
+    public static final byte OP_SN = 0x0E; //join snapshot, roster and recent chat
+    public static final byte OP_HF = 0x0F; //history fetch, asks for older chat
+    public static final byte OP_HP = 0x10; //history page, answer to a history fetch
+    public static final byte OP_RD = 0x11; //redirect to the cluster node that should handle the request
+    public static final byte OP_RL = 0x12; //relay link, another cluster node attaching to a group it spans
+    public static final byte OP_BN = 0x13; //bundle of whole frames written together, never nested
+    public static final byte OP_HB = 0x14; //heartbeat, sent by the server to a quiet client which answers with one
+    public static final byte OP_RC = 0x15; //reconnect hint, the server is shutting down and says when and where to reconnect
+
+    //Value tags
+    public static final byte TAG_NULL = 0; //no value
+    public static final byte TAG_STRING = 1; //String
+    public static final byte TAG_STRING_ARRAY = 2; //String[], encoded from any Object[] of Strings and UTF-8 ByteBuffers
+    public static final byte TAG_AUDIO = 3; //AudioPacket
+    public static final byte TAG_BYTES = 4; //byte[]
+    public static final byte TAG_LONG = 5; //Long
+
+    //Protocol codes indexed by opcode, the IMSG code really is spelled ISMG everywhere
+    private static final String[] CODES = {null, "MSG", "UJ", "CS", "ISMG", "JG", "CG", "SU", "AP", "LG", "UL", "DS", "MT", "MR", "SN", "HF", "HP", "RD", "RL", "BN", "HB", "RC"};
+
+    /**
+     * Constants only, no instances
+     */
+    private WireFormat() {
+    }
+
+    /**
+     * Returns the opcode of a protocol code
+     *
+     * @param code protocol code
+     * @return opcode, or OP_EXT if the code has none
+     */
+    public static byte opcodeOf(String code) {
+        for (byte opcode = 1; opcode < CODES.length; opcode++) {
+            if (CODES[opcode].equals(code)) {
+                return opcode;
+            }
+        }
+        return OP_EXT;
+    }
+
+    /**
+     * Returns the number of opcodes, OP_EXT included
+     *
+     * @return number of opcodes
+     */
+    public static int opcodeCount() {
+        return CODES.length;
+    }
+
+    /**
+     * Returns the protocol code of an opcode
+     *
+     * @param opcode opcode, not OP_EXT
+     * @return protocol code, or null if the opcode is unknown
+     */
+    public static String codeOf(byte opcode) {
+        if (opcode <= 0 || opcode >= CODES.length) {
+            return null;
+        }
+        return CODES[opcode];
+    }
+}